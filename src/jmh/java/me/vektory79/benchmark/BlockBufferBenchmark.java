@@ -0,0 +1,91 @@
+package me.vektory79.benchmark;
+
+import me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer;
+import me.vektory79.jme3.cubeterrain.BlockStorageLayout;
+import me.vektory79.jme3.cubeterrain.TerrainBlockTypesBuffer;
+import me.vektory79.jme3.cubeterrain.TerrainChunksMesh;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_SIZE;
+
+/**
+ * Block access of {@link TerrainBlockTypesBuffer} for each storage layout.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BlockBufferBenchmark {
+    private static final int CHUNKS = 64;
+
+    @Param({"SEPARATE", "COMPACT_TYPES", "PACKED"})
+    public BlockStorageLayout layout;
+
+    private TerrainChunksMesh mesh;
+    private TerrainBlockTypesBuffer blockType;
+    private final int[] chunkData = new int[CHUNK_SIZE];
+
+    @Setup
+    public void setUp() {
+        mesh = new TerrainChunksMesh(CHUNKS, layout);
+        blockType = mesh.getBlockType();
+        for (int i = 0; i < CHUNKS; i++) {
+            mesh.useChunk(i, 0, 0);
+        }
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            chunkData[i] = i & 3;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNK_SIZE)
+    public int getValue() {
+        int sum = 0;
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            sum += blockType.getValue(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNK_SIZE)
+    public TerrainBlockTypesBuffer setValue() {
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            blockType.setValue(i, i & 3);
+        }
+        return blockType;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNK_SIZE)
+    public TerrainBlockTypesBuffer writeChunk() {
+        blockType.writeChunk(1, chunkData);
+        return blockType;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNK_SIZE)
+    public int[] readChunk() {
+        blockType.readChunk(1, chunkData);
+        return chunkData;
+    }
+
+    /**
+     * Dirty ranges are accumulated by the writes and cleared by the commit, so they don't grow between invocations.
+     */
+    @Benchmark
+    public AbstractTerrainBlockBuffer commit() {
+        blockType.setValue(CHUNK_SIZE + 5, 1);
+        mesh.commitUpdates();
+        return blockType;
+    }
+}
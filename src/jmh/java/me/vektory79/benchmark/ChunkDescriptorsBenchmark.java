@@ -0,0 +1,63 @@
+package me.vektory79.benchmark;
+
+import me.vektory79.jme3.cubeterrain.ChunkDescriptorsBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reservation, lookup and release of the chunks by {@link ChunkDescriptorsBuffer}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChunkDescriptorsBenchmark {
+    private static final int SIDE = 32;
+    private static final int COLUMNS = SIDE * SIDE;
+
+    @Param({"4096", "16384"})
+    public int chunks;
+
+    private ChunkDescriptorsBuffer descriptors;
+    private int[] reserved;
+
+    @Setup
+    public void setUp() {
+        descriptors = new ChunkDescriptorsBuffer(0, chunks);
+        reserved = new int[COLUMNS];
+        // Half of the pool is reserved by the other chunks, so lookups go through the populated index.
+        for (int i = 0; i < chunks / 2; i++) {
+            descriptors.use(i % SIDE + SIDE, i / SIDE % SIDE, i / COLUMNS);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COLUMNS)
+    public int[] useAndFree() {
+        for (int i = 0; i < COLUMNS; i++) {
+            reserved[i] = descriptors.use(i % SIDE, 0, i / SIDE);
+        }
+        for (int i = 0; i < COLUMNS; i++) {
+            descriptors.free(reserved[i]);
+        }
+        return reserved;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COLUMNS)
+    public int getID() {
+        int sum = 0;
+        for (int i = 0; i < COLUMNS; i++) {
+            sum += descriptors.getID(i % SIDE + SIDE, i / SIDE, 0);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,42 @@
+package me.vektory79.benchmark;
+
+import me.vektory79.mapgen.HeightPrecision;
+import me.vektory79.mapgen.MapGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generation of the whole height map by {@link MapGenerator}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MapGeneratorBenchmark {
+    @Param({"8", "10"})
+    public int sizeFactor;
+
+    @Param({"DOUBLE", "SHORT"})
+    public HeightPrecision precision;
+
+    @Benchmark
+    public MapGenerator generate() {
+        MapGenerator map = new MapGenerator(sizeFactor, 8, 1, precision, false);
+        map.generate();
+        return map;
+    }
+
+    @Benchmark
+    public MapGenerator generateParallel() {
+        MapGenerator map = new MapGenerator(sizeFactor, 8, 1, precision, false);
+        map.generate(ForkJoinPool.commonPool());
+        return map;
+    }
+}
@@ -0,0 +1,140 @@
+package me.vektory79.benchmark;
+
+import me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer;
+import me.vektory79.jme3.cubeterrain.ChunkDescriptorsBuffer;
+import me.vektory79.jme3.cubeterrain.ChunkGenerator;
+import me.vektory79.jme3.cubeterrain.RegionStorage;
+import me.vektory79.jme3.cubeterrain.TerrainChunksMesh;
+import me.vektory79.mapgen.MapGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Columns of the square world, loaded from the region files versus generated from the height map. Both variants
+ * include the culling of the dirty chunks, as it's done by the streaming.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RegionStorageBenchmark {
+    /**
+     * Side of the world in chunk columns.
+     */
+    @Param({"16", "32"})
+    public int columns;
+
+    private MapGenerator map;
+    private TerrainChunksMesh mesh;
+    private Path directory;
+    private RegionStorage storage;
+    private final int[] chunkData = new int[AbstractTerrainBlockBuffer.CHUNK_SIZE];
+
+    @Setup
+    public void setUp() throws IOException {
+        map = new MapGenerator(10, 8, 1);
+        map.generate();
+        int chunks = 0;
+        for (int chunkZ = 0; chunkZ < columns; chunkZ++) {
+            for (int chunkX = 0; chunkX < columns; chunkX++) {
+                long range = ChunkGenerator.getColumnRange(map, chunkX, chunkZ);
+                chunks += ChunkGenerator.getRangeMax(range) - ChunkGenerator.getRangeMin(range) + 1;
+            }
+        }
+        mesh = new TerrainChunksMesh(chunks);
+        generate();
+        mesh.rebuildCulling();
+        directory = Files.createTempDirectory("region-benchmark");
+        storage = new RegionStorage(directory);
+        ChunkDescriptorsBuffer descriptors = mesh.getChunkDescriptors();
+        for (int chunkId = 0; chunkId < descriptors.getChunks(); chunkId++) {
+            if (descriptors.isUsed(chunkId)) {
+                storage.saveChunk(mesh, descriptors.readX(chunkId), descriptors.readY(chunkId),
+                        descriptors.readZ(chunkId));
+            }
+        }
+        storage.flush();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        storage.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * Each invocation starts from the empty mesh.
+     */
+    @Setup(Level.Invocation)
+    public void clear() {
+        ChunkDescriptorsBuffer descriptors = mesh.getChunkDescriptors();
+        for (int chunkId = 0; chunkId < descriptors.getChunks(); chunkId++) {
+            if (descriptors.isUsed(chunkId)) {
+                descriptors.free(chunkId);
+            }
+        }
+        for (long key : descriptors.getUniformChunkKeys()) {
+            descriptors.removeUniform(ChunkDescriptorsBuffer.unpackX(key), ChunkDescriptorsBuffer.unpackY(key),
+                    ChunkDescriptorsBuffer.unpackZ(key));
+        }
+        mesh.rebuildDirtyCulling();
+        mesh.commitUpdates();
+    }
+
+    @Benchmark
+    public TerrainChunksMesh generateAndCull() {
+        generate();
+        mesh.rebuildDirtyCulling();
+        return mesh;
+    }
+
+    /**
+     * Stored chunks are loaded, uniform chunks are not stored and are generated, as by the streaming.
+     */
+    @Benchmark
+    public TerrainChunksMesh loadAndCull() throws IOException {
+        for (int chunkZ = 0; chunkZ < columns; chunkZ++) {
+            for (int chunkX = 0; chunkX < columns; chunkX++) {
+                long range = ChunkGenerator.getColumnRange(map, chunkX, chunkZ);
+                for (int chunkY = ChunkGenerator.getRangeMin(range); chunkY <= ChunkGenerator.getRangeMax(range);
+                     chunkY++) {
+                    if (!storage.loadChunk(mesh, chunkX, chunkY, chunkZ)) {
+                        ChunkGenerator.generate(map, chunkX, chunkY, chunkZ, chunkData);
+                        ChunkGenerator.store(mesh, chunkX, chunkY, chunkZ, chunkData);
+                    }
+                }
+            }
+        }
+        mesh.rebuildDirtyCulling();
+        return mesh;
+    }
+
+    private void generate() {
+        for (int chunkZ = 0; chunkZ < columns; chunkZ++) {
+            for (int chunkX = 0; chunkX < columns; chunkX++) {
+                long range = ChunkGenerator.getColumnRange(map, chunkX, chunkZ);
+                for (int chunkY = ChunkGenerator.getRangeMin(range); chunkY <= ChunkGenerator.getRangeMax(range);
+                     chunkY++) {
+                    ChunkGenerator.generate(map, chunkX, chunkY, chunkZ, chunkData);
+                    ChunkGenerator.store(mesh, chunkX, chunkY, chunkZ, chunkData);
+                }
+            }
+        }
+    }
+}
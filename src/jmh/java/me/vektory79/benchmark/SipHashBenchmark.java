@@ -0,0 +1,45 @@
+package me.vektory79.benchmark;
+
+import me.vektory79.utils.ArrayUtils;
+import me.vektory79.utils.SipHashInline;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashing of the coordinate pair, the innermost call of the height map generation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SipHashBenchmark {
+    private static final int ROW = 256;
+
+    private final long seed = 1;
+    private long x = 12345;
+    private final long y = -678;
+    private final long[] row = new long[ROW];
+
+    @Benchmark
+    public long hashBytes() {
+        return SipHashInline.hash24(seed, seed, ArrayUtils.bytesFrom(x++, y));
+    }
+
+    @Benchmark
+    public long hashLongs() {
+        return SipHashInline.hash24(seed, seed, x++, y);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROW)
+    public long[] hashRow() {
+        SipHashInline.hash24Row(seed, seed, x++, 2, y, row, 0, ROW);
+        return row;
+    }
+}
@@ -0,0 +1,95 @@
+package me.vektory79.benchmark;
+
+import me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer;
+import me.vektory79.jme3.cubeterrain.ChunkDescriptorsBuffer;
+import me.vektory79.jme3.cubeterrain.ChunkGenerator;
+import me.vektory79.jme3.cubeterrain.TerrainChunksMesh;
+import me.vektory79.mapgen.MapGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless build of the square world: chunk generation and culling, without GPU upload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TerrainBuildBenchmark {
+    /**
+     * Side of the world in chunk columns.
+     */
+    @Param({"16", "32", "64"})
+    public int columns;
+
+    private MapGenerator map;
+    private TerrainChunksMesh mesh;
+    private final int[] chunkData = new int[AbstractTerrainBlockBuffer.CHUNK_SIZE];
+
+    @Setup
+    public void setUp() {
+        map = new MapGenerator(10, 8, 1);
+        map.generate();
+        int chunks = 0;
+        for (int chunkZ = 0; chunkZ < columns; chunkZ++) {
+            for (int chunkX = 0; chunkX < columns; chunkX++) {
+                long range = ChunkGenerator.getColumnRange(map, chunkX, chunkZ);
+                chunks += ChunkGenerator.getRangeMax(range) - ChunkGenerator.getRangeMin(range) + 1;
+            }
+        }
+        mesh = new TerrainChunksMesh(chunks);
+    }
+
+    /**
+     * Each invocation starts from the empty mesh.
+     */
+    @Setup(Level.Invocation)
+    public void clear() {
+        ChunkDescriptorsBuffer descriptors = mesh.getChunkDescriptors();
+        for (int chunkId = 0; chunkId < descriptors.getChunks(); chunkId++) {
+            if (descriptors.isUsed(chunkId)) {
+                descriptors.free(chunkId);
+            }
+        }
+        for (long key : descriptors.getUniformChunkKeys()) {
+            descriptors.removeUniform(ChunkDescriptorsBuffer.unpackX(key), ChunkDescriptorsBuffer.unpackY(key),
+                    ChunkDescriptorsBuffer.unpackZ(key));
+        }
+        mesh.rebuildDirtyCulling();
+        mesh.commitUpdates();
+    }
+
+    @Benchmark
+    public TerrainChunksMesh fillChunks() {
+        fill();
+        return mesh;
+    }
+
+    @Benchmark
+    public TerrainChunksMesh fillChunksAndCull() {
+        fill();
+        mesh.rebuildCulling();
+        return mesh;
+    }
+
+    private void fill() {
+        for (int chunkZ = 0; chunkZ < columns; chunkZ++) {
+            for (int chunkX = 0; chunkX < columns; chunkX++) {
+                long range = ChunkGenerator.getColumnRange(map, chunkX, chunkZ);
+                for (int chunkY = ChunkGenerator.getRangeMin(range); chunkY <= ChunkGenerator.getRangeMax(range);
+                     chunkY++) {
+                    ChunkGenerator.generate(map, chunkX, chunkY, chunkZ, chunkData);
+                    ChunkGenerator.store(mesh, chunkX, chunkY, chunkZ, chunkData);
+                }
+            }
+        }
+    }
+}
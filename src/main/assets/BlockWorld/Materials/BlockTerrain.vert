@@ -31,9 +31,13 @@ layout(std430, binding = 5) coherent buffer m_DebugBuffer
 */
 
 // Interprets as block type index in v_BlockTypeDescriptors.types array.
+// In compact layout it is unsigned byte, converted to float. Otherwise it is raw int bits.
+// In packed layout it holds both block type and block options.
 in float inPosition;
+#ifndef PACKED_BLOCKS
 // Interprets as block options (see me.vektory79.jme3.cubeterrain.TerrainBlockOptionsBuffer class).
 in float inTexCoord8;
+#endif
 
 out BlockInfo {
     int textureSize;
@@ -53,8 +57,17 @@ out BlockInfo {
 
 void main() {
     vec4 position = vec4(FLOAT_MIN_INFINITY, FLOAT_MIN_INFINITY, FLOAT_MIN_INFINITY, 1);
+#if defined(PACKED_BLOCKS)
+    int packedBlock = floatBitsToInt(inPosition);
+    int blockType = bitfieldExtract(packedBlock, 24, 7);
+    int blockOptions = packedBlock & 0xFFFF;
+#elif defined(COMPACT_BLOCK_TYPES)
+    int blockType = int(inPosition);
+    int blockOptions = floatBitsToInt(inTexCoord8);
+#else
     int blockType = floatBitsToInt(inPosition);
     int blockOptions = floatBitsToInt(inTexCoord8);
+#endif
     // Calculate block coordinates
     int chunkID = gl_VertexID / CHUNK_SIZE;
     vec4 chunkPosition = vec4(v_ChunkDescriptors.positions[chunkID] * CHUNK_DIMENSION, 1.0);
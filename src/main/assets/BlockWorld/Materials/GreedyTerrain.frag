@@ -0,0 +1,14 @@
+uniform sampler2D m_ColorMap;
+
+in vec2 texCoord;
+flat in ivec2 texPosition;
+flat in int texSize;
+
+out vec4 color;
+
+void main(){
+    ivec2 tx = texPosition + ivec2(fract(texCoord) * texSize);
+    ivec2 size = textureSize(m_ColorMap, 0);
+    vec2 atlasCoord = vec2(float(tx.x) / float(size.x), float(size.y - tx.y - 1) / float(size.y));
+    color = texture(m_ColorMap, atlasCoord);
+}
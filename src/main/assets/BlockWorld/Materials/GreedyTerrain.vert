@@ -0,0 +1,18 @@
+uniform mat4 g_WorldViewProjectionMatrix;
+
+in vec3 inPosition;
+// Texture coordinates in blocks. The texture is repeated along the merged faces.
+in vec2 inTexCoord;
+// Position (xy) and size (z) of the block type texture in the atlas.
+in vec3 inTexCoord2;
+
+out vec2 texCoord;
+flat out ivec2 texPosition;
+flat out int texSize;
+
+void main() {
+    texCoord = inTexCoord;
+    texPosition = ivec2(inTexCoord2.xy);
+    texSize = int(inTexCoord2.z);
+    gl_Position = g_WorldViewProjectionMatrix * vec4(inPosition, 1.0);
+}
@@ -7,13 +7,32 @@ import com.jme3.math.ColorRGBA;
 import com.jme3.math.Vector3f;
 import com.jme3.post.FilterPostProcessor;
 import com.jme3.post.ssao.SSAOFilter;
+import me.vektory79.jme3.cubeterrain.BlockStorageLayout;
+import me.vektory79.jme3.cubeterrain.ChunkStreamer;
+import me.vektory79.jme3.cubeterrain.GreedyTerrainNode;
+import me.vektory79.jme3.cubeterrain.RegionStorage;
+import me.vektory79.jme3.cubeterrain.SparseVoxelOctree;
 import me.vektory79.jme3.cubeterrain.TerrainNode;
+import me.vektory79.mapgen.TiledHeightMap;
+
+import javax.management.JMException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * The game application class.
  */
 public class GameApplication extends SimpleApplication {
+    private static final Logger LOGGER = Logger.getLogger(GameApplication.class.getName());
+
     private final boolean debug;
+    private TerrainNode terrain;
+    private ChunkStreamer streamer;
+    private GreedyTerrainNode greedyTerrain;
 
     public GameApplication(boolean debug) {
         this.debug = debug;
@@ -41,17 +60,66 @@ public class GameApplication extends SimpleApplication {
         }
     }
 
+    @Override
+    public void simpleUpdate(float tpf) {
+        if (streamer != null) {
+            streamer.update(cam.getLocation());
+        }
+        if (greedyTerrain != null) {
+            greedyTerrain.updateLevels(cam.getLocation());
+        }
+    }
+
     @Override
     public void destroy() {
         super.destroy();
+        closeRegionStorage();
         System.exit(0);
     }
 
+    /**
+     * Save the resident columns, so the next start loads them instead of generation.
+     */
+    private void closeRegionStorage() {
+        RegionStorage regionStorage = terrain != null ? terrain.getRegionStorage() : null;
+        if (regionStorage == null) {
+            return;
+        }
+        try {
+            terrain.saveResidentChunks();
+            regionStorage.close();
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.log(Level.SEVERE, "Region storage is not saved", e);
+        }
+    }
+
     private void createFastMap() {
-        TerrainNode terrain = new TerrainNode(this.assetManager, "terrain", 1024 * 7);
-        terrain.fillMap(8, 1);
+        // Layout of the block buffers, e.g. COMPACT_TYPES for the quarter of the block types memory.
+        BlockStorageLayout layout = BlockStorageLayout.valueOf(
+                System.getProperty("blockworld.layout", BlockStorageLayout.SEPARATE.name()));
+        terrain = new TerrainNode(this.assetManager, "terrain", 1024 * 7, layout);
+        terrain.getMesh().setCullingPool(ForkJoinPool.commonPool());
+        if (Boolean.getBoolean("blockworld.generationPipeline")) {
+            // Chunks are generated by the background threads, the render thread only writes the results.
+            terrain.createGenerationPipeline(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), 256);
+        }
+        if (Boolean.getBoolean("blockworld.streaming")) {
+            createStreaming();
+        } else {
+            terrain.fillMap(8, 1);
+        }
+        if (Boolean.getBoolean("blockworld.greedyMeshing")) {
+            // Triangles with merged faces instead of the geometry shader. Chunks beyond 8 chunks are coarser.
+            greedyTerrain = terrain.createGreedyMeshing(assetManager);
+            greedyTerrain.setLodDistance(128);
+        }
         terrain.updateBuffers();
         rootNode.attachChild(terrain);
+        try {
+            terrain.getMesh().getMetrics().register(terrain.getName());
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Terrain metrics are not published", e);
+        }
 
         cam.setLocation(new Vector3f(512, 100, 512));
         cam.lookAt(new Vector3f(1, -50, 1), Vector3f.UNIT_Y);
@@ -59,6 +127,33 @@ public class GameApplication extends SimpleApplication {
 //        cam.lookAtDirection(new Vector3f(1, 0, 1), Vector3f.UNIT_Y);
     }
 
+    /**
+     * Infinite world: columns around the camera are loaded and released while it moves.
+     */
+    private void createStreaming() {
+        // Tiles of 512x512 blocks are generated, when the streamed columns reach them.
+        terrain.setHeightMap(new TiledHeightMap(9, 8, 1, 16));
+        // Heights are within -25..25 blocks, so the column takes up to 4 chunks. 3209 columns within the unload
+        // radius could take 12836 chunks, more than the pool of 7168, though no more than 6632 were found at the
+        // sampled places of the map. Column, which doesn't fit, is refused by loadColumn and retried later by the
+        // streamer, so only the farthest columns can be missing.
+        streamer = terrain.createStreamer(28, 32);
+        streamer.setMaxLoadsPerUpdate(64);
+        String regionDirectory = System.getProperty("blockworld.regionStorage");
+        if (regionDirectory != null) {
+            // Released and, on exit, resident columns are saved to the directory and loaded on the next start.
+            try {
+                terrain.setRegionStorage(new RegionStorage(Paths.get(regionDirectory)));
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Region storage is not opened, the world is not saved", e);
+            }
+        }
+        if (Boolean.getBoolean("blockworld.voxelStorage")) {
+            // Released columns are kept in memory, so the visited places are not generated again.
+            terrain.setVoxelStorage(new SparseVoxelOctree());
+        }
+    }
+
     private void createIllumination() {
         FilterPostProcessor fpp = new FilterPostProcessor(assetManager);
 
@@ -0,0 +1,110 @@
+package me.vektory79;
+
+import me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer;
+import me.vektory79.jme3.cubeterrain.BlockStorageLayout;
+import me.vektory79.jme3.cubeterrain.SparseVoxelOctree;
+import me.vektory79.jme3.cubeterrain.TerrainChunksMesh;
+import me.vektory79.jme3.cubeterrain.WorldBuilder;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Builds the world without the rendering context and prints the report. Used to profile the world building on
+ * the machines without the display.
+ * <p>
+ * <p>Arguments: {@code sizeFactor roughness seed chunks [layout]}. Report is printed to the standard output as
+ * {@code key=value} lines: timings of the stages in nanoseconds, memory in bytes and CRC32 checksums of the
+ * resulting buffers, so the runs can be compared by the scripts. Greedy meshing and the sparse voxel storage are
+ * measured after the build and are not included to the total time.</p>
+ */
+public class HeadlessWorldBuild {
+
+    public static void main(final String[] args) {
+        if (args.length < 4 || args.length > 5) {
+            System.err.println("Usage: HeadlessWorldBuild <sizeFactor> <roughness> <seed> <chunks> [layout]");
+            System.exit(2);
+        }
+        int sizeFactor = Integer.parseInt(args[0]);
+        double roughness = Double.parseDouble(args[1]);
+        long seed = Long.parseLong(args[2]);
+        int chunks = Integer.parseInt(args[3]);
+        BlockStorageLayout layout = args.length > 4
+                ? BlockStorageLayout.valueOf(args[4].toUpperCase(Locale.ROOT))
+                : BlockStorageLayout.SEPARATE;
+
+        long start = System.nanoTime();
+        TerrainChunksMesh mesh = new TerrainChunksMesh(chunks, layout);
+        mesh.setCullingPool(ForkJoinPool.commonPool());
+        long allocationNanos = System.nanoTime() - start;
+
+        WorldBuilder builder = new WorldBuilder(mesh);
+        builder.build(sizeFactor, roughness, seed);
+        long totalNanos = System.nanoTime() - start;
+        builder.buildGreedyMeshes();
+        SparseVoxelOctree voxelStorage = builder.buildVoxelStorage();
+
+        print("sizeFactor", sizeFactor);
+        print("roughness", roughness);
+        print("seed", seed);
+        print("chunks", chunks);
+        print("layout", layout);
+        print("threads", mesh.getCullingPool().getParallelism());
+
+        print("time.allocation", allocationNanos);
+        print("time.map", builder.getMapNanos());
+        print("time.fill", builder.getFillNanos());
+        print("time.culling", builder.getCullingNanos());
+        print("time.upload", builder.getUploadNanos());
+        print("time.total", totalNanos);
+        print("time.greedy", builder.getGreedyNanos());
+        print("time.voxelStorage", builder.getVoxelStorageNanos());
+
+        print("chunks.stored", builder.getStoredChunks());
+        print("chunks.rejected", builder.getRejectedChunks());
+        print("chunks.reserved", mesh.getChunks() - mesh.getChunkDescriptors().getFreeChunks());
+        print("chunks.uniform", mesh.getChunkDescriptors().getUniformChunks());
+        print("blocks.visible", mesh.getVisibleBlocks().getVisibleBlocks());
+        print("faces.visible", mesh.getVisibleBlocks().getVisibleFaces());
+        print("greedy.quads", builder.getGreedyQuads());
+        print("greedy.triangles", builder.getGreedyQuads() * 2);
+        print("greedy.faces", builder.getGreedyFaces());
+        print("voxelStorage.chunks", voxelStorage.getChunks());
+        print("voxelStorage.nodes", voxelStorage.getNodes());
+
+        Runtime runtime = Runtime.getRuntime();
+        print("memory.heap", runtime.totalMemory() - runtime.freeMemory());
+        print("memory.direct", getDirectMemory());
+        // Block types of the reserved chunks in the dense layout against all chunks, kept in the octree.
+        print("memory.denseTypes", (long) (mesh.getChunks() - mesh.getChunkDescriptors().getFreeChunks())
+                * AbstractTerrainBlockBuffer.CHUNK_SIZE * mesh.getBlockType().getBytesPerBlock());
+        print("memory.voxelStorage", voxelStorage.getMemoryUsage());
+
+        print("checksum.blockTypes", hex(builder.getBlockTypesChecksum()));
+        print("checksum.blockOptions", hex(builder.getBlockOptionsChecksum()));
+        print("checksum.visibleBlocks", hex(builder.getVisibleBlocksChecksum()));
+        print("checksum.chunkDescriptors", hex(builder.getChunkDescriptorsChecksum()));
+    }
+
+    private static long getDirectMemory() {
+        long used = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                used += pool.getMemoryUsed();
+            }
+        }
+        return used;
+    }
+
+    @NotNull
+    private static String hex(final long checksum) {
+        return String.format("%08x", checksum);
+    }
+
+    private static void print(@NotNull final String key, @NotNull final Object value) {
+        System.out.println(key + "=" + value);
+    }
+}
@@ -3,15 +3,16 @@ package me.vektory79.jme3.cubeterrain;
 import com.jme3.scene.VertexBuffer;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
-import org.lwjgl.BufferUtils;
+import org.jetbrains.annotations.Nullable;
 
-import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 
 public class AbstractTerrainBlockBuffer extends VertexBuffer {
     public static final int CHUNK_DIMENSION_FACTOR = 4;
     public static final int CHUNK_DIMENSION = 1 << CHUNK_DIMENSION_FACTOR; // 16
     protected static final int BLOCK_DIMENSION_MASK = ~(~(0) << CHUNK_DIMENSION_FACTOR); // 15
     public static final int CHUNK_SIZE = CHUNK_DIMENSION * CHUNK_DIMENSION * CHUNK_DIMENSION;
+    public static final int CHUNK_SIZE_FACTOR = CHUNK_DIMENSION_FACTOR * 3; // 12
 
     private static final int CHUNK_X_STEP = 1;
     private static final int CHUNK_Y_STEP = CHUNK_DIMENSION;
@@ -19,18 +20,70 @@ public class AbstractTerrainBlockBuffer extends VertexBuffer {
 
     private final TerrainChunksMesh terrainChunksMesh;
 
-    private final ByteBuffer internalData;
+    @NotNull
+    private final BlockValueStorage storage;
+    // Buffer, which is really uploaded to GPU. It is not this buffer, when the storage is shared.
+    @NotNull
+    private final AbstractTerrainBlockBuffer uploadBuffer;
+
+    // Modifications, collected since the last commit.
+    @NotNull
+    private final DirtyRanges dirtyRanges;
+    // Committed modifications, which are not uploaded yet.
+    @NotNull
+    private final DirtyRanges uploadRanges;
 
     public AbstractTerrainBlockBuffer(@NotNull final TerrainChunksMesh terrainChunksMesh, @NotNull final Type type) {
+        this(terrainChunksMesh, type, false);
+    }
+
+    /**
+     * @param terrainChunksMesh mesh, owning the buffer.
+     * @param type              type of the vertex buffer.
+     * @param compact           store values with 8 bit per block instead of 32 bit. Values must fit to 0..255 range.
+     */
+    public AbstractTerrainBlockBuffer(
+            @NotNull final TerrainChunksMesh terrainChunksMesh,
+            @NotNull final Type type,
+            final boolean compact) {
+        this(terrainChunksMesh, type, compact
+                ? BlockValueStorage.bytes(terrainChunksMesh.getChunks() * CHUNK_SIZE)
+                : BlockValueStorage.ints(terrainChunksMesh.getChunks() * CHUNK_SIZE), null);
+    }
+
+    /**
+     * @param terrainChunksMesh mesh, owning the buffer.
+     * @param type              type of the vertex buffer.
+     * @param storage           storage of the block values.
+     * @param uploadBuffer      buffer, sharing the storage, which is registered in the mesh. All modifications are
+     *                          reported to it. Or {@code null} if this buffer is uploaded itself.
+     */
+    AbstractTerrainBlockBuffer(
+            @NotNull final TerrainChunksMesh terrainChunksMesh,
+            @NotNull final Type type,
+            @NotNull final BlockValueStorage storage,
+            @Nullable final AbstractTerrainBlockBuffer uploadBuffer) {
         super(type);
         this.terrainChunksMesh = terrainChunksMesh;
-        internalData = BufferUtils.createByteBuffer(this.terrainChunksMesh.getChunks() * CHUNK_SIZE * Integer.BYTES);
+        this.storage = storage;
+        this.uploadBuffer = uploadBuffer != null ? uploadBuffer : this;
+        dirtyRanges = new DirtyRanges(terrainChunksMesh.getChunks(), storage.getBytesPerBlock());
+        uploadRanges = new DirtyRanges(terrainChunksMesh.getChunks(), storage.getBytesPerBlock());
         initialize();
     }
 
+    /**
+     * Size of the single block value in bytes.
+     */
+    @Contract(pure = true)
+    public int getBytesPerBlock() {
+        return storage.getBytesPerBlock();
+    }
+
     public void setValue(final int blockAddress, final int value) {
-        internalData.asIntBuffer().put(blockAddress, value);
-        setUpdateNeeded();
+        storage.put(blockAddress, value);
+        uploadBuffer.dirtyRanges.add(blockAddress);
+        onValueChanged(blockAddress);
     }
 
     public void setValue(
@@ -41,15 +94,34 @@ public class AbstractTerrainBlockBuffer extends VertexBuffer {
         setValue(blockAddress, value);
     }
 
+    public void setValue(
+            final int chunkId,
+            final int x,
+            final int y,
+            final int z,
+            final int value) {
+        setValue(getBlockAddress(chunkId, x, y, z), value);
+    }
+
     public void setValue(
             @NotNull final Position position,
             final int value) {
-        int chunkID = getChunkID(position);
-        setValue(chunkID, position.mask(BLOCK_DIMENSION_MASK), value);
+        setValue(position.getX(), position.getY(), position.getZ(), value);
+    }
+
+    /**
+     * Set value of the block by world coordinates. Chunk is reserved, if it's absent.
+     */
+    public void setValue(
+            final int x,
+            final int y,
+            final int z,
+            final int value) {
+        setValue(getWorldBlockAddress(x, y, z), value);
     }
 
     public int getValue(final int blockAddress) {
-        return internalData.asIntBuffer().get(blockAddress);
+        return storage.get(blockAddress);
     }
 
     public int getValue(
@@ -59,40 +131,318 @@ public class AbstractTerrainBlockBuffer extends VertexBuffer {
         return getValue(blockAddress);
     }
 
+    public int getValue(
+            final int chunkId,
+            final int x,
+            final int y,
+            final int z) {
+        return getValue(getBlockAddress(chunkId, x, y, z));
+    }
+
     public int getValue(@NotNull final Position position) {
-        int chunkID = getChunkID(position);
-        return getValue(chunkID, position.mask(BLOCK_DIMENSION_MASK));
+        return getValue(position.getX(), position.getY(), position.getZ());
+    }
+
+    /**
+     * Get value of the block by world coordinates. Chunk is reserved, if it's absent.
+     */
+    public int getValue(
+            final int x,
+            final int y,
+            final int z) {
+        return getValue(getWorldBlockAddress(x, y, z));
+    }
+
+    /**
+     * Copy all values of the chunk to the array.
+     *
+     * @param chunkId ID of the chunk.
+     * @param dst     destination array of at least {@link #CHUNK_SIZE} length.
+     */
+    public void readChunk(final int chunkId, @NotNull final int[] dst) {
+        read(chunkId * CHUNK_SIZE, dst, 0, CHUNK_SIZE);
+    }
+
+    /**
+     * Copy all values of the chunk to the buffer at it's current position.
+     *
+     * @param chunkId ID of the chunk.
+     * @param dst     destination buffer with at least {@link #CHUNK_SIZE} remaining values.
+     */
+    public void readChunk(final int chunkId, @NotNull final IntBuffer dst) {
+        storage.read(chunkId * CHUNK_SIZE, dst, CHUNK_SIZE);
+    }
+
+    /**
+     * Replace all values of the chunk by values from the array.
+     *
+     * @param chunkId ID of the chunk.
+     * @param src     source array of at least {@link #CHUNK_SIZE} length.
+     */
+    public void writeChunk(final int chunkId, @NotNull final int[] src) {
+        write(chunkId * CHUNK_SIZE, src, 0, CHUNK_SIZE);
+    }
+
+    /**
+     * Replace all values of the chunk by values from the buffer at it's current position.
+     *
+     * @param chunkId ID of the chunk.
+     * @param src     source buffer with at least {@link #CHUNK_SIZE} remaining values.
+     */
+    public void writeChunk(final int chunkId, @NotNull final IntBuffer src) {
+        int address = chunkId * CHUNK_SIZE;
+        storage.write(address, src, CHUNK_SIZE);
+        changed(address, address + CHUNK_SIZE);
+    }
+
+    /**
+     * Copy the column of the chunk (all blocks along Y axis) to the array.
+     *
+     * @param chunkId ID of the chunk.
+     * @param x       X coordinate of the column inside the chunk.
+     * @param z       Z coordinate of the column inside the chunk.
+     * @param dst     destination array of at least {@link #CHUNK_DIMENSION} length.
+     */
+    public void readColumn(final int chunkId, final int x, final int z, @NotNull final int[] dst) {
+        int address = getBlockAddress(chunkId, x, 0, z);
+        for (int y = 0; y < CHUNK_DIMENSION; y++) {
+            dst[y] = storage.get(address + y * CHUNK_Y_STEP);
+        }
+    }
+
+    /**
+     * Replace the column of the chunk (all blocks along Y axis) by values from the array.
+     *
+     * @param chunkId ID of the chunk.
+     * @param x       X coordinate of the column inside the chunk.
+     * @param z       Z coordinate of the column inside the chunk.
+     * @param src     source array of at least {@link #CHUNK_DIMENSION} length.
+     */
+    public void writeColumn(final int chunkId, final int x, final int z, @NotNull final int[] src) {
+        int address = getBlockAddress(chunkId, x, 0, z);
+        for (int y = 0; y < CHUNK_DIMENSION; y++) {
+            storage.put(address + y * CHUNK_Y_STEP, src[y]);
+        }
+        changed(address, address + (CHUNK_DIMENSION - 1) * CHUNK_Y_STEP + 1);
+    }
+
+    /**
+     * Copy the slab of the chunk (all blocks with the same Z coordinate) to the array. The slab is contiguous in
+     * the buffer, so this is a single bulk copy.
+     *
+     * @param chunkId ID of the chunk.
+     * @param z       Z coordinate of the slab inside the chunk.
+     * @param dst     destination array of at least {@link #CHUNK_DIMENSION}<sup>2</sup> length.
+     */
+    public void readSlab(final int chunkId, final int z, @NotNull final int[] dst) {
+        read(getBlockAddress(chunkId, 0, 0, z), dst, 0, CHUNK_Z_STEP);
+    }
+
+    /**
+     * Replace the slab of the chunk (all blocks with the same Z coordinate) by values from the array.
+     *
+     * @param chunkId ID of the chunk.
+     * @param z       Z coordinate of the slab inside the chunk.
+     * @param src     source array of at least {@link #CHUNK_DIMENSION}<sup>2</sup> length.
+     */
+    public void writeSlab(final int chunkId, final int z, @NotNull final int[] src) {
+        write(getBlockAddress(chunkId, 0, 0, z), src, 0, CHUNK_Z_STEP);
+    }
+
+    /**
+     * Copy the range of values to the array.
+     *
+     * @param fromAddress address of the first block.
+     * @param dst         destination array.
+     * @param offset      offset in the destination array.
+     * @param length      amount of values.
+     */
+    public void read(final int fromAddress, @NotNull final int[] dst, final int offset, final int length) {
+        storage.read(fromAddress, dst, offset, length);
+    }
+
+    /**
+     * Replace the range of values by values from the array.
+     *
+     * @param fromAddress address of the first block.
+     * @param src         source array.
+     * @param offset      offset in the source array.
+     * @param length      amount of values.
+     */
+    public void write(final int fromAddress, @NotNull final int[] src, final int offset, final int length) {
+        storage.write(fromAddress, src, offset, length);
+        changed(fromAddress, fromAddress + length);
+    }
+
+    /**
+     * Set the same value to the range of blocks.
+     *
+     * @param fromAddress address of the first block.
+     * @param toAddress   address of the block after the last one.
+     * @param value       value to be set.
+     */
+    public void fillRange(final int fromAddress, final int toAddress, final int value) {
+        storage.fill(fromAddress, toAddress, value);
+        changed(fromAddress, toAddress);
+    }
+
+    /**
+     * Copy all values of one chunk to another.
+     *
+     * @param srcChunkId ID of the source chunk.
+     * @param dstChunkId ID of the destination chunk.
+     */
+    public void copyChunk(final int srcChunkId, final int dstChunkId) {
+        int dstAddress = dstChunkId * CHUNK_SIZE;
+        storage.copy(srcChunkId * CHUNK_SIZE, dstAddress, CHUNK_SIZE);
+        changed(dstAddress, dstAddress + CHUNK_SIZE);
+    }
+
+    /**
+     * Ranges of the buffer, modified since the last {@link #commitUpdates()}.
+     */
+    @NotNull
+    @Contract(pure = true)
+    public DirtyRanges getDirtyRanges() {
+        return dirtyRanges;
+    }
+
+    /**
+     * Ranges of the buffer, published by {@link #commitUpdates()} and not uploaded yet. Only these ranges differ from
+     * the data on GPU, so {@link #uploadUpdates(BufferRangeUploader)} sends only them.
+     */
+    @NotNull
+    @Contract(pure = true)
+    public DirtyRanges getUploadRanges() {
+        return uploadRanges;
+    }
+
+    /**
+     * Publish modifications, collected since the previous call, for upload. Should be called once per frame,
+     * before rendering. Ranges of several commits are merged, until they are uploaded.
+     *
+     * @return {@code true} if buffer has modifications to be uploaded.
+     */
+    public boolean commitUpdates() {
+        if (dirtyRanges.isEmpty()) {
+            return false;
+        }
+        uploadRanges.add(dirtyRanges);
+        dirtyRanges.clear();
+        return true;
+    }
+
+    /**
+     * Send the published ranges to GPU by {@code glBufferSubData}. The whole buffer is uploaded by jME only once,
+     * when it's allocated on GPU, or each time, when the range uploads are not supported. Must be called from
+     * the rendering thread, before the mesh is drawn.
+     *
+     * @param uploader uploader of the ranges.
+     * @return amount of bytes, sent to GPU.
+     */
+    long uploadUpdates(@NotNull final BufferRangeUploader uploader) {
+        if (uploadRanges.isEmpty()) {
+            return 0;
+        }
+        long bytes = uploader.upload(this, storage.internalData, uploadRanges.getByteRanges());
+        uploadRanges.clear();
+        return bytes;
     }
 
     protected TerrainChunksMesh getTerrainChunksMesh() {
         return terrainChunksMesh;
     }
 
+    /**
+     * Called after each value change.
+     *
+     * @param blockAddress address of the changed block.
+     */
+    protected void onValueChanged(final int blockAddress) {
+    }
+
+    /**
+     * Called after bulk change of the range of blocks.
+     *
+     * @param fromAddress address of the first changed block.
+     * @param toAddress   address of the block after the last changed one.
+     */
+    protected void onRangeChanged(final int fromAddress, final int toAddress) {
+    }
+
+    private void changed(final int fromAddress, final int toAddress) {
+        if (fromAddress >= toAddress) {
+            return;
+        }
+        uploadBuffer.dirtyRanges.add(fromAddress, toAddress);
+        onRangeChanged(fromAddress, toAddress);
+    }
+
     @Contract(pure = true)
     public static int getBlockAddress(final int chunkId, @NotNull final Position position) {
+        return getBlockAddress(chunkId, position.getX(), position.getY(), position.getZ());
+    }
+
+    @Contract(pure = true)
+    public static int getBlockAddress(final int chunkId, final int x, final int y, final int z) {
         int chunkStart = chunkId * CHUNK_SIZE;
-        int blockX = position.getX() * CHUNK_X_STEP;
-        int blockY = position.getY() * CHUNK_Y_STEP;
-        int blockZ = position.getZ() * CHUNK_Z_STEP;
+        int blockX = x * CHUNK_X_STEP;
+        int blockY = y * CHUNK_Y_STEP;
+        int blockZ = z * CHUNK_Z_STEP;
         return chunkStart + blockX + blockY + blockZ;
     }
 
+    @Contract(pure = true)
+    public static int getChunkId(final int blockAddress) {
+        return blockAddress >> CHUNK_SIZE_FACTOR;
+    }
+
+    @Contract(pure = true)
+    public static int getBlockX(final int blockAddress) {
+        return blockAddress & BLOCK_DIMENSION_MASK;
+    }
+
+    @Contract(pure = true)
+    public static int getBlockY(final int blockAddress) {
+        return (blockAddress >> CHUNK_DIMENSION_FACTOR) & BLOCK_DIMENSION_MASK;
+    }
+
+    @Contract(pure = true)
+    public static int getBlockZ(final int blockAddress) {
+        return (blockAddress >> (CHUNK_DIMENSION_FACTOR * 2)) & BLOCK_DIMENSION_MASK;
+    }
+
+    /**
+     * Get address of the block by world coordinates. Chunk is reserved, if it's absent.
+     */
+    public int getWorldBlockAddress(final int x, final int y, final int z) {
+        return getBlockAddress(
+                getChunkID(x, y, z),
+                x & BLOCK_DIMENSION_MASK,
+                y & BLOCK_DIMENSION_MASK,
+                z & BLOCK_DIMENSION_MASK);
+    }
+
     public int getChunkID(@NotNull final Position position) {
-        Position chunkPosition = position.rightShift(CHUNK_DIMENSION_FACTOR);
-        return terrainChunksMesh.getChunkDescriptors().use(chunkPosition.getX(), chunkPosition.getY(), chunkPosition.getZ());
+        return getChunkID(position.getX(), position.getY(), position.getZ());
+    }
+
+    public int getChunkID(final int x, final int y, final int z) {
+        return terrainChunksMesh.useChunk(
+                x >> CHUNK_DIMENSION_FACTOR,
+                y >> CHUNK_DIMENSION_FACTOR,
+                z >> CHUNK_DIMENSION_FACTOR);
     }
 
     public void clear(final int chunkId) {
-        int address = getBlockAddress(chunkId, Position.get(0, 0, 0));
-        for (int i = address; i < address + CHUNK_SIZE; i++) {
-            setValue(i, 0);
-        }
+        int address = chunkId * CHUNK_SIZE;
+        fillRange(address, address + CHUNK_SIZE, 0);
     }
 
     private void initialize() {
-        data = internalData.asFloatBuffer();
+        data = storage.getVertexData();
         usage = Usage.Dynamic;
-        format = Format.Float;
+        format = storage.getFormat();
         components = 1;
         componentsLength = components * format.getComponentSize();
         lastLimit = data.limit();
@@ -0,0 +1,316 @@
+package me.vektory79.jme3.cubeterrain;
+
+import me.vektory79.jme3.cubeterrain.BlockTypeDescriptorsBuffer.Type;
+import me.vektory79.jme3.cubeterrain.TerrainBlockOptionsBuffer.Face;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_DIMENSION;
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_DIMENSION_FACTOR;
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_SIZE;
+
+/**
+ * Word parallel calculator of the block faces visibility.
+ * <p>
+ * <p>The chunk is represented as the set of rows along X axis. Each row (y, z) is packed to 16 bit words: one with
+ * bits of AIR blocks and one with bits of transparent blocks. The neighbour of each block by some axis is the same
+ * row shifted by one bit (X axis) or the adjacent row (Y and Z axes). So visibility of one face for whole row is
+ * calculated by few bitwise operations:</p>
+ * <pre>
+ *     visible = ~air &amp; (neighbourAir | (neighbourTransparent ^ transparent))
+ * </pre>
+ * <p>Blocks behind the chunk borders are taken from the border planes of the neighbour chunks. The uniform neighbour
+ * is treated as filled by it's type. The absent neighbour is treated as AIR.</p>
+ * <p>
+ * <p>Instance holds only the working arrays and no reference to the mesh, so one instance per thread can serve all
+ * meshes. It must not be shared between threads.</p>
+ */
+final class BitmaskChunkCuller {
+    private static final int ROW_MASK = (1 << CHUNK_DIMENSION) - 1;
+    private static final int ROWS = CHUNK_DIMENSION * CHUNK_DIMENSION;
+    private static final int LAST = CHUNK_DIMENSION - 1;
+    private static final int Y_STEP = CHUNK_DIMENSION;
+    private static final int Z_STEP = CHUNK_DIMENSION * CHUNK_DIMENSION;
+
+    private static final Face[] FACES = Face.values();
+    private static final boolean[] AIR_TYPES;
+    private static final boolean[] TRANSPARENT_TYPES;
+
+    static {
+        Type[] types = Type.values();
+        AIR_TYPES = new boolean[types.length];
+        TRANSPARENT_TYPES = new boolean[types.length];
+        for (Type type : types) {
+            AIR_TYPES[type.ordinal()] = type == Type.AIR;
+            TRANSPARENT_TYPES[type.ordinal()] = type.isTransparent();
+        }
+    }
+
+    private final int[] types = new int[CHUNK_SIZE];
+    private final int[] options = new int[CHUNK_SIZE];
+    // Row words of the chunk. Row index is (y + z * 16), bit index is x.
+    private final int[] air = new int[ROWS];
+    private final int[] transparent = new int[ROWS];
+    // Border planes of the neighbours. 16 words per face, indexed by face ordinal.
+    // Word and bit indexes are: (z, y) for left and right; (z, x) for top and bottom; (y, x) for front and back.
+    private final int[] planeAir = new int[FACES.length * CHUNK_DIMENSION];
+    private final int[] planeTransparent = new int[FACES.length * CHUNK_DIMENSION];
+    private final int[] neighbourIDs = new int[FACES.length];
+    private final int[] rowBackup = new int[CHUNK_DIMENSION];
+    private boolean changed;
+
+    /**
+     * Recalculate visibility bits of all blocks of the chunk. Other option bits are preserved.
+     *
+     * @param mesh    mesh of the chunk.
+     * @param chunkID ID of the chunk.
+     */
+    void cull(@NotNull final TerrainChunksMesh mesh, final int chunkID) {
+        ChunkDescriptorsBuffer chunkDescriptors = mesh.getChunkDescriptors();
+        VisibleBlocksIndex visibleBlocks = mesh.getVisibleBlocks();
+        if (!chunkDescriptors.isUsed(chunkID)) {
+            // Free chunk must not be drawn and must not keep stale visibility for the next reservation.
+            if (visibleBlocks.getVisibleBlocks(chunkID) != 0) {
+                visibleBlocks.clear(chunkID);
+                mesh.getBlockOptions().clear(chunkID);
+            }
+            return;
+        }
+        TerrainBlockTypesBuffer blockType = mesh.getBlockType();
+        blockType.readChunk(chunkID, types);
+        buildRows();
+        chunkDescriptors.getNeighbourIDs(chunkID, neighbourIDs);
+        for (Face face : FACES) {
+            int neighbourID = neighbourIDs[face.ordinal()];
+            if (neighbourID != Integer.MIN_VALUE) {
+                readPlane(blockType, neighbourID, face);
+            } else {
+                fillPlane(chunkDescriptors.getUniformNeighbourType(chunkID, face), face);
+            }
+        }
+
+        TerrainBlockOptionsBuffer blockOptions = mesh.getBlockOptions();
+        blockOptions.readChunk(chunkID, options);
+        changed = false;
+        for (int z = 0; z < CHUNK_DIMENSION; z++) {
+            for (int y = 0; y < CHUNK_DIMENSION; y++) {
+                cullRow(y, z);
+            }
+        }
+        // Don't mark unchanged chunk for upload.
+        if (changed) {
+            blockOptions.writeChunk(chunkID, options);
+            visibleBlocks.update(chunkID, options);
+        }
+    }
+
+    private void buildRows() {
+        for (int row = 0; row < ROWS; row++) {
+            int rowAir = 0;
+            int rowTransparent = 0;
+            int address = row << CHUNK_DIMENSION_FACTOR;
+            for (int x = 0; x < CHUNK_DIMENSION; x++) {
+                int type = types[address + x];
+                if (AIR_TYPES[type]) {
+                    rowAir |= 1 << x;
+                }
+                if (TRANSPARENT_TYPES[type]) {
+                    rowTransparent |= 1 << x;
+                }
+            }
+            air[row] = rowAir;
+            transparent[row] = rowTransparent;
+        }
+    }
+
+    /**
+     * Check if the border plane of the reserved neighbour, which touches the chunk, has only opaque blocks. So it
+     * hides the whole face of the chunk.
+     *
+     * @param blockType   block types of the mesh.
+     * @param neighbourID ID of the neighbour chunk.
+     * @param face        face of the chunk, looking to the neighbour.
+     */
+    boolean isPlaneOpaque(
+            @NotNull final TerrainBlockTypesBuffer blockType,
+            final int neighbourID,
+            @NotNull final Face face) {
+        readPlane(blockType, neighbourID, face);
+        int planeStart = face.ordinal() * CHUNK_DIMENSION;
+        for (int i = planeStart; i < planeStart + CHUNK_DIMENSION; i++) {
+            if ((planeAir[i] | planeTransparent[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fill the plane by single block type.
+     *
+     * @param type  ordinal of the block type or {@link Integer#MIN_VALUE} for the absent neighbour.
+     * @param face  face of the chunk, looking to the neighbour.
+     */
+    private void fillPlane(final int type, @NotNull final Face face) {
+        int planeStart = face.ordinal() * CHUNK_DIMENSION;
+        int wordAir = type == Integer.MIN_VALUE || AIR_TYPES[type] ? ROW_MASK : 0;
+        int wordTransparent = type == Integer.MIN_VALUE || TRANSPARENT_TYPES[type] ? ROW_MASK : 0;
+        for (int i = planeStart; i < planeStart + CHUNK_DIMENSION; i++) {
+            planeAir[i] = wordAir;
+            planeTransparent[i] = wordTransparent;
+        }
+    }
+
+    private void readPlane(
+            @NotNull final TerrainBlockTypesBuffer blockType,
+            final int neighbourID,
+            @NotNull final Face face) {
+        int planeStart = face.ordinal() * CHUNK_DIMENSION;
+        // Plane of the neighbour, which touches this chunk, is the opposite border of the neighbour.
+        int origin = (neighbourID << AbstractTerrainBlockBuffer.CHUNK_SIZE_FACTOR)
+                + (face.getDx() < 0 ? LAST : 0)
+                + (face.getDy() < 0 ? LAST * Y_STEP : 0)
+                + (face.getDz() < 0 ? LAST * Z_STEP : 0);
+        int wordStep;
+        int bitStep;
+        if (face.getDx() != 0) {
+            wordStep = Z_STEP;
+            bitStep = Y_STEP;
+        } else if (face.getDy() != 0) {
+            wordStep = Z_STEP;
+            bitStep = 1;
+        } else {
+            wordStep = Y_STEP;
+            bitStep = 1;
+        }
+        for (int word = 0; word < CHUNK_DIMENSION; word++) {
+            int wordAir = 0;
+            int wordTransparent = 0;
+            int address = origin + word * wordStep;
+            for (int bit = 0; bit < CHUNK_DIMENSION; bit++) {
+                int type = blockType.getValue(address + bit * bitStep);
+                if (AIR_TYPES[type]) {
+                    wordAir |= 1 << bit;
+                }
+                if (TRANSPARENT_TYPES[type]) {
+                    wordTransparent |= 1 << bit;
+                }
+            }
+            planeAir[planeStart + word] = wordAir;
+            planeTransparent[planeStart + word] = wordTransparent;
+        }
+    }
+
+    private void cullRow(final int y, final int z) {
+        int row = y + (z << CHUNK_DIMENSION_FACTOR);
+        int rowAir = air[row];
+        int rowTransparent = transparent[row];
+        int solid = ~rowAir & ROW_MASK;
+        if (solid == 0 && !hasVisibility(row)) {
+            return;
+        }
+
+        int left = Face.LEFT.ordinal() * CHUNK_DIMENSION + z;
+        int right = Face.RIGHT.ordinal() * CHUNK_DIMENSION + z;
+        int leftAir = (rowAir << 1) | ((planeAir[left] >>> y) & 1);
+        int leftTransparent = (rowTransparent << 1) | ((planeTransparent[left] >>> y) & 1);
+        int rightAir = (rowAir >>> 1) | (((planeAir[right] >>> y) & 1) << LAST);
+        int rightTransparent = (rowTransparent >>> 1) | (((planeTransparent[right] >>> y) & 1) << LAST);
+
+        int topAir;
+        int topTransparent;
+        if (y < LAST) {
+            topAir = air[row + 1];
+            topTransparent = transparent[row + 1];
+        } else {
+            topAir = planeAir[Face.TOP.ordinal() * CHUNK_DIMENSION + z];
+            topTransparent = planeTransparent[Face.TOP.ordinal() * CHUNK_DIMENSION + z];
+        }
+        int bottomAir;
+        int bottomTransparent;
+        if (y > 0) {
+            bottomAir = air[row - 1];
+            bottomTransparent = transparent[row - 1];
+        } else {
+            bottomAir = planeAir[Face.BOTTOM.ordinal() * CHUNK_DIMENSION + z];
+            bottomTransparent = planeTransparent[Face.BOTTOM.ordinal() * CHUNK_DIMENSION + z];
+        }
+        int frontAir;
+        int frontTransparent;
+        if (z < LAST) {
+            frontAir = air[row + CHUNK_DIMENSION];
+            frontTransparent = transparent[row + CHUNK_DIMENSION];
+        } else {
+            frontAir = planeAir[Face.FRONT.ordinal() * CHUNK_DIMENSION + y];
+            frontTransparent = planeTransparent[Face.FRONT.ordinal() * CHUNK_DIMENSION + y];
+        }
+        int backAir;
+        int backTransparent;
+        if (z > 0) {
+            backAir = air[row - CHUNK_DIMENSION];
+            backTransparent = transparent[row - CHUNK_DIMENSION];
+        } else {
+            backAir = planeAir[Face.BACK.ordinal() * CHUNK_DIMENSION + y];
+            backTransparent = planeTransparent[Face.BACK.ordinal() * CHUNK_DIMENSION + y];
+        }
+
+        int visibleLeft = visible(solid, rowTransparent, leftAir, leftTransparent);
+        int visibleRight = visible(solid, rowTransparent, rightAir, rightTransparent);
+        int visibleTop = visible(solid, rowTransparent, topAir, topTransparent);
+        int visibleBottom = visible(solid, rowTransparent, bottomAir, bottomTransparent);
+        int visibleFront = visible(solid, rowTransparent, frontAir, frontTransparent);
+        int visibleBack = visible(solid, rowTransparent, backAir, backTransparent);
+
+        int address = row << CHUNK_DIMENSION_FACTOR;
+        System.arraycopy(options, address, rowBackup, 0, CHUNK_DIMENSION);
+        for (int x = address; x < address + CHUNK_DIMENSION; x++) {
+            options[x] &= ~TerrainBlockOptionsBuffer.VISIBILITY_FIELD_MASK;
+        }
+        // Visible faces are rare, so it's cheaper to scatter only set bits.
+        scatter(address, visibleLeft, Face.LEFT);
+        scatter(address, visibleRight, Face.RIGHT);
+        scatter(address, visibleTop, Face.TOP);
+        scatter(address, visibleBottom, Face.BOTTOM);
+        scatter(address, visibleFront, Face.FRONT);
+        scatter(address, visibleBack, Face.BACK);
+        if (!changed) {
+            for (int x = 0; x < CHUNK_DIMENSION; x++) {
+                if (rowBackup[x] != options[address + x]) {
+                    changed = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    private void scatter(final int address, final int visible, @NotNull final Face face) {
+        int bits = visible;
+        int faceBit = face.getVisibilityBit();
+        while (bits != 0) {
+            options[address + Integer.numberOfTrailingZeros(bits)] |= faceBit;
+            bits &= bits - 1;
+        }
+    }
+
+    /**
+     * Check if any block of the row has some visibility bits to be cleared.
+     */
+    private boolean hasVisibility(final int row) {
+        int address = row << CHUNK_DIMENSION_FACTOR;
+        for (int x = 0; x < CHUNK_DIMENSION; x++) {
+            if ((options[address + x] & TerrainBlockOptionsBuffer.VISIBILITY_FIELD_MASK) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Contract(pure = true)
+    private static int visible(
+            final int solid,
+            final int transparent,
+            final int neighbourAir,
+            final int neighbourTransparent) {
+        return solid & (neighbourAir | ((neighbourTransparent ^ transparent) & ROW_MASK));
+    }
+}
@@ -0,0 +1,36 @@
+package me.vektory79.jme3.cubeterrain;
+
+/**
+ * Layout of the block buffers of {@link TerrainChunksMesh}.
+ */
+public enum BlockStorageLayout {
+    /**
+     * Block types and block options are stored in separate buffers with 32 bit per block.
+     */
+    SEPARATE,
+    /**
+     * Block types are stored with 8 bit per block, block options are stored with 32 bit per block. Block type
+     * buffer takes 4 times less memory and upload bandwidth. Enables {@code COMPACT_BLOCK_TYPES} define in shader.
+     */
+    COMPACT_TYPES,
+    /**
+     * Block type and block options are packed to the single 32 bit word per block: options in the lower bits, type
+     * in the higher bits (see {@link TerrainBlockOptionsBuffer}). Only one vertex buffer is uploaded, so memory and
+     * vertex fetch are halved. Enables {@code PACKED_BLOCKS} define in shader.
+     */
+    PACKED;
+
+    /**
+     * Check if block types are stored in the compact form.
+     */
+    public boolean isCompactTypes() {
+        return this == COMPACT_TYPES;
+    }
+
+    /**
+     * Check if block types and options are packed to the single buffer.
+     */
+    public boolean isPacked() {
+        return this == PACKED;
+    }
+}
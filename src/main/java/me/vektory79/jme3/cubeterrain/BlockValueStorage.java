@@ -0,0 +1,365 @@
+package me.vektory79.jme3.cubeterrain;
+
+import com.jme3.scene.VertexBuffer.Format;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.lwjgl.BufferUtils;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Backing storage of the block values of {@link AbstractTerrainBlockBuffer}.
+ * <p>
+ * <p>Values are always exposed as {@code int}, but can be stored with different width. Only absolute access is used
+ * for the shared buffers, because they can be accessed from the parallel culling threads.</p>
+ */
+abstract class BlockValueStorage {
+    @NotNull
+    protected final ByteBuffer internalData;
+
+    private BlockValueStorage(@NotNull final ByteBuffer internalData) {
+        this.internalData = internalData;
+    }
+
+    /**
+     * Storage with 32 bit per block. Values are passed to shader as raw bits of {@link Format#Float}.
+     *
+     * @param blocks amount of blocks.
+     */
+    @NotNull
+    static BlockValueStorage ints(final int blocks) {
+        return new IntStorage(blocks);
+    }
+
+    /**
+     * Storage with 8 bit per block. Values are passed to shader as {@link Format#UnsignedByte}.
+     *
+     * @param blocks amount of blocks.
+     */
+    @NotNull
+    static BlockValueStorage bytes(final int blocks) {
+        return new ByteStorage(blocks);
+    }
+
+    /**
+     * Bit field of the 32 bit storage. Several fields can share the same storage, so one vertex attribute holds
+     * several values of the block.
+     *
+     * @param storage storage, created by {@link #ints(int)}.
+     * @param shift   position of the lowest bit of the field.
+     * @param mask    mask of the field value bits (not shifted).
+     */
+    @NotNull
+    static BlockValueStorage field(@NotNull final BlockValueStorage storage, final int shift, final int mask) {
+        if (!(storage instanceof IntStorage)) {
+            throw new IllegalArgumentException("Bit fields are supported only for 32 bit storage");
+        }
+        return new FieldStorage((IntStorage) storage, shift, mask);
+    }
+
+    /**
+     * Size of the single block value in bytes.
+     */
+    @Contract(pure = true)
+    abstract int getBytesPerBlock();
+
+    /**
+     * Format of the vertex attribute.
+     */
+    @NotNull
+    @Contract(pure = true)
+    abstract Format getFormat();
+
+    /**
+     * Data to be passed to the vertex buffer.
+     */
+    @NotNull
+    abstract Buffer getVertexData();
+
+    abstract int get(int blockAddress);
+
+    abstract void put(int blockAddress, int value);
+
+    abstract void read(int fromAddress, @NotNull int[] dst, int offset, int length);
+
+    abstract void write(int fromAddress, @NotNull int[] src, int offset, int length);
+
+    /**
+     * Copy values to the buffer at it's current position. Position of the buffer is moved.
+     */
+    abstract void read(int fromAddress, @NotNull IntBuffer dst, int length);
+
+    /**
+     * Copy values from the buffer at it's current position. Position of the buffer is moved.
+     */
+    abstract void write(int fromAddress, @NotNull IntBuffer src, int length);
+
+    abstract void fill(int fromAddress, int toAddress, int value);
+
+    abstract void copy(int srcAddress, int dstAddress, int length);
+
+    private static final class IntStorage extends BlockValueStorage {
+        // Cached view of the data. Relative bulk operations use own duplicate of this view.
+        @NotNull
+        private final IntBuffer intData;
+
+        IntStorage(final int blocks) {
+            super(BufferUtils.createByteBuffer(blocks * Integer.BYTES));
+            intData = internalData.asIntBuffer();
+        }
+
+        @Override
+        int getBytesPerBlock() {
+            return Integer.BYTES;
+        }
+
+        @NotNull
+        @Override
+        Format getFormat() {
+            return Format.Float;
+        }
+
+        @NotNull
+        @Override
+        Buffer getVertexData() {
+            return internalData.asFloatBuffer();
+        }
+
+        @Override
+        int get(final int blockAddress) {
+            return intData.get(blockAddress);
+        }
+
+        @Override
+        void put(final int blockAddress, final int value) {
+            intData.put(blockAddress, value);
+        }
+
+        @Override
+        void read(final int fromAddress, @NotNull final int[] dst, final int offset, final int length) {
+            view(fromAddress, length).get(dst, offset, length);
+        }
+
+        @Override
+        void write(final int fromAddress, @NotNull final int[] src, final int offset, final int length) {
+            view(fromAddress, length).put(src, offset, length);
+        }
+
+        @Override
+        void read(final int fromAddress, @NotNull final IntBuffer dst, final int length) {
+            dst.put(view(fromAddress, length));
+        }
+
+        @Override
+        void write(final int fromAddress, @NotNull final IntBuffer src, final int length) {
+            IntBuffer part = src.duplicate();
+            part.limit(part.position() + length);
+            view(fromAddress, length).put(part);
+            src.position(src.position() + length);
+        }
+
+        @Override
+        void fill(final int fromAddress, final int toAddress, final int value) {
+            for (int address = fromAddress; address < toAddress; address++) {
+                intData.put(address, value);
+            }
+        }
+
+        @Override
+        void copy(final int srcAddress, final int dstAddress, final int length) {
+            view(dstAddress, length).put(view(srcAddress, length));
+        }
+
+        @NotNull
+        private IntBuffer view(final int fromAddress, final int length) {
+            IntBuffer view = intData.duplicate();
+            view.limit(fromAddress + length);
+            view.position(fromAddress);
+            return view;
+        }
+    }
+
+    private static final class ByteStorage extends BlockValueStorage {
+        private static final int VALUE_MASK = 0xFF;
+
+        ByteStorage(final int blocks) {
+            super(BufferUtils.createByteBuffer(blocks * Byte.BYTES));
+        }
+
+        @Override
+        int getBytesPerBlock() {
+            return Byte.BYTES;
+        }
+
+        @NotNull
+        @Override
+        Format getFormat() {
+            return Format.UnsignedByte;
+        }
+
+        @NotNull
+        @Override
+        Buffer getVertexData() {
+            return internalData;
+        }
+
+        @Override
+        int get(final int blockAddress) {
+            return internalData.get(blockAddress) & VALUE_MASK;
+        }
+
+        @Override
+        void put(final int blockAddress, final int value) {
+            internalData.put(blockAddress, checkValue(value));
+        }
+
+        @Override
+        void read(final int fromAddress, @NotNull final int[] dst, final int offset, final int length) {
+            for (int i = 0; i < length; i++) {
+                dst[offset + i] = internalData.get(fromAddress + i) & VALUE_MASK;
+            }
+        }
+
+        @Override
+        void write(final int fromAddress, @NotNull final int[] src, final int offset, final int length) {
+            for (int i = 0; i < length; i++) {
+                internalData.put(fromAddress + i, checkValue(src[offset + i]));
+            }
+        }
+
+        @Override
+        void read(final int fromAddress, @NotNull final IntBuffer dst, final int length) {
+            for (int i = 0; i < length; i++) {
+                dst.put(internalData.get(fromAddress + i) & VALUE_MASK);
+            }
+        }
+
+        @Override
+        void write(final int fromAddress, @NotNull final IntBuffer src, final int length) {
+            for (int i = 0; i < length; i++) {
+                internalData.put(fromAddress + i, checkValue(src.get()));
+            }
+        }
+
+        @Override
+        void fill(final int fromAddress, final int toAddress, final int value) {
+            byte stored = checkValue(value);
+            for (int address = fromAddress; address < toAddress; address++) {
+                internalData.put(address, stored);
+            }
+        }
+
+        @Override
+        void copy(final int srcAddress, final int dstAddress, final int length) {
+            ByteBuffer src = internalData.duplicate();
+            src.limit(srcAddress + length);
+            src.position(srcAddress);
+            ByteBuffer dst = internalData.duplicate();
+            dst.position(dstAddress);
+            dst.put(src);
+        }
+
+        @Contract(pure = true)
+        private static byte checkValue(final int value) {
+            if ((value & ~VALUE_MASK) != 0) {
+                throw new IllegalArgumentException("Value doesn't fit to 8 bit block storage: " + value);
+            }
+            return (byte) value;
+        }
+    }
+
+    private static final class FieldStorage extends BlockValueStorage {
+        @NotNull
+        private final IntStorage storage;
+        private final int shift;
+        private final int mask;
+        private final int clearMask;
+
+        FieldStorage(@NotNull final IntStorage storage, final int shift, final int mask) {
+            super(storage.internalData);
+            this.storage = storage;
+            this.shift = shift;
+            this.mask = mask;
+            clearMask = ~(mask << shift);
+        }
+
+        @Override
+        int getBytesPerBlock() {
+            return storage.getBytesPerBlock();
+        }
+
+        @NotNull
+        @Override
+        Format getFormat() {
+            return storage.getFormat();
+        }
+
+        @NotNull
+        @Override
+        Buffer getVertexData() {
+            return storage.getVertexData();
+        }
+
+        @Override
+        int get(final int blockAddress) {
+            return (storage.get(blockAddress) >>> shift) & mask;
+        }
+
+        @Override
+        void put(final int blockAddress, final int value) {
+            storage.put(blockAddress, (storage.get(blockAddress) & clearMask) | (checkValue(value) << shift));
+        }
+
+        @Override
+        void read(final int fromAddress, @NotNull final int[] dst, final int offset, final int length) {
+            for (int i = 0; i < length; i++) {
+                dst[offset + i] = get(fromAddress + i);
+            }
+        }
+
+        @Override
+        void write(final int fromAddress, @NotNull final int[] src, final int offset, final int length) {
+            for (int i = 0; i < length; i++) {
+                put(fromAddress + i, src[offset + i]);
+            }
+        }
+
+        @Override
+        void read(final int fromAddress, @NotNull final IntBuffer dst, final int length) {
+            for (int i = 0; i < length; i++) {
+                dst.put(get(fromAddress + i));
+            }
+        }
+
+        @Override
+        void write(final int fromAddress, @NotNull final IntBuffer src, final int length) {
+            for (int i = 0; i < length; i++) {
+                put(fromAddress + i, src.get());
+            }
+        }
+
+        @Override
+        void fill(final int fromAddress, final int toAddress, final int value) {
+            for (int address = fromAddress; address < toAddress; address++) {
+                put(address, value);
+            }
+        }
+
+        @Override
+        void copy(final int srcAddress, final int dstAddress, final int length) {
+            for (int i = 0; i < length; i++) {
+                put(dstAddress + i, get(srcAddress + i));
+            }
+        }
+
+        @Contract(pure = true)
+        private int checkValue(final int value) {
+            if ((value & ~mask) != 0) {
+                throw new IllegalArgumentException("Value doesn't fit to the bit field: " + value);
+            }
+            return value;
+        }
+    }
+}
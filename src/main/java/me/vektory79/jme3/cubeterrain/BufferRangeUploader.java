@@ -0,0 +1,100 @@
+package me.vektory79.jme3.cubeterrain;
+
+import com.jme3.scene.VertexBuffer;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL31;
+
+import java.nio.ByteBuffer;
+import java.util.logging.Logger;
+
+/**
+ * Upload of the modified byte ranges of the vertex buffers, which are already allocated on GPU.
+ * <p>
+ * <p>jME uploads the whole buffer, when it's flagged by {@link VertexBuffer#setUpdateNeeded()}. For the block
+ * buffers of hundreds of megabytes single changed block would stall the frame, so only the modified ranges are sent by
+ * {@code glBufferSubData}. The buffer is bound to {@code GL_COPY_WRITE_BUFFER}, which jME never uses, so neither
+ * the bindings, cached by the renderer, nor the vertex array state are touched.</p>
+ * <p>
+ * <p>{@code GL_COPY_WRITE_BUFFER} needs OpenGL 3.1, so the range uploads are {@link #setEnabled(boolean) enabled} by
+ * the renderer capabilities. If the range upload fails anyway, then the full upload by jME is requested and
+ * the range uploads are disabled for good.</p>
+ * <p>
+ * <p>Must be called from the rendering thread.</p>
+ */
+final class BufferRangeUploader {
+    private static final Logger LOGGER = Logger.getLogger(BufferRangeUploader.class.getName());
+    // GL keeps one flag per error type, so there are never more pending errors.
+    private static final int MAX_PENDING_ERRORS = 8;
+
+    private boolean enabled = true;
+
+    @Contract(pure = true)
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enable or disable the range uploads. Disabled uploader requests the full upload by jME for each change.
+     */
+    void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Upload the byte ranges of the buffer data. If the range uploads are disabled, the buffer is not allocated on
+     * GPU yet or the full upload is already pending, then the full upload by jME is requested instead.
+     *
+     * @param buffer     uploaded buffer.
+     * @param data       whole data of the buffer.
+     * @param byteRanges pairs of the first byte offset and the offset after the last byte of each range.
+     * @return amount of bytes, which are sent to GPU.
+     */
+    long upload(
+            @NotNull final VertexBuffer buffer,
+            @NotNull final ByteBuffer data,
+            @NotNull final int[] byteRanges) {
+        if (byteRanges.length == 0) {
+            return 0;
+        }
+        int id = buffer.getId();
+        if (!enabled || id == -1 || buffer.isUpdateNeeded()) {
+            buffer.setUpdateNeeded();
+            return data.capacity();
+        }
+        clearErrors();
+        ByteBuffer source = data.duplicate();
+        long bytes = 0;
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, id);
+        for (int i = 0; i < byteRanges.length; i += 2) {
+            source.clear();
+            source.position(byteRanges[i]);
+            source.limit(byteRanges[i + 1]);
+            GL15.glBufferSubData(GL31.GL_COPY_WRITE_BUFFER, byteRanges[i], source);
+            bytes += byteRanges[i + 1] - byteRanges[i];
+        }
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, 0);
+        int error = GL11.glGetError();
+        if (error != GL11.GL_NO_ERROR) {
+            enabled = false;
+            LOGGER.warning("Range upload failed with GL error 0x" + Integer.toHexString(error)
+                    + ", the whole buffers are uploaded from now on");
+            buffer.setUpdateNeeded();
+            return data.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * Reset the errors of the previous calls, so they are not taken for the failure of the upload.
+     */
+    private static void clearErrors() {
+        for (int i = 0; i < MAX_PENDING_ERRORS; i++) {
+            if (GL11.glGetError() == GL11.GL_NO_ERROR) {
+                return;
+            }
+        }
+    }
+}
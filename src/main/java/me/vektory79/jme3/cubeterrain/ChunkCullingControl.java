@@ -0,0 +1,62 @@
+package me.vektory79.jme3.cubeterrain;
+
+import com.jme3.renderer.Caps;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.control.AbstractControl;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Control, which restricts the drawn blocks of the terrain mesh to the chunks, visible for the camera of
+ * the rendered view port. It also uploads the modified ranges of the block buffers, because it's called from
+ * the rendering thread right before the mesh is drawn. The range uploads are disabled, if the renderer doesn't
+ * support OpenGL 3.1.
+ * <p>
+ * <p>The geometry must be drawn by {@link PrimitiveRestartMaterial}, because the unused entries of
+ * {@link VisibleBlocksIndex} are marked by {@link VisibleBlocksIndex#RESTART_INDEX}.</p>
+ *
+ * @see ChunkVisibilityCuller
+ */
+public class ChunkCullingControl extends AbstractControl {
+    @NotNull
+    private final TerrainChunksMesh mesh;
+    @NotNull
+    private final ChunkVisibilityCuller culler;
+    // Renderer capabilities are checked on the first render.
+    private boolean capsChecked;
+
+    public ChunkCullingControl(@NotNull final TerrainChunksMesh mesh) {
+        this.mesh = mesh;
+        culler = new ChunkVisibilityCuller(mesh.getChunkDescriptors());
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    public ChunkVisibilityCuller getCuller() {
+        return culler;
+    }
+
+    @Override
+    protected void controlUpdate(final float tpf) {
+    }
+
+    @Override
+    protected void controlRender(final RenderManager rm, final ViewPort vp) {
+        if (!capsChecked) {
+            capsChecked = true;
+            // GL_COPY_WRITE_BUFFER of the range uploads needs OpenGL 3.1.
+            if (!rm.getRenderer().getCaps().contains(Caps.OpenGL31)) {
+                mesh.setRangeUploads(false);
+            }
+        }
+        VisibleBlocksIndex visibleBlocks = mesh.getVisibleBlocks();
+        if (culler.cull(vp.getCamera())) {
+            visibleBlocks.setDrawnChunks(culler.getVisibleChunks());
+        }
+        if (visibleBlocks.commitUpdates()) {
+            mesh.updateCounts();
+        }
+        mesh.uploadUpdates();
+    }
+}
@@ -3,12 +3,17 @@ package me.vektory79.jme3.cubeterrain;
 import com.jme3.shader.BufferObject;
 import com.jme3.util.BufferUtils;
 import gnu.trove.impl.Constants;
-import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.set.hash.TLongHashSet;
 import gnu.trove.stack.array.TIntArrayStack;
+import me.vektory79.jme3.cubeterrain.BlockTypeDescriptorsBuffer.Type;
+import me.vektory79.jme3.cubeterrain.TerrainBlockOptionsBuffer.Face;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  * Builder for chunk information SSBO.
@@ -17,6 +22,11 @@ import java.nio.ByteBuffer;
  * is calculated from vertex index by shifting right by 15 (dividing by 32768).</p>
  * <p>
  * <p>Positional index of chunk descriptor is used as chunk ID.</p>
+ * <p>
+ * <p>Chunks, which consist of the single block type, can be registered as uniform instead of reservation. Uniform
+ * chunk takes no descriptor and no block buffers slot, so it's neither culled nor drawn. It's type is used only to
+ * cull the border faces of the neighbours. Uniform chunk must be promoted to the reserved one, when any of it's
+ * faces becomes exposed (see {@link TerrainChunksMesh#useChunk(int, int, int)}).</p>
  */
 public class ChunkDescriptorsBuffer extends BufferObject {
     private static final int CHUNK_X_COORD_SHIFT = 0;
@@ -25,13 +35,57 @@ public class ChunkDescriptorsBuffer extends BufferObject {
     private static final int CHUNK_ALIGN1_SHIFT = CHUNK_Z_COORD_SHIFT + Integer.BYTES;
     private static final int CHUNK_FULL_STRIDE = CHUNK_ALIGN1_SHIFT + Integer.BYTES;
 
+    /**
+     * Bits per chunk coordinate in the packed index key.
+     */
+    public static final int COORD_BITS = 21;
+    /**
+     * Minimal chunk coordinate, which can be reserved.
+     */
+    public static final int MIN_COORD = -(1 << (COORD_BITS - 1));
+    /**
+     * Maximal chunk coordinate, which can be reserved.
+     */
+    public static final int MAX_COORD = (1 << (COORD_BITS - 1)) - 1;
+    private static final long COORD_MASK = (1L << COORD_BITS) - 1;
+    private static final long NO_KEY = -1L;
+    /**
+     * Empty Y range of the column: the minimum is above the maximum.
+     */
+    public static final long NO_COLUMN_RANGE = ((long) Integer.MAX_VALUE << 32) | (Integer.MIN_VALUE & 0xFFFFFFFFL);
+
+    private static final Face[] FACES = Face.values();
+
     private final int chunks;
     @NotNull
     private final ByteBuffer data;
+    /**
+     * Index of reserved chunks. Key is the chunk coordinates, packed by {@link #pack(int, int, int)}.
+     */
+    @NotNull
+    private final TLongIntHashMap coordIndex;
+    /**
+     * Block types of the uniform chunks. Key is the chunk coordinates, packed by {@link #pack(int, int, int)}.
+     */
+    @NotNull
+    private final TLongIntHashMap uniformTypes;
+    /**
+     * Uniform chunks, which exposure should be checked, because they or their neighbours were changed.
+     */
+    @NotNull
+    private final TLongHashSet uncheckedUniformChunks;
+    /**
+     * Y range of the chunks, reserved or registered as uniform in each column. Key is the column coordinates, packed
+     * by {@link #pack(int, int, int)} with zero Y. The range is packed like {@link ChunkGenerator#getColumnRange}.
+     */
     @NotNull
-    private final TObjectIntHashMap<Position> coordIndex;
+    private final TLongLongHashMap columnRanges;
     @NotNull
     private final TIntArrayStack freeChunks;
+    @NotNull
+    private final DirtyChunksTracker dirtyChunks;
+    // Incremented on each reservation and freeing of the chunk.
+    private int modCount;
 
     /**
      * Create buffer for amount of chunks.
@@ -51,7 +105,13 @@ public class ChunkDescriptorsBuffer extends BufferObject {
             data.putInt(Integer.MIN_VALUE);
         }
         data.rewind();
-        coordIndex = new TObjectIntHashMap<>(chunks, Constants.DEFAULT_LOAD_FACTOR, Integer.MIN_VALUE);
+        coordIndex = new TLongIntHashMap(chunks, Constants.DEFAULT_LOAD_FACTOR, NO_KEY, Integer.MIN_VALUE);
+        uniformTypes = new TLongIntHashMap(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, NO_KEY,
+                Integer.MIN_VALUE);
+        uncheckedUniformChunks = new TLongHashSet();
+        columnRanges = new TLongLongHashMap(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, NO_KEY,
+                NO_COLUMN_RANGE);
+        dirtyChunks = new DirtyChunksTracker(this);
     }
 
     /**
@@ -64,6 +124,33 @@ public class ChunkDescriptorsBuffer extends BufferObject {
         return chunks;
     }
 
+    /**
+     * Amount of chunks, which can be reserved.
+     */
+    @Contract(pure = true)
+    public int getFreeChunks() {
+        return freeChunks.size();
+    }
+
+    /**
+     * Counter of the reserved chunks set modifications. Can be used to detect, that chunk bounds are changed.
+     */
+    @Contract(pure = true)
+    public int getModCount() {
+        return modCount;
+    }
+
+    /**
+     * Tracker of the chunks, which visibility masks are outdated.
+     *
+     * @return dirty chunks tracker.
+     */
+    @NotNull
+    @Contract(pure = true)
+    public DirtyChunksTracker getDirtyChunks() {
+        return dirtyChunks;
+    }
+
     /**
      * Get chunk ID for mentioned coordinates.
      * <p>
@@ -77,32 +164,256 @@ public class ChunkDescriptorsBuffer extends BufferObject {
      * Or {@link Integer#MIN_VALUE} otherwise.
      */
     public int getID(final int x, final int y, final int z) {
-        return coordIndex.get(Position.get(x, y, z));
+        if (!isInRange(x, y, z)) {
+            return Integer.MIN_VALUE;
+        }
+        return coordIndex.get(pack(x, y, z));
     }
 
     public int getID(final Position pos) {
-        return coordIndex.get(Position.get(pos.getX(), pos.getY(), pos.getZ()));
+        return getID(pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    /**
+     * Get ID of the neighbour chunk.
+     *
+     * @param chunkId ID of the chunk.
+     * @param face    face of the chunk, looking to the neighbour.
+     * @return if neighbour chunk is reserved then return its ID. Or {@link Integer#MIN_VALUE} otherwise.
+     */
+    public int getNeighbourID(final int chunkId, @NotNull final Face face) {
+        int x = readX(chunkId);
+        if (x == Integer.MIN_VALUE) {
+            return Integer.MIN_VALUE;
+        }
+        return getID(x + face.getDx(), readY(chunkId) + face.getDy(), readZ(chunkId) + face.getDz());
+    }
+
+    /**
+     * Get IDs of all six neighbours of the chunk at once.
+     * <p>
+     * <p>Coordinates of the chunk are read only once, so this is cheaper, than six calls of
+     * {@link #getNeighbourID(int, Face)}.</p>
+     *
+     * @param chunkId ID of the chunk.
+     * @param result  array of at least 6 elements. Neighbour IDs are stored by {@link Face#ordinal()} indexes.
+     *                {@link Integer#MIN_VALUE} is stored for the absent neighbours.
+     */
+    public void getNeighbourIDs(final int chunkId, @NotNull final int[] result) {
+        int x = readX(chunkId);
+        int y = readY(chunkId);
+        int z = readZ(chunkId);
+        if (x == Integer.MIN_VALUE) {
+            Arrays.fill(result, 0, FACES.length, Integer.MIN_VALUE);
+            return;
+        }
+        for (Face face : FACES) {
+            result[face.ordinal()] = getID(x + face.getDx(), y + face.getDy(), z + face.getDz());
+        }
     }
 
     public int use(final int x, final int y, final int z) {
-        int result = coordIndex.get(Position.get(x, y, z));
+        if (!isInRange(x, y, z)) {
+            throw new IllegalArgumentException("Chunk coordinates are out of range: " + x + ", " + y + ", " + z);
+        }
+        long key = pack(x, y, z);
+        int result = coordIndex.get(key);
         if (result == Integer.MIN_VALUE && freeChunks.size() > 0) {
             result = freeChunks.pop();
             write(result, x, y, z);
-            // This is separate new to grant escape analysis for previous object.
-            coordIndex.put(Position.get(x, y, z), result);
+            coordIndex.put(key, result);
+            widenColumnRange(x, y, z);
+            modCount++;
+            dirtyChunks.markWithNeighboursDirty(result);
         }
         return result;
     }
 
     public void free(final int chunkId) {
-        Position key = read(chunkId);
-        if (coordIndex.remove(key) != Integer.MIN_VALUE) {
+        int x = readX(chunkId);
+        int y = readY(chunkId);
+        int z = readZ(chunkId);
+        if (getID(x, y, z) != Integer.MIN_VALUE) {
+            dirtyChunks.markNeighboursDirty(chunkId);
+            // Freed chunk is culled once more to remove it's blocks from the visible blocks index.
+            dirtyChunks.markDirty(chunkId);
+            markUniformNeighboursUnchecked(x, y, z);
+            coordIndex.remove(pack(x, y, z));
+            modCount++;
             freeChunks.push(chunkId);
             write(chunkId, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE);
         }
     }
 
+    /**
+     * Register the chunk as uniform, i.e. consisting of the single block type. Chunk must not be reserved.
+     * <p>
+     * <p>Uniform {@link Type#AIR} chunk is not stored at all, because the absent chunk is treated as AIR. Only opaque
+     * types can be stored: the faces of transparent blocks are visible from the inside of the chunk too.</p>
+     *
+     * @param x    X coordinate of the chunk.
+     * @param y    Y coordinate of the chunk.
+     * @param z    Z coordinate of the chunk.
+     * @param type block type of the whole chunk.
+     */
+    public void setUniform(final int x, final int y, final int z, @NotNull final Type type) {
+        if (!isInRange(x, y, z)) {
+            throw new IllegalArgumentException("Chunk coordinates are out of range: " + x + ", " + y + ", " + z);
+        }
+        if (type.isTransparent() && type != Type.AIR) {
+            throw new IllegalArgumentException("Transparent chunk can't be uniform: " + type);
+        }
+        long key = pack(x, y, z);
+        if (coordIndex.containsKey(key)) {
+            throw new IllegalStateException("Chunk is reserved: " + x + ", " + y + ", " + z);
+        }
+        if (type == Type.AIR) {
+            uniformTypes.remove(key);
+            uncheckedUniformChunks.remove(key);
+        } else {
+            uniformTypes.put(key, type.ordinal());
+            uncheckedUniformChunks.add(key);
+            widenColumnRange(x, y, z);
+        }
+        // Border faces of the neighbours are hidden or exposed now.
+        for (Face face : FACES) {
+            int neighbourId = getID(x + face.getDx(), y + face.getDy(), z + face.getDz());
+            if (neighbourId != Integer.MIN_VALUE) {
+                dirtyChunks.markDirty(neighbourId);
+            }
+        }
+        markUniformNeighboursUnchecked(x, y, z);
+    }
+
+    /**
+     * Remove uniform chunk registration. Used when chunk is promoted to the reserved one.
+     *
+     * @return ordinal of the block type of the removed uniform chunk or {@link Integer#MIN_VALUE} if the chunk
+     * wasn't uniform.
+     */
+    public int removeUniform(final int x, final int y, final int z) {
+        if (!isInRange(x, y, z)) {
+            return Integer.MIN_VALUE;
+        }
+        long key = pack(x, y, z);
+        uncheckedUniformChunks.remove(key);
+        return uniformTypes.remove(key);
+    }
+
+    /**
+     * Take the Y range of the chunks, which were reserved or registered as uniform in the column since the previous
+     * call. The range covers the chunks, placed beyond the generated surface by the edits or promoted by exposure, so
+     * the released column can be cleared completely.
+     *
+     * @param x X coordinate of the column.
+     * @param z Z coordinate of the column.
+     * @return range, packed like {@link ChunkGenerator#getColumnRange}, or {@link #NO_COLUMN_RANGE}.
+     */
+    public long drainColumnRange(final int x, final int z) {
+        return columnRanges.remove(pack(x, 0, z));
+    }
+
+    /**
+     * Y range of the chunks, which were reserved or registered as uniform in the column since the last
+     * {@link #drainColumnRange(int, int)}.
+     *
+     * @param x X coordinate of the column.
+     * @param z Z coordinate of the column.
+     * @return range, packed like {@link ChunkGenerator#getColumnRange}, or {@link #NO_COLUMN_RANGE}.
+     */
+    public long getColumnRange(final int x, final int z) {
+        return columnRanges.get(pack(x, 0, z));
+    }
+
+    private void widenColumnRange(final int x, final int y, final int z) {
+        long key = pack(x, 0, z);
+        long range = columnRanges.get(key);
+        int min = Math.min((int) (range >> 32), y);
+        int max = Math.max((int) range, y);
+        columnRanges.put(key, ((long) min << 32) | (max & 0xFFFFFFFFL));
+    }
+
+    /**
+     * Get block type of the uniform chunk.
+     *
+     * @return ordinal of the block type or {@link Integer#MIN_VALUE} if the chunk isn't uniform.
+     */
+    public int getUniformType(final int x, final int y, final int z) {
+        if (!isInRange(x, y, z)) {
+            return Integer.MIN_VALUE;
+        }
+        return uniformTypes.get(pack(x, y, z));
+    }
+
+    /**
+     * Get block type of the uniform neighbour of the reserved chunk.
+     *
+     * @param chunkId ID of the chunk.
+     * @param face    face of the chunk, looking to the neighbour.
+     * @return ordinal of the block type or {@link Integer#MIN_VALUE} if the neighbour isn't uniform.
+     */
+    public int getUniformNeighbourType(final int chunkId, @NotNull final Face face) {
+        int x = readX(chunkId);
+        if (x == Integer.MIN_VALUE) {
+            return Integer.MIN_VALUE;
+        }
+        return getUniformType(x + face.getDx(), readY(chunkId) + face.getDy(), readZ(chunkId) + face.getDz());
+    }
+
+    /**
+     * Amount of registered uniform chunks.
+     */
+    @Contract(pure = true)
+    public int getUniformChunks() {
+        return uniformTypes.size();
+    }
+
+    /**
+     * Packed coordinates of all uniform chunks.
+     */
+    @NotNull
+    public long[] getUniformChunkKeys() {
+        return uniformTypes.keys();
+    }
+
+    /**
+     * Mark uniform neighbours of the reserved chunk for exposure check.
+     *
+     * @param chunkId ID of the chunk.
+     */
+    public void markUniformNeighboursUnchecked(final int chunkId) {
+        int x = readX(chunkId);
+        if (x != Integer.MIN_VALUE && !uniformTypes.isEmpty()) {
+            markUniformNeighboursUnchecked(x, readY(chunkId), readZ(chunkId));
+        }
+    }
+
+    /**
+     * Take all uniform chunks, which exposure should be checked.
+     *
+     * @return packed coordinates of the chunks.
+     */
+    @NotNull
+    public long[] drainUncheckedUniformChunks() {
+        long[] result = uncheckedUniformChunks.toArray();
+        uncheckedUniformChunks.clear();
+        return result;
+    }
+
+    private void markUniformNeighboursUnchecked(final int x, final int y, final int z) {
+        for (Face face : FACES) {
+            int nx = x + face.getDx();
+            int ny = y + face.getDy();
+            int nz = z + face.getDz();
+            if (isInRange(nx, ny, nz)) {
+                long key = pack(nx, ny, nz);
+                if (uniformTypes.containsKey(key)) {
+                    uncheckedUniformChunks.add(key);
+                }
+            }
+        }
+    }
+
     public final void write(final int chunkId, final int x, final int y, final int z) {
         int address = chunkId * CHUNK_FULL_STRIDE;
         data.putInt(address + CHUNK_X_COORD_SHIFT, x);
@@ -110,6 +421,46 @@ public class ChunkDescriptorsBuffer extends BufferObject {
         data.putInt(address + CHUNK_Z_COORD_SHIFT, z);
     }
 
+    /**
+     * Check if chunk is reserved.
+     *
+     * @param chunkId ID of the chunk.
+     * @return {@code true} if chunk is reserved for some coordinates.
+     */
+    public final boolean isUsed(final int chunkId) {
+        return readX(chunkId) != Integer.MIN_VALUE;
+    }
+
+    /**
+     * X coordinate of the chunk without {@link Position} allocation.
+     *
+     * @param chunkId ID of the chunk.
+     * @return X coordinate of the chunk or {@link Integer#MIN_VALUE} if chunk is free.
+     */
+    public final int readX(final int chunkId) {
+        return data.getInt(chunkId * CHUNK_FULL_STRIDE + CHUNK_X_COORD_SHIFT);
+    }
+
+    /**
+     * Y coordinate of the chunk without {@link Position} allocation.
+     *
+     * @param chunkId ID of the chunk.
+     * @return Y coordinate of the chunk or {@link Integer#MIN_VALUE} if chunk is free.
+     */
+    public final int readY(final int chunkId) {
+        return data.getInt(chunkId * CHUNK_FULL_STRIDE + CHUNK_Y_COORD_SHIFT);
+    }
+
+    /**
+     * Z coordinate of the chunk without {@link Position} allocation.
+     *
+     * @param chunkId ID of the chunk.
+     * @return Z coordinate of the chunk or {@link Integer#MIN_VALUE} if chunk is free.
+     */
+    public final int readZ(final int chunkId) {
+        return data.getInt(chunkId * CHUNK_FULL_STRIDE + CHUNK_Z_COORD_SHIFT);
+    }
+
     @NotNull
     public final Position read(final int chunkId) {
         int address = chunkId * CHUNK_FULL_STRIDE;
@@ -120,6 +471,36 @@ public class ChunkDescriptorsBuffer extends BufferObject {
         );
     }
 
+    /**
+     * Pack chunk coordinates to the index key. Each coordinate is stored in {@link #COORD_BITS} bits.
+     */
+    @Contract(pure = true)
+    public static long pack(final int x, final int y, final int z) {
+        return ((x & COORD_MASK) << (COORD_BITS * 2)) | ((y & COORD_MASK) << COORD_BITS) | (z & COORD_MASK);
+    }
+
+    @Contract(pure = true)
+    public static int unpackX(final long key) {
+        return (int) (key << (Long.SIZE - COORD_BITS * 3) >> (Long.SIZE - COORD_BITS));
+    }
+
+    @Contract(pure = true)
+    public static int unpackY(final long key) {
+        return (int) (key << (Long.SIZE - COORD_BITS * 2) >> (Long.SIZE - COORD_BITS));
+    }
+
+    @Contract(pure = true)
+    public static int unpackZ(final long key) {
+        return (int) (key << (Long.SIZE - COORD_BITS) >> (Long.SIZE - COORD_BITS));
+    }
+
+    @Contract(pure = true)
+    public static boolean isInRange(final int x, final int y, final int z) {
+        return x >= MIN_COORD && x <= MAX_COORD
+                && y >= MIN_COORD && y <= MAX_COORD
+                && z >= MIN_COORD && z <= MAX_COORD;
+    }
+
     // TODO: seems strange a bit. May be it's better to split data computation and accessor to it?
     @Override
     @NotNull
@@ -0,0 +1,316 @@
+package me.vektory79.jme3.cubeterrain;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import me.vektory79.mapgen.HeightMap;
+import me.vektory79.utils.StageTimer;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generation of the chunks in the background threads.
+ * <p>
+ * <p>Submitted chunks are passed to the worker threads by the bounded queue of the generation requests. Requests
+ * are allocated once and reused, so the submission allocates only the cancellation ticket of each new column.
+ * Worker threads generate the chunk contents to the staging arrays, which are passed to the thread, owning the mesh,
+ * by the bounded queue. The owner thread writes them to the mesh by {@link #commit(TerrainChunksMesh)}, which is
+ * limited by the time budget, so the frame is not frozen by the large amount of generated chunks.</p>
+ * <p>
+ * <p>Staging arrays are allocated once and reused. Their amount limits the memory of the pipeline: when all of them
+ * are waiting for commit, workers are blocked until the owner thread takes some of them.</p>
+ * <p>
+ * <p>All methods, except the workers, must be called from the thread, owning the mesh.</p>
+ */
+public final class ChunkGenerationPipeline implements Closeable {
+    private static final long DEFAULT_COMMIT_BUDGET = 4_000_000L; // 4 ms
+
+    @NotNull
+    private final ExecutorService workers;
+    @NotNull
+    private final ArrayBlockingQueue<GenerationRequest> freeRequests;
+    @NotNull
+    private final ArrayBlockingQueue<GenerationRequest> workQueue;
+    @NotNull
+    private final ArrayBlockingQueue<StagedChunk> freeChunks;
+    @NotNull
+    private final ArrayBlockingQueue<StagedChunk> readyChunks;
+    // Tickets of the columns with submitted chunks. Chunks of the cancelled ticket are skipped or discarded.
+    @NotNull
+    private final TLongObjectHashMap<ColumnTicket> columnTickets = new TLongObjectHashMap<>();
+    // Submitted chunks, which are not committed or discarded yet.
+    @NotNull
+    private final AtomicInteger pendingChunks = new AtomicInteger();
+    // Chunk, which didn't fit to the mesh on the last commit.
+    @Nullable
+    private StagedChunk heldChunk;
+    private long commitBudget = DEFAULT_COMMIT_BUDGET;
+    @Nullable
+    private volatile StageTimer generationTimer;
+
+    /**
+     * @param threads     amount of the worker threads.
+     * @param stagedLimit amount of the staging arrays, i.e. the maximum amount of generated, but not committed
+     *                    chunks.
+     * @param queueLimit  maximum amount of submitted, but not taken by the workers chunks.
+     */
+    public ChunkGenerationPipeline(final int threads, final int stagedLimit, final int queueLimit) {
+        if (threads <= 0 || stagedLimit <= 0 || queueLimit <= 0) {
+            throw new IllegalArgumentException("Threads, staged and queue limits must be positive: "
+                    + threads + ", " + stagedLimit + ", " + queueLimit);
+        }
+        freeRequests = new ArrayBlockingQueue<>(queueLimit);
+        workQueue = new ArrayBlockingQueue<>(queueLimit);
+        for (int i = 0; i < queueLimit; i++) {
+            freeRequests.add(new GenerationRequest());
+        }
+        freeChunks = new ArrayBlockingQueue<>(stagedLimit);
+        readyChunks = new ArrayBlockingQueue<>(stagedLimit);
+        for (int i = 0; i < stagedLimit; i++) {
+            freeChunks.add(new StagedChunk());
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "chunk-generator-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        for (int i = 0; i < threads; i++) {
+            workers.execute(this::drainRequests);
+        }
+    }
+
+    @Contract(pure = true)
+    public long getCommitBudget() {
+        return commitBudget;
+    }
+
+    /**
+     * Set the time limit of single {@link #commit(TerrainChunksMesh)}.
+     *
+     * @param commitBudget time in nanoseconds.
+     */
+    public void setCommitBudget(final long commitBudget) {
+        this.commitBudget = commitBudget;
+    }
+
+    /**
+     * Set the timer of the chunk generation, e.g. {@link TerrainMetrics#getGeneration()}.
+     */
+    public void setGenerationTimer(@Nullable final StageTimer generationTimer) {
+        this.generationTimer = generationTimer;
+    }
+
+    /**
+     * Amount of submitted chunks, which are not written to the mesh yet.
+     */
+    @Contract(pure = true)
+    public int getPendingChunks() {
+        return pendingChunks.get();
+    }
+
+    /**
+     * Amount of chunks, which can be submitted without rejection.
+     */
+    @Contract(pure = true)
+    public int getFreeRequests() {
+        return freeRequests.size();
+    }
+
+    @Contract(pure = true)
+    public boolean isIdle() {
+        return pendingChunks.get() == 0;
+    }
+
+    /**
+     * Schedule generation of the chunk.
+     *
+     * @param map    source of the surface. Must be safe for concurrent reading.
+     * @param chunkX X coordinate of the chunk.
+     * @param chunkY Y coordinate of the chunk.
+     * @param chunkZ Z coordinate of the chunk.
+     * @return {@code false} if the work queue is full and the chunk is not submitted.
+     * @see #getFreeRequests()
+     */
+    public boolean submit(@NotNull final HeightMap map, final int chunkX, final int chunkY, final int chunkZ) {
+        GenerationRequest request = freeRequests.poll();
+        if (request == null) {
+            return false;
+        }
+        long column = ChunkDescriptorsBuffer.pack(chunkX, 0, chunkZ);
+        ColumnTicket ticket = columnTickets.get(column);
+        if (ticket == null) {
+            // Not pooled: the cancelled ticket is still referenced by the chunks in flight.
+            ticket = new ColumnTicket();
+            columnTickets.put(column, ticket);
+        }
+        request.map = map;
+        request.x = chunkX;
+        request.y = chunkY;
+        request.z = chunkZ;
+        request.ticket = ticket;
+        pendingChunks.incrementAndGet();
+        // Never blocks: the work queue can hold all requests.
+        workQueue.add(request);
+        return true;
+    }
+
+    /**
+     * Drop all submitted chunks of the column, which are not committed yet.
+     *
+     * @param chunkX X coordinate of the column in chunks.
+     * @param chunkZ Z coordinate of the column in chunks.
+     */
+    public void cancelColumn(final int chunkX, final int chunkZ) {
+        ColumnTicket ticket = columnTickets.remove(ChunkDescriptorsBuffer.pack(chunkX, 0, chunkZ));
+        if (ticket != null) {
+            ticket.cancelled = true;
+        }
+    }
+
+    /**
+     * Write generated chunks to the mesh until the time budget is exhausted. Should be called once per frame.
+     *
+     * @return amount of written chunks.
+     */
+    public int commit(@NotNull final TerrainChunksMesh mesh) {
+        long deadline = System.nanoTime() + commitBudget;
+        int committed = 0;
+        while (true) {
+            StagedChunk chunk = heldChunk != null ? heldChunk : readyChunks.poll();
+            heldChunk = null;
+            if (chunk == null) {
+                break;
+            }
+            if (!chunk.ticket.cancelled) {
+                if (!ChunkGenerator.store(mesh, chunk.x, chunk.y, chunk.z, chunk.data)) {
+                    // Mesh is full. Retry on the next commit, may be some chunks will be released.
+                    heldChunk = chunk;
+                    break;
+                }
+                committed++;
+            }
+            pendingChunks.decrementAndGet();
+            freeChunks.add(chunk);
+            if (System.nanoTime() - deadline >= 0) {
+                break;
+            }
+        }
+        return committed;
+    }
+
+    /**
+     * Stop the worker threads. Not committed chunks are lost.
+     */
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Worker loop: take the requests until the pipeline is closed.
+     */
+    private void drainRequests() {
+        Thread thread = Thread.currentThread();
+        while (!thread.isInterrupted()) {
+            GenerationRequest request;
+            try {
+                request = workQueue.take();
+            } catch (InterruptedException e) {
+                thread.interrupt();
+                return;
+            }
+            HeightMap map = request.map;
+            int chunkX = request.x;
+            int chunkY = request.y;
+            int chunkZ = request.z;
+            ColumnTicket ticket = request.ticket;
+            request.map = null;
+            request.ticket = null;
+            freeRequests.add(request);
+            try {
+                generate(map, chunkX, chunkY, chunkZ, ticket);
+            } catch (RuntimeException e) {
+                // The failed chunk is dropped, but the worker keeps serving the other chunks.
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+
+    private void generate(
+            @NotNull final HeightMap map,
+            final int chunkX,
+            final int chunkY,
+            final int chunkZ,
+            @NotNull final ColumnTicket ticket) {
+        if (ticket.cancelled) {
+            pendingChunks.decrementAndGet();
+            return;
+        }
+        StagedChunk chunk;
+        try {
+            chunk = freeChunks.take();
+        } catch (InterruptedException e) {
+            pendingChunks.decrementAndGet();
+            Thread.currentThread().interrupt();
+            return;
+        }
+        boolean staged = false;
+        try {
+            chunk.x = chunkX;
+            chunk.y = chunkY;
+            chunk.z = chunkZ;
+            chunk.ticket = ticket;
+            long start = StageTimer.start();
+            ChunkGenerator.generate(map, chunkX, chunkY, chunkZ, chunk.data);
+            StageTimer timer = generationTimer;
+            if (timer != null) {
+                timer.stop(start);
+            }
+            // Never blocks: the ready queue can hold all staging arrays.
+            readyChunks.add(chunk);
+            staged = true;
+        } finally {
+            if (!staged) {
+                freeChunks.add(chunk);
+                pendingChunks.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Staging array with the coordinates of the chunk. Passed between threads only through the queues.
+     */
+    private static final class StagedChunk {
+        @NotNull
+        private final int[] data = new int[AbstractTerrainBlockBuffer.CHUNK_SIZE];
+        private int x;
+        private int y;
+        private int z;
+        private ColumnTicket ticket;
+    }
+
+    /**
+     * Coordinates of the submitted chunk. Passed between threads only through the queues.
+     */
+    private static final class GenerationRequest {
+        private HeightMap map;
+        private int x;
+        private int y;
+        private int z;
+        private ColumnTicket ticket;
+    }
+
+    /**
+     * Cancellation flag of the column, shared by all it's submitted chunks.
+     */
+    private static final class ColumnTicket {
+        private volatile boolean cancelled;
+    }
+}
@@ -0,0 +1,141 @@
+package me.vektory79.jme3.cubeterrain;
+
+import me.vektory79.mapgen.HeightMap;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_DIMENSION;
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_DIMENSION_FACTOR;
+import static me.vektory79.jme3.cubeterrain.BlockTypeDescriptorsBuffer.Type.*;
+
+/**
+ * Generator of the chunk contents from the height map.
+ * <p>
+ * <p>Generator doesn't touch the mesh buffers, it only fills the caller's array. So it can be called from any
+ * thread, as long as the height map can be read concurrently.</p>
+ */
+public final class ChunkGenerator {
+    private static final BlockTypeDescriptorsBuffer.Type[] TYPES = BlockTypeDescriptorsBuffer.Type.values();
+
+    private ChunkGenerator() {
+    }
+
+    /**
+     * Range of the chunk Y coordinates of the column, which contain the surface.
+     *
+     * @return the lowest coordinate in the high 32 bits and the highest one in the low 32 bits.
+     */
+    @Contract(pure = true)
+    public static long getColumnRange(@NotNull final HeightMap map, final int chunkX, final int chunkZ) {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        int xStart = chunkX << CHUNK_DIMENSION_FACTOR;
+        int zStart = chunkZ << CHUNK_DIMENSION_FACTOR;
+        for (int z = zStart; z < zStart + CHUNK_DIMENSION; z++) {
+            for (int x = xStart; x < xStart + CHUNK_DIMENSION; x++) {
+                int current = convertHeight(map.getHeight(x, z));
+                if (current > max) {
+                    max = current;
+                }
+                if (current < min) {
+                    min = current;
+                }
+            }
+        }
+        int chunkYMin = min >> CHUNK_DIMENSION_FACTOR;
+        int chunkYMax = max >> CHUNK_DIMENSION_FACTOR;
+        return ((long) chunkYMin << 32) | (chunkYMax & 0xFFFFFFFFL);
+    }
+
+    @Contract(pure = true)
+    public static int getRangeMin(final long range) {
+        return (int) (range >> 32);
+    }
+
+    @Contract(pure = true)
+    public static int getRangeMax(final long range) {
+        return (int) range;
+    }
+
+    /**
+     * Fill block types of the chunk.
+     *
+     * @param dst destination array of {@link AbstractTerrainBlockBuffer#CHUNK_SIZE} elements in the block address
+     *            order.
+     */
+    public static void generate(
+            @NotNull final HeightMap map,
+            final int chunkX,
+            final int chunkY,
+            final int chunkZ,
+            @NotNull final int[] dst) {
+        int xStart = chunkX << CHUNK_DIMENSION_FACTOR;
+        int yStart = chunkY << CHUNK_DIMENSION_FACTOR;
+        int zStart = chunkZ << CHUNK_DIMENSION_FACTOR;
+
+        for (int z = 0; z < CHUNK_DIMENSION; z++) {
+            for (int x = 0; x < CHUNK_DIMENSION; x++) {
+                int height = convertHeight(map.getHeight(x + xStart, z + zStart));
+                for (int y = 0; y < CHUNK_DIMENSION; y++) {
+                    int currHeight = y + yStart;
+                    int blockAddress = AbstractTerrainBlockBuffer.getBlockAddress(0, x, y, z);
+                    if (currHeight > height) {
+                        dst[blockAddress] = AIR.ordinal();
+                    } else if (height >= -2 && height <= 2 && currHeight >= height - 3) {
+                        dst[blockAddress] = SAND.ordinal();
+                    } else if (height > 2 && currHeight >= height - 3) {
+                        dst[blockAddress] = DIRT.ordinal();
+                    } else {
+                        dst[blockAddress] = STONE.ordinal();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the generated chunk to the mesh. Uniform chunk takes no slot, unless it will be exposed. Unlike
+     * generation, must be called from the thread, which owns the mesh.
+     *
+     * @param data block types of the chunk in the block address order.
+     * @return {@code false} if there is no free chunks.
+     */
+    public static boolean store(
+            @NotNull final TerrainChunksMesh mesh,
+            final int chunkX,
+            final int chunkY,
+            final int chunkZ,
+            @NotNull final int[] data) {
+        int uniformType = getUniformType(data);
+        if (uniformType != Integer.MIN_VALUE
+                && mesh.setUniformChunk(chunkX, chunkY, chunkZ, TYPES[uniformType])) {
+            return true;
+        }
+        int chunkID = mesh.useChunk(chunkX, chunkY, chunkZ);
+        if (chunkID == Integer.MIN_VALUE) {
+            return false;
+        }
+        mesh.getBlockType().writeChunk(chunkID, data);
+        return true;
+    }
+
+    /**
+     * @return the block type, if all blocks of the chunk are of the same type, or {@link Integer#MIN_VALUE}
+     * otherwise.
+     */
+    @Contract(pure = true)
+    public static int getUniformType(@NotNull final int[] data) {
+        int type = data[0];
+        for (int i = 1; i < data.length; i++) {
+            if (data[i] != type) {
+                return Integer.MIN_VALUE;
+            }
+        }
+        return type;
+    }
+
+    @Contract(pure = true)
+    private static int convertHeight(final double mapHeight) {
+        return (int) (mapHeight * 25.0);
+    }
+}
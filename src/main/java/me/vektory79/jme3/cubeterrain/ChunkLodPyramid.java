@@ -0,0 +1,255 @@
+package me.vektory79.jme3.cubeterrain;
+
+import me.vektory79.jme3.cubeterrain.BlockTypeDescriptorsBuffer.Type;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_DIMENSION;
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_DIMENSION_FACTOR;
+
+/**
+ * Levels of detail of the chunk block types: 16<sup>3</sup> (level 0), 8<sup>3</sup>, 4<sup>3</sup>,
+ * 2<sup>3</sup> and 1<sup>3</sup> cells.
+ * <p>
+ * <p>Each cell of the level is voted by it's 2x2x2 cells of the previous level. The cell is opaque, if at least half
+ * of them are opaque. The type of the opaque cell is the most frequent opaque type of the upper half, so the surface
+ * keeps it's material (e.g. sand above the stone). The lower half decides only if the upper half has no opaque
+ * cells. The type of the other cells is the most frequent transparent type.</p>
+ * <p>
+ * <p>Levels are calculated on demand, from the finer to the coarser. When the chunk is changed, the pyramid is
+ * {@link #invalidate() invalidated}. The next update compares the blocks with the stored level 0 and re-votes only
+ * the cells, covering the changed blocks, level by level. The cell, which keeps it's type, doesn't change the coarser
+ * levels, so the changes, which don't affect the voting (e.g. the culling only), cost just the comparison.</p>
+ * <p>
+ * <p>Cells are in the block address order: {@code x + y * dimension + z * dimension * dimension}.</p>
+ */
+public final class ChunkLodPyramid {
+    /**
+     * The coarsest level: the single cell.
+     */
+    public static final int MAX_LEVEL = CHUNK_DIMENSION_FACTOR;
+
+    private static final Type[] TYPES = Type.values();
+
+    @NotNull
+    private final int[][] levels = new int[MAX_LEVEL + 1][];
+    // Cells of the levels, which must be re-voted, by level.
+    @NotNull
+    private final boolean[][] dirtyCells = new boolean[MAX_LEVEL + 1][];
+    // The coarsest up to date level or -1 if the pyramid is outdated.
+    private int validLevel = -1;
+    // The coarsest calculated level or -1 if the pyramid is empty. Outdated levels are kept for the comparison.
+    private int calculatedLevel = -1;
+    private final int[] votes = new int[TYPES.length];
+    private final int[] slab = new int[CHUNK_DIMENSION * CHUNK_DIMENSION];
+
+    public ChunkLodPyramid() {
+        for (int level = 0; level <= MAX_LEVEL; level++) {
+            int dimension = getDimension(level);
+            levels[level] = new int[dimension * dimension * dimension];
+            dirtyCells[level] = new boolean[levels[level].length];
+        }
+    }
+
+    /**
+     * Amount of the cells of the level by each axis.
+     */
+    @Contract(pure = true)
+    public static int getDimension(final int level) {
+        return CHUNK_DIMENSION >> level;
+    }
+
+    /**
+     * Mark the pyramid as outdated after the change of the chunk blocks.
+     */
+    public void invalidate() {
+        validLevel = -1;
+    }
+
+    @Contract(pure = true)
+    public boolean isValid(final int level) {
+        return level <= validLevel;
+    }
+
+    /**
+     * Calculate the levels up to the requested one, if they are outdated.
+     *
+     * @param blockType block types of the chunk.
+     * @param chunkId   ID of the chunk.
+     * @param level     the coarsest level, which is needed.
+     */
+    public void update(@NotNull final TerrainBlockTypesBuffer blockType, final int chunkId, final int level) {
+        if (validLevel < 0) {
+            if (calculatedLevel < 0) {
+                blockType.readChunk(chunkId, levels[0]);
+                calculatedLevel = 0;
+            } else {
+                refresh(blockType, chunkId);
+            }
+            validLevel = calculatedLevel;
+        }
+        while (validLevel < level) {
+            downsample(levels[validLevel], getDimension(validLevel), levels[validLevel + 1]);
+            validLevel++;
+        }
+        calculatedLevel = Math.max(calculatedLevel, validLevel);
+    }
+
+    /**
+     * Cells of the level. Valid only after {@link #update(TerrainBlockTypesBuffer, int, int)} of this or coarser
+     * level.
+     */
+    @NotNull
+    @Contract(pure = true)
+    public int[] getLevel(final int level) {
+        return levels[level];
+    }
+
+    /**
+     * Vote the cells of the twice coarser grid.
+     *
+     * @param src          cells of the source grid.
+     * @param srcDimension amount of the source cells by each axis.
+     * @param dst          destination cells.
+     */
+    public void downsample(@NotNull final int[] src, final int srcDimension, @NotNull final int[] dst) {
+        int dimension = srcDimension >> 1;
+        for (int z = 0; z < dimension; z++) {
+            for (int y = 0; y < dimension; y++) {
+                for (int x = 0; x < dimension; x++) {
+                    dst[getCell(x, y, z, dimension)] = vote(src, srcDimension, x, y, z);
+                }
+            }
+        }
+    }
+
+    /**
+     * Update the level 0 from the chunk and re-vote the cells of the calculated levels, which cover the changed
+     * blocks.
+     */
+    private void refresh(@NotNull final TerrainBlockTypesBuffer blockType, final int chunkId) {
+        int[] blocks = levels[0];
+        for (int z = 0; z < CHUNK_DIMENSION; z++) {
+            blockType.readSlab(chunkId, z, slab);
+            int start = z * slab.length;
+            for (int i = 0; i < slab.length; i++) {
+                if (blocks[start + i] != slab[i]) {
+                    blocks[start + i] = slab[i];
+                    int x = i & (CHUNK_DIMENSION - 1);
+                    int y = i >> CHUNK_DIMENSION_FACTOR;
+                    dirtyCells[1][getCell(x >> 1, y >> 1, z >> 1, getDimension(1))] = true;
+                }
+            }
+        }
+        for (int level = 1; level <= MAX_LEVEL; level++) {
+            boolean[] dirty = dirtyCells[level];
+            int dimension = getDimension(level);
+            for (int z = 0; z < dimension; z++) {
+                for (int y = 0; y < dimension; y++) {
+                    for (int x = 0; x < dimension; x++) {
+                        int cell = getCell(x, y, z, dimension);
+                        if (!dirty[cell]) {
+                            continue;
+                        }
+                        dirty[cell] = false;
+                        if (level > calculatedLevel) {
+                            // The level will be downsampled as a whole, if requested.
+                            continue;
+                        }
+                        int type = vote(levels[level - 1], getDimension(level - 1), x, y, z);
+                        if (type != levels[level][cell] && level < MAX_LEVEL) {
+                            dirtyCells[level + 1][getCell(x >> 1, y >> 1, z >> 1, dimension >> 1)] = true;
+                        }
+                        levels[level][cell] = type;
+                    }
+                }
+            }
+        }
+    }
+
+    @Contract(pure = true)
+    private static int getCell(final int x, final int y, final int z, final int dimension) {
+        return x + (y + z * dimension) * dimension;
+    }
+
+    /**
+     * Vote the cell of the twice coarser grid.
+     *
+     * @param src          cells of the source grid.
+     * @param srcDimension amount of the source cells by each axis.
+     */
+    private int vote(@NotNull final int[] src, final int srcDimension, final int x, final int y, final int z) {
+        return vote(src, getCell(x << 1, y << 1, z << 1, srcDimension), srcDimension, srcDimension * srcDimension);
+    }
+
+    private int vote(@NotNull final int[] src, final int address, final int yStride, final int zStride) {
+        int opaque = countOpaque(src, address, zStride) + countOpaque(src, address + yStride, zStride);
+        if (opaque * 2 >= 8) {
+            // Top surface decides the material.
+            int type = voteOpaque(src, address + yStride, zStride);
+            return type != Integer.MIN_VALUE ? type : voteOpaque(src, address, zStride);
+        }
+        clearVotes();
+        addVotes(src, address, zStride, false);
+        addVotes(src, address + yStride, zStride, false);
+        return getWinner();
+    }
+
+    /**
+     * Amount of the opaque cells of the 2x2 layer.
+     */
+    private int countOpaque(@NotNull final int[] src, final int address, final int zStride) {
+        int count = 0;
+        for (int dz = 0; dz <= zStride; dz += zStride) {
+            for (int dx = 0; dx <= 1; dx++) {
+                if (!TYPES[src[address + dz + dx]].isTransparent()) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The most frequent opaque type of the 2x2 layer.
+     *
+     * @return the type or {@link Integer#MIN_VALUE} if the layer has no opaque cells.
+     */
+    private int voteOpaque(@NotNull final int[] src, final int address, final int zStride) {
+        clearVotes();
+        addVotes(src, address, zStride, true);
+        return getWinner();
+    }
+
+    private void addVotes(@NotNull final int[] src, final int address, final int zStride, final boolean opaque) {
+        for (int dz = 0; dz <= zStride; dz += zStride) {
+            for (int dx = 0; dx <= 1; dx++) {
+                int type = src[address + dz + dx];
+                if (TYPES[type].isTransparent() != opaque) {
+                    votes[type]++;
+                }
+            }
+        }
+    }
+
+    private void clearVotes() {
+        for (int i = 0; i < votes.length; i++) {
+            votes[i] = 0;
+        }
+    }
+
+    /**
+     * @return the type with the most votes, the lower ordinal on tie, or {@link Integer#MIN_VALUE} without votes.
+     */
+    private int getWinner() {
+        int winner = Integer.MIN_VALUE;
+        int max = 0;
+        for (int type = 0; type < votes.length; type++) {
+            if (votes[type] > max) {
+                max = votes[type];
+                winner = type;
+            }
+        }
+        return winner;
+    }
+}
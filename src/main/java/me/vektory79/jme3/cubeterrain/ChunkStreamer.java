@@ -0,0 +1,188 @@
+package me.vektory79.jme3.cubeterrain;
+
+import com.jme3.math.Vector3f;
+import gnu.trove.set.hash.TLongHashSet;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_DIMENSION_FACTOR;
+
+/**
+ * Keeps the chunk columns around the camera resident.
+ * <p>
+ * <p>Columns within the load radius are loaded in the order of the distance from the camera column, nearest first.
+ * Columns are released only when they are farther than the unload radius. The gap between the radii is
+ * the hysteresis: camera moving back and forth across the column border doesn't load and release the same columns
+ * again and again.</p>
+ * <p>
+ * <p>Amount of loaded columns per {@link #update(Vector3f)} is limited, so the loading is spread over several
+ * frames. Resident chunks never exceed the pool of {@link TerrainChunksMesh}, so the memory is fixed by it's
+ * capacity. The load radius should be chosen so the resident columns fit to the pool.</p>
+ */
+public final class ChunkStreamer {
+    @NotNull
+    private final ColumnLoader loader;
+    private final int loadRadius;
+    private final int unloadRadius;
+    private int maxLoadsPerUpdate = 8;
+
+    // Column offsets within load radius, sorted by distance. Packed as (dx, dz) pairs.
+    @NotNull
+    private final int[] ringOffsets;
+    @NotNull
+    private final TLongHashSet residentColumns = new TLongHashSet();
+
+    private int centerX = Integer.MIN_VALUE;
+    private int centerZ = Integer.MIN_VALUE;
+    // Index in ringOffsets, before which all columns are loaded for the current center.
+    private int loadedRing;
+
+    /**
+     * @param loader       loader of the columns.
+     * @param loadRadius   radius in columns, within which columns are loaded.
+     * @param unloadRadius radius in columns, beyond which columns are released. Must be greater than load radius.
+     */
+    public ChunkStreamer(@NotNull final ColumnLoader loader, final int loadRadius, final int unloadRadius) {
+        if (loadRadius < 0 || unloadRadius <= loadRadius) {
+            throw new IllegalArgumentException("Unload radius must be greater than load radius: "
+                    + loadRadius + ", " + unloadRadius);
+        }
+        this.loader = loader;
+        this.loadRadius = loadRadius;
+        this.unloadRadius = unloadRadius;
+        ringOffsets = buildRingOffsets(loadRadius);
+    }
+
+    @Contract(pure = true)
+    public int getLoadRadius() {
+        return loadRadius;
+    }
+
+    @Contract(pure = true)
+    public int getUnloadRadius() {
+        return unloadRadius;
+    }
+
+    @Contract(pure = true)
+    public int getMaxLoadsPerUpdate() {
+        return maxLoadsPerUpdate;
+    }
+
+    /**
+     * Set the amount of columns, loaded by single {@link #update(Vector3f)}.
+     */
+    public void setMaxLoadsPerUpdate(final int maxLoadsPerUpdate) {
+        this.maxLoadsPerUpdate = maxLoadsPerUpdate;
+    }
+
+    /**
+     * Amount of resident columns.
+     */
+    @Contract(pure = true)
+    public int getResidentColumns() {
+        return residentColumns.size();
+    }
+
+    @Contract(pure = true)
+    public boolean isResident(final int chunkX, final int chunkZ) {
+        return residentColumns.contains(ChunkDescriptorsBuffer.pack(chunkX, 0, chunkZ));
+    }
+
+    /**
+     * Check if all columns within the load radius are loaded.
+     */
+    @Contract(pure = true)
+    public boolean isComplete() {
+        return loadedRing == ringOffsets.length / 2;
+    }
+
+    /**
+     * Release far columns and load some of the missed near columns. Should be called once per frame.
+     *
+     * @param location position of the camera in blocks.
+     * @return amount of loaded columns.
+     */
+    public int update(@NotNull final Vector3f location) {
+        int chunkX = (int) Math.floor(location.x) >> CHUNK_DIMENSION_FACTOR;
+        int chunkZ = (int) Math.floor(location.z) >> CHUNK_DIMENSION_FACTOR;
+        if (chunkX != centerX || chunkZ != centerZ) {
+            centerX = chunkX;
+            centerZ = chunkZ;
+            loadedRing = 0;
+            unloadFarColumns();
+        }
+        return loadNearColumns(maxLoadsPerUpdate);
+    }
+
+    /**
+     * Release all resident columns.
+     */
+    public void clear() {
+        for (long key : residentColumns.toArray()) {
+            loader.unloadColumn(ChunkDescriptorsBuffer.unpackX(key), ChunkDescriptorsBuffer.unpackZ(key));
+        }
+        residentColumns.clear();
+        centerX = Integer.MIN_VALUE;
+        centerZ = Integer.MIN_VALUE;
+        loadedRing = 0;
+    }
+
+    private void unloadFarColumns() {
+        long maxDistance = (long) unloadRadius * unloadRadius;
+        for (long key : residentColumns.toArray()) {
+            int x = ChunkDescriptorsBuffer.unpackX(key);
+            int z = ChunkDescriptorsBuffer.unpackZ(key);
+            long dx = x - centerX;
+            long dz = z - centerZ;
+            if (dx * dx + dz * dz > maxDistance) {
+                loader.unloadColumn(x, z);
+                residentColumns.remove(key);
+            }
+        }
+    }
+
+    private int loadNearColumns(final int budget) {
+        int loaded = 0;
+        while (loadedRing < ringOffsets.length / 2 && loaded < budget) {
+            int x = centerX + ringOffsets[loadedRing * 2];
+            int z = centerZ + ringOffsets[loadedRing * 2 + 1];
+            long key = ChunkDescriptorsBuffer.pack(x, 0, z);
+            if (!residentColumns.contains(key)) {
+                if (!loader.loadColumn(x, z)) {
+                    // Pool is exhausted. Retry on the next update, may be some columns will be released.
+                    break;
+                }
+                residentColumns.add(key);
+                loaded++;
+            }
+            loadedRing++;
+        }
+        return loaded;
+    }
+
+    @NotNull
+    private static int[] buildRingOffsets(final int radius) {
+        int side = radius * 2 + 1;
+        long[] offsets = new long[side * side];
+        int count = 0;
+        long maxDistance = (long) radius * radius;
+        for (int dz = -radius; dz <= radius; dz++) {
+            for (int dx = -radius; dx <= radius; dx++) {
+                long distance = (long) dx * dx + (long) dz * dz;
+                if (distance <= maxDistance) {
+                    // Distance in the high bits for sorting, offsets in the low bits.
+                    offsets[count++] = (distance << 32) | ((dz + radius) << 16) | (dx + radius);
+                }
+            }
+        }
+        Arrays.sort(offsets, 0, count);
+        int[] result = new int[count * 2];
+        for (int i = 0; i < count; i++) {
+            result[i * 2] = (int) (offsets[i] & 0xFFFF) - radius;
+            result[i * 2 + 1] = (int) ((offsets[i] >>> 16) & 0xFFFF) - radius;
+        }
+        return result;
+    }
+}
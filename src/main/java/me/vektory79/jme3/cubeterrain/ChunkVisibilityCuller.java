@@ -0,0 +1,146 @@
+package me.vektory79.jme3.cubeterrain;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.BitSet;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_DIMENSION;
+
+/**
+ * Selection of the reserved chunks, which should be drawn for the camera.
+ * <p>
+ * <p>Chunk is selected if it's bounding box is not farther than the view distance from the camera and is not
+ * outside the camera frustum. The bounding box of the chunk is derived from it's coordinates in
+ * {@link ChunkDescriptorsBuffer}.</p>
+ * <p>
+ * <p>Instance holds the working state, so it must not be shared between threads.</p>
+ */
+public final class ChunkVisibilityCuller {
+    private static final float HALF_CHUNK = CHUNK_DIMENSION / 2f;
+
+    @NotNull
+    private final ChunkDescriptorsBuffer chunkDescriptors;
+    @NotNull
+    private BitSet visibleChunks = new BitSet();
+    @NotNull
+    private BitSet previousChunks = new BitSet();
+    @NotNull
+    private final BoundingBox chunkBound = new BoundingBox(new Vector3f(), HALF_CHUNK, HALF_CHUNK, HALF_CHUNK);
+    @NotNull
+    private final Vector3f chunkCenter = new Vector3f();
+    private float viewDistance = Float.POSITIVE_INFINITY;
+
+    public ChunkVisibilityCuller(@NotNull final ChunkDescriptorsBuffer chunkDescriptors) {
+        this.chunkDescriptors = chunkDescriptors;
+    }
+
+    @Contract(pure = true)
+    public float getViewDistance() {
+        return viewDistance;
+    }
+
+    /**
+     * Set maximal distance from the camera to the nearest point of the chunk.
+     *
+     * @param viewDistance distance in blocks or {@link Float#POSITIVE_INFINITY} for no limit.
+     */
+    public void setViewDistance(final float viewDistance) {
+        this.viewDistance = viewDistance;
+    }
+
+    /**
+     * Select the chunks, visible for the camera.
+     *
+     * @param camera camera with the updated frustum.
+     * @return {@code true} if the selection differs from the previous one.
+     */
+    public boolean cull(@NotNull final Camera camera) {
+        BitSet result = previousChunks;
+        previousChunks = visibleChunks;
+        visibleChunks = result;
+        result.clear();
+
+        Vector3f location = camera.getLocation();
+        float maxDistanceSquared = viewDistance * viewDistance;
+        int savedPlaneState = camera.getPlaneState();
+        try {
+            for (int chunkId = 0; chunkId < chunkDescriptors.getChunks(); chunkId++) {
+                if (!chunkDescriptors.isUsed(chunkId)) {
+                    continue;
+                }
+                float minX = chunkDescriptors.readX(chunkId) * CHUNK_DIMENSION;
+                float minY = chunkDescriptors.readY(chunkId) * CHUNK_DIMENSION;
+                float minZ = chunkDescriptors.readZ(chunkId) * CHUNK_DIMENSION;
+                if (distanceSquared(location, minX, minY, minZ) > maxDistanceSquared) {
+                    continue;
+                }
+                chunkCenter.set(minX + HALF_CHUNK, minY + HALF_CHUNK, minZ + HALF_CHUNK);
+                chunkBound.setCenter(chunkCenter);
+                // Each chunk is checked against all frustum planes.
+                camera.setPlaneState(0);
+                if (camera.contains(chunkBound) != Camera.FrustumIntersect.Outside) {
+                    result.set(chunkId);
+                }
+            }
+        } finally {
+            camera.setPlaneState(savedPlaneState);
+        }
+        return !result.equals(previousChunks);
+    }
+
+    /**
+     * Chunks, selected by the last {@link #cull(Camera)}. The set must not be modified.
+     */
+    @NotNull
+    @Contract(pure = true)
+    public BitSet getVisibleChunks() {
+        return visibleChunks;
+    }
+
+    @Contract(pure = true)
+    public boolean isVisible(final int chunkId) {
+        return visibleChunks.get(chunkId);
+    }
+
+    @Contract(pure = true)
+    public int getVisibleCount() {
+        return visibleChunks.cardinality();
+    }
+
+    /**
+     * IDs of the chunks, selected by the last {@link #cull(Camera)}, in ascending order.
+     */
+    @NotNull
+    public int[] getVisibleChunkIDs() {
+        return visibleChunks.stream().toArray();
+    }
+
+    /**
+     * Squared distance from the point to the nearest point of the chunk.
+     */
+    @Contract(pure = true)
+    private static float distanceSquared(
+            @NotNull final Vector3f point,
+            final float minX,
+            final float minY,
+            final float minZ) {
+        float dx = axisDistance(point.x, minX);
+        float dy = axisDistance(point.y, minY);
+        float dz = axisDistance(point.z, minZ);
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    @Contract(pure = true)
+    private static float axisDistance(final float coord, final float min) {
+        if (coord < min) {
+            return min - coord;
+        } else if (coord > min + CHUNK_DIMENSION) {
+            return coord - min - CHUNK_DIMENSION;
+        }
+        return 0;
+    }
+}
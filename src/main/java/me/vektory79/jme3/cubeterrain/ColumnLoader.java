@@ -0,0 +1,25 @@
+package me.vektory79.jme3.cubeterrain;
+
+/**
+ * Loader of the chunk columns for {@link ChunkStreamer}. The column is all chunks with the same X and Z chunk
+ * coordinates.
+ */
+public interface ColumnLoader {
+    /**
+     * Generate or load all chunks of the column.
+     *
+     * @param chunkX X coordinate of the column in chunks.
+     * @param chunkZ Z coordinate of the column in chunks.
+     * @return {@code false} if column can't be loaded now, e.g. because there is not enough free chunks.
+     * Partially loaded column must be released before returning.
+     */
+    boolean loadColumn(int chunkX, int chunkZ);
+
+    /**
+     * Release all chunks of the column.
+     *
+     * @param chunkX X coordinate of the column in chunks.
+     * @param chunkZ Z coordinate of the column in chunks.
+     */
+    void unloadColumn(int chunkX, int chunkZ);
+}
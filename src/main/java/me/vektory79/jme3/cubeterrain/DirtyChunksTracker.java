@@ -0,0 +1,168 @@
+package me.vektory79.jme3.cubeterrain;
+
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+import me.vektory79.jme3.cubeterrain.TerrainBlockOptionsBuffer.Face;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Tracker of the chunks, which visibility masks should be recalculated.
+ * <p>
+ * <p>The chunk is marked as dirty when it's block types are changed or when it is reserved. When the changed block
+ * lies on the chunk border, then the neighbour chunk behind that border is marked too, because visibility of it's
+ * border faces depends on the changed block. When chunk is freed, it and all it's neighbours are marked.</p>
+ */
+public final class DirtyChunksTracker {
+    private static final Face[] FACES = Face.values();
+    private static final int ALL_FACES = TerrainBlockOptionsBuffer.VISIBILITY_FIELD_MASK;
+
+    @NotNull
+    private final ChunkDescriptorsBuffer chunkDescriptors;
+    @NotNull
+    private final TIntHashSet dirtyChunks = new TIntHashSet();
+
+    // Cache of the last marked chunk. Serial writes to the same chunk are very common (e.g. chunk generation),
+    // so it's allow to avoid hash set access and neighbours lookup for each block.
+    private int lastChunkId = Integer.MIN_VALUE;
+    private int lastMarkedFaces;
+
+    DirtyChunksTracker(@NotNull final ChunkDescriptorsBuffer chunkDescriptors) {
+        this.chunkDescriptors = chunkDescriptors;
+    }
+
+    /**
+     * Mark chunk as dirty.
+     *
+     * @param chunkId ID of the chunk.
+     */
+    public void markDirty(final int chunkId) {
+        markDirty(chunkId, 0);
+    }
+
+    /**
+     * Mark chunk and some of it's neighbours as dirty.
+     *
+     * @param chunkId        ID of the chunk.
+     * @param neighbourFaces bit mask of the faces, looking to the neighbours to be marked. The bits are the same as
+     *                       in visibility field of {@link TerrainBlockOptionsBuffer}.
+     */
+    public void markDirty(final int chunkId, final int neighbourFaces) {
+        if (chunkId != lastChunkId) {
+            dirtyChunks.add(chunkId);
+            lastChunkId = chunkId;
+            lastMarkedFaces = 0;
+        }
+        int newFaces = neighbourFaces & ~lastMarkedFaces;
+        if (newFaces != 0) {
+            lastMarkedFaces |= newFaces;
+            markNeighbours(chunkId, newFaces);
+        }
+    }
+
+    /**
+     * Mark the chunk, containing the block and the neighbour chunks, which borders are touched by this block.
+     *
+     * @param blockAddress address of the block.
+     */
+    public void markBlockDirty(final int blockAddress) {
+        markDirty(AbstractTerrainBlockBuffer.getChunkId(blockAddress), getBorderFaces(blockAddress));
+    }
+
+    /**
+     * Mark chunk and all it's neighbours as dirty.
+     *
+     * @param chunkId ID of the chunk.
+     */
+    public void markWithNeighboursDirty(final int chunkId) {
+        markDirty(chunkId, ALL_FACES);
+    }
+
+    /**
+     * Mark all neighbours of the chunk as dirty, but not the chunk itself. Used when chunk is going to be freed.
+     *
+     * @param chunkId ID of the chunk.
+     */
+    public void markNeighboursDirty(final int chunkId) {
+        markNeighbours(chunkId, ALL_FACES);
+    }
+
+    /**
+     * Stop tracking of the chunk. Used when chunk is freed.
+     *
+     * @param chunkId ID of the chunk.
+     */
+    public void forget(final int chunkId) {
+        dirtyChunks.remove(chunkId);
+        if (chunkId == lastChunkId) {
+            resetCache();
+        }
+    }
+
+    @Contract(pure = true)
+    public boolean isEmpty() {
+        return dirtyChunks.isEmpty();
+    }
+
+    @Contract(pure = true)
+    public int size() {
+        return dirtyChunks.size();
+    }
+
+    @Contract(pure = true)
+    public boolean isDirty(final int chunkId) {
+        return dirtyChunks.contains(chunkId);
+    }
+
+    /**
+     * Take all dirty chunks and reset the tracker.
+     *
+     * @return set of dirty chunk IDs.
+     */
+    @NotNull
+    public TIntSet drain() {
+        TIntSet result = new TIntHashSet(dirtyChunks);
+        clear();
+        return result;
+    }
+
+    public void clear() {
+        dirtyChunks.clear();
+        resetCache();
+    }
+
+    private void resetCache() {
+        lastChunkId = Integer.MIN_VALUE;
+        lastMarkedFaces = 0;
+    }
+
+    private void markNeighbours(final int chunkId, final int faces) {
+        for (Face face : FACES) {
+            if ((faces & face.getVisibilityBit()) != 0) {
+                int neighbourId = chunkDescriptors.getNeighbourID(chunkId, face);
+                if (neighbourId != Integer.MIN_VALUE) {
+                    dirtyChunks.add(neighbourId);
+                }
+            }
+        }
+    }
+
+    @Contract(pure = true)
+    private static int getBorderFaces(final int blockAddress) {
+        int faces = 0;
+        faces |= getBorderFace(AbstractTerrainBlockBuffer.getBlockX(blockAddress), Face.LEFT, Face.RIGHT);
+        faces |= getBorderFace(AbstractTerrainBlockBuffer.getBlockY(blockAddress), Face.BOTTOM, Face.TOP);
+        faces |= getBorderFace(AbstractTerrainBlockBuffer.getBlockZ(blockAddress), Face.BACK, Face.FRONT);
+        return faces;
+    }
+
+    @Contract(pure = true)
+    private static int getBorderFace(final int coord, @NotNull final Face lower, @NotNull final Face upper) {
+        if (coord == 0) {
+            return lower.getVisibilityBit();
+        } else if (coord == AbstractTerrainBlockBuffer.CHUNK_DIMENSION - 1) {
+            return upper.getVisibilityBit();
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,160 @@
+package me.vektory79.jme3.cubeterrain;
+
+import gnu.trove.list.array.TIntArrayList;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_SIZE;
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_SIZE_FACTOR;
+
+/**
+ * Modified block address ranges of the terrain block buffer.
+ * <p>
+ * <p>All modifications inside one chunk are merged to the single range from the first to the last modified block.
+ * Ranges of the adjacent chunks are merged too, when they touch each other. So the amount of ranges is never greater
+ * than amount of modified chunks.</p>
+ * <p>
+ * <p>Methods are synchronized, because chunks can be modified by parallel culling.</p>
+ */
+public final class DirtyRanges {
+    private static final int CLEAN = -1;
+
+    private final int blockBytes;
+    // First and last (inclusive) modified block offset inside each chunk.
+    @NotNull
+    private final int[] chunkFrom;
+    @NotNull
+    private final int[] chunkTo;
+    @NotNull
+    private final TIntArrayList dirtyChunks;
+
+    /**
+     * @param chunks     amount of chunks in the buffer.
+     * @param blockBytes size of single block value in bytes.
+     */
+    public DirtyRanges(final int chunks, final int blockBytes) {
+        this.blockBytes = blockBytes;
+        chunkFrom = new int[chunks];
+        chunkTo = new int[chunks];
+        Arrays.fill(chunkFrom, CLEAN);
+        Arrays.fill(chunkTo, CLEAN);
+        dirtyChunks = new TIntArrayList(chunks);
+    }
+
+    /**
+     * Mark single block as modified.
+     *
+     * @param blockAddress address of the block.
+     */
+    public synchronized void add(final int blockAddress) {
+        int chunkId = blockAddress >> CHUNK_SIZE_FACTOR;
+        int offset = blockAddress & (CHUNK_SIZE - 1);
+        markChunk(chunkId, offset, offset);
+    }
+
+    /**
+     * Mark the range of blocks as modified.
+     *
+     * @param fromAddress address of the first block.
+     * @param toAddress   address of the block after the last one.
+     */
+    public synchronized void add(final int fromAddress, final int toAddress) {
+        int address = fromAddress;
+        while (address < toAddress) {
+            int chunkId = address >> CHUNK_SIZE_FACTOR;
+            int chunkEnd = Math.min((chunkId + 1) << CHUNK_SIZE_FACTOR, toAddress);
+            markChunk(chunkId, address & (CHUNK_SIZE - 1), (chunkEnd - 1) & (CHUNK_SIZE - 1));
+            address = chunkEnd;
+        }
+    }
+
+    /**
+     * Mark all ranges of another set as modified. Sets must be of the same buffer.
+     *
+     * @param ranges modified ranges to be merged.
+     */
+    public synchronized void add(@NotNull final DirtyRanges ranges) {
+        synchronized (ranges) {
+            for (int i = 0; i < ranges.dirtyChunks.size(); i++) {
+                int chunkId = ranges.dirtyChunks.get(i);
+                markChunk(chunkId, ranges.chunkFrom[chunkId], ranges.chunkTo[chunkId]);
+            }
+        }
+    }
+
+    @Contract(pure = true)
+    public synchronized boolean isEmpty() {
+        return dirtyChunks.isEmpty();
+    }
+
+    /**
+     * Amount of modified chunks.
+     */
+    @Contract(pure = true)
+    public synchronized int getChunkCount() {
+        return dirtyChunks.size();
+    }
+
+    /**
+     * Modified byte ranges of the buffer, ordered by address.
+     *
+     * @return pairs of the first byte offset and the offset after the last byte of each range.
+     */
+    @NotNull
+    public synchronized int[] getByteRanges() {
+        int[] chunks = dirtyChunks.toArray();
+        Arrays.sort(chunks);
+        int[] ranges = new int[chunks.length * 2];
+        int count = 0;
+        for (int chunkId : chunks) {
+            int from = ((chunkId << CHUNK_SIZE_FACTOR) + chunkFrom[chunkId]) * blockBytes;
+            int to = ((chunkId << CHUNK_SIZE_FACTOR) + chunkTo[chunkId] + 1) * blockBytes;
+            if (count > 0 && ranges[count - 1] == from) {
+                ranges[count - 1] = to;
+            } else {
+                ranges[count++] = from;
+                ranges[count++] = to;
+            }
+        }
+        return Arrays.copyOf(ranges, count);
+    }
+
+    /**
+     * Total size of all modified ranges in bytes.
+     */
+    @Contract(pure = true)
+    public synchronized long getDirtyBytes() {
+        long result = 0;
+        for (int i = 0; i < dirtyChunks.size(); i++) {
+            int chunkId = dirtyChunks.get(i);
+            result += (long) (chunkTo[chunkId] - chunkFrom[chunkId] + 1) * blockBytes;
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < dirtyChunks.size(); i++) {
+            int chunkId = dirtyChunks.get(i);
+            chunkFrom[chunkId] = CLEAN;
+            chunkTo[chunkId] = CLEAN;
+        }
+        dirtyChunks.clear();
+    }
+
+    private void markChunk(final int chunkId, final int from, final int to) {
+        if (chunkFrom[chunkId] == CLEAN) {
+            chunkFrom[chunkId] = from;
+            chunkTo[chunkId] = to;
+            dirtyChunks.add(chunkId);
+        } else {
+            if (from < chunkFrom[chunkId]) {
+                chunkFrom[chunkId] = from;
+            }
+            if (to > chunkTo[chunkId]) {
+                chunkTo[chunkId] = to;
+            }
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package me.vektory79.jme3.cubeterrain;
+
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.util.BufferUtils;
+import me.vektory79.jme3.cubeterrain.BlockTypeDescriptorsBuffer.Type;
+import me.vektory79.jme3.cubeterrain.TerrainBlockOptionsBuffer.Face;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_DIMENSION;
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_SIZE;
+
+/**
+ * Builder of the triangle mesh of the chunk with the greedy merge of the faces.
+ * <p>
+ * <p>Mesh is built from the block types and the visibility masks, calculated by the culling. Each face direction is
+ * processed by slices: visible faces of the slice form the 16x16 mask, which is covered by the rectangles of the
+ * faces with the same block type and orientation. Each rectangle becomes a quad of two triangles. So the merged
+ * quads cover exactly the visible faces of the chunk, without gaps and overlaps.</p>
+ * <p>
+ * <p>Coarse {@link ChunkLodPyramid levels of detail} are meshed the same way, but the visibility is calculated by
+ * the mesher from the downsampled block types and the border planes of the neighbours. The cells of the coarse level
+ * are scaled to cover the whole chunk.</p>
+ * <p>
+ * <p>Borders towards the neighbours, drawn at the other level of detail, can be meshed as open: all faces of opaque
+ * blocks on such border are emitted. So the surfaces of the different levels don't leave the holes at the seam.</p>
+ * <p>
+ * <p>Only opaque blocks are meshed, as in the opaque geometry of {@link TerrainNode}. Vertices are in the chunk
+ * local coordinates. Vertex buffers:</p>
+ * <ul>
+ * <li>{@link VertexBuffer.Type#Position} - position of the vertex;</li>
+ * <li>{@link VertexBuffer.Type#TexCoord} - texture coordinates in blocks, so the texture is repeated along
+ * the merged quad;</li>
+ * <li>{@link VertexBuffer.Type#TexCoord2} - position and size of the block type texture in the atlas (see
+ * {@link Type}).</li>
+ * </ul>
+ * <p>
+ * <p>Instance holds the working arrays, so it must not be shared between threads.</p>
+ */
+public final class GreedyChunkMesher {
+    private static final Face[] FACES = Face.values();
+    private static final Type[] TYPES = Type.values();
+    private static final int ORIENTATION_SHIFT = 6;
+    private static final int ORIENTATION_MASK = 0b11111;
+    private static final int ORIENTATION_BITS = 5;
+    private static final int INITIAL_QUADS = 256;
+
+    private final int[] types = new int[CHUNK_SIZE];
+    private final int[] options = new int[CHUNK_SIZE];
+    // Merge keys of the faces of the current slice. Zero means no visible face.
+    private final int[] mask = new int[CHUNK_DIMENSION * CHUNK_DIMENSION];
+    private final int[] corner = new int[3];
+    private final int[] axisStrides = new int[3];
+    // Grid of the current build: amount of cells by each axis and size of the cell in blocks.
+    private int dimension;
+    private int scale;
+    // Faces, which borders are meshed as open.
+    private int openFaces;
+
+    @NotNull
+    private float[] positions = new float[INITIAL_QUADS * 4 * 3];
+    @NotNull
+    private float[] texCoords = new float[INITIAL_QUADS * 4 * 2];
+    @NotNull
+    private float[] atlasCoords = new float[INITIAL_QUADS * 4 * 3];
+    @NotNull
+    private int[] indices = new int[INITIAL_QUADS * 6];
+    private int quads;
+    private int mergedFaces;
+
+    /**
+     * Build the mesh data of the chunk at the full resolution. The result is kept by the mesher until the next build.
+     *
+     * @param terrain mesh, containing the chunk.
+     * @param chunkId ID of the chunk.
+     * @return amount of the quads.
+     */
+    public int build(@NotNull final TerrainChunksMesh terrain, final int chunkId) {
+        return build(terrain, chunkId, 0);
+    }
+
+    /**
+     * Build the mesh data of the chunk at the full resolution.
+     *
+     * @param terrain   mesh, containing the chunk.
+     * @param chunkId   ID of the chunk.
+     * @param openFaces bit mask of the borders to be meshed as open. The bits are the same as in visibility field of
+     *                  {@link TerrainBlockOptionsBuffer}.
+     * @return amount of the quads.
+     */
+    public int build(@NotNull final TerrainChunksMesh terrain, final int chunkId, final int openFaces) {
+        reset(CHUNK_DIMENSION, openFaces);
+        if (!terrain.getChunkDescriptors().isUsed(chunkId)) {
+            return 0;
+        }
+        terrain.getBlockType().readChunk(chunkId, types);
+        terrain.getBlockOptions().readChunk(chunkId, options);
+        return mergeFaces();
+    }
+
+    /**
+     * Build the mesh data of the downsampled chunk. Visibility of the cells is calculated from the cells themselves
+     * and the border planes of the neighbours.
+     *
+     * @param cells      block types of the level (see {@link ChunkLodPyramid#getLevel(int)}).
+     * @param dimension  amount of the cells by each axis.
+     * @param planes     block types of the neighbour cells behind the borders: dimension x dimension cells per face,
+     *                   in the face ordinal order (see {@link #readBorderPlane(int[], int, Face, int[], int)}).
+     * @param openFaces  bit mask of the borders to be meshed as open, regardless of the planes.
+     * @return amount of the quads.
+     */
+    public int build(
+            @NotNull final int[] cells,
+            final int dimension,
+            @NotNull final int[] planes,
+            final int openFaces) {
+        reset(dimension, openFaces);
+        int cellCount = dimension * dimension * dimension;
+        System.arraycopy(cells, 0, types, 0, cellCount);
+        for (int z = 0; z < dimension; z++) {
+            for (int y = 0; y < dimension; y++) {
+                for (int x = 0; x < dimension; x++) {
+                    int address = x + y * axisStrides[1] + z * axisStrides[2];
+                    options[address] = TYPES[types[address]].isTransparent() ? 0 : getVisibility(x, y, z, planes);
+                }
+            }
+        }
+        return mergeFaces();
+    }
+
+    /**
+     * Read the border plane of the cells grid, which lies on the face side.
+     *
+     * @param cells     block types of the grid.
+     * @param dimension amount of the cells by each axis.
+     * @param face      side of the grid.
+     * @param dst       destination array. Cells are written in the same order, as expected by
+     *                  {@link #build(int[], int, int[], int)} for the face, looking at this plane from the other side.
+     * @param offset    position in the destination array.
+     */
+    public static void readBorderPlane(
+            @NotNull final int[] cells,
+            final int dimension,
+            @NotNull final Face face,
+            @NotNull final int[] dst,
+            final int offset) {
+        int axis = getAxis(face);
+        int[] strides = {1, dimension, dimension * dimension};
+        int sliceAddress = (isPositive(face) ? dimension - 1 : 0) * strides[axis];
+        int uStride = strides[(axis + 1) % 3];
+        int vStride = strides[(axis + 2) % 3];
+        for (int v = 0; v < dimension; v++) {
+            for (int u = 0; u < dimension; u++) {
+                dst[offset + v * dimension + u] = cells[sliceAddress + u * uStride + v * vStride];
+            }
+        }
+    }
+
+    private int getVisibility(final int x, final int y, final int z, @NotNull final int[] planes) {
+        int visibility = 0;
+        for (Face face : FACES) {
+            int nx = x + face.getDx();
+            int ny = y + face.getDy();
+            int nz = z + face.getDz();
+            int neighbourType;
+            if (nx >= 0 && nx < dimension && ny >= 0 && ny < dimension && nz >= 0 && nz < dimension) {
+                neighbourType = types[nx + ny * axisStrides[1] + nz * axisStrides[2]];
+            } else {
+                int axis = getAxis(face);
+                int u = axis == 0 ? y : axis == 1 ? z : x;
+                int v = axis == 0 ? z : axis == 1 ? x : y;
+                neighbourType = planes[face.ordinal() * dimension * dimension + v * dimension + u];
+            }
+            if (TYPES[neighbourType].isTransparent()) {
+                visibility |= face.getVisibilityBit();
+            }
+        }
+        return visibility;
+    }
+
+    private void reset(final int gridDimension, final int gridOpenFaces) {
+        quads = 0;
+        mergedFaces = 0;
+        dimension = gridDimension;
+        scale = CHUNK_DIMENSION / gridDimension;
+        openFaces = gridOpenFaces;
+        axisStrides[0] = 1;
+        axisStrides[1] = gridDimension;
+        axisStrides[2] = gridDimension * gridDimension;
+    }
+
+    private int mergeFaces() {
+        for (Face face : FACES) {
+            int axis = getAxis(face);
+            for (int slice = 0; slice < dimension; slice++) {
+                if (buildMask(face, axis, slice)) {
+                    mergeMask(face, axis, slice);
+                }
+            }
+        }
+        return quads;
+    }
+
+    /**
+     * Amount of the quads of the last built chunk.
+     */
+    @Contract(pure = true)
+    public int getQuads() {
+        return quads;
+    }
+
+    @Contract(pure = true)
+    public int getTriangles() {
+        return quads * 2;
+    }
+
+    @Contract(pure = true)
+    public int getVertices() {
+        return quads * 4;
+    }
+
+    /**
+     * Amount of the cell faces, covered by the quads of the last built chunk. At the full resolution without open
+     * borders equals to the amount of the visible faces of the opaque blocks.
+     */
+    @Contract(pure = true)
+    public int getMergedFaces() {
+        return mergedFaces;
+    }
+
+    /**
+     * Vertex positions of the last built chunk. Only first {@link #getVertices()} * 3 elements are valid.
+     */
+    @NotNull
+    @Contract(pure = true)
+    public float[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * Triangle indices of the last built chunk. Only first {@link #getTriangles()} * 3 elements are valid.
+     * Triangles are counterclockwise, when looking at the visible side.
+     */
+    @NotNull
+    @Contract(pure = true)
+    public int[] getIndices() {
+        return indices;
+    }
+
+    /**
+     * Write the last built chunk to the mesh. Existing buffers of the mesh are reused, if they are large enough.
+     */
+    public void writeTo(@NotNull final Mesh target) {
+        target.setMode(Mesh.Mode.Triangles);
+        int vertices = getVertices();
+        setBuffer(target, VertexBuffer.Type.Position, 3, positions, vertices * 3);
+        setBuffer(target, VertexBuffer.Type.TexCoord, 2, texCoords, vertices * 2);
+        setBuffer(target, VertexBuffer.Type.TexCoord2, 3, atlasCoords, vertices * 3);
+        setBuffer(target, indices, getTriangles() * 3);
+        target.updateCounts();
+        target.updateBound();
+    }
+
+    /**
+     * Fill the mask of the slice by the merge keys of the visible faces.
+     *
+     * @return {@code false} if the slice has no visible faces.
+     */
+    private boolean buildMask(@NotNull final Face face, final int axis, final int slice) {
+        int faceBit = face.getVisibilityBit();
+        // Border of the open face: all faces of the opaque blocks are visible.
+        int forcedBit = (openFaces & faceBit) != 0 && slice == (isPositive(face) ? dimension - 1 : 0) ? faceBit : 0;
+        int uStride = axisStrides[(axis + 1) % 3];
+        int vStride = axisStrides[(axis + 2) % 3];
+        int sliceAddress = slice * axisStrides[axis];
+        boolean any = false;
+        for (int v = 0; v < dimension; v++) {
+            int address = sliceAddress + v * vStride;
+            for (int u = 0; u < dimension; u++, address += uStride) {
+                int option = options[address] | forcedBit;
+                int type = types[address];
+                int key = 0;
+                if ((option & faceBit) != 0 && !TYPES[type].isTransparent()) {
+                    key = ((type << ORIENTATION_BITS) | ((option >>> ORIENTATION_SHIFT) & ORIENTATION_MASK)) + 1;
+                    any = true;
+                }
+                mask[v * dimension + u] = key;
+            }
+        }
+        return any;
+    }
+
+    private void mergeMask(@NotNull final Face face, final int axis, final int slice) {
+        for (int v = 0; v < dimension; v++) {
+            int u = 0;
+            while (u < dimension) {
+                int key = mask[v * dimension + u];
+                if (key == 0) {
+                    u++;
+                    continue;
+                }
+                int width = 1;
+                while (u + width < dimension && mask[v * dimension + u + width] == key) {
+                    width++;
+                }
+                int height = 1;
+                while (v + height < dimension && isRowOf(key, u, v + height, width)) {
+                    height++;
+                }
+                for (int row = v; row < v + height; row++) {
+                    Arrays.fill(mask, row * dimension + u, row * dimension + u + width, 0);
+                }
+                addQuad(face, axis, slice, u, v, width, height, ((key - 1) >>> ORIENTATION_BITS));
+                u += width;
+            }
+        }
+    }
+
+    private boolean isRowOf(final int key, final int u, final int v, final int width) {
+        int start = v * dimension + u;
+        for (int i = start; i < start + width; i++) {
+            if (mask[i] != key) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addQuad(
+            @NotNull final Face face,
+            final int axis,
+            final int slice,
+            final int u,
+            final int v,
+            final int width,
+            final int height,
+            final int type) {
+        ensureCapacity(quads + 1);
+        int uAxis = (axis + 1) % 3;
+        int vAxis = (axis + 2) % 3;
+        boolean positive = isPositive(face);
+        // Face of the positive direction lies on the far side of the block. Corners are in blocks, not in cells.
+        corner[axis] = (positive ? slice + 1 : slice) * scale;
+        int vertex = quads * 4;
+        for (int i = 0; i < 4; i++) {
+            // Corners go counterclockwise around the axis: (0, 0), (w, 0), (w, h), (0, h).
+            corner[uAxis] = (u + (i == 1 || i == 2 ? width : 0)) * scale;
+            corner[vAxis] = (v + (i >= 2 ? height : 0)) * scale;
+            addVertex(vertex + i, axis, TYPES[type]);
+        }
+        int index = quads * 6;
+        // U x V is the positive direction of the axis, so the negative faces are reversed.
+        indices[index] = vertex;
+        indices[index + 1] = positive ? vertex + 1 : vertex + 2;
+        indices[index + 2] = positive ? vertex + 2 : vertex + 1;
+        indices[index + 3] = vertex;
+        indices[index + 4] = positive ? vertex + 2 : vertex + 3;
+        indices[index + 5] = positive ? vertex + 3 : vertex + 2;
+        quads++;
+        mergedFaces += width * height;
+    }
+
+    private void addVertex(final int vertex, final int axis, @NotNull final Type type) {
+        positions[vertex * 3] = corner[0];
+        positions[vertex * 3 + 1] = corner[1];
+        positions[vertex * 3 + 2] = corner[2];
+        // Texture is upright on the side faces: the second coordinate goes along Y.
+        if (axis == 1) {
+            texCoords[vertex * 2] = corner[0];
+            texCoords[vertex * 2 + 1] = corner[2];
+        } else {
+            texCoords[vertex * 2] = corner[axis == 0 ? 2 : 0];
+            texCoords[vertex * 2 + 1] = corner[1];
+        }
+        atlasCoords[vertex * 3] = type.getTextureX();
+        atlasCoords[vertex * 3 + 1] = type.getTextureY();
+        atlasCoords[vertex * 3 + 2] = type.getTextureSize();
+    }
+
+    @Contract(pure = true)
+    private static int getAxis(@NotNull final Face face) {
+        return face.getDx() != 0 ? 0 : face.getDy() != 0 ? 1 : 2;
+    }
+
+    @Contract(pure = true)
+    private static boolean isPositive(@NotNull final Face face) {
+        return face.getDx() + face.getDy() + face.getDz() > 0;
+    }
+
+    private void ensureCapacity(final int quadCount) {
+        if (indices.length >= quadCount * 6) {
+            return;
+        }
+        int capacity = Math.max(quadCount, indices.length / 6 * 2);
+        positions = Arrays.copyOf(positions, capacity * 4 * 3);
+        texCoords = Arrays.copyOf(texCoords, capacity * 4 * 2);
+        atlasCoords = Arrays.copyOf(atlasCoords, capacity * 4 * 3);
+        indices = Arrays.copyOf(indices, capacity * 6);
+    }
+
+    private static void setBuffer(
+            @NotNull final Mesh target,
+            @NotNull final VertexBuffer.Type type,
+            final int components,
+            @NotNull final float[] data,
+            final int length) {
+        VertexBuffer buffer = target.getBuffer(type);
+        FloatBuffer dst = buffer != null ? (FloatBuffer) buffer.getData() : null;
+        if (dst == null || dst.capacity() < length) {
+            dst = BufferUtils.createFloatBuffer(length);
+        }
+        dst.clear();
+        dst.put(data, 0, length);
+        dst.flip();
+        if (buffer == null) {
+            target.setBuffer(type, components, dst);
+        } else {
+            buffer.updateData(dst);
+        }
+    }
+
+    private static void setBuffer(@NotNull final Mesh target, @NotNull final int[] data, final int length) {
+        VertexBuffer buffer = target.getBuffer(VertexBuffer.Type.Index);
+        IntBuffer dst = buffer != null ? (IntBuffer) buffer.getData() : null;
+        if (dst == null || dst.capacity() < length) {
+            dst = BufferUtils.createIntBuffer(length);
+        }
+        dst.clear();
+        dst.put(data, 0, length);
+        dst.flip();
+        if (buffer == null) {
+            target.setBuffer(VertexBuffer.Type.Index, 3, dst);
+        } else {
+            buffer.updateData(dst);
+        }
+    }
+}
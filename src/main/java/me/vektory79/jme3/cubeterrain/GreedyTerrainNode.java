@@ -0,0 +1,358 @@
+package me.vektory79.jme3.cubeterrain;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.material.Material;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.queue.RenderQueue;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.texture.Texture;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+import me.vektory79.jme3.cubeterrain.BlockTypeDescriptorsBuffer.Type;
+import me.vektory79.jme3.cubeterrain.TerrainBlockOptionsBuffer.Face;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_DIMENSION;
+
+/**
+ * Terrain geometry, built on CPU by {@link GreedyChunkMesher}: the geometry of triangles per chunk. Alternative to
+ * the point mesh of {@link TerrainChunksMesh}, which is expanded to the faces by the geometry shader.
+ * <p>
+ * <p>Geometries are rebuilt for the chunks, culled since the previous {@link #rebuildChanged()}. So the node must
+ * be updated after the culling of the terrain mesh, as {@link TerrainNode} does.</p>
+ * <p>
+ * <p>Far chunks can be drawn at the coarser {@link ChunkLodPyramid levels of detail}. Level is chosen by the distance
+ * from the camera to the center of the chunk: the full resolution within the LOD distance, and each next level within
+ * the twice larger distance. Level is switched only when the distance crosses the boundary by
+ * {@link #LOD_HYSTERESIS}, so the camera, moving near the boundary, doesn't rebuild the chunk each frame. The border
+ * towards the neighbour of the other level is meshed as open, so there are no holes at the seams. Changed chunk
+ * re-votes only the cells of it's levels, which cover the changed blocks.</p>
+ */
+public class GreedyTerrainNode extends Node {
+    /**
+     * Relative distance beyond the level boundary, which switches the level.
+     */
+    public static final float LOD_HYSTERESIS = 0.1f;
+
+    private static final Face[] FACES = Face.values();
+    private static final Face[] OPPOSITE_FACES = new Face[FACES.length];
+
+    static {
+        for (Face face : FACES) {
+            for (Face opposite : FACES) {
+                if (opposite.getDx() == -face.getDx() && opposite.getDy() == -face.getDy()
+                        && opposite.getDz() == -face.getDz()) {
+                    OPPOSITE_FACES[face.ordinal()] = opposite;
+                }
+            }
+        }
+    }
+
+    @NotNull
+    private final TerrainChunksMesh terrain;
+    @NotNull
+    private final Material material;
+    @NotNull
+    private final GreedyChunkMesher mesher = new GreedyChunkMesher();
+    // Per chunk state, indexed by chunk ID.
+    @NotNull
+    private final Geometry[] geometries;
+    @NotNull
+    private final int[] chunkQuads;
+    // Level of detail of the chunk or -1 if it's not chosen yet.
+    @NotNull
+    private final int[] chunkLevels;
+    @NotNull
+    private final ChunkLodPyramid[] pyramids;
+    // Chunks to be rebuilt on the next rebuildChanged(), besides the culled ones.
+    @NotNull
+    private final TIntHashSet pendingChunks = new TIntHashSet();
+    private final int[] neighbourIDs = new int[FACES.length];
+    private final int[] planes = new int[FACES.length * CHUNK_DIMENSION * CHUNK_DIMENSION];
+    // LOD distance in blocks. Zero disables the levels of detail.
+    private float lodDistance;
+    @Nullable
+    private Vector3f lodCenter;
+    private int quads;
+    private int meshedChunks;
+
+    public GreedyTerrainNode(
+            @NotNull final AssetManager contentMan,
+            @NotNull final String name,
+            @NotNull final TerrainChunksMesh terrain) {
+        super(name);
+        this.terrain = terrain;
+        material = new Material(contentMan, "BlockWorld/Materials/GreedyTerrain.j3md");
+        Texture texture = contentMan.loadTexture("BlockWorld/Textures/block-textures.png");
+        texture.setMagFilter(Texture.MagFilter.Nearest);
+        texture.setMinFilter(Texture.MinFilter.NearestNoMipMaps);
+        material.setTexture("ColorMap", texture);
+
+        int chunks = terrain.getChunks();
+        geometries = new Geometry[chunks];
+        chunkQuads = new int[chunks];
+        chunkLevels = new int[chunks];
+        pyramids = new ChunkLodPyramid[chunks];
+        Arrays.fill(chunkLevels, -1);
+
+        terrain.setTrackCulledChunks(true);
+        for (int chunkId = 0; chunkId < chunks; chunkId++) {
+            pendingChunks.add(chunkId);
+        }
+        rebuildChanged();
+    }
+
+    /**
+     * Amount of the quads in all geometries.
+     */
+    @Contract(pure = true)
+    public int getQuads() {
+        return quads;
+    }
+
+    /**
+     * Amount of the chunks, which have the geometry.
+     */
+    @Contract(pure = true)
+    public int getMeshedChunks() {
+        return meshedChunks;
+    }
+
+    @Contract(pure = true)
+    public float getLodDistance() {
+        return lodDistance;
+    }
+
+    /**
+     * Set the distance of the full resolution. Levels are chosen by the next {@link #updateLevels(Vector3f)}.
+     *
+     * @param lodDistance distance in blocks or zero to draw all chunks at the full resolution.
+     */
+    public void setLodDistance(final float lodDistance) {
+        this.lodDistance = lodDistance;
+        if (lodDistance <= 0) {
+            lodCenter = null;
+            for (int chunkId = 0; chunkId < chunkLevels.length; chunkId++) {
+                setLevel(chunkId, 0);
+            }
+        }
+    }
+
+    /**
+     * Level of detail of the chunk.
+     */
+    @Contract(pure = true)
+    public int getLevel(final int chunkId) {
+        return Math.max(chunkLevels[chunkId], 0);
+    }
+
+    /**
+     * Choose the levels of detail of the chunks for the camera location. Chunks with the changed level and their
+     * neighbours are rebuilt on the next {@link #rebuildChanged()}.
+     *
+     * @param location position of the camera in blocks.
+     */
+    public void updateLevels(@NotNull final Vector3f location) {
+        if (lodDistance <= 0) {
+            return;
+        }
+        if (lodCenter == null) {
+            lodCenter = new Vector3f(location.x, location.y, location.z);
+        } else {
+            lodCenter.set(location.x, location.y, location.z);
+        }
+        ChunkDescriptorsBuffer chunkDescriptors = terrain.getChunkDescriptors();
+        for (int chunkId = 0; chunkId < chunkLevels.length; chunkId++) {
+            if (chunkDescriptors.isUsed(chunkId)) {
+                setLevel(chunkId, selectLevel(chunkId, chunkLevels[chunkId]));
+            }
+        }
+    }
+
+    /**
+     * Rebuild the geometries of the chunks, culled since the previous call, and of the chunks, which level of detail
+     * was changed.
+     *
+     * @return amount of rebuilt chunks.
+     */
+    public int rebuildChanged() {
+        TIntSet chunkIDs = terrain.drainCulledChunks();
+        chunkIDs.forEach(chunkId -> {
+            if (pyramids[chunkId] != null) {
+                pyramids[chunkId].invalidate();
+            }
+            return true;
+        });
+        chunkIDs.addAll(pendingChunks);
+        pendingChunks.clear();
+        // Levels of the new chunks are chosen first, so their neighbours see them.
+        ChunkDescriptorsBuffer chunkDescriptors = terrain.getChunkDescriptors();
+        chunkIDs.forEach(chunkId -> {
+            if (!chunkDescriptors.isUsed(chunkId)) {
+                chunkLevels[chunkId] = -1;
+            } else if (chunkLevels[chunkId] < 0) {
+                chunkLevels[chunkId] = lodCenter != null ? selectLevel(chunkId, 0) : 0;
+            }
+            return true;
+        });
+        chunkIDs.forEach(chunkId -> {
+            rebuild(chunkId);
+            return true;
+        });
+        return chunkIDs.size();
+    }
+
+    /**
+     * Stop tracking of the culled chunks and detach all geometries.
+     */
+    public void dispose() {
+        terrain.setTrackCulledChunks(false);
+        detachAllChildren();
+        Arrays.fill(geometries, null);
+        Arrays.fill(chunkQuads, 0);
+        quads = 0;
+        meshedChunks = 0;
+    }
+
+    private void setLevel(final int chunkId, final int level) {
+        if (chunkLevels[chunkId] == level || chunkLevels[chunkId] < 0) {
+            return;
+        }
+        chunkLevels[chunkId] = level;
+        // Open borders of the neighbours depend on the level of this chunk.
+        pendingChunks.add(chunkId);
+        terrain.getChunkDescriptors().getNeighbourIDs(chunkId, neighbourIDs);
+        for (int neighbourId : neighbourIDs) {
+            if (neighbourId != Integer.MIN_VALUE) {
+                pendingChunks.add(neighbourId);
+            }
+        }
+    }
+
+    private int selectLevel(final int chunkId, final int current) {
+        Vector3f center = lodCenter;
+        if (lodDistance <= 0 || center == null) {
+            return 0;
+        }
+        ChunkDescriptorsBuffer chunkDescriptors = terrain.getChunkDescriptors();
+        float half = CHUNK_DIMENSION * 0.5f;
+        float dx = chunkDescriptors.readX(chunkId) * CHUNK_DIMENSION + half - center.x;
+        float dy = chunkDescriptors.readY(chunkId) * CHUNK_DIMENSION + half - center.y;
+        float dz = chunkDescriptors.readZ(chunkId) * CHUNK_DIMENSION + half - center.z;
+        float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        int level = getLevelAt(distance);
+        if (level > current) {
+            level = Math.max(current, getLevelAt(distance / (1 + LOD_HYSTERESIS)));
+        } else if (level < current) {
+            level = Math.min(current, getLevelAt(distance * (1 + LOD_HYSTERESIS)));
+        }
+        return level;
+    }
+
+    private int getLevelAt(final float distance) {
+        int level = 0;
+        float limit = lodDistance;
+        while (distance > limit && level < ChunkLodPyramid.MAX_LEVEL) {
+            level++;
+            limit *= 2;
+        }
+        return level;
+    }
+
+    private void rebuild(final int chunkId) {
+        int level = chunkLevels[chunkId];
+        int built = level < 0 ? 0 : level == 0 ? buildFull(chunkId) : buildLevel(chunkId, level);
+        quads += built - chunkQuads[chunkId];
+        chunkQuads[chunkId] = built;
+        Geometry geometry = geometries[chunkId];
+        if (built == 0) {
+            // Freed chunk or chunk without visible faces.
+            if (geometry != null) {
+                detachChild(geometry);
+                geometries[chunkId] = null;
+                meshedChunks--;
+            }
+            if (level < 0) {
+                pyramids[chunkId] = null;
+            }
+            return;
+        }
+        if (geometry == null) {
+            geometry = new Geometry(getName() + "_" + chunkId, new Mesh());
+            geometry.setQueueBucket(RenderQueue.Bucket.Opaque);
+            geometry.setMaterial(material);
+            geometries[chunkId] = geometry;
+            meshedChunks++;
+            attachChild(geometry);
+        }
+        mesher.writeTo(geometry.getMesh());
+        // Chunk ID may be reserved for the other coordinates since the previous build.
+        ChunkDescriptorsBuffer chunkDescriptors = terrain.getChunkDescriptors();
+        geometry.setLocalTranslation(
+                chunkDescriptors.readX(chunkId) * CHUNK_DIMENSION,
+                chunkDescriptors.readY(chunkId) * CHUNK_DIMENSION,
+                chunkDescriptors.readZ(chunkId) * CHUNK_DIMENSION);
+        geometry.updateModelBound();
+    }
+
+    private int buildFull(final int chunkId) {
+        terrain.getChunkDescriptors().getNeighbourIDs(chunkId, neighbourIDs);
+        return mesher.build(terrain, chunkId, getOpenFaces(0));
+    }
+
+    private int buildLevel(final int chunkId, final int level) {
+        ChunkDescriptorsBuffer chunkDescriptors = terrain.getChunkDescriptors();
+        chunkDescriptors.getNeighbourIDs(chunkId, neighbourIDs);
+        int dimension = ChunkLodPyramid.getDimension(level);
+        int planeSize = dimension * dimension;
+        for (Face face : FACES) {
+            int neighbourId = neighbourIDs[face.ordinal()];
+            int offset = face.ordinal() * planeSize;
+            if (neighbourId == Integer.MIN_VALUE) {
+                // Uniform neighbour is the same at any level, the absent one is AIR.
+                int uniformType = chunkDescriptors.getUniformNeighbourType(chunkId, face);
+                int type = uniformType != Integer.MIN_VALUE ? uniformType : Type.AIR.ordinal();
+                Arrays.fill(planes, offset, offset + planeSize, type);
+            } else if (chunkLevels[neighbourId] == level) {
+                GreedyChunkMesher.readBorderPlane(getPyramid(neighbourId, level).getLevel(level), dimension,
+                        OPPOSITE_FACES[face.ordinal()], planes, offset);
+            } else {
+                // Open border, the plane is ignored.
+                Arrays.fill(planes, offset, offset + planeSize, Type.AIR.ordinal());
+            }
+        }
+        return mesher.build(getPyramid(chunkId, level).getLevel(level), dimension, planes, getOpenFaces(level));
+    }
+
+    /**
+     * Borders towards the neighbours, drawn at the other level. {@link #neighbourIDs} must be read.
+     */
+    private int getOpenFaces(final int level) {
+        int openFaces = 0;
+        for (Face face : FACES) {
+            int neighbourId = neighbourIDs[face.ordinal()];
+            if (neighbourId != Integer.MIN_VALUE && chunkLevels[neighbourId] >= 0
+                    && chunkLevels[neighbourId] != level) {
+                openFaces |= face.getVisibilityBit();
+            }
+        }
+        return openFaces;
+    }
+
+    @NotNull
+    private ChunkLodPyramid getPyramid(final int chunkId, final int level) {
+        ChunkLodPyramid pyramid = pyramids[chunkId];
+        if (pyramid == null) {
+            pyramid = new ChunkLodPyramid();
+            pyramids[chunkId] = pyramid;
+        }
+        pyramid.update(terrain.getBlockType(), chunkId, level);
+        return pyramid;
+    }
+}
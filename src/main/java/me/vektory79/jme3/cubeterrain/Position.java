@@ -2,8 +2,6 @@ package me.vektory79.jme3.cubeterrain;
 
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Objects;
-
 public final class Position {
     private int x;
     private int y;
@@ -59,7 +57,10 @@ public final class Position {
 
     @Override
     public int hashCode() {
-        return Objects.hash(x, y, z);
+        // Same as Objects.hash(x, y, z), but without varargs array allocation.
+        int result = 31 + x;
+        result = 31 * result + y;
+        return 31 * result + z;
     }
 
     @Override
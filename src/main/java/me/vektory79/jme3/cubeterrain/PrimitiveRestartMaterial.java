@@ -0,0 +1,41 @@
+package me.vektory79.jme3.cubeterrain;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.light.LightList;
+import com.jme3.material.Material;
+import com.jme3.renderer.RenderManager;
+import com.jme3.scene.Geometry;
+import org.jetbrains.annotations.NotNull;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL31;
+
+/**
+ * Material of the geometries, drawn by {@link VisibleBlocksIndex}. The primitive restart by
+ * {@link VisibleBlocksIndex#RESTART_INDEX} is enabled only while the geometry is drawn and disabled right after it.
+ * <p>
+ * <p>jME has no render state for the primitive restart, so it's switched by the LWJGL calls around the draw of
+ * the geometry. The other geometries are drawn with the default state, which the renderer expects. Requires LWJGL 3
+ * backend and OpenGL 3.1, which is implied by the shader storage buffers of the terrain material.</p>
+ */
+public class PrimitiveRestartMaterial extends Material {
+    public PrimitiveRestartMaterial(@NotNull final AssetManager contentMan, @NotNull final String defName) {
+        super(contentMan, defName);
+    }
+
+    /**
+     * Used by serialization.
+     */
+    public PrimitiveRestartMaterial() {
+    }
+
+    @Override
+    public void render(final Geometry geometry, final LightList lights, final RenderManager renderManager) {
+        GL11.glEnable(GL31.GL_PRIMITIVE_RESTART);
+        GL31.glPrimitiveRestartIndex(VisibleBlocksIndex.RESTART_INDEX);
+        try {
+            super.render(geometry, lights, renderManager);
+        } finally {
+            GL11.glDisable(GL31.GL_PRIMITIVE_RESTART);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package me.vektory79.jme3.cubeterrain;
+
+import com.jme3.util.BufferUtils;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_SIZE;
+
+/**
+ * File of the chunks of the single region: cube of 32x32x32 chunks.
+ * <p>
+ * <p>File starts with the header and the offset table, followed by the chunk payloads:</p>
+ * <pre>
+ * +-------+---------+---------+----------+------------------------------------+----------+-----
+ * | magic | version | dataEnd | reserved | offset table: 32768 x (int, int)   | payloads | ...
+ * +-------+---------+---------+----------+------------------------------------+----------+-----
+ * </pre>
+ * <p>Table entry of each chunk is the offset and the length of it's payload in bytes. Zero offset means
+ * the chunk, which was never written. The highest bit of the length is the removal flag: the removed chunk is
+ * absent, but keeps it's sectors for the next write of the same entry. The entry index is {@code x + 32y + 1024z}
+ * of the chunk inside the region.</p>
+ * <p>
+ * <p>Payload is run length encoded block types followed by run length encoded block options. Each of them is
+ * the amount of runs (int) and the runs: value (int) and length minus one (unsigned short). Runs go in
+ * the block address order and cover the whole chunk.</p>
+ * <p>
+ * <p>File is memory mapped, so the chunks are decoded straight to the block buffers and encoded straight from
+ * them. Payloads are allocated in sectors. The rewritten chunk keeps it's place, if it still fits to it's
+ * sectors, otherwise it's appended to the end of the file.</p>
+ * <p>
+ * <p>Instance is not thread safe.</p>
+ */
+public final class RegionFile implements Closeable {
+    public static final int REGION_DIMENSION_FACTOR = 5;
+    public static final int REGION_DIMENSION = 1 << REGION_DIMENSION_FACTOR; // 32
+    public static final int REGION_CHUNKS = REGION_DIMENSION * REGION_DIMENSION * REGION_DIMENSION;
+
+    private static final int MAGIC = 0x42575247; // BWRG
+    private static final int VERSION = 2;
+
+    private static final int MAGIC_SHIFT = 0;
+    private static final int VERSION_SHIFT = MAGIC_SHIFT + Integer.BYTES;
+    private static final int DATA_END_SHIFT = VERSION_SHIFT + Integer.BYTES;
+    private static final int TABLE_SHIFT = DATA_END_SHIFT + Integer.BYTES * 2;
+    private static final int ENTRY_SIZE = Integer.BYTES * 2;
+    private static final int HEADER_SIZE = TABLE_SHIFT + REGION_CHUNKS * ENTRY_SIZE;
+    private static final int REMOVED_FLAG = Integer.MIN_VALUE;
+
+    private static final int SECTOR_SIZE = 512;
+    private static final int RUN_SIZE = Integer.BYTES + Short.BYTES;
+    private static final int MAX_RUN_LENGTH = 1 << Short.SIZE;
+    // File mapping grows at least by this size to avoid remapping on each appended chunk.
+    private static final int MIN_GROWTH = 1 << 20;
+
+    @NotNull
+    private final FileChannel channel;
+    @NotNull
+    private MappedByteBuffer data;
+
+    private RegionFile(@NotNull final FileChannel channel) throws IOException {
+        this.channel = channel;
+        boolean created = channel.size() == 0;
+        data = map(Math.max(channel.size(), HEADER_SIZE));
+        if (created) {
+            data.putInt(MAGIC_SHIFT, MAGIC);
+            data.putInt(VERSION_SHIFT, VERSION);
+            data.putInt(DATA_END_SHIFT, HEADER_SIZE);
+        } else if (data.getInt(MAGIC_SHIFT) != MAGIC || data.getInt(VERSION_SHIFT) != VERSION) {
+            throw new IOException("Not a region file or unsupported version");
+        }
+    }
+
+    /**
+     * Open the region file. The file is created, if it's absent.
+     *
+     * @param path path to the file.
+     */
+    @NotNull
+    public static RegionFile open(@NotNull final Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try {
+            return new RegionFile(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Index of the chunk entry in the offset table.
+     *
+     * @param x X coordinate of the chunk inside the region.
+     * @param y Y coordinate of the chunk inside the region.
+     * @param z Z coordinate of the chunk inside the region.
+     */
+    @Contract(pure = true)
+    public static int getEntryIndex(final int x, final int y, final int z) {
+        return x + (y << REGION_DIMENSION_FACTOR) + (z << (REGION_DIMENSION_FACTOR * 2));
+    }
+
+    @Contract(pure = true)
+    public boolean contains(final int entryIndex) {
+        return getOffset(entryIndex) != 0 && (getLength(entryIndex) & REMOVED_FLAG) == 0;
+    }
+
+    /**
+     * Size of the file data in bytes.
+     */
+    @Contract(pure = true)
+    public int getDataEnd() {
+        return data.getInt(DATA_END_SHIFT);
+    }
+
+    /**
+     * Decode the chunk to the block buffers slot.
+     *
+     * @param entryIndex   index of the chunk in the region.
+     * @param blockType    destination block types buffer.
+     * @param blockOptions destination block options buffer.
+     * @param chunkId      ID of the destination chunk.
+     * @return {@code false} if the chunk is absent in the file.
+     */
+    public boolean read(
+            final int entryIndex,
+            @NotNull final TerrainBlockTypesBuffer blockType,
+            @NotNull final TerrainBlockOptionsBuffer blockOptions,
+            final int chunkId) throws IOException {
+        if (!contains(entryIndex)) {
+            return false;
+        }
+        int offset = getOffset(entryIndex);
+        int end = offset + getLength(entryIndex);
+        offset = decode(offset, end, blockType, chunkId);
+        offset = decode(offset, end, blockOptions, chunkId);
+        if (offset != end) {
+            throw new IOException("Corrupted chunk payload: " + entryIndex);
+        }
+        return true;
+    }
+
+    /**
+     * Encode the chunk from the block buffers slot.
+     *
+     * @param entryIndex   index of the chunk in the region.
+     * @param blockType    source block types buffer.
+     * @param blockOptions source block options buffer.
+     * @param chunkId      ID of the source chunk.
+     */
+    public void write(
+            final int entryIndex,
+            @NotNull final TerrainBlockTypesBuffer blockType,
+            @NotNull final TerrainBlockOptionsBuffer blockOptions,
+            final int chunkId) throws IOException {
+        int typeRuns = countRuns(blockType, chunkId);
+        int optionRuns = countRuns(blockOptions, chunkId);
+        int length = Integer.BYTES * 2 + (typeRuns + optionRuns) * RUN_SIZE;
+
+        int offset = getOffset(entryIndex);
+        if (offset == 0 || sectors(length) > sectors(getLength(entryIndex) & ~REMOVED_FLAG)) {
+            offset = getDataEnd();
+            int newEnd = offset + sectors(length) * SECTOR_SIZE;
+            ensureCapacity(newEnd);
+            data.putInt(DATA_END_SHIFT, newEnd);
+        }
+        int position = encode(offset, typeRuns, blockType, chunkId);
+        encode(position, optionRuns, blockOptions, chunkId);
+        // Entry is updated after the payload, so the entry always points to the complete payload.
+        data.putInt(TABLE_SHIFT + entryIndex * ENTRY_SIZE, offset);
+        data.putInt(TABLE_SHIFT + entryIndex * ENTRY_SIZE + Integer.BYTES, length);
+    }
+
+    /**
+     * Remove the chunk from the file. It's sectors are not reused until the chunk with the same index is written.
+     */
+    public void remove(final int entryIndex) {
+        int lengthAddress = TABLE_SHIFT + entryIndex * ENTRY_SIZE + Integer.BYTES;
+        data.putInt(lengthAddress, data.getInt(lengthAddress) | REMOVED_FLAG);
+    }
+
+    /**
+     * Write all changes to the storage device.
+     */
+    public void flush() {
+        data.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        // The mapping would hold the file until the buffer is collected otherwise.
+        BufferUtils.destroyDirectBuffer(data);
+        channel.close();
+    }
+
+    private int getOffset(final int entryIndex) {
+        return data.getInt(TABLE_SHIFT + entryIndex * ENTRY_SIZE);
+    }
+
+    private int getLength(final int entryIndex) {
+        return data.getInt(TABLE_SHIFT + entryIndex * ENTRY_SIZE + Integer.BYTES);
+    }
+
+    private int decode(
+            final int offset,
+            final int end,
+            @NotNull final AbstractTerrainBlockBuffer buffer,
+            final int chunkId) throws IOException {
+        if (offset + Integer.BYTES > end) {
+            throw new IOException("Corrupted chunk payload");
+        }
+        int runs = data.getInt(offset);
+        int position = offset + Integer.BYTES;
+        if (runs <= 0 || runs > CHUNK_SIZE || position + runs * RUN_SIZE > end) {
+            throw new IOException("Corrupted chunk payload");
+        }
+        int address = chunkId * CHUNK_SIZE;
+        int chunkEnd = address + CHUNK_SIZE;
+        for (int i = 0; i < runs; i++) {
+            int value = data.getInt(position);
+            int runEnd = address + (data.getShort(position + Integer.BYTES) & 0xFFFF) + 1;
+            if (runEnd > chunkEnd) {
+                throw new IOException("Corrupted chunk payload");
+            }
+            buffer.fillRange(address, runEnd, value);
+            address = runEnd;
+            position += RUN_SIZE;
+        }
+        if (address != chunkEnd) {
+            throw new IOException("Corrupted chunk payload");
+        }
+        return position;
+    }
+
+    private int encode(
+            final int offset,
+            final int runs,
+            @NotNull final AbstractTerrainBlockBuffer buffer,
+            final int chunkId) {
+        data.putInt(offset, runs);
+        int position = offset + Integer.BYTES;
+        int address = chunkId * CHUNK_SIZE;
+        int chunkEnd = address + CHUNK_SIZE;
+        while (address < chunkEnd) {
+            int value = buffer.getValue(address);
+            int runEnd = address + 1;
+            while (runEnd < chunkEnd && runEnd - address < MAX_RUN_LENGTH && buffer.getValue(runEnd) == value) {
+                runEnd++;
+            }
+            data.putInt(position, value);
+            data.putShort(position + Integer.BYTES, (short) (runEnd - address - 1));
+            position += RUN_SIZE;
+            address = runEnd;
+        }
+        return position;
+    }
+
+    @Contract(pure = true)
+    private static int countRuns(@NotNull final AbstractTerrainBlockBuffer buffer, final int chunkId) {
+        int address = chunkId * CHUNK_SIZE;
+        int chunkEnd = address + CHUNK_SIZE;
+        int runs = 1;
+        int previous = buffer.getValue(address);
+        for (int i = address + 1; i < chunkEnd; i++) {
+            int value = buffer.getValue(i);
+            if (value != previous) {
+                runs++;
+                previous = value;
+            }
+        }
+        return runs;
+    }
+
+    @Contract(pure = true)
+    private static int sectors(final int length) {
+        return (length + SECTOR_SIZE - 1) / SECTOR_SIZE;
+    }
+
+    private void ensureCapacity(final int size) throws IOException {
+        if (size > data.capacity()) {
+            MappedByteBuffer previous = data;
+            previous.force();
+            data = map(Math.max(size, previous.capacity() + Math.max(MIN_GROWTH, previous.capacity() >> 1)));
+            BufferUtils.destroyDirectBuffer(previous);
+        }
+    }
+
+    @NotNull
+    private MappedByteBuffer map(final long size) throws IOException {
+        MappedByteBuffer result = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        result.order(ByteOrder.BIG_ENDIAN);
+        return result;
+    }
+}
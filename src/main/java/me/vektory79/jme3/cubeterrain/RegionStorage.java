@@ -0,0 +1,143 @@
+package me.vektory79.jme3.cubeterrain;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static me.vektory79.jme3.cubeterrain.RegionFile.REGION_DIMENSION;
+import static me.vektory79.jme3.cubeterrain.RegionFile.REGION_DIMENSION_FACTOR;
+
+/**
+ * Directory of the {@link RegionFile region files}. Saves and loads the chunks of {@link TerrainChunksMesh}.
+ * <p>
+ * <p>Region files are opened on the first access and stay open until the storage is closed. The file is created
+ * only when the chunk is saved to it.</p>
+ */
+public final class RegionStorage implements Closeable {
+    @NotNull
+    private final Path directory;
+    @NotNull
+    private final TLongObjectHashMap<RegionFile> regions = new TLongObjectHashMap<>();
+
+    public RegionStorage(@NotNull final Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    @NotNull
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Check if the chunk is stored.
+     *
+     * @param x X coordinate of the chunk.
+     * @param y Y coordinate of the chunk.
+     * @param z Z coordinate of the chunk.
+     */
+    public boolean contains(final int x, final int y, final int z) throws IOException {
+        RegionFile region = getRegion(x, y, z, false);
+        return region != null && region.contains(getEntryIndex(x, y, z));
+    }
+
+    /**
+     * Reserve the chunk in the mesh and load it's block types and options from the storage.
+     *
+     * @param mesh destination mesh.
+     * @param x    X coordinate of the chunk.
+     * @param y    Y coordinate of the chunk.
+     * @param z    Z coordinate of the chunk.
+     * @return {@code false} if the chunk is not stored or there is no free chunks in the mesh.
+     */
+    public boolean loadChunk(@NotNull final TerrainChunksMesh mesh, final int x, final int y, final int z)
+            throws IOException {
+        RegionFile region = getRegion(x, y, z, false);
+        int entryIndex = getEntryIndex(x, y, z);
+        if (region == null || !region.contains(entryIndex)) {
+            return false;
+        }
+        int chunkID = mesh.useChunk(x, y, z);
+        if (chunkID == Integer.MIN_VALUE) {
+            return false;
+        }
+        return region.read(entryIndex, mesh.getBlockType(), mesh.getBlockOptions(), chunkID);
+    }
+
+    /**
+     * Save block types and options of the reserved chunk to the storage.
+     *
+     * @param mesh source mesh.
+     * @param x    X coordinate of the chunk.
+     * @param y    Y coordinate of the chunk.
+     * @param z    Z coordinate of the chunk.
+     * @return {@code false} if the chunk is not reserved in the mesh, so there is nothing to save.
+     */
+    public boolean saveChunk(@NotNull final TerrainChunksMesh mesh, final int x, final int y, final int z)
+            throws IOException {
+        int chunkID = mesh.getChunkDescriptors().getID(x, y, z);
+        if (chunkID == Integer.MIN_VALUE) {
+            return false;
+        }
+        RegionFile region = getRegion(x, y, z, true);
+        assert region != null;
+        region.write(getEntryIndex(x, y, z), mesh.getBlockType(), mesh.getBlockOptions(), chunkID);
+        return true;
+    }
+
+    /**
+     * Write all changes to the storage device.
+     */
+    public void flush() {
+        for (RegionFile region : regions.valueCollection()) {
+            region.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        for (RegionFile region : regions.valueCollection()) {
+            try {
+                region.close();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                } else {
+                    error.addSuppressed(e);
+                }
+            }
+        }
+        regions.clear();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    @Nullable
+    private RegionFile getRegion(final int x, final int y, final int z, final boolean create) throws IOException {
+        int regionX = x >> REGION_DIMENSION_FACTOR;
+        int regionY = y >> REGION_DIMENSION_FACTOR;
+        int regionZ = z >> REGION_DIMENSION_FACTOR;
+        long key = ChunkDescriptorsBuffer.pack(regionX, regionY, regionZ);
+        RegionFile region = regions.get(key);
+        if (region == null) {
+            Path path = directory.resolve("r." + regionX + "." + regionY + "." + regionZ + ".bwr");
+            if (!create && !Files.exists(path)) {
+                return null;
+            }
+            region = RegionFile.open(path);
+            regions.put(key, region);
+        }
+        return region;
+    }
+
+    private static int getEntryIndex(final int x, final int y, final int z) {
+        int mask = REGION_DIMENSION - 1;
+        return RegionFile.getEntryIndex(x & mask, y & mask, z & mask);
+    }
+}
@@ -0,0 +1,486 @@
+package me.vektory79.jme3.cubeterrain;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.map.hash.TLongIntHashMap;
+import me.vektory79.jme3.cubeterrain.BlockTypeDescriptorsBuffer.Type;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_DIMENSION;
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_DIMENSION_FACTOR;
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_SIZE;
+
+/**
+ * Sparse storage of the block types of the whole world. Each stored chunk is the octree, where the uniform subtrees
+ * are collapsed to the single leaf, so the chunk of the single type takes no nodes at all.
+ * <p>
+ * <p>Unlike {@link TerrainChunksMesh}, the amount of the stored chunks is not limited, so the octree keeps the world
+ * between the streaming of the columns. Chunks are {@link #readChunk(int, int, int, int[]) flattened} to the dense
+ * layout of the mesh only when they are {@link #loadChunk(TerrainChunksMesh, int, int, int) loaded}. Absent chunks
+ * are treated as {@link Type#AIR}, like in the mesh.</p>
+ * <p>
+ * <p>Nodes of all chunks are kept in the single array of 8 children per node. The child is either the index of the
+ * node or the inverted value of the uniform subtree. Values must be non-negative.</p>
+ * <p>
+ * <p>Memory: the node takes 32 bytes, so the mixed 2x2x2 subtree at the bottom costs 4 bytes per block, against
+ * 1 byte of the compact dense layout. Uniform chunks cost only their index entry, but the mesh already keeps them out
+ * of the pool, so for the surface chunks the octree only breaks even. Real saving would need the bottom level stored
+ * as the byte bricks (8 values of the 2x2x2 subtree packed to the single {@code long}) or the 64-tree of 4x4x4 byte
+ * bricks, which would cost at most 1 byte per mixed block plus the nodes of the upper levels.</p>
+ * <p>
+ * <p>Must be called from the thread, which owns the octree.</p>
+ */
+public final class SparseVoxelOctree {
+    private static final Type[] TYPES = Type.values();
+    private static final int CHILDREN = 8;
+    private static final int NO_ROOT = 0;
+    private static final long NO_KEY = -1L;
+
+    /**
+     * Roots of the chunks. Key is the chunk coordinates, packed by {@link ChunkDescriptorsBuffer#pack(int, int, int)}.
+     */
+    @NotNull
+    private final TLongIntHashMap roots = new TLongIntHashMap(
+            Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, NO_KEY, NO_ROOT);
+    // Children of the nodes. Node 0 is never used, so the index can't be confused with the absent root.
+    @NotNull
+    private int[] nodes = new int[CHILDREN * 64];
+    private int allocatedNodes = 1;
+    // Head of the list of the freed nodes, linked by their first child.
+    private int freeNode = NO_ROOT;
+    private int usedNodes;
+    // Path of the last set: nodes and children indexes from the root down.
+    @NotNull
+    private final int[] pathNodes = new int[CHUNK_DIMENSION_FACTOR];
+    @NotNull
+    private final int[] pathChildren = new int[CHUNK_DIMENSION_FACTOR];
+    // Children of the nodes being built, per level.
+    @NotNull
+    private final int[][] buildChildren = new int[CHUNK_DIMENSION_FACTOR][CHILDREN];
+    // Staging data of the chunk being loaded or saved.
+    @NotNull
+    private final int[] chunkData = new int[CHUNK_SIZE];
+
+    /**
+     * Amount of the stored chunks.
+     */
+    @Contract(pure = true)
+    public int getChunks() {
+        return roots.size();
+    }
+
+    /**
+     * Amount of the nodes of all chunks. Uniform chunks and subtrees take no nodes.
+     */
+    @Contract(pure = true)
+    public int getNodes() {
+        return usedNodes;
+    }
+
+    /**
+     * Estimated memory, taken by the nodes and the index of the chunks, in bytes.
+     */
+    @Contract(pure = true)
+    public long getMemoryUsage() {
+        return (long) nodes.length * Integer.BYTES + (long) roots.size() * (Long.BYTES + Integer.BYTES);
+    }
+
+    /**
+     * Check if the chunk is stored.
+     */
+    @Contract(pure = true)
+    public boolean containsChunk(final int chunkX, final int chunkY, final int chunkZ) {
+        return roots.containsKey(ChunkDescriptorsBuffer.pack(chunkX, chunkY, chunkZ));
+    }
+
+    /**
+     * @return the value of all blocks of the stored chunk, or {@link Integer#MIN_VALUE} if the chunk is absent or
+     * not uniform.
+     */
+    @Contract(pure = true)
+    public int getUniformChunkValue(final int chunkX, final int chunkY, final int chunkZ) {
+        int root = roots.get(ChunkDescriptorsBuffer.pack(chunkX, chunkY, chunkZ));
+        return root < 0 ? ~root : Integer.MIN_VALUE;
+    }
+
+    public int getValue(@NotNull final Position position) {
+        return getValue(position.getX(), position.getY(), position.getZ());
+    }
+
+    /**
+     * Get value of the block by world coordinates.
+     */
+    @Contract(pure = true)
+    public int getValue(final int x, final int y, final int z) {
+        int entry = roots.get(pack(x, y, z));
+        if (entry == NO_ROOT) {
+            return Type.AIR.ordinal();
+        }
+        for (int shift = CHUNK_DIMENSION_FACTOR - 1; entry > 0; shift--) {
+            entry = nodes[entry * CHILDREN + getChild(x, y, z, shift)];
+        }
+        return ~entry;
+    }
+
+    public void setValue(@NotNull final Position position, final int value) {
+        setValue(position.getX(), position.getY(), position.getZ(), value);
+    }
+
+    /**
+     * Set value of the block by world coordinates. Absent chunk is stored as {@link Type#AIR} before the change.
+     * Subtrees, which became uniform, are collapsed.
+     */
+    public void setValue(final int x, final int y, final int z, final int value) {
+        checkValue(value);
+        long key = pack(x, y, z);
+        int entry = roots.get(key);
+        if (entry == NO_ROOT) {
+            entry = ~Type.AIR.ordinal();
+        }
+        int leaf = ~value;
+        int root = entry;
+        for (int depth = 0; depth < CHUNK_DIMENSION_FACTOR; depth++) {
+            if (entry == leaf) {
+                return;
+            }
+            if (entry < 0) {
+                // Split the uniform subtree.
+                int node = allocateNode();
+                Arrays.fill(nodes, node * CHILDREN, (node + 1) * CHILDREN, entry);
+                if (depth == 0) {
+                    root = node;
+                } else {
+                    nodes[pathNodes[depth - 1] * CHILDREN + pathChildren[depth - 1]] = node;
+                }
+                entry = node;
+            }
+            pathNodes[depth] = entry;
+            pathChildren[depth] = getChild(x, y, z, CHUNK_DIMENSION_FACTOR - 1 - depth);
+            entry = nodes[entry * CHILDREN + pathChildren[depth]];
+        }
+        if (entry == leaf) {
+            return;
+        }
+        // Set the block and collapse the nodes, which became uniform, from the bottom up.
+        int depth = CHUNK_DIMENSION_FACTOR - 1;
+        nodes[pathNodes[depth] * CHILDREN + pathChildren[depth]] = leaf;
+        while (depth >= 0 && isUniform(pathNodes[depth], leaf)) {
+            freeNode(pathNodes[depth]);
+            if (depth > 0) {
+                nodes[pathNodes[depth - 1] * CHILDREN + pathChildren[depth - 1]] = leaf;
+            } else {
+                root = leaf;
+            }
+            depth--;
+        }
+        roots.put(key, root);
+    }
+
+    /**
+     * Replace the chunk by the values from the array. The tree is built from the bottom up, so the uniform subtrees
+     * never take nodes.
+     *
+     * @param src source array of at least {@link AbstractTerrainBlockBuffer#CHUNK_SIZE} length in the block address
+     *            order.
+     */
+    public void writeChunk(final int chunkX, final int chunkY, final int chunkZ, @NotNull final int[] src) {
+        long key = ChunkDescriptorsBuffer.pack(chunkX, chunkY, chunkZ);
+        freeSubtree(roots.get(key));
+        roots.put(key, build(src, 0, 0, 0, CHUNK_DIMENSION));
+    }
+
+    /**
+     * Replace the chunk by the single value.
+     */
+    public void setUniformChunk(final int chunkX, final int chunkY, final int chunkZ, final int value) {
+        checkValue(value);
+        long key = ChunkDescriptorsBuffer.pack(chunkX, chunkY, chunkZ);
+        freeSubtree(roots.get(key));
+        roots.put(key, ~value);
+    }
+
+    /**
+     * Flatten the chunk to the block address order of {@link AbstractTerrainBlockBuffer}. Absent chunk is filled by
+     * {@link Type#AIR}.
+     *
+     * @param dst destination array of at least {@link AbstractTerrainBlockBuffer#CHUNK_SIZE} length.
+     */
+    public void readChunk(final int chunkX, final int chunkY, final int chunkZ, @NotNull final int[] dst) {
+        int root = roots.get(ChunkDescriptorsBuffer.pack(chunkX, chunkY, chunkZ));
+        if (root == NO_ROOT) {
+            Arrays.fill(dst, 0, CHUNK_SIZE, Type.AIR.ordinal());
+            return;
+        }
+        flatten(root, 0, 0, 0, CHUNK_DIMENSION, dst);
+    }
+
+    /**
+     * Remove the chunk and release it's nodes.
+     */
+    public void removeChunk(final int chunkX, final int chunkY, final int chunkZ) {
+        freeSubtree(roots.remove(ChunkDescriptorsBuffer.pack(chunkX, chunkY, chunkZ)));
+    }
+
+    /**
+     * Check if all blocks of the region are {@link Type#AIR}.
+     *
+     * @see #getUniformValue(int, int, int, int, int, int)
+     */
+    @Contract(pure = true)
+    public boolean isEmpty(final int minX, final int minY, final int minZ,
+                           final int maxX, final int maxY, final int maxZ) {
+        return getUniformValue(minX, minY, minZ, maxX, maxY, maxZ) == Type.AIR.ordinal();
+    }
+
+    /**
+     * Value of all blocks of the region in world coordinates. Only the subtrees, crossing the region, are visited
+     * and the search stops at the first mismatch.
+     *
+     * @param minX X coordinate of the first block.
+     * @param minY Y coordinate of the first block.
+     * @param minZ Z coordinate of the first block.
+     * @param maxX X coordinate of the block after the last one.
+     * @param maxY Y coordinate of the block after the last one.
+     * @param maxZ Z coordinate of the block after the last one.
+     * @return the value or {@link Integer#MIN_VALUE} if the region is not uniform or empty.
+     */
+    @Contract(pure = true)
+    public int getUniformValue(final int minX, final int minY, final int minZ,
+                               final int maxX, final int maxY, final int maxZ) {
+        if (minX >= maxX || minY >= maxY || minZ >= maxZ) {
+            return Integer.MIN_VALUE;
+        }
+        int chunkXMax = (maxX - 1) >> CHUNK_DIMENSION_FACTOR;
+        int chunkYMax = (maxY - 1) >> CHUNK_DIMENSION_FACTOR;
+        int chunkZMax = (maxZ - 1) >> CHUNK_DIMENSION_FACTOR;
+        int value = Integer.MIN_VALUE;
+        for (int chunkZ = minZ >> CHUNK_DIMENSION_FACTOR; chunkZ <= chunkZMax; chunkZ++) {
+            for (int chunkY = minY >> CHUNK_DIMENSION_FACTOR; chunkY <= chunkYMax; chunkY++) {
+                for (int chunkX = minX >> CHUNK_DIMENSION_FACTOR; chunkX <= chunkXMax; chunkX++) {
+                    int entry = roots.get(ChunkDescriptorsBuffer.pack(chunkX, chunkY, chunkZ));
+                    int chunkValue;
+                    if (entry == NO_ROOT) {
+                        chunkValue = Type.AIR.ordinal();
+                    } else {
+                        int x = chunkX << CHUNK_DIMENSION_FACTOR;
+                        int y = chunkY << CHUNK_DIMENSION_FACTOR;
+                        int z = chunkZ << CHUNK_DIMENSION_FACTOR;
+                        chunkValue = getUniformValue(entry, 0, 0, 0, CHUNK_DIMENSION,
+                                minX - x, minY - y, minZ - z, maxX - x, maxY - y, maxZ - z);
+                    }
+                    if (chunkValue == Integer.MIN_VALUE || (value != Integer.MIN_VALUE && chunkValue != value)) {
+                        return Integer.MIN_VALUE;
+                    }
+                    value = chunkValue;
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Flatten the stored chunk to the mesh. Uniform chunk is registered as uniform and takes no slot, unless it
+     * will be exposed.
+     *
+     * @param mesh destination mesh.
+     * @return {@code false} if the chunk is not stored or there is no free chunks in the mesh.
+     */
+    public boolean loadChunk(@NotNull final TerrainChunksMesh mesh, final int chunkX, final int chunkY,
+                             final int chunkZ) {
+        int root = roots.get(ChunkDescriptorsBuffer.pack(chunkX, chunkY, chunkZ));
+        if (root == NO_ROOT) {
+            return false;
+        }
+        if (root < 0 && mesh.setUniformChunk(chunkX, chunkY, chunkZ, TYPES[~root])) {
+            return true;
+        }
+        int chunkID = mesh.useChunk(chunkX, chunkY, chunkZ);
+        if (chunkID == Integer.MIN_VALUE) {
+            return false;
+        }
+        flatten(root, 0, 0, 0, CHUNK_DIMENSION, chunkData);
+        mesh.getBlockType().writeChunk(chunkID, chunkData);
+        return true;
+    }
+
+    /**
+     * Store block types of the chunk of the mesh, either reserved or uniform.
+     *
+     * @param mesh source mesh.
+     * @return {@code false} if the chunk is absent in the mesh, so there is nothing to save.
+     */
+    public boolean saveChunk(@NotNull final TerrainChunksMesh mesh, final int chunkX, final int chunkY,
+                             final int chunkZ) {
+        ChunkDescriptorsBuffer descriptors = mesh.getChunkDescriptors();
+        int chunkID = descriptors.getID(chunkX, chunkY, chunkZ);
+        if (chunkID != Integer.MIN_VALUE) {
+            mesh.getBlockType().readChunk(chunkID, chunkData);
+            writeChunk(chunkX, chunkY, chunkZ, chunkData);
+            return true;
+        }
+        int uniformType = descriptors.getUniformType(chunkX, chunkY, chunkZ);
+        if (uniformType == Integer.MIN_VALUE) {
+            return false;
+        }
+        setUniformChunk(chunkX, chunkY, chunkZ, uniformType);
+        return true;
+    }
+
+    /**
+     * Remove all chunks.
+     */
+    public void clear() {
+        roots.clear();
+        nodes = new int[CHILDREN * 64];
+        allocatedNodes = 1;
+        freeNode = NO_ROOT;
+        usedNodes = 0;
+    }
+
+    private int build(@NotNull final int[] src, final int x, final int y, final int z, final int size) {
+        if (size == 1) {
+            int value = src[AbstractTerrainBlockBuffer.getBlockAddress(0, x, y, z)];
+            checkValue(value);
+            return ~value;
+        }
+        int half = size >> 1;
+        int[] children = buildChildren[Integer.numberOfTrailingZeros(half)];
+        boolean uniform = true;
+        for (int child = 0; child < CHILDREN; child++) {
+            children[child] = build(src, x + getOffsetX(child, half), y + getOffsetY(child, half),
+                    z + getOffsetZ(child, half), half);
+            uniform &= children[child] < 0 && children[child] == children[0];
+        }
+        if (uniform) {
+            return children[0];
+        }
+        int node = allocateNode();
+        System.arraycopy(children, 0, nodes, node * CHILDREN, CHILDREN);
+        return node;
+    }
+
+    private void flatten(final int entry, final int x, final int y, final int z, final int size,
+                         @NotNull final int[] dst) {
+        if (entry < 0) {
+            int value = ~entry;
+            for (int dz = 0; dz < size; dz++) {
+                for (int dy = 0; dy < size; dy++) {
+                    int address = AbstractTerrainBlockBuffer.getBlockAddress(0, x, y + dy, z + dz);
+                    Arrays.fill(dst, address, address + size, value);
+                }
+            }
+            return;
+        }
+        int half = size >> 1;
+        for (int child = 0; child < CHILDREN; child++) {
+            flatten(nodes[entry * CHILDREN + child], x + getOffsetX(child, half), y + getOffsetY(child, half),
+                    z + getOffsetZ(child, half), half, dst);
+        }
+    }
+
+    /**
+     * Value of the part of the subtree, crossing the region. Coordinates of the region are relative to the chunk.
+     */
+    private int getUniformValue(final int entry, final int x, final int y, final int z, final int size,
+                                final int minX, final int minY, final int minZ,
+                                final int maxX, final int maxY, final int maxZ) {
+        if (entry < 0) {
+            return ~entry;
+        }
+        int half = size >> 1;
+        int value = Integer.MIN_VALUE;
+        for (int child = 0; child < CHILDREN; child++) {
+            int childX = x + getOffsetX(child, half);
+            int childY = y + getOffsetY(child, half);
+            int childZ = z + getOffsetZ(child, half);
+            if (childX >= maxX || childX + half <= minX
+                    || childY >= maxY || childY + half <= minY
+                    || childZ >= maxZ || childZ + half <= minZ) {
+                continue;
+            }
+            int childValue = getUniformValue(nodes[entry * CHILDREN + child], childX, childY, childZ, half,
+                    minX, minY, minZ, maxX, maxY, maxZ);
+            if (childValue == Integer.MIN_VALUE || (value != Integer.MIN_VALUE && childValue != value)) {
+                return Integer.MIN_VALUE;
+            }
+            value = childValue;
+        }
+        return value;
+    }
+
+    private boolean isUniform(final int node, final int leaf) {
+        int start = node * CHILDREN;
+        for (int child = 0; child < CHILDREN; child++) {
+            if (nodes[start + child] != leaf) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int allocateNode() {
+        usedNodes++;
+        if (freeNode != NO_ROOT) {
+            int node = freeNode;
+            freeNode = nodes[node * CHILDREN];
+            return node;
+        }
+        if ((allocatedNodes + 1) * CHILDREN > nodes.length) {
+            nodes = Arrays.copyOf(nodes, nodes.length * 2);
+        }
+        return allocatedNodes++;
+    }
+
+    private void freeNode(final int node) {
+        usedNodes--;
+        nodes[node * CHILDREN] = freeNode;
+        freeNode = node;
+    }
+
+    private void freeSubtree(final int entry) {
+        if (entry <= 0) {
+            return;
+        }
+        for (int child = 0; child < CHILDREN; child++) {
+            freeSubtree(nodes[entry * CHILDREN + child]);
+        }
+        freeNode(entry);
+    }
+
+    private static void checkValue(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+    }
+
+    @Contract(pure = true)
+    private static long pack(final int x, final int y, final int z) {
+        return ChunkDescriptorsBuffer.pack(
+                x >> CHUNK_DIMENSION_FACTOR, y >> CHUNK_DIMENSION_FACTOR, z >> CHUNK_DIMENSION_FACTOR);
+    }
+
+    /**
+     * Index of the child, containing the block, at the level with the child size of {@code 1 << shift}.
+     */
+    @Contract(pure = true)
+    private static int getChild(final int x, final int y, final int z, final int shift) {
+        return ((x >> shift) & 1) | (((y >> shift) & 1) << 1) | (((z >> shift) & 1) << 2);
+    }
+
+    @Contract(pure = true)
+    private static int getOffsetX(final int child, final int half) {
+        return (child & 1) * half;
+    }
+
+    @Contract(pure = true)
+    private static int getOffsetY(final int child, final int half) {
+        return ((child >> 1) & 1) * half;
+    }
+
+    @Contract(pure = true)
+    private static int getOffsetZ(final int child, final int half) {
+        return ((child >> 2) & 1) * half;
+    }
+}
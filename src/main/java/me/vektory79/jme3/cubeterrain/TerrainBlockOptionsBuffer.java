@@ -36,7 +36,15 @@ import org.jetbrains.annotations.NotNull;
  * +---+---+---+---+---+---+---+---++---+---+---+---+---+---+---+---+
  * |   |   |   |   |   |   |   |   ||   |   |   |   |   |   |   |   |
  * +---+---+---+---+---+---+---+---++---+---+---+---+---+---+---+---+
+ *       \___________ ___________/
+ *                   V
+ *                   +-------------------------------------------- Block type ordinal. Used only in
+ *                                                                 {@link BlockStorageLayout#PACKED} layout.
  * </pre>
+ * <p>
+ * <p>In {@link BlockStorageLayout#PACKED} layout the buffer shares it's storage with {@link TerrainBlockTypesBuffer}.
+ * Values of this buffer are only the lower 16 bits of the word, and the buffer itself is uploaded as
+ * {@link Type#Position}.</p>
  */
 public class TerrainBlockOptionsBuffer extends AbstractTerrainBlockBuffer {
     private static final int ROTATE_FIELD_SHIFT = 6;
@@ -45,10 +53,45 @@ public class TerrainBlockOptionsBuffer extends AbstractTerrainBlockBuffer {
     private static final int ORIENTATION_FIELD_SHIFT = 8;
     private static final int ORIENTATION_FIELD_MASK = 0b111;
 
+    private static final Rotate[] ROTATES = Rotate.values();
+    private static final Face[] FACES = Face.values();
+
+    /**
+     * Bits of all six face visibility flags.
+     */
+    public static final int VISIBILITY_FIELD_MASK = 0b111111;
+
+    /**
+     * Mask of the block options in the packed word.
+     */
+    public static final int PACKED_OPTIONS_MASK = 0xFFFF;
+    /**
+     * Position of the block type in the packed word. The type is placed to the exponent bits, so the word of
+     * the non AIR block is always normal float value and can't be flushed to zero by GPU as denormal one.
+     */
+    public static final int PACKED_TYPE_SHIFT = 24;
+    /**
+     * Mask of the block type in the packed word (not shifted). The sign bit is not used, to never produce NaN.
+     */
+    public static final int PACKED_TYPE_MASK = 0x7F;
+
     public TerrainBlockOptionsBuffer(@NotNull final TerrainChunksMesh terrainChunksMesh) {
         super(terrainChunksMesh, Type.TexCoord8);
     }
 
+    /**
+     * Options buffer of the {@link BlockStorageLayout#PACKED} layout.
+     *
+     * @param terrainChunksMesh mesh, owning the buffer.
+     * @param packedStorage     storage of the packed words.
+     */
+    TerrainBlockOptionsBuffer(
+            @NotNull final TerrainChunksMesh terrainChunksMesh,
+            @NotNull final BlockValueStorage packedStorage) {
+        super(terrainChunksMesh, Type.Position,
+                BlockValueStorage.field(packedStorage, 0, PACKED_OPTIONS_MASK), null);
+    }
+
     public final void setVisibleFace(final int blockAddress, @NotNull final Face face, final boolean visible) {
         int value = getValue(blockAddress);
         value = setVisibilityBit(face, visible, value);
@@ -61,10 +104,26 @@ public class TerrainBlockOptionsBuffer extends AbstractTerrainBlockBuffer {
         setVisibleFace(blockAddress, face, visible);
     }
 
+    public final void setVisibleFace(final int chunkId, final int x, final int y, final int z,
+                                     @NotNull final Face face, final boolean visible) {
+        setVisibleFace(getBlockAddress(chunkId, x, y, z), face, visible);
+    }
+
     public final void setVisibleFace(@NotNull final Position position, @NotNull final Face face,
                                      final boolean visible) {
-        int chunkID = getChunkID(position);
-        setVisibleFace(chunkID, position.mask(BLOCK_DIMENSION_MASK), face, visible);
+        setVisibleFace(position.getX(), position.getY(), position.getZ(), face, visible);
+    }
+
+    public final void setVisibleFace(final int x, final int y, final int z, @NotNull final Face face,
+                                     final boolean visible) {
+        setVisibleFace(getWorldBlockAddress(x, y, z), face, visible);
+    }
+
+    public final void clearVisibleFaces(final int blockAddress) {
+        int value = getValue(blockAddress);
+        if ((value & VISIBILITY_FIELD_MASK) != 0) {
+            setValue(blockAddress, value & ~VISIBILITY_FIELD_MASK);
+        }
     }
 
     public final boolean isVisibleFace(final int blockAddress, @NotNull final Face face) {
@@ -75,10 +134,19 @@ public class TerrainBlockOptionsBuffer extends AbstractTerrainBlockBuffer {
         return extractFaceVisibility(getValue(chunkId, position), face);
     }
 
+    public final boolean isVisibleFace(final int chunkId, final int x, final int y, final int z,
+                                       @NotNull final Face face) {
+        return extractFaceVisibility(getValue(chunkId, x, y, z), face);
+    }
+
     public final boolean isVisibleFace(@NotNull final Position position, @NotNull final Face face) {
         return extractFaceVisibility(getValue(position), face);
     }
 
+    public final boolean isVisibleFace(final int x, final int y, final int z, @NotNull final Face face) {
+        return extractFaceVisibility(getValue(x, y, z), face);
+    }
+
     public final void setRotate(final int blockAddress, @NotNull final Rotate rotate) {
         int value = getValue(blockAddress);
         // Clear field bits
@@ -93,9 +161,17 @@ public class TerrainBlockOptionsBuffer extends AbstractTerrainBlockBuffer {
         setRotate(blockAddress, rotate);
     }
 
+    public final void setRotate(final int chunkId, final int x, final int y, final int z,
+                                @NotNull final Rotate rotate) {
+        setRotate(getBlockAddress(chunkId, x, y, z), rotate);
+    }
+
     public final void setRotate(@NotNull final Position position, @NotNull final Rotate rotate) {
-        int chunkID = getChunkID(position);
-        setRotate(chunkID, position.mask(BLOCK_DIMENSION_MASK), rotate);
+        setRotate(position.getX(), position.getY(), position.getZ(), rotate);
+    }
+
+    public final void setRotate(final int x, final int y, final int z, @NotNull final Rotate rotate) {
+        setRotate(getWorldBlockAddress(x, y, z), rotate);
     }
 
     @NotNull
@@ -108,11 +184,21 @@ public class TerrainBlockOptionsBuffer extends AbstractTerrainBlockBuffer {
         return extractRotate(getValue(chunkId, position));
     }
 
+    @NotNull
+    public final Rotate getRotate(final int chunkId, final int x, final int y, final int z) {
+        return extractRotate(getValue(chunkId, x, y, z));
+    }
+
     @NotNull
     public final Rotate getRotate(final @NotNull Position position) {
         return extractRotate(getValue(position));
     }
 
+    @NotNull
+    public final Rotate getRotate(final int x, final int y, final int z) {
+        return extractRotate(getValue(x, y, z));
+    }
+
     public final void setFrontDirection(final int blockAddress, @NotNull final Face orientation) {
         int value = getValue(blockAddress);
         // Clear field bits
@@ -127,9 +213,17 @@ public class TerrainBlockOptionsBuffer extends AbstractTerrainBlockBuffer {
         setFrontDirection(blockAddress, orientation);
     }
 
+    public final void setFrontDirection(final int chunkId, final int x, final int y, final int z,
+                                        @NotNull final Face orientation) {
+        setFrontDirection(getBlockAddress(chunkId, x, y, z), orientation);
+    }
+
     public final void setFrontDirection(@NotNull final Position position, @NotNull final Face orientation) {
-        int chunkID = getChunkID(position);
-        setFrontDirection(chunkID, position.mask(BLOCK_DIMENSION_MASK), orientation);
+        setFrontDirection(position.getX(), position.getY(), position.getZ(), orientation);
+    }
+
+    public final void setFrontDirection(final int x, final int y, final int z, @NotNull final Face orientation) {
+        setFrontDirection(getWorldBlockAddress(x, y, z), orientation);
     }
 
     @NotNull
@@ -142,11 +236,21 @@ public class TerrainBlockOptionsBuffer extends AbstractTerrainBlockBuffer {
         return extractFrontDirection(getValue(chunkId, position));
     }
 
+    @NotNull
+    public final Face getFrontDirection(final int chunkId, final int x, final int y, final int z) {
+        return extractFrontDirection(getValue(chunkId, x, y, z));
+    }
+
     @NotNull
     public final Face getFrontDirection(final @NotNull Position position) {
         return extractFrontDirection(getValue(position));
     }
 
+    @NotNull
+    public final Face getFrontDirection(final int x, final int y, final int z) {
+        return extractFrontDirection(getValue(x, y, z));
+    }
+
     @Contract(pure = true)
     private static boolean extractFaceVisibility(final int value, @NotNull final Face face) {
         return ((value >>> face.getVisibilityBitShift()) & 1) == 1;
@@ -154,12 +258,12 @@ public class TerrainBlockOptionsBuffer extends AbstractTerrainBlockBuffer {
 
     @Contract(pure = true)
     private static Rotate extractRotate(int value) {
-        return Rotate.values()[(value >>> ROTATE_FIELD_SHIFT) & ROTATE_FIELD_MASK];
+        return ROTATES[(value >>> ROTATE_FIELD_SHIFT) & ROTATE_FIELD_MASK];
     }
 
     @Contract(pure = true)
     private static Face extractFrontDirection(int value) {
-        return Face.values()[(value >>> ORIENTATION_FIELD_SHIFT) & ORIENTATION_FIELD_MASK];
+        return FACES[(value >>> ORIENTATION_FIELD_SHIFT) & ORIENTATION_FIELD_MASK];
     }
 
     @Contract(pure = true)
@@ -169,17 +273,23 @@ public class TerrainBlockOptionsBuffer extends AbstractTerrainBlockBuffer {
     }
 
     public enum Face {
-        FRONT(5),
-        BACK(4),
-        LEFT(0),
-        RIGHT(1),
-        TOP(3),
-        BOTTOM(2);
+        FRONT(5, 0, 0, 1),
+        BACK(4, 0, 0, -1),
+        LEFT(0, -1, 0, 0),
+        RIGHT(1, 1, 0, 0),
+        TOP(3, 0, 1, 0),
+        BOTTOM(2, 0, -1, 0);
 
         private final int visibilityBitShift;
+        private final int dx;
+        private final int dy;
+        private final int dz;
 
-        Face(final int visibilityBitShift) {
+        Face(final int visibilityBitShift, final int dx, final int dy, final int dz) {
             this.visibilityBitShift = visibilityBitShift;
+            this.dx = dx;
+            this.dy = dy;
+            this.dz = dz;
         }
 
         @Contract(pure = true)
@@ -187,6 +297,35 @@ public class TerrainBlockOptionsBuffer extends AbstractTerrainBlockBuffer {
             return visibilityBitShift;
         }
 
+        @Contract(pure = true)
+        public int getVisibilityBit() {
+            return 1 << visibilityBitShift;
+        }
+
+        /**
+         * Offset by X axis to the neighbour, which this face is looking at.
+         */
+        @Contract(pure = true)
+        public int getDx() {
+            return dx;
+        }
+
+        /**
+         * Offset by Y axis to the neighbour, which this face is looking at.
+         */
+        @Contract(pure = true)
+        public int getDy() {
+            return dy;
+        }
+
+        /**
+         * Offset by Z axis to the neighbour, which this face is looking at.
+         */
+        @Contract(pure = true)
+        public int getDz() {
+            return dz;
+        }
+
         @Contract(pure = true)
         public int getFrontDirection() {
             return ordinal();
@@ -3,8 +3,51 @@ package me.vektory79.jme3.cubeterrain;
 import org.jetbrains.annotations.NotNull;
 
 public class TerrainBlockTypesBuffer extends AbstractTerrainBlockBuffer {
+    private static final BlockTypeDescriptorsBuffer.Type[] TYPES = BlockTypeDescriptorsBuffer.Type.values();
+
     public TerrainBlockTypesBuffer(@NotNull final TerrainChunksMesh terrainChunksMesh) {
-        super(terrainChunksMesh, Type.Position);
+        this(terrainChunksMesh, false);
+    }
+
+    /**
+     * @param terrainChunksMesh mesh, owning the buffer.
+     * @param compact           store block types with 8 bit per block.
+     */
+    public TerrainBlockTypesBuffer(@NotNull final TerrainChunksMesh terrainChunksMesh, final boolean compact) {
+        super(terrainChunksMesh, Type.Position, compact);
+    }
+
+    /**
+     * Types buffer of the {@link BlockStorageLayout#PACKED} layout. The buffer is not uploaded itself, modifications
+     * are uploaded by options buffer.
+     *
+     * @param terrainChunksMesh mesh, owning the buffer.
+     * @param packedStorage     storage of the packed words.
+     * @param blockOptions      options buffer, sharing the same storage.
+     */
+    TerrainBlockTypesBuffer(
+            @NotNull final TerrainChunksMesh terrainChunksMesh,
+            @NotNull final BlockValueStorage packedStorage,
+            @NotNull final TerrainBlockOptionsBuffer blockOptions) {
+        super(terrainChunksMesh, Type.Position,
+                BlockValueStorage.field(
+                        packedStorage,
+                        TerrainBlockOptionsBuffer.PACKED_TYPE_SHIFT,
+                        TerrainBlockOptionsBuffer.PACKED_TYPE_MASK),
+                blockOptions);
+    }
+
+    @Override
+    protected void onValueChanged(final int blockAddress) {
+        getTerrainChunksMesh().getChunkDescriptors().getDirtyChunks().markBlockDirty(blockAddress);
+    }
+
+    @Override
+    protected void onRangeChanged(final int fromAddress, final int toAddress) {
+        DirtyChunksTracker dirtyChunks = getTerrainChunksMesh().getChunkDescriptors().getDirtyChunks();
+        for (int chunkId = getChunkId(fromAddress); chunkId <= getChunkId(toAddress - 1); chunkId++) {
+            dirtyChunks.markWithNeighboursDirty(chunkId);
+        }
     }
 
     public final void setType(final int blockAddress, @NotNull final BlockTypeDescriptorsBuffer.Type type) {
@@ -16,23 +59,43 @@ public class TerrainBlockTypesBuffer extends AbstractTerrainBlockBuffer {
         setValue(chunkId, position, type.ordinal());
     }
 
+    public final void setType(final int chunkId, final int x, final int y, final int z,
+                              @NotNull final BlockTypeDescriptorsBuffer.Type type) {
+        setValue(chunkId, x, y, z, type.ordinal());
+    }
+
     public final void setType(final Position position,
                           @NotNull final BlockTypeDescriptorsBuffer.Type type) {
         setValue(position, type.ordinal());
     }
 
+    public final void setType(final int x, final int y, final int z,
+                              @NotNull final BlockTypeDescriptorsBuffer.Type type) {
+        setValue(x, y, z, type.ordinal());
+    }
+
     @NotNull
     public final BlockTypeDescriptorsBuffer.Type getType(final int blockAddress) {
-        return BlockTypeDescriptorsBuffer.Type.values()[getValue(blockAddress)];
+        return TYPES[getValue(blockAddress)];
     }
 
     @NotNull
     public final BlockTypeDescriptorsBuffer.Type getType(final int chunkId, final Position position) {
-        return BlockTypeDescriptorsBuffer.Type.values()[getValue(chunkId, position)];
+        return TYPES[getValue(chunkId, position)];
+    }
+
+    @NotNull
+    public final BlockTypeDescriptorsBuffer.Type getType(final int chunkId, final int x, final int y, final int z) {
+        return TYPES[getValue(chunkId, x, y, z)];
     }
 
     @NotNull
     public final BlockTypeDescriptorsBuffer.Type getType(final Position position) {
-        return BlockTypeDescriptorsBuffer.Type.values()[getValue(position)];
+        return TYPES[getValue(position)];
+    }
+
+    @NotNull
+    public final BlockTypeDescriptorsBuffer.Type getType(final int x, final int y, final int z) {
+        return TYPES[getValue(x, y, z)];
     }
 }
@@ -4,18 +4,36 @@ import com.jme3.bounding.BoundingBox;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Mesh;
 import com.jme3.util.BufferUtils;
+import gnu.trove.TIntCollection;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
 import me.vektory79.jme3.cubeterrain.BlockTypeDescriptorsBuffer.Type;
 import me.vektory79.jme3.cubeterrain.TerrainBlockOptionsBuffer.Face;
+import me.vektory79.utils.StageTimer;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class TerrainChunksMesh extends Mesh {
     public static final int CHUNK_SIZE = 16;
 
+    /**
+     * Amount of chunks, culled by single fork/join task without further splitting.
+     */
+    private static final int CULLING_TASK_CHUNKS = 8;
+
+    // Working arrays of the culling. Shared by all meshes, so the pool threads don't keep the meshes reachable.
+    @NotNull
+    private static final ThreadLocal<BitmaskChunkCuller> CULLER = ThreadLocal.withInitial(BitmaskChunkCuller::new);
+
+    @NotNull
+    private final BlockStorageLayout layout;
     @NotNull
     private final ChunkDescriptorsBuffer chunkDescriptors;
     @NotNull
@@ -24,23 +42,98 @@ public class TerrainChunksMesh extends Mesh {
     private final TerrainBlockTypesBuffer blockType;
     @NotNull
     private final TerrainBlockOptionsBuffer blockOptions;
+    @NotNull
+    private final VisibleBlocksIndex visibleBlocks;
+    @NotNull
+    private final TerrainMetrics metrics = new TerrainMetrics(this);
+    @NotNull
+    private final BufferRangeUploader rangeUploader = new BufferRangeUploader();
     private final SSBufferObject edgeTemplatesIndex = new SSBufferObject(2);
     private final SSBufferObject edgeTemplates = new SSBufferObject(3);
+    @Nullable
+    private ForkJoinPool cullingPool;
+    // Chunks, culled since the last drain. Tracked only for the consumers of the visibility masks.
+    @Nullable
+    private TIntHashSet culledChunks;
+    // Modification counter of the chunk descriptors, for which the bound was calculated.
+    private int boundModCount;
 
     public TerrainChunksMesh(final int chunks) {
+        this(chunks, BlockStorageLayout.SEPARATE);
+    }
+
+    /**
+     * @param chunks amount of chunks to be reserved.
+     * @param layout layout of the block buffers.
+     */
+    public TerrainChunksMesh(final int chunks, @NotNull final BlockStorageLayout layout) {
         setMode(Mode.Points);
+        this.layout = layout;
         chunkDescriptors = new ChunkDescriptorsBuffer(0, chunks);
         blockTypeDescriptors = new BlockTypeDescriptorsBuffer(1);
-        blockType = new TerrainBlockTypesBuffer(this);
-        blockOptions = new TerrainBlockOptionsBuffer(this);
+        if (layout.isPacked()) {
+            BlockValueStorage packedStorage = BlockValueStorage.ints(chunks * AbstractTerrainBlockBuffer.CHUNK_SIZE);
+            blockOptions = new TerrainBlockOptionsBuffer(this, packedStorage);
+            blockType = new TerrainBlockTypesBuffer(this, packedStorage, blockOptions);
+            setBuffer(blockOptions);
+        } else {
+            blockType = new TerrainBlockTypesBuffer(this, layout.isCompactTypes());
+            blockOptions = new TerrainBlockOptionsBuffer(this);
+            setBuffer(blockType);
+            setBuffer(blockOptions);
+        }
 
-        setBuffer(blockType);
-        setBuffer(blockOptions);
+        // Only blocks with visible faces are drawn.
+        visibleBlocks = new VisibleBlocksIndex(chunks);
+        setBuffer(visibleBlocks);
 
         initEdgeTemplates();
 
-        // Turn off bounding box, because it is inapplicable for this mesh.
-        setBound(new BoundingBox(new Vector3f(0, 0, 0), Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY));
+        updateBound();
+    }
+
+    /**
+     * Calculate the bound of all reserved chunks. Vertex data of this mesh are not positions, so the default
+     * implementation is inapplicable.
+     */
+    @Override
+    public void updateBound() {
+        boundModCount = chunkDescriptors.getModCount();
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        int maxZ = Integer.MIN_VALUE;
+        for (int chunkId = 0; chunkId < getChunks(); chunkId++) {
+            if (chunkDescriptors.isUsed(chunkId)) {
+                int x = chunkDescriptors.readX(chunkId);
+                int y = chunkDescriptors.readY(chunkId);
+                int z = chunkDescriptors.readZ(chunkId);
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                minZ = Math.min(minZ, z);
+                maxX = Math.max(maxX, x);
+                maxY = Math.max(maxY, y);
+                maxZ = Math.max(maxZ, z);
+            }
+        }
+        if (minX == Integer.MAX_VALUE) {
+            setBound(new BoundingBox(new Vector3f(0, 0, 0), 0, 0, 0));
+            return;
+        }
+        int dimension = AbstractTerrainBlockBuffer.CHUNK_DIMENSION;
+        setBound(new BoundingBox(
+                new Vector3f(minX * dimension, minY * dimension, minZ * dimension),
+                new Vector3f((maxX + 1) * dimension, (maxY + 1) * dimension, (maxZ + 1) * dimension)));
+    }
+
+    /**
+     * Check if chunks were reserved or freed since the last {@link #updateBound()}.
+     */
+    @Contract(pure = true)
+    public boolean isBoundOutdated() {
+        return boundModCount != chunkDescriptors.getModCount();
     }
 
     @Contract(pure = true)
@@ -48,6 +141,12 @@ public class TerrainChunksMesh extends Mesh {
         return chunkDescriptors.getChunks();
     }
 
+    @NotNull
+    @Contract(pure = true)
+    public BlockStorageLayout getLayout() {
+        return layout;
+    }
+
     @NotNull
     @Contract(pure = true)
     public TerrainBlockTypesBuffer getBlockType() {
@@ -60,6 +159,21 @@ public class TerrainChunksMesh extends Mesh {
         return blockOptions;
     }
 
+    @NotNull
+    @Contract(pure = true)
+    public VisibleBlocksIndex getVisibleBlocks() {
+        return visibleBlocks;
+    }
+
+    /**
+     * Metrics of the terrain pipeline.
+     */
+    @NotNull
+    @Contract(pure = true)
+    public TerrainMetrics getMetrics() {
+        return metrics;
+    }
+
     @NotNull
     @Contract(pure = true)
     public ChunkDescriptorsBuffer getChunkDescriptors() {
@@ -84,137 +198,290 @@ public class TerrainChunksMesh extends Mesh {
         return edgeTemplates;
     }
 
+    /**
+     * Publish modifications of the block buffers for upload. Should be called once per frame.
+     *
+     * @see AbstractTerrainBlockBuffer#commitUpdates()
+     */
+    public void commitUpdates() {
+        long start = StageTimer.start();
+        blockType.commitUpdates();
+        blockOptions.commitUpdates();
+        if (visibleBlocks.commitUpdates()) {
+            updateCounts();
+        }
+        metrics.getUpload().stop(start);
+    }
+
+    /**
+     * Send the published modifications of the block buffers to GPU. Must be called from the rendering thread, before
+     * the mesh is drawn. The amount of the sent bytes is recorded to the {@link #getMetrics() metrics}.
+     *
+     * @see AbstractTerrainBlockBuffer#uploadUpdates(BufferRangeUploader)
+     */
+    public void uploadUpdates() {
+        long typesBytes = blockType.uploadUpdates(rangeUploader);
+        long optionsBytes = blockOptions.uploadUpdates(rangeUploader);
+        long indexBytes = visibleBlocks.uploadUpdates(rangeUploader);
+        metrics.recordUpload(typesBytes, optionsBytes, indexBytes);
+    }
+
+    @Contract(pure = true)
+    public boolean isRangeUploads() {
+        return rangeUploader.isEnabled();
+    }
+
+    /**
+     * Enable or disable the upload of the modified ranges of the block buffers. Disabled, each modified buffer is
+     * uploaded whole by jME. The range uploads need OpenGL 3.1, so they should be disabled, if the renderer doesn't
+     * support it. They are also disabled by the first failed upload.
+     */
+    public void setRangeUploads(final boolean rangeUploads) {
+        rangeUploader.setEnabled(rangeUploads);
+    }
+
+    @Nullable
+    @Contract(pure = true)
+    public ForkJoinPool getCullingPool() {
+        return cullingPool;
+    }
+
+    /**
+     * Set the pool for parallel culling.
+     * <p>
+     * <p>Each chunk is culled independently: it's visibility masks depend on own block types and block types of
+     * the border planes of neighbours, but only own slice of {@link TerrainBlockOptionsBuffer} is written. So the
+     * chunks can be culled at the same time, while block types are not changed.</p>
+     *
+     * @param cullingPool pool for parallel culling or {@code null} for culling in the calling thread.
+     */
+    public void setCullingPool(@Nullable final ForkJoinPool cullingPool) {
+        this.cullingPool = cullingPool;
+    }
+
+    /**
+     * Enable or disable tracking of the culled chunks. Used by the builders of own geometry from the block types
+     * and visibility masks (e.g. {@link GreedyTerrainNode}): each chunk is culled after any change of it's blocks or
+     * neighbours, so the culled chunks are exactly the chunks to be rebuilt.
+     *
+     * @see #drainCulledChunks()
+     */
+    public void setTrackCulledChunks(final boolean track) {
+        if (!track) {
+            culledChunks = null;
+        } else if (culledChunks == null) {
+            culledChunks = new TIntHashSet();
+        }
+    }
+
+    /**
+     * Take the chunks, culled since the previous call, and reset the tracking.
+     *
+     * @return set of culled chunk IDs. Includes the freed chunks, which were culled to clear their visibility.
+     */
+    @NotNull
+    public TIntSet drainCulledChunks() {
+        if (culledChunks == null) {
+            return new TIntHashSet();
+        }
+        TIntSet result = culledChunks;
+        culledChunks = new TIntHashSet();
+        return result;
+    }
+
+    /**
+     * Reserve the chunk for coordinates. If the chunk is uniform, then it's promoted: the reserved chunk is filled by
+     * it's block type.
+     *
+     * @return ID of the chunk or {@link Integer#MIN_VALUE} if there is no free chunks.
+     * @see ChunkDescriptorsBuffer#use(int, int, int)
+     */
+    public int useChunk(final int x, final int y, final int z) {
+        int chunkID = chunkDescriptors.getID(x, y, z);
+        if (chunkID != Integer.MIN_VALUE) {
+            return chunkID;
+        }
+        int uniformType = chunkDescriptors.getUniformType(x, y, z);
+        if (uniformType == Integer.MIN_VALUE) {
+            return chunkDescriptors.use(x, y, z);
+        }
+        chunkID = chunkDescriptors.use(x, y, z);
+        if (chunkID != Integer.MIN_VALUE) {
+            chunkDescriptors.removeUniform(x, y, z);
+            int address = chunkID * AbstractTerrainBlockBuffer.CHUNK_SIZE;
+            blockType.fillRange(address, address + AbstractTerrainBlockBuffer.CHUNK_SIZE, uniformType);
+            blockOptions.clear(chunkID);
+        }
+        return chunkID;
+    }
+
+    /**
+     * Store the chunk as uniform (consisting of the single block type) instead of reservation. The reserved chunk
+     * for the same coordinates is freed.
+     *
+     * @return {@code true} if chunk was stored as uniform. Chunks of transparent types (except {@link Type#AIR})
+     * can't be uniform, so they are left untouched.
+     * @see ChunkDescriptorsBuffer#setUniform(int, int, int, Type)
+     */
+    public boolean setUniformChunk(final int x, final int y, final int z, @NotNull final Type type) {
+        if (type.isTransparent() && type != Type.AIR) {
+            return false;
+        }
+        int chunkID = chunkDescriptors.getID(x, y, z);
+        if (chunkID != Integer.MIN_VALUE) {
+            chunkDescriptors.free(chunkID);
+        }
+        chunkDescriptors.setUniform(x, y, z, type);
+        return true;
+    }
+
+    /**
+     * Recalculate visibility masks of all reserved chunks.
+     */
     public void rebuildCulling() {
-        for (int chunkID = 0; chunkID < getChunks(); chunkID++) {
-            Position chunkPos = chunkDescriptors.read(chunkID);
-            if (chunkPos.getX() == Integer.MIN_VALUE) {
-                continue;
-            }
-            for (int z = 0; z < CHUNK_SIZE; z++) {
-                for (int y = 0; y < CHUNK_SIZE; y++) {
-                    for (int x = 0; x < CHUNK_SIZE; x++) {
-                        final Position pos = Position.get(x, y, z);
-                        Type currentType = blockType.getType(chunkID, pos);
-                        if (currentType == Type.AIR) {
-                            continue;
-                        }
-                        if (x > 0) {
-                            blockOptions.setVisibleFace(chunkID, pos, Face.LEFT, checkNearPosition(chunkID, currentType, Position.get(x - 1, y, z)));
-                        }
-                        if (x < CHUNK_SIZE - 1) {
-                            blockOptions.setVisibleFace(chunkID, pos, Face.RIGHT, checkNearPosition(chunkID, currentType, Position.get(x + 1, y, z)));
-                        }
-                        if (y < CHUNK_SIZE - 1) {
-                            blockOptions.setVisibleFace(chunkID, pos, Face.TOP, checkNearPosition(chunkID, currentType, Position.get(x, y + 1, z)));
-                        }
-                        if (y > 0) {
-                            blockOptions.setVisibleFace(chunkID, pos, Face.BOTTOM, checkNearPosition(chunkID, currentType, Position.get(x, y - 1, z)));
-                        }
-                        if (z < CHUNK_SIZE - 1) {
-                            blockOptions.setVisibleFace(chunkID, pos, Face.FRONT, checkNearPosition(chunkID, currentType, Position.get(x, y, z + 1)));
-                        }
-                        if (z > 0) {
-                            blockOptions.setVisibleFace(chunkID, pos, Face.BACK, checkNearPosition(chunkID, currentType, Position.get(x, y, z - 1)));
-                        }
-                    }
-                }
-            }
-            for (int z = 0; z < CHUNK_SIZE; z++) {
-                for (int y = 0; y < CHUNK_SIZE; y++) {
-                    final Position pos = Position.get(0, y, z);
-                    Type currentType = blockType.getType(chunkID, pos);
-                    if (currentType == Type.AIR) {
-                        continue;
-                    }
-                    int leftChunkId = chunkDescriptors.getID(chunkPos.getX() - 1, chunkPos.getY(), chunkPos.getZ());
-                    if (leftChunkId != Integer.MIN_VALUE) {
-                        blockOptions.setVisibleFace(chunkID, pos, Face.LEFT, checkNearPosition(leftChunkId, currentType, Position.get(CHUNK_SIZE - 1, y, z)));
-                    } else {
-                        blockOptions.setVisibleFace(chunkID, pos, Face.LEFT, true);
-                    }
-                }
-            }
-            for (int z = 0; z < CHUNK_SIZE; z++) {
-                for (int y = 0; y < CHUNK_SIZE; y++) {
-                    final Position pos = Position.get(CHUNK_SIZE - 1, y, z);
-                    Type currentType = blockType.getType(chunkID, pos);
-                    if (currentType == Type.AIR) {
-                        continue;
-                    }
-                    int rightChunkId = chunkDescriptors.getID(chunkPos.getX() + 1, chunkPos.getY(), chunkPos.getZ());
-                    if (rightChunkId != Integer.MIN_VALUE) {
-                        blockOptions.setVisibleFace(chunkID, pos, Face.RIGHT, checkNearPosition(rightChunkId, currentType, Position.get(0, y, z)));
-                    } else {
-                        blockOptions.setVisibleFace(chunkID, pos, Face.RIGHT, true);
-                    }
-                }
-            }
-            for (int z = 0; z < CHUNK_SIZE; z++) {
-                for (int x = 0; x < CHUNK_SIZE; x++) {
-                    final Position pos = Position.get(x, CHUNK_SIZE - 1, z);
-                    Type currentType = blockType.getType(chunkID, pos);
-                    if (currentType == Type.AIR) {
-                        continue;
-                    }
-                    int topChunkId = chunkDescriptors.getID(chunkPos.getX(), chunkPos.getY() + 1, chunkPos.getZ());
-                    if (topChunkId != Integer.MIN_VALUE) {
-                        blockOptions.setVisibleFace(chunkID, pos, Face.TOP, checkNearPosition(topChunkId, currentType, Position.get(x, 0, z)));
-                    } else {
-                        blockOptions.setVisibleFace(chunkID, pos, Face.TOP, true);
-                    }
-                }
-            }
-            for (int z = 0; z < CHUNK_SIZE; z++) {
-                for (int x = 0; x < CHUNK_SIZE; x++) {
-                    final Position pos = Position.get(x, 0, z);
-                    Type currentType = blockType.getType(chunkID, pos);
-                    if (currentType == Type.AIR) {
-                        continue;
-                    }
-                    int bottomChunkId = chunkDescriptors.getID(chunkPos.getX(), chunkPos.getY() - 1, chunkPos.getZ());
-                    if (bottomChunkId != Integer.MIN_VALUE) {
-                        blockOptions.setVisibleFace(chunkID, pos, Face.BOTTOM, checkNearPosition(bottomChunkId, currentType, Position.get(x, CHUNK_SIZE - 1, z)));
-                    } else {
-                        blockOptions.setVisibleFace(chunkID, pos, Face.BOTTOM, true);
-                    }
-                }
+        long start = StageTimer.start();
+        exposeUniformChunks(chunkDescriptors.getUniformChunkKeys());
+        chunkDescriptors.drainUncheckedUniformChunks();
+        int[] chunkIDs = new int[getChunks()];
+        for (int chunkID = 0; chunkID < chunkIDs.length; chunkID++) {
+            chunkIDs[chunkID] = chunkID;
+        }
+        rebuildCulling(chunkIDs);
+        chunkDescriptors.getDirtyChunks().clear();
+        metrics.getCulling().stop(start);
+    }
+
+    /**
+     * Recalculate visibility masks of the chunks, marked in {@link DirtyChunksTracker}.
+     *
+     * @return {@code true} if any chunk was recalculated.
+     */
+    public boolean rebuildDirtyCulling() {
+        DirtyChunksTracker dirtyChunks = chunkDescriptors.getDirtyChunks();
+        if (dirtyChunks.isEmpty()) {
+            return false;
+        }
+        long start = StageTimer.start();
+        TIntSet chunkIDs = dirtyChunks.drain();
+        if (chunkDescriptors.getUniformChunks() > 0) {
+            // Changed chunks can expose their uniform neighbours.
+            chunkIDs.forEach(chunkID -> {
+                chunkDescriptors.markUniformNeighboursUnchecked(chunkID);
+                return true;
+            });
+            if (exposeUniformChunks(chunkDescriptors.drainUncheckedUniformChunks())) {
+                chunkIDs.addAll(dirtyChunks.drain());
             }
-            for (int y = 0; y < CHUNK_SIZE; y++) {
-                for (int x = 0; x < CHUNK_SIZE; x++) {
-                    final Position pos = Position.get(x, y, 0);
-                    Type currentType = blockType.getType(chunkID, pos);
-                    if (currentType == Type.AIR) {
-                        continue;
-                    }
-                    int backChunkId = chunkDescriptors.getID(chunkPos.getX(), chunkPos.getY(), chunkPos.getZ() - 1);
-                    if (backChunkId != Integer.MIN_VALUE) {
-                        blockOptions.setVisibleFace(chunkID, pos, Face.BACK, checkNearPosition(backChunkId, currentType, Position.get(x, y, CHUNK_SIZE - 1)));
-                    } else {
-                        blockOptions.setVisibleFace(chunkID, pos, Face.BACK, true);
-                    }
-                }
+        }
+        rebuildCulling(chunkIDs);
+        metrics.getCulling().stop(start);
+        return true;
+    }
+
+    /**
+     * Promote the uniform chunks, which have at least one exposed face.
+     *
+     * @param keys packed coordinates of the uniform chunks to be checked.
+     * @return {@code true} if any chunk was promoted.
+     */
+    private boolean exposeUniformChunks(@NotNull final long[] keys) {
+        boolean promoted = false;
+        for (long key : keys) {
+            int x = ChunkDescriptorsBuffer.unpackX(key);
+            int y = ChunkDescriptorsBuffer.unpackY(key);
+            int z = ChunkDescriptorsBuffer.unpackZ(key);
+            if (chunkDescriptors.getUniformType(x, y, z) != Integer.MIN_VALUE && isExposed(x, y, z)) {
+                promoted |= useChunk(x, y, z) != Integer.MIN_VALUE;
             }
-            for (int y = 0; y < CHUNK_SIZE; y++) {
-                for (int x = 0; x < CHUNK_SIZE; x++) {
-                    final Position pos = Position.get(x, y, CHUNK_SIZE - 1);
-                    Type currentType = blockType.getType(chunkID, pos);
-                    if (currentType == Type.AIR) {
-                        continue;
-                    }
-                    int frontChunkId = chunkDescriptors.getID(chunkPos.getX(), chunkPos.getY(), chunkPos.getZ() + 1);
-                    if (frontChunkId != Integer.MIN_VALUE) {
-                        blockOptions.setVisibleFace(chunkID, pos, Face.FRONT, checkNearPosition(frontChunkId, currentType, Position.get(x, y, 0)));
-                    } else {
-                        blockOptions.setVisibleFace(chunkID, pos, Face.FRONT, true);
-                    }
+        }
+        return promoted;
+    }
+
+    private boolean isExposed(final int x, final int y, final int z) {
+        for (Face face : Face.values()) {
+            int nx = x + face.getDx();
+            int ny = y + face.getDy();
+            int nz = z + face.getDz();
+            int neighbourID = chunkDescriptors.getID(nx, ny, nz);
+            if (neighbourID != Integer.MIN_VALUE) {
+                if (!CULLER.get().isPlaneOpaque(blockType, neighbourID, face)) {
+                    return true;
                 }
+            } else if (chunkDescriptors.getUniformType(nx, ny, nz) == Integer.MIN_VALUE && !isBuried(nx, ny, nz)) {
+                // Absent neighbour is AIR.
+                return true;
             }
         }
+        return false;
     }
 
-    private boolean checkNearPosition(int chunkID, Type currentType, Position nearPos) {
-        Type nearType = blockType.getType(chunkID, nearPos);
-        return (nearType == Type.AIR) || (nearType.isTransparent() != currentType.isTransparent());
+    /**
+     * Check if the absent chunk lies below all chunks of it's column. The columns are generated from the surface
+     * down to the lowest chunk with the surface, so the chunks below are solid ground, which was never generated.
+     */
+    @Contract(pure = true)
+    private boolean isBuried(final int x, final int y, final int z) {
+        long range = chunkDescriptors.getColumnRange(x, z);
+        return range != ChunkDescriptorsBuffer.NO_COLUMN_RANGE && y < ChunkGenerator.getRangeMin(range);
+    }
+
+    /**
+     * Recalculate visibility masks only for mentioned chunks.
+     *
+     * @param chunkIDs IDs of the chunks to be recalculated.
+     */
+    public void rebuildCulling(@NotNull final TIntCollection chunkIDs) {
+        rebuildCulling(chunkIDs.toArray());
+    }
+
+    private void rebuildCulling(@NotNull final int[] chunkIDs) {
+        if (culledChunks != null) {
+            culledChunks.addAll(chunkIDs);
+        }
+        ForkJoinPool pool = cullingPool;
+        if (pool != null && chunkIDs.length > CULLING_TASK_CHUNKS) {
+            pool.invoke(new CullingTask(chunkIDs, 0, chunkIDs.length));
+        } else {
+            rebuildCulling(chunkIDs, 0, chunkIDs.length);
+        }
+    }
+
+    private void rebuildCulling(@NotNull final int[] chunkIDs, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            rebuildCulling(chunkIDs[i]);
+        }
+    }
+
+    private void rebuildCulling(final int chunkID) {
+        CULLER.get().cull(this, chunkID);
+    }
+
+    /**
+     * Culling of the part of chunk IDs array, which is split in halves until it become small enough.
+     */
+    private final class CullingTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        @NotNull
+        private final int[] chunkIDs;
+        private final int from;
+        private final int to;
+
+        CullingTask(@NotNull final int[] chunkIDs, final int from, final int to) {
+            this.chunkIDs = chunkIDs;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CULLING_TASK_CHUNKS) {
+                rebuildCulling(chunkIDs, from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new CullingTask(chunkIDs, from, middle), new CullingTask(chunkIDs, middle, to));
+            }
+        }
     }
 
     /**
@@ -0,0 +1,230 @@
+package me.vektory79.jme3.cubeterrain;
+
+import me.vektory79.utils.StageTimer;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of the terrain pipeline of {@link TerrainChunksMesh}: stage timers, chunk pool occupancy, upload volume and
+ * visible geometry.
+ * <p>
+ * <p>Recording doesn't allocate, so it's always on. Pool occupancy and visible geometry are read from the mesh only
+ * when they are requested. Metrics can be published to the platform MBean server by {@link #register(String)} and
+ * watched by the standard JMX tools.</p>
+ */
+public final class TerrainMetrics implements TerrainMetricsMBean {
+    private static final String DOMAIN = "me.vektory79.blockworld";
+
+    @NotNull
+    private final TerrainChunksMesh mesh;
+    @NotNull
+    private final StageTimer generation = new StageTimer();
+    @NotNull
+    private final StageTimer culling = new StageTimer();
+    @NotNull
+    private final StageTimer upload = new StageTimer();
+
+    private volatile long typesUploadBytes;
+    private volatile long optionsUploadBytes;
+    private volatile long indexUploadBytes;
+    private volatile long totalUploadBytes;
+
+    TerrainMetrics(@NotNull final TerrainChunksMesh mesh) {
+        this.mesh = mesh;
+    }
+
+    /**
+     * Generation of the chunk contents, per chunk.
+     */
+    @NotNull
+    @Contract(pure = true)
+    public StageTimer getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Culling of the changed chunks, per frame.
+     */
+    @NotNull
+    @Contract(pure = true)
+    public StageTimer getCulling() {
+        return culling;
+    }
+
+    /**
+     * Publishing of the modified buffers for upload, per logical update.
+     */
+    @NotNull
+    @Contract(pure = true)
+    public StageTimer getUpload() {
+        return upload;
+    }
+
+    /**
+     * Record bytes, sent to GPU by the frame. Called from the rendering thread.
+     */
+    void recordUpload(final long typesBytes, final long optionsBytes, final long indexBytes) {
+        typesUploadBytes = typesBytes;
+        optionsUploadBytes = optionsBytes;
+        indexUploadBytes = indexBytes;
+        totalUploadBytes = totalUploadBytes + typesBytes + optionsBytes + indexBytes;
+    }
+
+    /**
+     * Publish the metrics to the platform MBean server.
+     *
+     * @param name name of the terrain, distinguishing several terrains in the same JVM.
+     * @return name of the registered MBean.
+     */
+    @NotNull
+    public ObjectName register(@NotNull final String name) throws JMException {
+        ObjectName objectName = getObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    /**
+     * Remove the metrics from the platform MBean server.
+     */
+    public void unregister(@NotNull final String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = getObjectName(name);
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+    }
+
+    @NotNull
+    private static ObjectName getObjectName(@NotNull final String name) throws JMException {
+        return new ObjectName(DOMAIN + ":type=TerrainMetrics,name=" + ObjectName.quote(name));
+    }
+
+    @Override
+    public int getChunkPoolSize() {
+        return mesh.getChunkDescriptors().getChunks();
+    }
+
+    @Override
+    public int getChunksInUse() {
+        return getChunkPoolSize() - getFreeChunks();
+    }
+
+    @Override
+    public int getFreeChunks() {
+        return mesh.getChunkDescriptors().getFreeChunks();
+    }
+
+    @Override
+    public int getUniformChunks() {
+        return mesh.getChunkDescriptors().getUniformChunks();
+    }
+
+    @Override
+    public long getGenerationCount() {
+        return generation.getCount();
+    }
+
+    @Override
+    public long getGenerationMeanMicros() {
+        return toMicros(generation.getMeanNanos());
+    }
+
+    @Override
+    public long getGenerationP99Micros() {
+        return toMicros(generation.getPercentileNanos(99));
+    }
+
+    @Override
+    public long getGenerationMaxMicros() {
+        return toMicros(generation.getMaxNanos());
+    }
+
+    @Override
+    public long getCullingCount() {
+        return culling.getCount();
+    }
+
+    @Override
+    public long getCullingMeanMicros() {
+        return toMicros(culling.getMeanNanos());
+    }
+
+    @Override
+    public long getCullingP99Micros() {
+        return toMicros(culling.getPercentileNanos(99));
+    }
+
+    @Override
+    public long getCullingMaxMicros() {
+        return toMicros(culling.getMaxNanos());
+    }
+
+    @Override
+    public long getUploadCount() {
+        return upload.getCount();
+    }
+
+    @Override
+    public long getUploadMeanMicros() {
+        return toMicros(upload.getMeanNanos());
+    }
+
+    @Override
+    public long getUploadP99Micros() {
+        return toMicros(upload.getPercentileNanos(99));
+    }
+
+    @Override
+    public long getUploadMaxMicros() {
+        return toMicros(upload.getMaxNanos());
+    }
+
+    @Override
+    public long getTypesUploadBytes() {
+        return typesUploadBytes;
+    }
+
+    @Override
+    public long getOptionsUploadBytes() {
+        return optionsUploadBytes;
+    }
+
+    @Override
+    public long getIndexUploadBytes() {
+        return indexUploadBytes;
+    }
+
+    @Override
+    public long getTotalUploadBytes() {
+        return totalUploadBytes;
+    }
+
+    @Override
+    public int getVisibleBlocks() {
+        return mesh.getVisibleBlocks().getVisibleBlocks();
+    }
+
+    @Override
+    public long getVisibleFaces() {
+        return mesh.getVisibleBlocks().getVisibleFaces();
+    }
+
+    @Override
+    public void reset() {
+        generation.reset();
+        culling.reset();
+        upload.reset();
+        totalUploadBytes = 0;
+    }
+
+    @Contract(pure = true)
+    private static long toMicros(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,73 @@
+package me.vektory79.jme3.cubeterrain;
+
+/**
+ * JMX view of {@link TerrainMetrics}. Times are in microseconds.
+ */
+public interface TerrainMetricsMBean {
+    int getChunkPoolSize();
+
+    int getChunksInUse();
+
+    int getFreeChunks();
+
+    int getUniformChunks();
+
+    long getGenerationCount();
+
+    long getGenerationMeanMicros();
+
+    long getGenerationP99Micros();
+
+    long getGenerationMaxMicros();
+
+    long getCullingCount();
+
+    long getCullingMeanMicros();
+
+    long getCullingP99Micros();
+
+    long getCullingMaxMicros();
+
+    long getUploadCount();
+
+    long getUploadMeanMicros();
+
+    long getUploadP99Micros();
+
+    long getUploadMaxMicros();
+
+    /**
+     * Bytes of the block types buffer, sent to GPU by the last frame.
+     */
+    long getTypesUploadBytes();
+
+    /**
+     * Bytes of the block options buffer, sent to GPU by the last frame.
+     */
+    long getOptionsUploadBytes();
+
+    /**
+     * Bytes of the visible blocks index, sent to GPU by the last frame.
+     */
+    long getIndexUploadBytes();
+
+    /**
+     * Bytes of all buffers, sent to GPU since the start or the last reset.
+     */
+    long getTotalUploadBytes();
+
+    /**
+     * Blocks, drawn by the last frame.
+     */
+    int getVisibleBlocks();
+
+    /**
+     * Visible faces of the blocks, drawn by the last frame.
+     */
+    long getVisibleFaces();
+
+    /**
+     * Reset timers and total counters.
+     */
+    void reset();
+}
@@ -7,24 +7,59 @@ import com.jme3.renderer.queue.RenderQueue;
 import com.jme3.scene.Geometry;
 import com.jme3.scene.Node;
 import com.jme3.texture.Texture;
+import me.vektory79.mapgen.HeightMap;
 import me.vektory79.mapgen.MapGenerator;
+import me.vektory79.utils.StageTimer;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_DIMENSION;
-import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_DIMENSION_FACTOR;
-import static me.vektory79.jme3.cubeterrain.BlockTypeDescriptorsBuffer.Type.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static me.vektory79.jme3.cubeterrain.BlockTypeDescriptorsBuffer.Type.AIR;
+
+public class TerrainNode extends Node implements ColumnLoader {
+    private static final Logger LOGGER = Logger.getLogger(TerrainNode.class.getName());
 
-public class TerrainNode extends Node {
     private final TerrainChunksMesh mesh;
     private final Material material;
+    private final Geometry opaque;
+    private final ChunkCullingControl chunkCulling;
+    // Source of the surface for the streamed columns.
+    @Nullable
+    private HeightMap heightMap;
+    // Storage of the streamed chunks. Stored chunks are loaded instead of generation.
+    @Nullable
+    private RegionStorage regionStorage;
+    // In-memory storage of the streamed chunks. Takes precedence over the region storage.
+    @Nullable
+    private SparseVoxelOctree voxelStorage;
+    // Background generation. Generated chunks are committed to the mesh once per frame.
+    @Nullable
+    private ChunkGenerationPipeline generationPipeline;
+    // Triangle geometry of the chunks, replacing the point mesh.
+    @Nullable
+    private GreedyTerrainNode greedyMeshes;
+    // Staging data of the chunk being filled. Written to the buffer by single bulk operation.
+    private final int[] chunkData = new int[AbstractTerrainBlockBuffer.CHUNK_SIZE];
 
     public TerrainNode(@NotNull AssetManager contentMan, String name, int chunks) {
+        this(contentMan, name, chunks, BlockStorageLayout.SEPARATE);
+    }
+
+    public TerrainNode(@NotNull AssetManager contentMan, String name, int chunks, @NotNull BlockStorageLayout layout) {
         super(name);
 
         DebugBuffer debug = new DebugBuffer(5, chunks);
 
-        mesh = new TerrainChunksMesh(chunks);
-        material = new Material(contentMan, "BlockWorld/Materials/BlockTerrain.j3md");
+        mesh = new TerrainChunksMesh(chunks, layout);
+        // Unused entries of the visible blocks index are skipped by the primitive restart.
+        material = new PrimitiveRestartMaterial(contentMan, "BlockWorld/Materials/BlockTerrain.j3md");
+        material.setBoolean("CompactBlockTypes", layout.isCompactTypes());
+        material.setBoolean("PackedBlocks", layout.isPacked());
         material.setShaderStorageBufferObject("ChunkDescriptors", mesh.getChunkDescriptors());
         material.setShaderStorageBufferObject("BlockTypeDescriptors", mesh.getBlockTypeDescriptors());
         material.setShaderStorageBufferObject("EdgeTemplatesIndex", mesh.getEdgeTemplatesIndex());
@@ -37,12 +72,15 @@ public class TerrainNode extends Node {
         material.setTexture("ColorMap", texture);
         material.getAdditionalRenderState().setBlendMode(RenderState.BlendMode.Alpha);
 
-        Geometry opaque = new Geometry(name + "_opaque");
+        opaque = new Geometry(name + "_opaque");
         opaque.setQueueBucket(RenderQueue.Bucket.Opaque);
         opaque.setMesh(mesh);
         opaque.setMaterial(material);
         opaque.getMaterial().setBoolean("DrawTransparent", false);
-        opaque.setCullHint(CullHint.Never);
+        // Mesh has the real bound of the reserved chunks, so the whole terrain can be culled by jME.
+        opaque.setCullHint(CullHint.Dynamic);
+        chunkCulling = new ChunkCullingControl(mesh);
+        opaque.addControl(chunkCulling);
         this.attachChild(opaque);
 
 /*
@@ -54,7 +92,7 @@ public class TerrainNode extends Node {
         transparent.setCullHint(CullHint.Never);
         this.attachChild(transparent);
 */
-        cullHint = CullHint.Never;
+        cullHint = CullHint.Dynamic;
     }
 
     public void updateBuffers() {
@@ -66,75 +104,256 @@ public class TerrainNode extends Node {
         return mesh;
     }
 
-    public void fillMap(double roughness, long seed) {
-        long lastTime = System.nanoTime();
-        MapGenerator map = new MapGenerator(10, roughness, seed);
-        map.generate();
-        for (int chunkZ = 0; chunkZ < 64; chunkZ++) {
-            for (int chunkX = 0; chunkX < 64; chunkX++) {
-                fillChunks(map, chunkX, chunkZ);
-            }
+    /**
+     * Per-chunk frustum and view distance culling of the terrain.
+     */
+    public final ChunkVisibilityCuller getChunkCulling() {
+        return chunkCulling.getCuller();
+    }
+
+    @Override
+    public void updateLogicalState(float tpf) {
+        super.updateLogicalState(tpf);
+        if (generationPipeline != null) {
+            generationPipeline.commit(mesh);
+        }
+        // Re-cull only chunks, changed since the last frame.
+        mesh.rebuildDirtyCulling();
+        if (greedyMeshes != null) {
+            greedyMeshes.rebuildChanged();
+        }
+        mesh.commitUpdates();
+        if (mesh.isBoundOutdated()) {
+            opaque.updateModelBound();
+        }
+    }
+
+    @Nullable
+    public final HeightMap getHeightMap() {
+        return heightMap;
+    }
+
+    /**
+     * Set the surface source for {@link #loadColumn(int, int)}.
+     */
+    public void setHeightMap(@Nullable HeightMap heightMap) {
+        this.heightMap = heightMap;
+    }
+
+    @Nullable
+    public final RegionStorage getRegionStorage() {
+        return regionStorage;
+    }
+
+    /**
+     * Set the storage for {@link #loadColumn(int, int)} and {@link #unloadColumn(int, int)}. Released chunks are
+     * saved to it and loaded back next time instead of generation.
+     */
+    public void setRegionStorage(@Nullable RegionStorage regionStorage) {
+        this.regionStorage = regionStorage;
+    }
+
+    @Nullable
+    public final SparseVoxelOctree getVoxelStorage() {
+        return voxelStorage;
+    }
+
+    /**
+     * Set the in-memory storage for {@link #loadColumn(int, int)} and {@link #unloadColumn(int, int)}. Released
+     * chunks are kept in the octree with collapsed uniform subtrees and flattened back to the mesh, when their
+     * columns are loaded again.
+     */
+    public void setVoxelStorage(@Nullable SparseVoxelOctree voxelStorage) {
+        this.voxelStorage = voxelStorage;
+    }
+
+    @Nullable
+    public final ChunkGenerationPipeline getGenerationPipeline() {
+        return generationPipeline;
+    }
+
+    /**
+     * Move the generation to the background threads. Generated chunks are written to the mesh during the logical
+     * state updates, so they appear in the next frames.
+     *
+     * @param threads     amount of the worker threads.
+     * @param stagedLimit maximum amount of generated, but not written chunks.
+     */
+    public ChunkGenerationPipeline createGenerationPipeline(int threads, int stagedLimit) {
+        if (generationPipeline != null) {
+            generationPipeline.close();
+        }
+        // Submitted chunks beyond the mesh capacity could never be written anyway.
+        generationPipeline = new ChunkGenerationPipeline(threads, stagedLimit, mesh.getChunks());
+        generationPipeline.setGenerationTimer(mesh.getMetrics().getGeneration());
+        setRequiresUpdates(true);
+        return generationPipeline;
+    }
+
+    @Nullable
+    public final GreedyTerrainNode getGreedyMeshes() {
+        return greedyMeshes;
+    }
+
+    /**
+     * Draw the terrain by the triangle geometries, built on CPU with merged faces, instead of the point mesh,
+     * expanded by the geometry shader. Geometries of the chunks are rebuilt, when the chunks are culled.
+     *
+     * @param contentMan asset manager for the material of the geometries.
+     */
+    public GreedyTerrainNode createGreedyMeshing(@NotNull AssetManager contentMan) {
+        if (greedyMeshes == null) {
+            greedyMeshes = new GreedyTerrainNode(contentMan, getName() + "_greedy", mesh);
+            detachChild(opaque);
+            attachChild(greedyMeshes);
+            setRequiresUpdates(true);
         }
-        System.out.println("Build chunks:  " + (System.nanoTime() - lastTime));
-        lastTime = System.nanoTime();
-        mesh.rebuildCulling();
-        System.out.println("Build culling: " + (System.nanoTime() - lastTime));
+        return greedyMeshes;
+    }
+
+    /**
+     * Create the streamer, which keeps the columns around the camera resident. The height map must be set.
+     *
+     * @param loadRadius   radius in columns, within which columns are loaded.
+     * @param unloadRadius radius in columns, beyond which columns are released.
+     */
+    public ChunkStreamer createStreamer(int loadRadius, int unloadRadius) {
         setRequiresUpdates(true);
+        return new ChunkStreamer(this, loadRadius, unloadRadius);
     }
 
-    private void fillChunks(MapGenerator map, int chunkX, int chunkZ) {
-        int min = Integer.MAX_VALUE;
-        int max = Integer.MIN_VALUE;
-        int xStart = chunkX << CHUNK_DIMENSION_FACTOR;
-        int zStart = chunkZ << CHUNK_DIMENSION_FACTOR;
-        for (int z = zStart; z < zStart + CHUNK_DIMENSION ; z++) {
-            for (int x = xStart; x < xStart + CHUNK_DIMENSION ; x++) {
-                int current = convertHeight(map.getData(x, z));
-                if (current > max) {
-                    max = current;
+    @Override
+    public boolean loadColumn(int chunkX, int chunkZ) {
+        HeightMap map = requireHeightMap();
+        long range = ChunkGenerator.getColumnRange(map, chunkX, chunkZ);
+        int chunkYMin = ChunkGenerator.getRangeMin(range);
+        int chunkYMax = ChunkGenerator.getRangeMax(range);
+        int freeChunks = mesh.getChunkDescriptors().getFreeChunks();
+        if (generationPipeline != null) {
+            // Submitted chunks will take their slots later.
+            freeChunks -= generationPipeline.getPendingChunks();
+        }
+        if (freeChunks < chunkYMax - chunkYMin + 1) {
+            return false;
+        }
+        if (generationPipeline != null && generationPipeline.getFreeRequests() < chunkYMax - chunkYMin + 1) {
+            return false;
+        }
+        if (regionStorage == null && voxelStorage == null) {
+            fillChunks(map, chunkX, chunkZ, chunkYMin, chunkYMax);
+            return true;
+        }
+        try {
+            for (int chunkY = chunkYMin; chunkY <= chunkYMax; chunkY++) {
+                if (voxelStorage != null && voxelStorage.loadChunk(mesh, chunkX, chunkY, chunkZ)) {
+                    continue;
                 }
-                if (current < min) {
-                    min = current;
+                if (regionStorage == null || !regionStorage.loadChunk(mesh, chunkX, chunkY, chunkZ)) {
+                    fillChunk(map, chunkX, chunkY, chunkZ);
                 }
             }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        int chunkYMin = min >> CHUNK_DIMENSION_FACTOR;
-        int chunkYMax = max >> CHUNK_DIMENSION_FACTOR;
-        fillChunks(map, chunkX, chunkZ, chunkYMin, chunkYMax);
+        return true;
     }
 
-    private void fillChunks(MapGenerator map, int chunkX, int chunkZ, int chunkYMin, int chunkYMax) {
+    @Override
+    public void unloadColumn(int chunkX, int chunkZ) {
+        if (generationPipeline != null) {
+            generationPipeline.cancelColumn(chunkX, chunkZ);
+        }
+        long range = ChunkGenerator.getColumnRange(requireHeightMap(), chunkX, chunkZ);
+        int chunkYMin = ChunkGenerator.getRangeMin(range);
+        int chunkYMax = ChunkGenerator.getRangeMax(range);
+        // Edits and exposure can place chunks beyond the generated surface.
+        long usedRange = mesh.getChunkDescriptors().drainColumnRange(chunkX, chunkZ);
+        if (usedRange != ChunkDescriptorsBuffer.NO_COLUMN_RANGE) {
+            chunkYMin = Math.min(chunkYMin, ChunkGenerator.getRangeMin(usedRange));
+            chunkYMax = Math.max(chunkYMax, ChunkGenerator.getRangeMax(usedRange));
+        }
         for (int chunkY = chunkYMin; chunkY <= chunkYMax; chunkY++) {
-            fillChunk(map, chunkX, chunkY, chunkZ);
+            if (voxelStorage != null) {
+                voxelStorage.saveChunk(mesh, chunkX, chunkY, chunkZ);
+            }
+            if (regionStorage != null) {
+                try {
+                    regionStorage.saveChunk(mesh, chunkX, chunkY, chunkZ);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            mesh.setUniformChunk(chunkX, chunkY, chunkZ, AIR);
         }
     }
 
-    private void fillChunk(MapGenerator map, int chunkX, int chunkY, int chunkZ) {
-        int chunkID = mesh.getChunkDescriptors().use(chunkX, chunkY, chunkZ);
-        int xStart = chunkX << CHUNK_DIMENSION_FACTOR;
-        int yStart = chunkY << CHUNK_DIMENSION_FACTOR;
-        int zStart = chunkZ << CHUNK_DIMENSION_FACTOR;
-
-        for (int z = 0; z < CHUNK_DIMENSION; z++) {
-            for (int x = 0; x < CHUNK_DIMENSION; x++) {
-                int height = convertHeight(map.getData(x + xStart, z + zStart));
-                for (int y = 0; y < CHUNK_DIMENSION; y++) {
-                    int currHeight = y + yStart;
-                    if (currHeight > height) {
-                        mesh.getBlockType().setType(chunkID, Position.get(x, y, z), AIR);
-                    } else if (height >= -2 && height <= 2 && currHeight >= height - 3) {
-                        mesh.getBlockType().setType(chunkID, Position.get(x, y, z), SAND);
-                    } else if (height > 2 && currHeight >= height - 3) {
-                        mesh.getBlockType().setType(chunkID, Position.get(x, y, z), DIRT);
-                    } else {
-                        mesh.getBlockType().setType(chunkID, Position.get(x, y, z), STONE);
-                    }
+    /**
+     * Save all reserved chunks to the region storage and write it to the storage device, e.g. before exit.
+     * Otherwise the resident columns are saved only, when they are unloaded.
+     */
+    public void saveResidentChunks() {
+        if (regionStorage == null) {
+            return;
+        }
+        ChunkDescriptorsBuffer descriptors = mesh.getChunkDescriptors();
+        try {
+            for (int chunkId = 0; chunkId < descriptors.getChunks(); chunkId++) {
+                if (descriptors.isUsed(chunkId)) {
+                    regionStorage.saveChunk(mesh, descriptors.readX(chunkId), descriptors.readY(chunkId),
+                            descriptors.readZ(chunkId));
                 }
             }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        regionStorage.flush();
+    }
+
+    @NotNull
+    private HeightMap requireHeightMap() {
+        if (heightMap == null) {
+            throw new IllegalStateException("Height map is not set");
         }
+        return heightMap;
     }
 
-    private int convertHeight(double mapHeight) {
-        return (int) (mapHeight * 25.0);
+    /**
+     * Generate the height map and 64x64 columns of it. If the generation pipeline is created, then chunks are
+     * submitted to it and culled, when they are written to the mesh. Chunks, which don't fit to the work queue of
+     * the pipeline, are generated immediately.
+     *
+     * @see WorldBuilder
+     */
+    public void fillMap(double roughness, long seed) {
+        WorldBuilder builder = new WorldBuilder(mesh);
+        MapGenerator map = builder.generateMap(10, roughness, seed);
+        heightMap = map;
+        setRequiresUpdates(true);
+        if (generationPipeline != null) {
+            builder.submitColumns(map, 64, 64, generationPipeline);
+            return;
+        }
+        builder.fillColumns(map, 64, 64);
+        builder.rebuildCulling();
+        LOGGER.log(Level.INFO, "Map is built: chunks {0} ms, culling {1} ms", new Object[]{
+                TimeUnit.NANOSECONDS.toMillis(builder.getMapNanos() + builder.getFillNanos()),
+                TimeUnit.NANOSECONDS.toMillis(builder.getCullingNanos())});
+    }
+
+    private void fillChunks(HeightMap map, int chunkX, int chunkZ, int chunkYMin, int chunkYMax) {
+        for (int chunkY = chunkYMin; chunkY <= chunkYMax; chunkY++) {
+            fillChunk(map, chunkX, chunkY, chunkZ);
+        }
+    }
+
+    private void fillChunk(HeightMap map, int chunkX, int chunkY, int chunkZ) {
+        // Chunk, rejected by the full work queue, is generated immediately.
+        if (generationPipeline != null && generationPipeline.submit(map, chunkX, chunkY, chunkZ)) {
+            return;
+        }
+        long start = StageTimer.start();
+        ChunkGenerator.generate(map, chunkX, chunkY, chunkZ, chunkData);
+        mesh.getMetrics().getGeneration().stop(start);
+        ChunkGenerator.store(mesh, chunkX, chunkY, chunkZ, chunkData);
     }
 }
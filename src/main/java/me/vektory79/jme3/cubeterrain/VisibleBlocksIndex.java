@@ -0,0 +1,469 @@
+package me.vektory79.jme3.cubeterrain;
+
+import com.jme3.scene.VertexBuffer;
+import gnu.trove.list.array.TIntArrayList;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_SIZE;
+
+/**
+ * Index buffer of the blocks, which have at least one visible face.
+ * <p>
+ * <p>The mesh is drawn by this index, so only the listed blocks are passed to the shaders. The index value is
+ * the block address, so {@code gl_VertexID} in the vertex shader is the same, as without the index.</p>
+ * <p>
+ * <p>Visible blocks are collected per chunk from the culling output. The chunk lists can be updated from
+ * the parallel culling threads, because each of them touches only own chunk. Each chunk with visible blocks owns
+ * a slot of the index with some slack for the growth. {@link #commitUpdates()} rewrites only the slots of the changed
+ * chunks, and {@link #uploadUpdates(BufferRangeUploader)} sends only the rewritten ranges to GPU. The unused entries of the index,
+ * including the slots of the chunks, rejected by {@link ChunkVisibilityCuller}, are filled by {@link #RESTART_INDEX}
+ * and skipped by GPU, when the primitive restart is enabled.</p>
+ * <p>
+ * <p>So the mesh with this index must be drawn by {@link PrimitiveRestartMaterial}, which enables the primitive
+ * restart around the draw. Otherwise the unused entries are drawn as the blocks with the garbage addresses.</p>
+ */
+public class VisibleBlocksIndex extends VertexBuffer {
+    /**
+     * Primitive restart index, which marks the unused entries of the index. It's skipped only, when the primitive
+     * restart is enabled, i.e. the geometry is drawn by {@link PrimitiveRestartMaterial}.
+     */
+    public static final int RESTART_INDEX = 0xFFFFFFFF;
+
+    private static final int[] EMPTY = new int[0];
+    // Slot capacities are rounded up to this amount of entries.
+    private static final int SLOT_ALIGNMENT = 64;
+
+    // Visible block addresses of each chunk. Only first chunkCounts[chunkId] elements are valid.
+    @NotNull
+    private final int[][] chunkBlocks;
+    @NotNull
+    private final int[] chunkCounts;
+    // Amount of visible faces of each chunk.
+    @NotNull
+    private final int[] chunkFaces;
+    // Chunks, changed since the last commit. Each element is written only by the thread, culling the chunk.
+    @NotNull
+    private final boolean[] chunkChanged;
+    private volatile boolean changed;
+    // Chunks to be written to the index or null for all chunks.
+    @Nullable
+    private BitSet drawnChunks;
+    // Scratch set of the chunks, shown or hidden by the last change of the drawn chunks.
+    @NotNull
+    private final BitSet toggledChunks = new BitSet();
+
+    // Slot of each chunk in the index: first entry, amount of entries, amount of written blocks and their faces.
+    @NotNull
+    private final int[] slotStart;
+    @NotNull
+    private final int[] slotCapacity;
+    @NotNull
+    private final int[] slotBlocks;
+    @NotNull
+    private final int[] slotFaces;
+    // Free ranges of the index below slotsEnd, ordered by the first entry: pairs of the first entry and the length.
+    @NotNull
+    private final TIntArrayList freeSlots = new TIntArrayList();
+    // Entries from this one to the end of the index are not used by any slot.
+    private int slotsEnd;
+    // Rewritten ranges of the index, which are not uploaded yet: pairs of the first entry and the entry after the last.
+    @NotNull
+    private final TIntArrayList uploadRanges = new TIntArrayList();
+    // The index was reallocated and must be uploaded as the whole.
+    private boolean uploadAll;
+
+    // Visible blocks and faces in the written slots. Written by the owner thread, may be read by monitoring.
+    private volatile int visibleBlocks;
+    private volatile long visibleFaces;
+    @NotNull
+    private ByteBuffer indexBytes;
+    @NotNull
+    private IntBuffer indexData;
+
+    public VisibleBlocksIndex(final int chunks) {
+        super(Type.Index);
+        chunkBlocks = new int[chunks][];
+        chunkCounts = new int[chunks];
+        chunkFaces = new int[chunks];
+        chunkChanged = new boolean[chunks];
+        slotStart = new int[chunks];
+        slotCapacity = new int[chunks];
+        slotBlocks = new int[chunks];
+        slotFaces = new int[chunks];
+        for (int chunkId = 0; chunkId < chunks; chunkId++) {
+            chunkBlocks[chunkId] = EMPTY;
+        }
+        indexBytes = BufferUtils.createByteBuffer(CHUNK_SIZE * Integer.BYTES);
+        indexData = indexBytes.asIntBuffer();
+        fillRestart(indexData, 0, indexData.capacity());
+        initialize();
+    }
+
+    /**
+     * Replace the visible blocks list of the chunk by the blocks with non zero visibility mask.
+     *
+     * @param chunkId ID of the chunk.
+     * @param options block options of the chunk (see {@link TerrainBlockOptionsBuffer}).
+     */
+    public void update(final int chunkId, @NotNull final int[] options) {
+        int count = 0;
+        int faces = 0;
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            int visibility = options[i] & TerrainBlockOptionsBuffer.VISIBILITY_FIELD_MASK;
+            if (visibility != 0) {
+                count++;
+                faces += Integer.bitCount(visibility);
+            }
+        }
+        int[] blocks = chunkBlocks[chunkId];
+        if (blocks.length < count) {
+            blocks = new int[count];
+            chunkBlocks[chunkId] = blocks;
+        }
+        int address = chunkId * CHUNK_SIZE;
+        int index = 0;
+        for (int i = 0; i < CHUNK_SIZE && index < count; i++) {
+            if ((options[i] & TerrainBlockOptionsBuffer.VISIBILITY_FIELD_MASK) != 0) {
+                blocks[index++] = address + i;
+            }
+        }
+        chunkCounts[chunkId] = count;
+        chunkFaces[chunkId] = faces;
+        chunkChanged[chunkId] = true;
+        changed = true;
+    }
+
+    /**
+     * Remove all blocks of the chunk from the index. Used when chunk is freed.
+     *
+     * @param chunkId ID of the chunk.
+     */
+    public void clear(final int chunkId) {
+        if (chunkCounts[chunkId] != 0) {
+            chunkCounts[chunkId] = 0;
+            chunkFaces[chunkId] = 0;
+            chunkChanged[chunkId] = true;
+            changed = true;
+        }
+    }
+
+    /**
+     * Restrict the index to the mentioned chunks. Only the slots of the chunks, which are shown or hidden by
+     * the change, are rewritten by the next {@link #commitUpdates()}.
+     *
+     * @param chunks chunks to be drawn or {@code null} to draw all chunks. The set is copied.
+     */
+    public void setDrawnChunks(@Nullable final BitSet chunks) {
+        BitSet toggled = toggledChunks;
+        toggled.clear();
+        if (chunks == null) {
+            if (drawnChunks == null) {
+                return;
+            }
+            toggled.set(0, chunkChanged.length);
+            toggled.andNot(drawnChunks);
+            drawnChunks = null;
+        } else if (drawnChunks == null) {
+            toggled.set(0, chunkChanged.length);
+            toggled.andNot(chunks);
+            drawnChunks = (BitSet) chunks.clone();
+        } else {
+            toggled.or(chunks);
+            toggled.xor(drawnChunks);
+            drawnChunks.clear();
+            drawnChunks.or(chunks);
+        }
+        for (int chunkId = toggled.nextSetBit(0); chunkId >= 0; chunkId = toggled.nextSetBit(chunkId + 1)) {
+            // Chunks without visible blocks have no slot to be rewritten.
+            if (chunkCounts[chunkId] != 0) {
+                chunkChanged[chunkId] = true;
+                changed = true;
+            }
+        }
+    }
+
+    /**
+     * Amount of the visible blocks of the chunk.
+     */
+    @Contract(pure = true)
+    public int getVisibleBlocks(final int chunkId) {
+        return chunkCounts[chunkId];
+    }
+
+    /**
+     * Amount of the visible blocks in the index.
+     */
+    @Contract(pure = true)
+    public int getVisibleBlocks() {
+        return visibleBlocks;
+    }
+
+    /**
+     * Amount of the visible faces of the blocks in the index.
+     */
+    @Contract(pure = true)
+    public long getVisibleFaces() {
+        return visibleFaces;
+    }
+
+    /**
+     * Read the blocks of the chunk, written to the index by the last {@link #commitUpdates()}.
+     *
+     * @param chunkId ID of the chunk.
+     * @param dest    array of at least {@link AbstractTerrainBlockBuffer#CHUNK_SIZE} elements for the block addresses.
+     * @return amount of the read blocks. Zero if the chunk is not drawn.
+     */
+    public int readChunk(final int chunkId, @NotNull final int[] dest) {
+        int blocks = slotBlocks[chunkId];
+        IntBuffer source = indexData.duplicate();
+        source.position(slotStart[chunkId]);
+        source.get(dest, 0, blocks);
+        return blocks;
+    }
+
+    /**
+     * First entry of the chunk slot in the index.
+     */
+    @Contract(pure = true)
+    int getSlotStart(final int chunkId) {
+        return slotStart[chunkId];
+    }
+
+    /**
+     * Amount of entries of the chunk slot in the index. Zero if the chunk has no slot.
+     */
+    @Contract(pure = true)
+    int getSlotCapacity(final int chunkId) {
+        return slotCapacity[chunkId];
+    }
+
+    /**
+     * Ranges of the index, rewritten by {@link #commitUpdates()} and not uploaded yet.
+     *
+     * @return pairs of the first byte offset and the offset after the last byte of each range in ascending order.
+     */
+    @NotNull
+    int[] getUploadRanges() {
+        int ranges = uploadRanges.size() / 2;
+        long[] sorted = new long[ranges];
+        for (int i = 0; i < ranges; i++) {
+            sorted[i] = (long) uploadRanges.getQuick(i * 2) << 32 | uploadRanges.getQuick(i * 2 + 1);
+        }
+        Arrays.sort(sorted);
+        TIntArrayList result = new TIntArrayList(ranges * 2);
+        for (long range : sorted) {
+            int start = (int) (range >>> 32) * Integer.BYTES;
+            int end = (int) range * Integer.BYTES;
+            int last = result.size() - 1;
+            if (last > 0 && result.getQuick(last) >= start) {
+                result.setQuick(last, Math.max(result.getQuick(last), end));
+            } else {
+                result.add(start);
+                result.add(end);
+            }
+        }
+        return result.toArray();
+    }
+
+    /**
+     * Rewrite the slots of the changed chunks. Should be called once per frame, after culling.
+     *
+     * @return {@code true} if the index was changed and mesh counts should be updated.
+     */
+    public boolean commitUpdates() {
+        if (!changed) {
+            return false;
+        }
+        changed = false;
+        for (int chunkId = 0; chunkId < chunkChanged.length; chunkId++) {
+            if (chunkChanged[chunkId]) {
+                chunkChanged[chunkId] = false;
+                writeChunk(chunkId);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Send the rewritten ranges of the index to GPU by {@code glBufferSubData}. The whole index is uploaded by jME
+     * only, when it's allocated or grown, or when the range uploads are not supported. Must be called from
+     * the rendering thread, before the mesh is drawn.
+     *
+     * @param uploader uploader of the ranges.
+     * @return amount of bytes, sent to GPU.
+     */
+    long uploadUpdates(@NotNull final BufferRangeUploader uploader) {
+        if (uploadAll) {
+            uploadAll = false;
+            uploadRanges.resetQuick();
+            return (long) indexData.capacity() * Integer.BYTES;
+        }
+        if (uploadRanges.isEmpty()) {
+            return 0;
+        }
+        long bytes = uploader.upload(this, indexBytes, getUploadRanges());
+        uploadRanges.resetQuick();
+        return bytes;
+    }
+
+    private void writeChunk(final int chunkId) {
+        int count = chunkCounts[chunkId];
+        if (count == 0) {
+            releaseSlot(chunkId);
+            return;
+        }
+        if (count > slotCapacity[chunkId]) {
+            releaseSlot(chunkId);
+            allocateSlot(chunkId, computeSlotCapacity(count));
+        }
+        BitSet drawn = drawnChunks;
+        int blocks = drawn == null || drawn.get(chunkId) ? count : 0;
+        int faces = blocks == 0 ? 0 : chunkFaces[chunkId];
+        int start = slotStart[chunkId];
+        int written = Math.max(blocks, slotBlocks[chunkId]);
+        indexData.position(start);
+        indexData.put(chunkBlocks[chunkId], 0, blocks);
+        fillRestart(indexData, start + blocks, start + written);
+        indexData.clear();
+        addUploadRange(start, start + written);
+        visibleBlocks = visibleBlocks + blocks - slotBlocks[chunkId];
+        visibleFaces = visibleFaces + faces - slotFaces[chunkId];
+        slotBlocks[chunkId] = blocks;
+        slotFaces[chunkId] = faces;
+    }
+
+    /**
+     * Allocate the slot from the first large enough free range or from the end of the used slots. The new slot is
+     * filled by {@link #RESTART_INDEX}, like all free entries.
+     */
+    private void allocateSlot(final int chunkId, final int capacity) {
+        int start = -1;
+        for (int i = 0; i < freeSlots.size(); i += 2) {
+            int length = freeSlots.getQuick(i + 1);
+            if (length >= capacity) {
+                start = freeSlots.getQuick(i);
+                if (length == capacity) {
+                    freeSlots.remove(i, 2);
+                } else {
+                    freeSlots.setQuick(i, start + capacity);
+                    freeSlots.setQuick(i + 1, length - capacity);
+                }
+                break;
+            }
+        }
+        if (start < 0) {
+            if (slotsEnd + capacity > indexData.capacity()) {
+                grow(slotsEnd + capacity);
+            }
+            start = slotsEnd;
+            slotsEnd += capacity;
+        }
+        slotStart[chunkId] = start;
+        slotCapacity[chunkId] = capacity;
+    }
+
+    /**
+     * Return the slot to the free ranges. The written blocks are replaced by {@link #RESTART_INDEX}.
+     */
+    private void releaseSlot(final int chunkId) {
+        int capacity = slotCapacity[chunkId];
+        if (capacity == 0) {
+            return;
+        }
+        int start = slotStart[chunkId];
+        int blocks = slotBlocks[chunkId];
+        if (blocks != 0) {
+            fillRestart(indexData, start, start + blocks);
+            addUploadRange(start, start + blocks);
+        }
+        visibleBlocks = visibleBlocks - blocks;
+        visibleFaces = visibleFaces - slotFaces[chunkId];
+        slotStart[chunkId] = 0;
+        slotCapacity[chunkId] = 0;
+        slotBlocks[chunkId] = 0;
+        slotFaces[chunkId] = 0;
+        addFreeRange(start, capacity);
+    }
+
+    /**
+     * Insert the free range, joining it with the adjacent free ranges and with the unused end of the index.
+     */
+    private void addFreeRange(int start, int length) {
+        int i = 0;
+        while (i < freeSlots.size() && freeSlots.getQuick(i) < start) {
+            i += 2;
+        }
+        if (i < freeSlots.size() && start + length == freeSlots.getQuick(i)) {
+            length += freeSlots.getQuick(i + 1);
+            freeSlots.remove(i, 2);
+        }
+        if (i > 0 && freeSlots.getQuick(i - 2) + freeSlots.getQuick(i - 1) == start) {
+            i -= 2;
+            start = freeSlots.getQuick(i);
+            length += freeSlots.getQuick(i + 1);
+            freeSlots.remove(i, 2);
+        }
+        if (start + length == slotsEnd) {
+            slotsEnd = start;
+        } else {
+            freeSlots.insert(i, new int[]{start, length});
+        }
+    }
+
+    private void addUploadRange(final int start, final int end) {
+        if (start < end && !uploadAll) {
+            uploadRanges.add(start);
+            uploadRanges.add(end);
+        }
+    }
+
+    /**
+     * Reallocate the index with reserve, so the small changes don't reallocate it each time. The reallocated index is
+     * uploaded by jME as the whole.
+     */
+    private void grow(final int minCapacity) {
+        int capacity = Math.max(minCapacity, indexData.capacity() + (indexData.capacity() >> 1));
+        ByteBuffer bytes = BufferUtils.createByteBuffer(capacity * Integer.BYTES);
+        IntBuffer data = bytes.asIntBuffer();
+        indexData.clear();
+        data.put(indexData);
+        fillRestart(data, indexData.capacity(), capacity);
+        data.clear();
+        indexBytes = bytes;
+        indexData = data;
+        updateData(indexData);
+        uploadAll = true;
+        uploadRanges.resetQuick();
+    }
+
+    @Contract(pure = true)
+    private static int computeSlotCapacity(final int count) {
+        int capacity = count + (count >> 3) + SLOT_ALIGNMENT - 1;
+        return Math.min(capacity - capacity % SLOT_ALIGNMENT, CHUNK_SIZE);
+    }
+
+    private static void fillRestart(@NotNull final IntBuffer data, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            data.put(i, RESTART_INDEX);
+        }
+    }
+
+    private void initialize() {
+        data = indexData;
+        usage = Usage.Dynamic;
+        format = Format.UnsignedInt;
+        components = 1;
+        componentsLength = components * format.getComponentSize();
+        lastLimit = data.limit();
+        normalized = false;
+        setUpdateNeeded();
+    }
+}
@@ -0,0 +1,328 @@
+package me.vektory79.jme3.cubeterrain;
+
+import me.vektory79.mapgen.HeightMap;
+import me.vektory79.mapgen.MapGenerator;
+import me.vektory79.utils.StageTimer;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_DIMENSION_FACTOR;
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_SIZE;
+
+/**
+ * CPU side of the world building: height map generation, chunk fill, culling and population of the buffers.
+ * <p>
+ * <p>Builder touches only the mesh buffers and doesn't need the rendering context or assets, so the world can be
+ * built and profiled without the window. Each stage is timed separately.</p>
+ * <p>
+ * <p>Must be called from the thread, which owns the mesh.</p>
+ */
+public final class WorldBuilder {
+    @NotNull
+    private final TerrainChunksMesh mesh;
+    // Staging data of the chunk being filled or checksummed.
+    @NotNull
+    private final int[] chunkData = new int[CHUNK_SIZE];
+    @NotNull
+    private final ByteBuffer checksumData = ByteBuffer.allocate(CHUNK_SIZE * Integer.BYTES);
+    private long mapNanos;
+    private long fillNanos;
+    private long cullingNanos;
+    private long uploadNanos;
+    private long greedyNanos;
+    private long voxelStorageNanos;
+    private int storedChunks;
+    private int rejectedChunks;
+    private long greedyQuads;
+    private long greedyFaces;
+
+    public WorldBuilder(@NotNull final TerrainChunksMesh mesh) {
+        this.mesh = mesh;
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    public TerrainChunksMesh getMesh() {
+        return mesh;
+    }
+
+    /**
+     * Build the whole world: generate the map, fill all it's columns, cull and populate the buffers.
+     *
+     * @param sizeFactor size of the map as the power of two. The map is covered by the columns of chunks.
+     * @param roughness  roughness of the surface.
+     * @param seed       seed of the map.
+     * @return generated map.
+     */
+    @NotNull
+    public MapGenerator build(final int sizeFactor, final double roughness, final long seed) {
+        MapGenerator map = generateMap(sizeFactor, roughness, seed);
+        int columns = Math.max(1, (1 << sizeFactor) >> CHUNK_DIMENSION_FACTOR);
+        fillColumns(map, columns, columns);
+        rebuildCulling();
+        commitUpdates();
+        return map;
+    }
+
+    /**
+     * Generate the height map. The generation is parallel, if the mesh has the culling pool.
+     */
+    @NotNull
+    public MapGenerator generateMap(final int sizeFactor, final double roughness, final long seed) {
+        long start = System.nanoTime();
+        MapGenerator map = new MapGenerator(sizeFactor, roughness, seed);
+        ForkJoinPool pool = mesh.getCullingPool();
+        if (pool != null) {
+            map.generate(pool);
+        } else {
+            map.generate();
+        }
+        mapNanos += System.nanoTime() - start;
+        return map;
+    }
+
+    /**
+     * Generate and store the surface chunks of the columns from (0, 0) to (columnsX - 1, columnsZ - 1).
+     * Chunks, which don't fit to the mesh, are counted as {@link #getRejectedChunks() rejected}.
+     */
+    public void fillColumns(@NotNull final HeightMap map, final int columnsX, final int columnsZ) {
+        long start = System.nanoTime();
+        for (int chunkZ = 0; chunkZ < columnsZ; chunkZ++) {
+            for (int chunkX = 0; chunkX < columnsX; chunkX++) {
+                fillColumn(map, chunkX, chunkZ);
+            }
+        }
+        fillNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Submit the surface chunks of the columns from (0, 0) to (columnsX - 1, columnsZ - 1) to the generation
+     * pipeline. Chunks, rejected by the full work queue of the pipeline, are generated and stored by the calling
+     * thread, so no chunk is lost. Submitted chunks are written to the mesh by {@link
+     * ChunkGenerationPipeline#commit(TerrainChunksMesh)} and aren't counted as stored.
+     */
+    public void submitColumns(
+            @NotNull final HeightMap map,
+            final int columnsX,
+            final int columnsZ,
+            @NotNull final ChunkGenerationPipeline pipeline) {
+        long start = System.nanoTime();
+        for (int chunkZ = 0; chunkZ < columnsZ; chunkZ++) {
+            for (int chunkX = 0; chunkX < columnsX; chunkX++) {
+                long range = ChunkGenerator.getColumnRange(map, chunkX, chunkZ);
+                int chunkYMax = ChunkGenerator.getRangeMax(range);
+                for (int chunkY = ChunkGenerator.getRangeMin(range); chunkY <= chunkYMax; chunkY++) {
+                    if (!pipeline.submit(map, chunkX, chunkY, chunkZ)) {
+                        fillChunk(map, chunkX, chunkY, chunkZ);
+                    }
+                }
+            }
+        }
+        fillNanos += System.nanoTime() - start;
+    }
+
+    private void fillColumn(@NotNull final HeightMap map, final int chunkX, final int chunkZ) {
+        long range = ChunkGenerator.getColumnRange(map, chunkX, chunkZ);
+        int chunkYMax = ChunkGenerator.getRangeMax(range);
+        for (int chunkY = ChunkGenerator.getRangeMin(range); chunkY <= chunkYMax; chunkY++) {
+            fillChunk(map, chunkX, chunkY, chunkZ);
+        }
+    }
+
+    private void fillChunk(@NotNull final HeightMap map, final int chunkX, final int chunkY, final int chunkZ) {
+        long start = StageTimer.start();
+        ChunkGenerator.generate(map, chunkX, chunkY, chunkZ, chunkData);
+        mesh.getMetrics().getGeneration().stop(start);
+        if (ChunkGenerator.store(mesh, chunkX, chunkY, chunkZ, chunkData)) {
+            storedChunks++;
+        } else {
+            rejectedChunks++;
+        }
+    }
+
+    /**
+     * Recalculate visibility masks of all chunks.
+     */
+    public void rebuildCulling() {
+        long start = System.nanoTime();
+        mesh.rebuildCulling();
+        cullingNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Assemble the visible blocks index and publish the modified ranges of the buffers.
+     */
+    public void commitUpdates() {
+        long start = System.nanoTime();
+        mesh.commitUpdates();
+        uploadNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Build the {@link GreedyChunkMesher greedy meshes} of all reserved chunks. Meshes are only counted, not kept,
+     * so the stage measures the meshing itself.
+     */
+    public void buildGreedyMeshes() {
+        long start = System.nanoTime();
+        GreedyChunkMesher mesher = new GreedyChunkMesher();
+        for (int chunkId = 0; chunkId < mesh.getChunks(); chunkId++) {
+            greedyQuads += mesher.build(mesh, chunkId);
+            greedyFaces += mesher.getMergedFaces();
+        }
+        greedyNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Save all reserved and uniform chunks to the new {@link SparseVoxelOctree}.
+     */
+    @NotNull
+    public SparseVoxelOctree buildVoxelStorage() {
+        long start = System.nanoTime();
+        SparseVoxelOctree storage = new SparseVoxelOctree();
+        ChunkDescriptorsBuffer descriptors = mesh.getChunkDescriptors();
+        for (int chunkId = 0; chunkId < mesh.getChunks(); chunkId++) {
+            if (descriptors.isUsed(chunkId)) {
+                storage.saveChunk(mesh, descriptors.readX(chunkId), descriptors.readY(chunkId),
+                        descriptors.readZ(chunkId));
+            }
+        }
+        for (long key : descriptors.getUniformChunkKeys()) {
+            storage.saveChunk(mesh, ChunkDescriptorsBuffer.unpackX(key), ChunkDescriptorsBuffer.unpackY(key),
+                    ChunkDescriptorsBuffer.unpackZ(key));
+        }
+        voxelStorageNanos += System.nanoTime() - start;
+        return storage;
+    }
+
+    @Contract(pure = true)
+    public long getMapNanos() {
+        return mapNanos;
+    }
+
+    @Contract(pure = true)
+    public long getFillNanos() {
+        return fillNanos;
+    }
+
+    @Contract(pure = true)
+    public long getCullingNanos() {
+        return cullingNanos;
+    }
+
+    @Contract(pure = true)
+    public long getUploadNanos() {
+        return uploadNanos;
+    }
+
+    @Contract(pure = true)
+    public long getGreedyNanos() {
+        return greedyNanos;
+    }
+
+    @Contract(pure = true)
+    public long getVoxelStorageNanos() {
+        return voxelStorageNanos;
+    }
+
+    /**
+     * Amount of the quads, built by {@link #buildGreedyMeshes()}.
+     */
+    @Contract(pure = true)
+    public long getGreedyQuads() {
+        return greedyQuads;
+    }
+
+    /**
+     * Amount of the block faces, covered by the quads of {@link #buildGreedyMeshes()}.
+     */
+    @Contract(pure = true)
+    public long getGreedyFaces() {
+        return greedyFaces;
+    }
+
+    /**
+     * Amount of the generated chunks, written to the mesh either reserved or uniform.
+     */
+    @Contract(pure = true)
+    public int getStoredChunks() {
+        return storedChunks;
+    }
+
+    /**
+     * Amount of the generated chunks, which didn't fit to the mesh.
+     */
+    @Contract(pure = true)
+    public int getRejectedChunks() {
+        return rejectedChunks;
+    }
+
+    /**
+     * CRC32 of the block types of all chunk slots in the ID order.
+     */
+    public long getBlockTypesChecksum() {
+        return getChecksum(mesh.getBlockType());
+    }
+
+    /**
+     * CRC32 of the block options of all chunk slots in the ID order.
+     */
+    public long getBlockOptionsChecksum() {
+        return getChecksum(mesh.getBlockOptions());
+    }
+
+    private long getChecksum(@NotNull final AbstractTerrainBlockBuffer buffer) {
+        CRC32 crc = new CRC32();
+        for (int chunkId = 0; chunkId < mesh.getChunks(); chunkId++) {
+            buffer.readChunk(chunkId, chunkData);
+            update(crc, chunkData, CHUNK_SIZE);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * CRC32 of the visible blocks index: blocks of the drawn chunks in the order of the chunk IDs.
+     */
+    public long getVisibleBlocksChecksum() {
+        CRC32 crc = new CRC32();
+        VisibleBlocksIndex index = mesh.getVisibleBlocks();
+        for (int chunkId = 0; chunkId < mesh.getChunks(); chunkId++) {
+            update(crc, chunkData, index.readChunk(chunkId, chunkData));
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * CRC32 of the chunk descriptors buffer, followed by the uniform chunks in the order of their coordinates.
+     */
+    public long getChunkDescriptorsChecksum() {
+        CRC32 crc = new CRC32();
+        ChunkDescriptorsBuffer descriptors = mesh.getChunkDescriptors();
+        ByteBuffer data = descriptors.computeData(0).duplicate();
+        data.rewind();
+        crc.update(data);
+        long[] keys = descriptors.getUniformChunkKeys();
+        Arrays.sort(keys);
+        for (long key : keys) {
+            int x = ChunkDescriptorsBuffer.unpackX(key);
+            int y = ChunkDescriptorsBuffer.unpackY(key);
+            int z = ChunkDescriptorsBuffer.unpackZ(key);
+            chunkData[0] = x;
+            chunkData[1] = y;
+            chunkData[2] = z;
+            chunkData[3] = descriptors.getUniformType(x, y, z);
+            update(crc, chunkData, 4);
+        }
+        return crc.getValue();
+    }
+
+    private void update(@NotNull final CRC32 crc, @NotNull final int[] values, final int length) {
+        checksumData.clear();
+        checksumData.asIntBuffer().put(values, 0, length);
+        crc.update(checksumData.array(), 0, length * Integer.BYTES);
+    }
+}
@@ -0,0 +1,18 @@
+package me.vektory79.mapgen;
+
+import org.jetbrains.annotations.Contract;
+
+/**
+ * Source of the terrain surface heights.
+ */
+public interface HeightMap {
+    /**
+     * Height of the surface in the point.
+     *
+     * @param x X coordinate of the point in blocks.
+     * @param z Z coordinate of the point in blocks.
+     * @return normalized height in range -1..1.
+     */
+    @Contract(pure = true)
+    double getHeight(int x, int z);
+}
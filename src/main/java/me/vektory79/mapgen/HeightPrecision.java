@@ -0,0 +1,22 @@
+package me.vektory79.mapgen;
+
+/**
+ * Precision of the heights, stored by {@link MapGenerator}.
+ */
+public enum HeightPrecision {
+    /**
+     * 64 bit per height. Exact.
+     */
+    DOUBLE,
+    /**
+     * 32 bit per height. Error is within the float rounding, 6e-8 per stored value, and grows with each
+     * diamond-square pass by no more than that, i.e. stays below 1.8e-6 for the maps up to 2^15 size.
+     */
+    FLOAT,
+    /**
+     * 16 bit per height, quantized to 1/32767 steps of the -1..1 range. Error is within half of the step per stored
+     * value and grows with each diamond-square pass by no more than that, i.e. stays below 4.6e-4 for the maps up to
+     * 2^15 size (two passes per level).
+     */
+    SHORT
+}
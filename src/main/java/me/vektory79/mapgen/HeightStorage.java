@@ -0,0 +1,223 @@
+package me.vektory79.mapgen;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Backing storage of the {@link MapGenerator} heights.
+ * <p>
+ * <p>Heights are always exposed as {@code double} in range -1..1, but can be stored with reduced precision and out of
+ * the heap. Only absolute access is used, because the storage is filled by the parallel generation threads.</p>
+ * <p>
+ * <p>Direct buffer can't hold more than 2 GB, so the off-heap heights are split to the segments of
+ * 2<sup>{@link #SEGMENT_SHIFT}</sup> heights. The tests reduce the segment size to check the segment boundaries.</p>
+ */
+abstract class HeightStorage {
+    private static final double SHORT_SCALE = Short.MAX_VALUE;
+    private static final double SHORT_NORMALIZE = 1.0 / SHORT_SCALE;
+    /**
+     * Heights per direct buffer as the power of two: 1 GB of {@code double} heights.
+     */
+    private static final int SEGMENT_SHIFT = 27;
+
+    /**
+     * @param precision precision of the stored heights.
+     * @param size      amount of the heights.
+     * @param offHeap   store heights in the direct buffers instead of the heap array.
+     */
+    @NotNull
+    static HeightStorage create(@NotNull HeightPrecision precision, int size, boolean offHeap) {
+        return create(precision, size, offHeap, SEGMENT_SHIFT);
+    }
+
+    /**
+     * @param segmentShift size of the segment of the direct storage as the power of two.
+     */
+    @NotNull
+    static HeightStorage create(@NotNull HeightPrecision precision, int size, boolean offHeap, int segmentShift) {
+        switch (precision) {
+            case DOUBLE:
+                return offHeap
+                        ? new DirectDoubleStorage(allocate(size, Double.BYTES, segmentShift), segmentShift)
+                        : new DoubleStorage(size);
+            case FLOAT:
+                return offHeap
+                        ? new DirectFloatStorage(allocate(size, Float.BYTES, segmentShift), segmentShift)
+                        : new FloatStorage(size);
+            case SHORT:
+                return offHeap
+                        ? new DirectShortStorage(allocate(size, Short.BYTES, segmentShift), segmentShift)
+                        : new ShortStorage(size);
+            default:
+                throw new IllegalArgumentException("Unsupported precision: " + precision);
+        }
+    }
+
+    @Contract(pure = true)
+    abstract double get(int index);
+
+    /**
+     * @param value height in range -1..1.
+     */
+    abstract void set(int index, double value);
+
+    /**
+     * Allocate the segments of the direct storage. Only the last segment can be shorter than the others.
+     */
+    @NotNull
+    private static ByteBuffer[] allocate(int size, int bytes, int segmentShift) {
+        int segmentSize = 1 << segmentShift;
+        ByteBuffer[] segments = new ByteBuffer[(int) (((long) size + segmentSize - 1) >>> segmentShift)];
+        for (int i = 0; i < segments.length; i++) {
+            int heights = Math.min(segmentSize, size - (i << segmentShift));
+            segments[i] = ByteBuffer.allocateDirect(heights * bytes).order(ByteOrder.nativeOrder());
+        }
+        return segments;
+    }
+
+    @Contract(pure = true)
+    private static short quantize(double value) {
+        return (short) Math.round(value * SHORT_SCALE);
+    }
+
+    private static final class DoubleStorage extends HeightStorage {
+        @NotNull
+        private final double[] data;
+
+        DoubleStorage(int size) {
+            data = new double[size];
+        }
+
+        @Override
+        double get(int index) {
+            return data[index];
+        }
+
+        @Override
+        void set(int index, double value) {
+            data[index] = value;
+        }
+    }
+
+    private static final class FloatStorage extends HeightStorage {
+        @NotNull
+        private final float[] data;
+
+        FloatStorage(int size) {
+            data = new float[size];
+        }
+
+        @Override
+        double get(int index) {
+            return data[index];
+        }
+
+        @Override
+        void set(int index, double value) {
+            data[index] = (float) value;
+        }
+    }
+
+    private static final class ShortStorage extends HeightStorage {
+        @NotNull
+        private final short[] data;
+
+        ShortStorage(int size) {
+            data = new short[size];
+        }
+
+        @Override
+        double get(int index) {
+            return data[index] * SHORT_NORMALIZE;
+        }
+
+        @Override
+        void set(int index, double value) {
+            data[index] = quantize(value);
+        }
+    }
+
+    private static final class DirectDoubleStorage extends HeightStorage {
+        @NotNull
+        private final DoubleBuffer[] data;
+        private final int segmentShift;
+        private final int segmentMask;
+
+        DirectDoubleStorage(@NotNull ByteBuffer[] segments, int segmentShift) {
+            this.segmentShift = segmentShift;
+            segmentMask = (1 << segmentShift) - 1;
+            data = new DoubleBuffer[segments.length];
+            for (int i = 0; i < segments.length; i++) {
+                data[i] = segments[i].asDoubleBuffer();
+            }
+        }
+
+        @Override
+        double get(int index) {
+            return data[index >>> segmentShift].get(index & segmentMask);
+        }
+
+        @Override
+        void set(int index, double value) {
+            data[index >>> segmentShift].put(index & segmentMask, value);
+        }
+    }
+
+    private static final class DirectFloatStorage extends HeightStorage {
+        @NotNull
+        private final FloatBuffer[] data;
+        private final int segmentShift;
+        private final int segmentMask;
+
+        DirectFloatStorage(@NotNull ByteBuffer[] segments, int segmentShift) {
+            this.segmentShift = segmentShift;
+            segmentMask = (1 << segmentShift) - 1;
+            data = new FloatBuffer[segments.length];
+            for (int i = 0; i < segments.length; i++) {
+                data[i] = segments[i].asFloatBuffer();
+            }
+        }
+
+        @Override
+        double get(int index) {
+            return data[index >>> segmentShift].get(index & segmentMask);
+        }
+
+        @Override
+        void set(int index, double value) {
+            data[index >>> segmentShift].put(index & segmentMask, (float) value);
+        }
+    }
+
+    private static final class DirectShortStorage extends HeightStorage {
+        @NotNull
+        private final ShortBuffer[] data;
+        private final int segmentShift;
+        private final int segmentMask;
+
+        DirectShortStorage(@NotNull ByteBuffer[] segments, int segmentShift) {
+            this.segmentShift = segmentShift;
+            segmentMask = (1 << segmentShift) - 1;
+            data = new ShortBuffer[segments.length];
+            for (int i = 0; i < segments.length; i++) {
+                data[i] = segments[i].asShortBuffer();
+            }
+        }
+
+        @Override
+        double get(int index) {
+            return data[index >>> segmentShift].get(index & segmentMask) * SHORT_NORMALIZE;
+        }
+
+        @Override
+        void set(int index, double value) {
+            data[index >>> segmentShift].put(index & segmentMask, quantize(value));
+        }
+    }
+}
@@ -1,31 +1,61 @@
 package me.vektory79.mapgen;
 
-import me.vektory79.utils.ArrayUtils;
 import me.vektory79.utils.SipHashInline;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
-public class MapGenerator {
+public class MapGenerator implements HeightMap {
 
     private static final double NORMALIZE = 1.0 / (double) Integer.MAX_VALUE;
+    /**
+     * Amount of cells, processed by single fork/join task without further splitting.
+     */
+    private static final int PASS_TASK_CELLS = 4096;
     private final int sizeFactor;
     private final int size;
     private final int size2;
     private final double roughness;
     private final long seed;
     @NotNull
-    private final double[] data;
+    private final HeightPrecision precision;
+    @NotNull
+    private final HeightStorage data;
 
     public MapGenerator(int sizeFactor, double roughness, long seed) {
+        this(sizeFactor, roughness, seed, HeightPrecision.DOUBLE, false);
+    }
+
+    /**
+     * @param precision precision of the stored heights. Reduced precision allows larger maps in the same memory.
+     * @param offHeap   store heights out of the heap, in the direct buffers.
+     */
+    public MapGenerator(
+            int sizeFactor,
+            double roughness,
+            long seed,
+            @NotNull HeightPrecision precision,
+            boolean offHeap) {
+        if (sizeFactor < 1 || sizeFactor > 15) {
+            throw new IllegalArgumentException("Size factor must be in range 1..15: " + sizeFactor);
+        }
         this.sizeFactor = sizeFactor;
         size = 1 << sizeFactor;
         size2 = size * size;
         this.roughness = roughness;
         this.seed = seed;
-        data = new double[size2];
+        this.precision = precision;
+        data = HeightStorage.create(precision, size2, offHeap);
+    }
+
+    @NotNull
+    @Contract(pure = true)
+    public final HeightPrecision getPrecision() {
+        return precision;
     }
 
     public final void generate() {
@@ -36,11 +66,37 @@ public class MapGenerator {
         // filter();
     }
 
+    /**
+     * Generate the map by the fork/join pool. Each pass is split by rows. Cells of the pass depend only on the cells
+     * of the previous passes, so the result is bit-identical to {@link #generate()}.
+     *
+     * @param pool pool to run the passes.
+     */
+    public final void generate(@NotNull ForkJoinPool pool) {
+        for (int blockSize = size >> 1; blockSize >= 1; blockSize >>= 1) {
+            pool.invoke(new PassTask(blockSize, false, 0, size / blockSize));
+            pool.invoke(new PassTask(blockSize, true, 0, size / blockSize));
+        }
+    }
+
     private void square(int blockSize) {
-        int x = blockSize;
-        int y = blockSize;
+        for (int y = blockSize; y < size; y += blockSize << 1) {
+            squareRow(blockSize, y);
+        }
+    }
+
+    private void diamond(int blockSize) {
+        for (int y = 0; y < size; y += blockSize) {
+            diamondRow(blockSize, y);
+        }
+    }
+
+    /**
+     * Square step for the single row of the pass: centers of the squares with the side of two block sizes.
+     */
+    private void squareRow(int blockSize, int y) {
         int step = blockSize << 1;
-        while (true) {
+        for (int x = blockSize; x < size; x += step) {
             double value = getData(x - blockSize, y - blockSize)
                     + getData(x - blockSize, y + blockSize)
                     + getData(x + blockSize, y + blockSize)
@@ -48,40 +104,22 @@ public class MapGenerator {
             value *= 0.25D;
             value = displace(value, blockSize, x, y);
             setDataFast(x, y, value);
-            x += step;
-            if (x >= size) {
-                x = blockSize;
-                y += step;
-            }
-            // TODO: inline in while condition
-            if (y >= size) {
-                break;
-            }
         }
     }
 
-    private void diamond(int blockSize) {
-        int x = blockSize;
-        int y = 0;
-        int stepX = blockSize << 1;
-        int line = 0;
-        while (true) {
+    /**
+     * Diamond step for the single row of the pass. Rows alternate between the square edge centers, starting from
+     * the block size or from zero.
+     */
+    private void diamondRow(int blockSize, int y) {
+        int step = blockSize << 1;
+        for (int x = (y & blockSize) ^ blockSize; x < size; x += step) {
             double value = getData(x - blockSize, y)
                     + getData(x + blockSize, y) + getData(x, y - blockSize)
                     + getData(x, y + blockSize);
             value *= 0.25D;
             value = displace(value, blockSize, x, y);
             setDataFast(x, y, value);
-            x += stepX;
-            if (x >= size) {
-                x = blockSize & line;
-                line ^= -1;
-                y += blockSize;
-            }
-            // TODO: inline in while condition
-            if (y >= size) {
-                break;
-            }
         }
     }
 
@@ -99,7 +137,16 @@ public class MapGenerator {
         if (y >= size) {
             y = y - size;
         }
-        return data[(y << sizeFactor) + x];
+        return data.get((y << sizeFactor) + x);
+    }
+
+    /**
+     * Height of the surface. The map is repeated infinitely in both directions.
+     */
+    @Override
+    @Contract(pure = true)
+    public final double getHeight(int x, int z) {
+        return data.get((Math.floorMod(z, size) << sizeFactor) + Math.floorMod(x, size));
     }
 
     public final void setData(int x, int y, double value) {
@@ -125,16 +172,16 @@ public class MapGenerator {
         if (value > 1D) {
             value = 1D;
         }
-        data[(y << sizeFactor) + x] = value;
+        data.set((y << sizeFactor) + x, value);
     }
 
     public final void filter() {
         for (int i = 0; i < size2; i++) {
-            double value = data[i];
+            double value = data.get(i);
             if (value > 0D) {
-                data[i] = Math.pow(value, 3.8D);
+                data.set(i, Math.pow(value, 3.8D));
             } else if (value < 0D) {
-                data[i] = -1D * Math.pow(-1D * value, 0.2D);
+                data.set(i, -1D * Math.pow(-1D * value, 0.2D));
             }
         }
     }
@@ -145,7 +192,7 @@ public class MapGenerator {
     }
 
     private double randFromPair(long ix, long iy) {
-        int hash = (int) SipHashInline.hash24(seed, seed, ArrayUtils.bytesFrom(ix, iy));
+        int hash = (int) SipHashInline.hash24(seed, seed, ix, iy);
         return hash * NORMALIZE * 0.5 + 0.5;
     }
 
@@ -153,7 +200,7 @@ public class MapGenerator {
         int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer())
                 .getData();
         for (int i = 0; i < size2; i++) {
-            double v = data[i];
+            double v = data.get(i);
             double sign = (v < 0.0) ? -1.0 : 1.0;
             double color = v * sign;
             int r;
@@ -172,4 +219,41 @@ public class MapGenerator {
             pixels[i] = (r << 16) + (g << 8) + b;
         }
     }
+
+    /**
+     * Rows of the single pass, which are split in halves until they become small enough.
+     */
+    private final class PassTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int blockSize;
+        private final boolean diamond;
+        // Range of the rows in block sizes.
+        private final int from;
+        private final int to;
+
+        PassTask(int blockSize, boolean diamond, int from, int to) {
+            this.blockSize = blockSize;
+            this.diamond = diamond;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if ((long) (to - from) * (size / blockSize) <= PASS_TASK_CELLS || to - from == 1) {
+                for (int row = from; row < to; row++) {
+                    int y = row * blockSize;
+                    if (diamond) {
+                        diamondRow(blockSize, y);
+                    } else if ((row & 1) != 0) {
+                        squareRow(blockSize, y);
+                    }
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PassTask(blockSize, diamond, from, middle), new PassTask(blockSize, diamond, middle, to));
+            }
+        }
+    }
 }
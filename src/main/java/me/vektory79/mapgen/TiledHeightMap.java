@@ -0,0 +1,307 @@
+package me.vektory79.mapgen;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import me.vektory79.utils.SipHashInline;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Infinite height map, generated by the square tiles on demand.
+ * <p>
+ * <p>Each tile is generated by diamond-square algorithm, which random displacement depends only on the seed and
+ * the world coordinates of the point. Tile corners are random and the tile edges are generated by 1D midpoint
+ * displacement between the corners. So the edge, shared by two neighbour tiles, is the same for both of them and
+ * the map has no seams. Interior of the tile depends only on it's edges, so any tile can be generated
+ * independently from the others.</p>
+ * <p>
+ * <p>Recently used tiles are kept in the LRU cache: the map of the tiles by the packed coordinates and the list of
+ * the tiles in the order of the access, linked by the tiles themselves. Map can be read concurrently.</p>
+ */
+public class TiledHeightMap implements HeightMap {
+    private static final double NORMALIZE = 1.0 / (double) Integer.MAX_VALUE;
+
+    private final int tileFactor;
+    private final int tileSize;
+    // Tile data includes both edges, so it's one point wider, than the tile.
+    private final int rowSize;
+    private final double roughness;
+    private final long seed;
+    private final int cacheTiles;
+    // Cached tiles. Also the lock of the cache and the list.
+    @NotNull
+    private final TLongObjectHashMap<Tile> tiles;
+    // Ends of the list of the cached tiles, from the most recently used.
+    @Nullable
+    private Tile newestTile;
+    @Nullable
+    private Tile eldestTile;
+    // Last accessed tile. Consecutive reads usually hit the same tile, so the cache lookup is avoided.
+    private volatile Tile lastTile;
+
+    /**
+     * @param tileFactor size of the tile as the power of two.
+     * @param roughness  roughness of the surface, the same as for {@link MapGenerator}.
+     * @param seed       seed of the map.
+     * @param cacheTiles maximum amount of the cached tiles.
+     */
+    public TiledHeightMap(int tileFactor, double roughness, long seed, int cacheTiles) {
+        if (tileFactor < 1 || tileFactor > 15) {
+            throw new IllegalArgumentException("Tile factor must be in range 1..15: " + tileFactor);
+        }
+        if (cacheTiles <= 0) {
+            throw new IllegalArgumentException("Cache must hold at least one tile: " + cacheTiles);
+        }
+        this.tileFactor = tileFactor;
+        tileSize = 1 << tileFactor;
+        rowSize = tileSize + 1;
+        this.roughness = roughness;
+        this.seed = seed;
+        this.cacheTiles = cacheTiles;
+        tiles = new TLongObjectHashMap<>(cacheTiles + 1);
+    }
+
+    @Contract(pure = true)
+    public final int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Amount of the cached tiles.
+     */
+    public final int getCachedTiles() {
+        synchronized (tiles) {
+            return tiles.size();
+        }
+    }
+
+    @Override
+    @Contract(pure = true)
+    public final double getHeight(int x, int z) {
+        Tile tile = getTile(x >> tileFactor, z >> tileFactor);
+        return tile.data[(z & (tileSize - 1)) * rowSize + (x & (tileSize - 1))];
+    }
+
+    @NotNull
+    private Tile getTile(int tileX, int tileZ) {
+        Tile tile = lastTile;
+        if (tile != null && tile.tileX == tileX && tile.tileZ == tileZ) {
+            return tile;
+        }
+        long key = getKey(tileX, tileZ);
+        synchronized (tiles) {
+            tile = tiles.get(key);
+            if (tile != null) {
+                touch(tile);
+            }
+        }
+        if (tile == null) {
+            // Generated out of the lock. Tile is deterministic, so the concurrent duplicate is dropped.
+            Tile generated = generate(tileX, tileZ);
+            synchronized (tiles) {
+                tile = tiles.get(key);
+                if (tile != null) {
+                    touch(tile);
+                } else {
+                    tile = generated;
+                    tiles.put(key, tile);
+                    link(tile);
+                    if (tiles.size() > cacheTiles) {
+                        Tile eldest = eldestTile;
+                        unlink(eldest);
+                        tiles.remove(getKey(eldest.tileX, eldest.tileZ));
+                    }
+                }
+            }
+        }
+        lastTile = tile;
+        return tile;
+    }
+
+    /**
+     * Check if the tile is cached. For the tests.
+     */
+    final boolean isCached(int tileX, int tileZ) {
+        synchronized (tiles) {
+            return tiles.containsKey(getKey(tileX, tileZ));
+        }
+    }
+
+    /**
+     * Point of the tile data, including the far edges, which are shared with the next tiles. For the tests.
+     *
+     * @param x X coordinate inside the tile in range 0..tile size.
+     * @param z Z coordinate inside the tile in range 0..tile size.
+     */
+    final double getTilePoint(int tileX, int tileZ, int x, int z) {
+        return get(getTile(tileX, tileZ), x, z);
+    }
+
+    @Contract(pure = true)
+    private static long getKey(int tileX, int tileZ) {
+        return ((long) tileX << 32) | (tileZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Move the cached tile to the head of the list. Must be called under the lock of the tiles.
+     */
+    private void touch(@NotNull Tile tile) {
+        if (tile != newestTile) {
+            unlink(tile);
+            link(tile);
+        }
+    }
+
+    private void link(@NotNull Tile tile) {
+        tile.older = newestTile;
+        tile.newer = null;
+        if (newestTile != null) {
+            newestTile.newer = tile;
+        } else {
+            eldestTile = tile;
+        }
+        newestTile = tile;
+    }
+
+    private void unlink(@NotNull Tile tile) {
+        if (tile.newer != null) {
+            tile.newer.older = tile.older;
+        } else {
+            newestTile = tile.older;
+        }
+        if (tile.older != null) {
+            tile.older.newer = tile.newer;
+        } else {
+            eldestTile = tile.newer;
+        }
+        tile.newer = null;
+        tile.older = null;
+    }
+
+    @NotNull
+    private Tile generate(int tileX, int tileZ) {
+        Tile tile = new Tile(tileX, tileZ, new double[rowSize * rowSize]);
+        long[] hashes = new long[rowSize];
+        int worldX = tileX << tileFactor;
+        int worldZ = tileZ << tileFactor;
+        // Corners.
+        for (int z = 0; z <= tileSize; z += tileSize) {
+            for (int x = 0; x <= tileSize; x += tileSize) {
+                long hash = SipHashInline.hash24(seed, seed, (long) worldX + x, (long) worldZ + z);
+                set(tile, x, z, displace(0D, tileSize, hash));
+            }
+        }
+        // Edges: depend only on the corners of the edge, so the neighbour tile gets the same ones.
+        for (int blockSize = tileSize >> 1; blockSize >= 1; blockSize >>= 1) {
+            edgeRow(tile, blockSize, 0, hashes);
+            edgeRow(tile, blockSize, tileSize, hashes);
+            edgeColumn(tile, blockSize, 0);
+            edgeColumn(tile, blockSize, tileSize);
+        }
+        // Interior.
+        for (int blockSize = tileSize >> 1; blockSize >= 1; blockSize >>= 1) {
+            int step = blockSize << 1;
+            for (int z = blockSize; z < tileSize; z += step) {
+                squareRow(tile, blockSize, z, hashes);
+            }
+            for (int z = blockSize; z < tileSize; z += blockSize) {
+                diamondRow(tile, blockSize, z, hashes);
+            }
+        }
+        return tile;
+    }
+
+    private void edgeRow(@NotNull Tile tile, int blockSize, int z, @NotNull long[] hashes) {
+        int step = blockSize << 1;
+        int count = tileSize / step;
+        SipHashInline.hash24Row(seed, seed, ((long) tile.tileX << tileFactor) + blockSize, step,
+                ((long) tile.tileZ << tileFactor) + z, hashes, 0, count);
+        for (int i = 0, x = blockSize; i < count; i++, x += step) {
+            double value = (get(tile, x - blockSize, z) + get(tile, x + blockSize, z)) * 0.5D;
+            set(tile, x, z, displace(value, blockSize, hashes[i]));
+        }
+    }
+
+    private void edgeColumn(@NotNull Tile tile, int blockSize, int x) {
+        int step = blockSize << 1;
+        long worldX = ((long) tile.tileX << tileFactor) + x;
+        long worldZ = (long) tile.tileZ << tileFactor;
+        for (int z = blockSize; z < tileSize; z += step) {
+            double value = (get(tile, x, z - blockSize) + get(tile, x, z + blockSize)) * 0.5D;
+            set(tile, x, z, displace(value, blockSize, SipHashInline.hash24(seed, seed, worldX, worldZ + z)));
+        }
+    }
+
+    private void squareRow(@NotNull Tile tile, int blockSize, int z, @NotNull long[] hashes) {
+        int step = blockSize << 1;
+        int count = tileSize / step;
+        SipHashInline.hash24Row(seed, seed, ((long) tile.tileX << tileFactor) + blockSize, step,
+                ((long) tile.tileZ << tileFactor) + z, hashes, 0, count);
+        for (int i = 0, x = blockSize; i < count; i++, x += step) {
+            double value = get(tile, x - blockSize, z - blockSize)
+                    + get(tile, x - blockSize, z + blockSize)
+                    + get(tile, x + blockSize, z + blockSize)
+                    + get(tile, x + blockSize, z - blockSize);
+            set(tile, x, z, displace(value * 0.25D, blockSize, hashes[i]));
+        }
+    }
+
+    /**
+     * Diamond step of the interior points of the row. Edge points are already generated.
+     */
+    private void diamondRow(@NotNull Tile tile, int blockSize, int z, @NotNull long[] hashes) {
+        int step = blockSize << 1;
+        // Rows alternate between starting from the block size and from zero. Zero is the edge, so it's skipped.
+        int start = (z & blockSize) != 0 ? step : blockSize;
+        int count = (tileSize - start + blockSize) / step;
+        if (count <= 0) {
+            return;
+        }
+        SipHashInline.hash24Row(seed, seed, ((long) tile.tileX << tileFactor) + start, step,
+                ((long) tile.tileZ << tileFactor) + z, hashes, 0, count);
+        for (int i = 0, x = start; i < count; i++, x += step) {
+            double value = get(tile, x - blockSize, z)
+                    + get(tile, x + blockSize, z)
+                    + get(tile, x, z - blockSize)
+                    + get(tile, x, z + blockSize);
+            set(tile, x, z, displace(value * 0.25D, blockSize, hashes[i]));
+        }
+    }
+
+    private double get(@NotNull Tile tile, int x, int z) {
+        return tile.data[z * rowSize + x];
+    }
+
+    private void set(@NotNull Tile tile, int x, int z, double value) {
+        if (value < -1D) {
+            value = -1D;
+        }
+        if (value > 1D) {
+            value = 1D;
+        }
+        tile.data[z * rowSize + x] = value;
+    }
+
+    private double displace(double v, int blockSize, long hash) {
+        double random = (int) hash * NORMALIZE * 0.5 + 0.5;
+        return v + (random * 2 - 1.0) * blockSize * 2 / tileSize * roughness;
+    }
+
+    private static final class Tile {
+        private final int tileX;
+        private final int tileZ;
+        @NotNull
+        private final double[] data;
+        // Neighbours in the list of the cached tiles.
+        @Nullable
+        private Tile newer;
+        @Nullable
+        private Tile older;
+
+        Tile(int tileX, int tileZ, @NotNull double[] data) {
+            this.tileX = tileX;
+            this.tileZ = tileZ;
+            this.data = data;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.jetbrains.annotations.NotNull;
 
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.nio.LongBuffer;
 import java.util.function.Supplier;
 
@@ -32,6 +33,15 @@ public final class ArrayUtils {
         return bytes;
     }
 
+    @NotNull
+    public static byte[] bytesFrom(int... values) {
+        byte[] bytes = new byte[values.length * Integer.BYTES];
+        ByteBuffer byteBuf = ByteBuffer.wrap(bytes);
+        IntBuffer intBuf = byteBuf.asIntBuffer();
+        intBuf.put(values);
+        return bytes;
+    }
+
     @NotNull
     public static float[] floatsFrom(byte... values) {
         float[] floats = new float[values.length / Float.BYTES];
@@ -9,19 +9,27 @@ package me.vektory79.utils;
  * SIPROUND is defined in siphash24.c that can be downloaded from the above
  * site. Following license notice is subject to change based on the licensing
  * policy of siphash24.c.
+ *
+ * The fixed arity overloads have no loops and no branches: each packed block
+ * is compressed by its own straight-line step, which passes the state to the
+ * next one, and the last block with the finalization is shared by all
+ * variants.
  */
 public class SipHashInline {
+    private static final long V0 = 0x736f6d6570736575L;
+    private static final long V1 = 0x646f72616e646f6dL;
+    private static final long V2 = 0x6c7967656e657261L;
+    private static final long V3 = 0x7465646279746573L;
 
     private SipHashInline() {
     }
 
     @SuppressWarnings("SpellCheckingInspection")
     public static long hash24(long k0, long k1, byte[] data) {
-        // TODO: Outline the constant invariants
-        long v0 = 0x736f6d6570736575L ^ k0;
-        long v1 = 0x646f72616e646f6dL ^ k1;
-        long v2 = 0x6c7967656e657261L ^ k0;
-        long v3 = 0x7465646279746573L ^ k1;
+        long v0 = V0 ^ k0;
+        long v1 = V1 ^ k1;
+        long v2 = V2 ^ k0;
+        long v3 = V3 ^ k1;
         long m;
         int last = data.length / 8 * 8;
         int i = 0;
@@ -38,18 +46,18 @@ public class SipHashInline {
 
             /*
              * SIPROUND wih hand reordering
-             * 
+             *
              * SIPROUND in siphash24.c: A: v0 += v1; B: v1=ROTL(v1,13); C: v1 ^=
              * v0; D: v0=ROTL(v0,32); E: v2 += v3; F: v3=ROTL(v3,16); G: v3 ^=
              * v2; H: v0 += v3; I: v3=ROTL(v3,21); J: v3 ^= v0; K: v2 += v1; L:
              * v1=ROTL(v1,17); M: v1 ^= v2; N: v2=ROTL(v2,32);
-             * 
+             *
              * Each dependency: B -> A C -> A, B D -> C F -> E G -> E, F H -> D,
              * G I -> H J -> H, I K -> C, G L -> K M -> K, L N -> M
-             * 
+             *
              * Dependency graph: D -> C -> B -> A G -> F -> E J -> I -> H -> D,
              * G N -> M -> L -> K -> C, G
-             * 
+             *
              * Resulting parallel friendly execution order: -> ABCDHIJ ->
              * EFGKLMN
              */
@@ -98,8 +106,246 @@ public class SipHashInline {
             m |= (long) data[i];
         }
         m |= (long) data.length << 56;
+        return finish(v0, v1, v2, v3, m);
+    }
+
+    /**
+     * Hash of the single long. Same as {@code hash24(k0, k1, ArrayUtils.bytesFrom(a))}, but without allocations.
+     */
+    public static long hash24(long k0, long k1, long a) {
+        return compress1(V0 ^ k0, V1 ^ k1, V2 ^ k0, V3 ^ k1, block(a), (long) Long.BYTES << 56);
+    }
+
+    /**
+     * Hash of two longs. Same as {@code hash24(k0, k1, ArrayUtils.bytesFrom(a, b))}, but without allocations.
+     */
+    public static long hash24(long k0, long k1, long a, long b) {
+        return compress2(V0 ^ k0, V1 ^ k1, V2 ^ k0, V3 ^ k1, block(a), block(b), (long) (Long.BYTES * 2) << 56);
+    }
+
+    /**
+     * Hash of three longs. Same as {@code hash24(k0, k1, ArrayUtils.bytesFrom(a, b, c))}, but without allocations.
+     */
+    public static long hash24(long k0, long k1, long a, long b, long c) {
+        return compress3(V0 ^ k0, V1 ^ k1, V2 ^ k0, V3 ^ k1, block(a), block(b), block(c),
+                (long) (Long.BYTES * 3) << 56);
+    }
+
+    /**
+     * Hash of the single int. Same as {@code hash24(k0, k1, ArrayUtils.bytesFrom(a))}, but without allocations.
+     */
+    public static long hash24(long k0, long k1, int a) {
+        return finish(V0 ^ k0, V1 ^ k1, V2 ^ k0, V3 ^ k1, tail(a, Integer.BYTES));
+    }
+
+    /**
+     * Hash of two ints. Same as {@code hash24(k0, k1, ArrayUtils.bytesFrom(a, b))}, but without allocations.
+     */
+    public static long hash24(long k0, long k1, int a, int b) {
+        return compress1(V0 ^ k0, V1 ^ k1, V2 ^ k0, V3 ^ k1, block(a, b), (long) (Integer.BYTES * 2) << 56);
+    }
+
+    /**
+     * Hash of three ints. Same as {@code hash24(k0, k1, ArrayUtils.bytesFrom(a, b, c))}, but without allocations.
+     */
+    public static long hash24(long k0, long k1, int a, int b, int c) {
+        return compress1(V0 ^ k0, V1 ^ k1, V2 ^ k0, V3 ^ k1, block(a, b), tail(c, Integer.BYTES * 3));
+    }
+
+    /**
+     * Hash the row of the coordinate pairs {@code (x + i * xStep, y)}. Each result is the same as
+     * {@code hash24(k0, k1, x + i * xStep, y)}.
+     *
+     * @param dst    destination of the hashes.
+     * @param offset index of the first hash in the destination.
+     * @param count  amount of the pairs.
+     */
+    public static void hash24Row(long k0, long k1, long x, long xStep, long y, long[] dst, int offset, int count) {
+        long v0 = V0 ^ k0;
+        long v1 = V1 ^ k1;
+        long v2 = V2 ^ k0;
+        long v3 = V3 ^ k1;
+        long yBlock = block(y);
+        for (int i = 0; i < count; i++) {
+            dst[offset + i] = compress2(v0, v1, v2, v3, block(x), yBlock, (long) (Long.BYTES * 2) << 56);
+            x += xStep;
+        }
+    }
+
+    /**
+     * Pack the big endian bytes of the long the same way, as the 8 bytes block of the byte array.
+     */
+    private static long block(long value) {
+        return (long) (byte) (value >>> 56)
+                | (long) (byte) (value >>> 48) << 8
+                | (long) (byte) (value >>> 40) << 16
+                | (long) (byte) (value >>> 32) << 24
+                | (long) (byte) (value >>> 24) << 32
+                | (long) (byte) (value >>> 16) << 40
+                | (long) (byte) (value >>> 8) << 48
+                | (long) (byte) value << 56;
+    }
+
+    /**
+     * Pack the big endian bytes of two ints the same way, as the 8 bytes block of the byte array.
+     */
+    private static long block(int a, int b) {
+        return block((long) a << 32 | (b & 0xFFFFFFFFL));
+    }
+
+    /**
+     * Pack the big endian bytes of the int the same way, as the last incomplete block of the byte array.
+     */
+    private static long tail(int value, int length) {
+        long m = (long) (byte) value;
+        m <<= 8;
+        m |= (long) (byte) (value >>> 8);
+        m <<= 8;
+        m |= (long) (byte) (value >>> 16);
+        m <<= 8;
+        m |= (long) (byte) (value >>> 24);
+        return m | (long) length << 56;
+    }
+
+    /**
+     * Compress the first of three packed 8 bytes blocks and pass the state to the next step.
+     */
+    @SuppressWarnings("SpellCheckingInspection")
+    private static long compress3(long v0, long v1, long v2, long v3, long m0, long m1, long m2, long last) {
+        // MSGROUND {
+        v3 ^= m0;
+        // SIPROUND {
+        v0 += v1;
+        v2 += v3;
+        v1 = (v1 << 13) | v1 >>> 51;
+        v3 = (v3 << 16) | v3 >>> 48;
+        v1 ^= v0;
+        v3 ^= v2;
+        v0 = (v0 << 32) | v0 >>> 32;
+        v2 += v1;
+        v0 += v3;
+        v1 = (v1 << 17) | v1 >>> 47;
+        v3 = (v3 << 21) | v3 >>> 43;
+        v1 ^= v2;
+        v3 ^= v0;
+        v2 = (v2 << 32) | v2 >>> 32;
+        // }
+        // SIPROUND {
+        v0 += v1;
+        v2 += v3;
+        v1 = (v1 << 13) | v1 >>> 51;
+        v3 = (v3 << 16) | v3 >>> 48;
+        v1 ^= v0;
+        v3 ^= v2;
+        v0 = (v0 << 32) | v0 >>> 32;
+        v2 += v1;
+        v0 += v3;
+        v1 = (v1 << 17) | v1 >>> 47;
+        v3 = (v3 << 21) | v3 >>> 43;
+        v1 ^= v2;
+        v3 ^= v0;
+        v2 = (v2 << 32) | v2 >>> 32;
+        // }
+        v0 ^= m0;
+        // }
+        return compress2(v0, v1, v2, v3, m1, m2, last);
+    }
+
+    /**
+     * Compress the first of two packed 8 bytes blocks and pass the state to the next step.
+     */
+    @SuppressWarnings("SpellCheckingInspection")
+    private static long compress2(long v0, long v1, long v2, long v3, long m0, long m1, long last) {
+        // MSGROUND {
+        v3 ^= m0;
+        // SIPROUND {
+        v0 += v1;
+        v2 += v3;
+        v1 = (v1 << 13) | v1 >>> 51;
+        v3 = (v3 << 16) | v3 >>> 48;
+        v1 ^= v0;
+        v3 ^= v2;
+        v0 = (v0 << 32) | v0 >>> 32;
+        v2 += v1;
+        v0 += v3;
+        v1 = (v1 << 17) | v1 >>> 47;
+        v3 = (v3 << 21) | v3 >>> 43;
+        v1 ^= v2;
+        v3 ^= v0;
+        v2 = (v2 << 32) | v2 >>> 32;
+        // }
+        // SIPROUND {
+        v0 += v1;
+        v2 += v3;
+        v1 = (v1 << 13) | v1 >>> 51;
+        v3 = (v3 << 16) | v3 >>> 48;
+        v1 ^= v0;
+        v3 ^= v2;
+        v0 = (v0 << 32) | v0 >>> 32;
+        v2 += v1;
+        v0 += v3;
+        v1 = (v1 << 17) | v1 >>> 47;
+        v3 = (v3 << 21) | v3 >>> 43;
+        v1 ^= v2;
+        v3 ^= v0;
+        v2 = (v2 << 32) | v2 >>> 32;
+        // }
+        v0 ^= m0;
+        // }
+        return compress1(v0, v1, v2, v3, m1, last);
+    }
+
+    /**
+     * Compress the packed 8 bytes block and pass the state to the finalization.
+     */
+    @SuppressWarnings("SpellCheckingInspection")
+    private static long compress1(long v0, long v1, long v2, long v3, long m0, long last) {
+        // MSGROUND {
+        v3 ^= m0;
+        // SIPROUND {
+        v0 += v1;
+        v2 += v3;
+        v1 = (v1 << 13) | v1 >>> 51;
+        v3 = (v3 << 16) | v3 >>> 48;
+        v1 ^= v0;
+        v3 ^= v2;
+        v0 = (v0 << 32) | v0 >>> 32;
+        v2 += v1;
+        v0 += v3;
+        v1 = (v1 << 17) | v1 >>> 47;
+        v3 = (v3 << 21) | v3 >>> 43;
+        v1 ^= v2;
+        v3 ^= v0;
+        v2 = (v2 << 32) | v2 >>> 32;
+        // }
+        // SIPROUND {
+        v0 += v1;
+        v2 += v3;
+        v1 = (v1 << 13) | v1 >>> 51;
+        v3 = (v3 << 16) | v3 >>> 48;
+        v1 ^= v0;
+        v3 ^= v2;
+        v0 = (v0 << 32) | v0 >>> 32;
+        v2 += v1;
+        v0 += v3;
+        v1 = (v1 << 17) | v1 >>> 47;
+        v3 = (v3 << 21) | v3 >>> 43;
+        v1 ^= v2;
+        v3 ^= v0;
+        v2 = (v2 << 32) | v2 >>> 32;
+        // }
+        v0 ^= m0;
+        // }
+        return finish(v0, v1, v2, v3, last);
+    }
+
+    /**
+     * Compress the packed last block, as LE 0-7 bytes + the length in the top byte, and finalize the hash.
+     */
+    @SuppressWarnings("SpellCheckingInspection")
+    private static long finish(long v0, long v1, long v2, long v3, long last) {
         // MSGROUND {
-        v3 ^= m;
+        v3 ^= last;
         // SIPROUND {
         v0 += v1;
         v2 += v3;
@@ -132,7 +378,7 @@ public class SipHashInline {
         v3 ^= v0;
         v2 = (v2 << 32) | v2 >>> 32;
         // }
-        v0 ^= m;
+        v0 ^= last;
         // }
 
         // finishing...
@@ -0,0 +1,125 @@
+package me.vektory79.utils;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timer of the processing stage: amount of measurements, total and maximum time and the histogram.
+ * <p>
+ * <p>Histogram buckets are powers of two nanoseconds: bucket {@code i} holds durations from {@code 2^(i-1)} to
+ * {@code 2^i - 1}. So percentiles are approximate, within factor of two.</p>
+ * <p>
+ * <p>Recording doesn't allocate and can be done from any thread. Reading is consistent only approximately, what is
+ * enough for monitoring.</p>
+ */
+public final class StageTimer {
+    private static final int BUCKETS = Long.SIZE;
+
+    @NotNull
+    private final AtomicLong count = new AtomicLong();
+    @NotNull
+    private final AtomicLong totalNanos = new AtomicLong();
+    @NotNull
+    private final AtomicLong maxNanos = new AtomicLong();
+    @NotNull
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Start of the measurement.
+     *
+     * @return the start time to be passed to {@link #stop(long)}.
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Finish the measurement.
+     *
+     * @param startNanos the value, returned by {@link #start()}.
+     */
+    public void stop(final long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public void record(final long nanos) {
+        long duration = Math.max(nanos, 0);
+        count.incrementAndGet();
+        totalNanos.addAndGet(duration);
+        long max = maxNanos.get();
+        while (duration > max && !maxNanos.compareAndSet(max, duration)) {
+            max = maxNanos.get();
+        }
+        buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(duration));
+    }
+
+    @Contract(pure = true)
+    public long getCount() {
+        return count.get();
+    }
+
+    @Contract(pure = true)
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    @Contract(pure = true)
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    @Contract(pure = true)
+    public long getMeanNanos() {
+        long measurements = count.get();
+        return measurements == 0 ? 0 : totalNanos.get() / measurements;
+    }
+
+    /**
+     * Upper bound of the percentile.
+     *
+     * @param percentile percentile in range 0..100.
+     */
+    @Contract(pure = true)
+    public long getPercentileNanos(final double percentile) {
+        long measurements = count.get();
+        if (measurements == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(measurements * percentile / 100.0);
+        long accumulated = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            accumulated += buckets.get(i);
+            if (accumulated >= rank) {
+                if (i == 0) {
+                    return 0;
+                }
+                return i == BUCKETS - 1 ? maxNanos.get() : Math.min((1L << i) - 1, maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * Copy of the histogram buckets.
+     */
+    @NotNull
+    public long[] getHistogram() {
+        long[] result = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            result[i] = buckets.get(i);
+        }
+        return result;
+    }
+
+    public void reset() {
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package me.vektory79.jme3.cubeterrain;
+
+import org.junit.jupiter.api.Test;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_DIMENSION;
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_SIZE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AbstractTerrainBlockBufferTest {
+
+    @Test
+    void commitPublishesExactByteRanges() {
+        TerrainChunksMesh mesh = new TerrainChunksMesh(4);
+        TerrainBlockTypesBuffer blockType = mesh.getBlockType();
+
+        blockType.setValue(5, 1);
+        blockType.setValue(100, 1);
+        blockType.setValue(CHUNK_SIZE * 2 + 7, 2);
+        assertTrue(blockType.commitUpdates());
+        assertArrayEquals(new int[]{20, 404, 32796, 32800}, blockType.getUploadRanges().getByteRanges());
+        assertTrue(blockType.getDirtyRanges().isEmpty());
+
+        // Not uploaded ranges are merged with the next commit.
+        blockType.writeColumn(3, 1, 2, new int[CHUNK_DIMENSION]);
+        assertTrue(blockType.commitUpdates());
+        assertArrayEquals(new int[]{20, 404, 32796, 32800, 51204, 52168},
+                blockType.getUploadRanges().getByteRanges());
+
+        // Ranges of the adjacent chunks are joined, when they touch each other.
+        blockType.fillRange(CHUNK_SIZE + 4000, CHUNK_SIZE * 2 + 10, 3);
+        assertTrue(blockType.commitUpdates());
+        assertArrayEquals(new int[]{20, 404, 32384, 32808, 51204, 52168},
+                blockType.getUploadRanges().getByteRanges());
+        assertEquals(384 + 424 + 964, blockType.getUploadRanges().getDirtyBytes());
+
+        assertFalse(blockType.commitUpdates());
+    }
+
+    @Test
+    void compactTypesRangesAreInBytes() {
+        TerrainChunksMesh mesh = new TerrainChunksMesh(2, BlockStorageLayout.COMPACT_TYPES);
+        TerrainBlockTypesBuffer blockType = mesh.getBlockType();
+
+        blockType.setValue(5, 1);
+        blockType.setValue(CHUNK_SIZE + 10, 1);
+        blockType.commitUpdates();
+        assertArrayEquals(new int[]{5, 6, 4106, 4107}, blockType.getUploadRanges().getByteRanges());
+    }
+
+    @Test
+    void packedTypesAreUploadedWithOptions() {
+        TerrainChunksMesh mesh = new TerrainChunksMesh(2, BlockStorageLayout.PACKED);
+
+        mesh.getBlockType().setValue(5, 1);
+        assertFalse(mesh.getBlockType().commitUpdates());
+        assertTrue(mesh.getBlockOptions().commitUpdates());
+        assertArrayEquals(new int[]{20, 24}, mesh.getBlockOptions().getUploadRanges().getByteRanges());
+    }
+
+    @Test
+    void bufferWithoutGpuAllocationIsUploadedWhole() {
+        TerrainChunksMesh mesh = new TerrainChunksMesh(4);
+        TerrainBlockTypesBuffer blockType = mesh.getBlockType();
+
+        blockType.setValue(5, 1);
+        blockType.commitUpdates();
+        assertEquals(4 * CHUNK_SIZE * Integer.BYTES, blockType.uploadUpdates(new BufferRangeUploader()));
+        assertTrue(blockType.isUpdateNeeded());
+        assertTrue(blockType.getUploadRanges().isEmpty());
+        assertEquals(0, blockType.uploadUpdates(new BufferRangeUploader()));
+    }
+
+    @Test
+    void disabledRangeUploadsUploadWholeBuffer() {
+        TerrainChunksMesh mesh = new TerrainChunksMesh(4);
+        TerrainBlockTypesBuffer blockType = mesh.getBlockType();
+        blockType.setId(1);
+        blockType.clearUpdateNeeded();
+        BufferRangeUploader uploader = new BufferRangeUploader();
+        uploader.setEnabled(false);
+
+        blockType.setValue(5, 1);
+        blockType.commitUpdates();
+        assertEquals(4 * CHUNK_SIZE * Integer.BYTES, blockType.uploadUpdates(uploader));
+        assertTrue(blockType.isUpdateNeeded());
+    }
+}
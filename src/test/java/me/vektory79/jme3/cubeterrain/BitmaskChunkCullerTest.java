@@ -0,0 +1,114 @@
+package me.vektory79.jme3.cubeterrain;
+
+import me.vektory79.jme3.cubeterrain.BlockTypeDescriptorsBuffer.Type;
+import me.vektory79.jme3.cubeterrain.TerrainBlockOptionsBuffer.Face;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_DIMENSION;
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_SIZE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BitmaskChunkCullerTest {
+    private static final Type[] TYPES = Type.values();
+    private static final Face[] FACES = Face.values();
+
+    @Test
+    void masksMatchPerBlockRule() {
+        Random random = new Random(17);
+        for (int world = 0; world < 20; world++) {
+            TerrainChunksMesh mesh = new TerrainChunksMesh(32);
+            // The chunk in the center and it's neighbours: random, transparent, uniform or absent.
+            for (int chunkZ = -1; chunkZ <= 1; chunkZ++) {
+                for (int chunkY = -1; chunkY <= 1; chunkY++) {
+                    for (int chunkX = -1; chunkX <= 1; chunkX++) {
+                        int kind = chunkX == 0 && chunkY == 0 && chunkZ == 0 ? 0 : random.nextInt(4);
+                        if (kind == 0) {
+                            fillRandom(mesh, chunkX, chunkY, chunkZ, random, random.nextInt(4));
+                        } else if (kind == 1) {
+                            mesh.setUniformChunk(chunkX, chunkY, chunkZ, Type.WATER);
+                        } else if (kind == 2) {
+                            mesh.setUniformChunk(chunkX, chunkY, chunkZ, TYPES[1 + random.nextInt(4)]);
+                        }
+                    }
+                }
+            }
+            mesh.rebuildCulling();
+            assertMatchesPerBlockRule(mesh, world);
+        }
+    }
+
+    /**
+     * Fill the chunk by random blocks. Higher density leaves less AIR and makes the more buried blocks.
+     */
+    private static void fillRandom(final TerrainChunksMesh mesh, final int chunkX, final int chunkY,
+                                   final int chunkZ, final Random random, final int density) {
+        mesh.useChunk(chunkX, chunkY, chunkZ);
+        for (int z = 0; z < CHUNK_DIMENSION; z++) {
+            for (int y = 0; y < CHUNK_DIMENSION; y++) {
+                for (int x = 0; x < CHUNK_DIMENSION; x++) {
+                    Type type = random.nextInt(8) < 2 + density ? TYPES[1 + random.nextInt(TYPES.length - 1)]
+                            : Type.AIR;
+                    mesh.getBlockType().setType(
+                            chunkX * CHUNK_DIMENSION + x, chunkY * CHUNK_DIMENSION + y,
+                            chunkZ * CHUNK_DIMENSION + z, type);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compare the visibility of each block of the reserved chunks with the per-block rule: the face of non-AIR block
+     * is visible if the neighbour block is AIR or differs by the transparency. The block of the uniform chunk is it's
+     * type and the block of the absent chunk is AIR.
+     */
+    private static void assertMatchesPerBlockRule(final TerrainChunksMesh mesh, final int world) {
+        ChunkDescriptorsBuffer descriptors = mesh.getChunkDescriptors();
+        int[] types = new int[CHUNK_SIZE];
+        int[] options = new int[CHUNK_SIZE];
+        for (int chunkId = 0; chunkId < mesh.getChunks(); chunkId++) {
+            if (!descriptors.isUsed(chunkId)) {
+                continue;
+            }
+            mesh.getBlockType().readChunk(chunkId, types);
+            mesh.getBlockOptions().readChunk(chunkId, options);
+            int originX = descriptors.readX(chunkId) * CHUNK_DIMENSION;
+            int originY = descriptors.readY(chunkId) * CHUNK_DIMENSION;
+            int originZ = descriptors.readZ(chunkId) * CHUNK_DIMENSION;
+            for (int z = 0; z < CHUNK_DIMENSION; z++) {
+                for (int y = 0; y < CHUNK_DIMENSION; y++) {
+                    for (int x = 0; x < CHUNK_DIMENSION; x++) {
+                        int address = AbstractTerrainBlockBuffer.getBlockAddress(0, x, y, z);
+                        Type type = TYPES[types[address]];
+                        int expected = 0;
+                        if (type != Type.AIR) {
+                            for (Face face : FACES) {
+                                Type near = getType(mesh, originX + x + face.getDx(), originY + y + face.getDy(),
+                                        originZ + z + face.getDz());
+                                if (near == Type.AIR || near.isTransparent() != type.isTransparent()) {
+                                    expected |= face.getVisibilityBit();
+                                }
+                            }
+                        }
+                        assertEquals(expected, options[address] & TerrainBlockOptionsBuffer.VISIBILITY_FIELD_MASK,
+                                "world " + world + ", chunk " + chunkId + " at " + x + ", " + y + ", " + z);
+                    }
+                }
+            }
+        }
+    }
+
+    private static Type getType(final TerrainChunksMesh mesh, final int x, final int y, final int z) {
+        ChunkDescriptorsBuffer descriptors = mesh.getChunkDescriptors();
+        int chunkX = Math.floorDiv(x, CHUNK_DIMENSION);
+        int chunkY = Math.floorDiv(y, CHUNK_DIMENSION);
+        int chunkZ = Math.floorDiv(z, CHUNK_DIMENSION);
+        int chunkId = descriptors.getID(chunkX, chunkY, chunkZ);
+        if (chunkId != Integer.MIN_VALUE) {
+            return mesh.getBlockType().getType(x, y, z);
+        }
+        int uniformType = descriptors.getUniformType(chunkX, chunkY, chunkZ);
+        return uniformType != Integer.MIN_VALUE ? TYPES[uniformType] : Type.AIR;
+    }
+}
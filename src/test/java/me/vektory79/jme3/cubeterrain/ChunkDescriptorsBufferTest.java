@@ -0,0 +1,39 @@
+package me.vektory79.jme3.cubeterrain;
+
+import me.vektory79.jme3.cubeterrain.BlockTypeDescriptorsBuffer.Type;
+import org.junit.jupiter.api.Test;
+
+import static me.vektory79.jme3.cubeterrain.ChunkDescriptorsBuffer.NO_COLUMN_RANGE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkDescriptorsBufferTest {
+
+    @Test
+    void columnRangeCoversReservedAndUniformChunks() {
+        ChunkDescriptorsBuffer descriptors = new ChunkDescriptorsBuffer(0, 8);
+        descriptors.use(1, 3, 2);
+        descriptors.use(1, 9, 2);
+        descriptors.setUniform(1, -4, 2, Type.STONE);
+        descriptors.use(2, 20, 2);
+        // AIR chunks are not stored, so they don't widen the range.
+        descriptors.setUniform(1, 40, 2, Type.AIR);
+
+        long range = descriptors.drainColumnRange(1, 2);
+        assertEquals(-4, ChunkGenerator.getRangeMin(range));
+        assertEquals(9, ChunkGenerator.getRangeMax(range));
+        assertEquals(NO_COLUMN_RANGE, descriptors.drainColumnRange(1, 2));
+
+        range = descriptors.drainColumnRange(2, 2);
+        assertEquals(20, ChunkGenerator.getRangeMin(range));
+        assertEquals(20, ChunkGenerator.getRangeMax(range));
+    }
+
+    @Test
+    void emptyColumnRangeHasNoChunks() {
+        ChunkDescriptorsBuffer descriptors = new ChunkDescriptorsBuffer(0, 8);
+        long range = descriptors.drainColumnRange(0, 0);
+        assertEquals(NO_COLUMN_RANGE, range);
+        assertTrue(ChunkGenerator.getRangeMin(range) > ChunkGenerator.getRangeMax(range));
+    }
+}
@@ -0,0 +1,121 @@
+package me.vektory79.jme3.cubeterrain;
+
+import me.vektory79.mapgen.HeightMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_SIZE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkGenerationPipelineTest {
+    private static final HeightMap FLAT = (x, z) -> 0;
+    private static final HeightMap HILLS = (x, z) -> Math.sin(x * 0.05) * Math.cos(z * 0.07);
+    private static final int COLUMNS = 8;
+
+    private ChunkGenerationPipeline pipeline;
+
+    @AfterEach
+    void tearDown() {
+        pipeline.close();
+    }
+
+    @Test
+    void fullWorkQueueRejectsChunks() throws InterruptedException {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        HeightMap blocking = (x, z) -> {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 0;
+        };
+        pipeline = new ChunkGenerationPipeline(1, 4, 2);
+        assertTrue(pipeline.submit(blocking, 0, 0, 0));
+        // The only worker holds the first chunk, so the queue is empty again.
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+        assertTrue(pipeline.submit(FLAT, 1, 0, 0));
+        assertTrue(pipeline.submit(FLAT, 2, 0, 0));
+        assertEquals(0, pipeline.getFreeRequests());
+        assertFalse(pipeline.submit(FLAT, 3, 0, 0));
+        assertEquals(3, pipeline.getPendingChunks());
+
+        release.countDown();
+        TerrainChunksMesh mesh = new TerrainChunksMesh(4);
+        assertEquals(3, commitAll(mesh));
+        assertEquals(2, pipeline.getFreeRequests());
+    }
+
+    @Test
+    void failedChunkReleasesStagingArray() throws InterruptedException {
+        HeightMap failing = (x, z) -> {
+            throw new IllegalStateException("Expected failure of the test");
+        };
+        // Single staging array: it must be returned after the failure, or the next chunk is never generated.
+        pipeline = new ChunkGenerationPipeline(1, 1, 4);
+        assertTrue(pipeline.submit(failing, 0, 0, 0));
+        assertTrue(pipeline.submit(FLAT, 1, 0, 0));
+
+        TerrainChunksMesh mesh = new TerrainChunksMesh(4);
+        assertEquals(1, commitAll(mesh));
+        assertTrue(pipeline.isIdle());
+    }
+
+    @Test
+    void submissionLargerThanQueueStoresEveryChunk() throws InterruptedException {
+        TerrainChunksMesh expected = new TerrainChunksMesh(COLUMNS * COLUMNS * 4);
+        new WorldBuilder(expected).fillColumns(HILLS, COLUMNS, COLUMNS);
+
+        // Work queue of 4 requests is much smaller than the submitted area.
+        pipeline = new ChunkGenerationPipeline(2, 4, 4);
+        TerrainChunksMesh mesh = new TerrainChunksMesh(COLUMNS * COLUMNS * 4);
+        WorldBuilder builder = new WorldBuilder(mesh);
+        builder.submitColumns(HILLS, COLUMNS, COLUMNS, pipeline);
+        assertTrue(builder.getStoredChunks() > 0, "the full queue must fall back to the immediate generation");
+        commitAll(mesh);
+        assertTrue(pipeline.isIdle());
+
+        ChunkDescriptorsBuffer expectedChunks = expected.getChunkDescriptors();
+        ChunkDescriptorsBuffer chunks = mesh.getChunkDescriptors();
+        assertEquals(expectedChunks.getFreeChunks(), chunks.getFreeChunks());
+        assertEquals(expectedChunks.getUniformChunks(), chunks.getUniformChunks());
+        int[] expectedData = new int[CHUNK_SIZE];
+        int[] data = new int[CHUNK_SIZE];
+        for (int chunkZ = 0; chunkZ < COLUMNS; chunkZ++) {
+            for (int chunkX = 0; chunkX < COLUMNS; chunkX++) {
+                long range = ChunkGenerator.getColumnRange(HILLS, chunkX, chunkZ);
+                for (int y = ChunkGenerator.getRangeMin(range); y <= ChunkGenerator.getRangeMax(range); y++) {
+                    String chunk = chunkX + ", " + y + ", " + chunkZ;
+                    assertEquals(expectedChunks.getUniformType(chunkX, y, chunkZ),
+                            chunks.getUniformType(chunkX, y, chunkZ), chunk);
+                    int expectedId = expectedChunks.getID(chunkX, y, chunkZ);
+                    int id = chunks.getID(chunkX, y, chunkZ);
+                    assertEquals(expectedId == Integer.MIN_VALUE, id == Integer.MIN_VALUE, chunk);
+                    if (id != Integer.MIN_VALUE) {
+                        expected.getBlockType().readChunk(expectedId, expectedData);
+                        mesh.getBlockType().readChunk(id, data);
+                        assertArrayEquals(expectedData, data, chunk);
+                    }
+                }
+            }
+        }
+    }
+
+    private int commitAll(final TerrainChunksMesh mesh) throws InterruptedException {
+        int committed = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!pipeline.isIdle() && System.nanoTime() < deadline) {
+            committed += pipeline.commit(mesh);
+            Thread.sleep(1);
+        }
+        return committed;
+    }
+}
@@ -0,0 +1,90 @@
+package me.vektory79.jme3.cubeterrain;
+
+import me.vektory79.jme3.cubeterrain.BlockTypeDescriptorsBuffer.Type;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_DIMENSION;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkLodPyramidTest {
+    private static final Type[] TYPES = Type.values();
+    private static final Type AIR = Type.AIR;
+    private static final Type STONE = Type.STONE;
+    private static final Type DIRT = Type.DIRT;
+    private static final Type SAND = Type.SAND;
+    private static final Type WATER = Type.WATER;
+
+    @Test
+    void halfOpaqueCellIsOpaque() {
+        assertEquals(STONE, vote(new Type[]{STONE, STONE, STONE, STONE}, new Type[]{AIR, AIR, AIR, AIR}));
+        assertEquals(AIR, vote(new Type[]{STONE, STONE, STONE, AIR}, new Type[]{AIR, AIR, AIR, AIR}));
+    }
+
+    @Test
+    void topSurfaceDecidesMaterial() {
+        assertEquals(SAND, vote(new Type[]{STONE, STONE, STONE, STONE}, new Type[]{SAND, AIR, AIR, AIR}));
+        assertEquals(SAND, vote(new Type[]{STONE, STONE, STONE, DIRT}, new Type[]{SAND, SAND, DIRT, WATER}));
+    }
+
+    @Test
+    void transparentCellTakesMostFrequentTransparentType() {
+        assertEquals(WATER, vote(new Type[]{STONE, STONE, WATER, WATER}, new Type[]{WATER, WATER, AIR, AIR}));
+        // Lower ordinal wins the tie.
+        assertEquals(AIR, vote(new Type[]{STONE, STONE, WATER, WATER}, new Type[]{WATER, AIR, AIR, AIR}));
+    }
+
+    @Test
+    void incrementalUpdateMatchesFullRecalculation() {
+        TerrainChunksMesh mesh = new TerrainChunksMesh(1);
+        int chunkId = mesh.useChunk(0, 0, 0);
+        TerrainBlockTypesBuffer blockType = mesh.getBlockType();
+        Random random = new Random(3);
+        for (int z = 0; z < CHUNK_DIMENSION; z++) {
+            for (int x = 0; x < CHUNK_DIMENSION; x++) {
+                int height = random.nextInt(CHUNK_DIMENSION);
+                for (int y = 0; y < height; y++) {
+                    blockType.setType(x, y, z, TYPES[1 + random.nextInt(4)]);
+                }
+            }
+        }
+        ChunkLodPyramid pyramid = new ChunkLodPyramid();
+        pyramid.update(blockType, chunkId, 1);
+        for (int edit = 0; edit < 300; edit++) {
+            blockType.setType(random.nextInt(CHUNK_DIMENSION), random.nextInt(CHUNK_DIMENSION),
+                    random.nextInt(CHUNK_DIMENSION), TYPES[random.nextInt(TYPES.length)]);
+            pyramid.invalidate();
+            assertFalse(pyramid.isValid(0));
+            // Coarse levels are requested only later, so they are downsampled from the refreshed finer ones.
+            int level = edit < 100 ? 1 : ChunkLodPyramid.MAX_LEVEL;
+            pyramid.update(blockType, chunkId, level);
+            assertTrue(pyramid.isValid(level));
+
+            ChunkLodPyramid expected = new ChunkLodPyramid();
+            expected.update(blockType, chunkId, level);
+            for (int i = 0; i <= level; i++) {
+                assertArrayEquals(expected.getLevel(i), pyramid.getLevel(i), "level " + i + " after edit " + edit);
+            }
+        }
+    }
+
+    /**
+     * Downsample the single 2x2x2 cell. Layers are in the {@code x + z * 2} order.
+     */
+    private static Type vote(final Type[] bottom, final Type[] top) {
+        int[] src = new int[8];
+        for (int i = 0; i < 4; i++) {
+            int x = i & 1;
+            int z = i >> 1;
+            src[x + z * 4] = bottom[i].ordinal();
+            src[x + 2 + z * 4] = top[i].ordinal();
+        }
+        int[] dst = new int[1];
+        new ChunkLodPyramid().downsample(src, 2, dst);
+        return TYPES[dst[0]];
+    }
+}
@@ -0,0 +1,73 @@
+package me.vektory79.jme3.cubeterrain;
+
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkVisibilityCullerTest {
+    private ChunkDescriptorsBuffer chunkDescriptors;
+    private ChunkVisibilityCuller culler;
+    private Camera camera;
+
+    @BeforeEach
+    void setUp() {
+        chunkDescriptors = new ChunkDescriptorsBuffer(0, 64);
+        // Row of chunks in front of the camera, the same row behind it, the far chunk and the chunk above the view.
+        for (int x = -5; x <= 5; x++) {
+            chunkDescriptors.use(x, 0, -2);
+            chunkDescriptors.use(x, 0, 2);
+        }
+        chunkDescriptors.use(0, 0, -4);
+        chunkDescriptors.use(0, 3, -2);
+        culler = new ChunkVisibilityCuller(chunkDescriptors);
+        culler.setViewDistance(40);
+
+        // Camera in the center of the chunk (0, 0, 0), looking along -Z with 60 degrees field of view.
+        camera = new Camera(640, 640);
+        camera.setFrustumPerspective(60, 1, 0.1f, 1000);
+        camera.setLocation(new Vector3f(8, 8, 8));
+        camera.lookAt(new Vector3f(8, 8, -100), Vector3f.UNIT_Y);
+        camera.update();
+    }
+
+    @Test
+    void selectsChunksInFrustumAndViewDistance() {
+        assertTrue(culler.cull(camera));
+        assertArrayEquals(ids(new int[][]{{-1, 0, -2}, {0, 0, -2}, {1, 0, -2}}), culler.getVisibleChunkIDs());
+    }
+
+    @Test
+    void unlimitedViewDistanceSelectsFarChunks() {
+        culler.setViewDistance(Float.POSITIVE_INFINITY);
+        culler.cull(camera);
+        assertArrayEquals(ids(new int[][]{{-1, 0, -2}, {0, 0, -2}, {1, 0, -2}, {0, 0, -4}}),
+                culler.getVisibleChunkIDs());
+    }
+
+    @Test
+    void reportsChangesOfSelection() {
+        assertTrue(culler.cull(camera));
+        assertFalse(culler.cull(camera));
+
+        camera.lookAt(new Vector3f(8, 8, 100), Vector3f.UNIT_Y);
+        camera.update();
+        assertTrue(culler.cull(camera));
+        assertArrayEquals(ids(new int[][]{{-1, 0, 2}, {0, 0, 2}, {1, 0, 2}}), culler.getVisibleChunkIDs());
+    }
+
+    private int[] ids(final int[][] coordinates) {
+        int[] result = new int[coordinates.length];
+        for (int i = 0; i < coordinates.length; i++) {
+            result[i] = chunkDescriptors.getID(coordinates[i][0], coordinates[i][1], coordinates[i][2]);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+}
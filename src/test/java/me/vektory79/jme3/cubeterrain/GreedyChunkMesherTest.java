@@ -0,0 +1,250 @@
+package me.vektory79.jme3.cubeterrain;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+import me.vektory79.jme3.cubeterrain.BlockTypeDescriptorsBuffer.Type;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_DIMENSION;
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_SIZE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GreedyChunkMesherTest {
+    private static final Type[] TYPES = Type.values();
+
+    private TerrainChunksMesh mesh;
+    private TerrainBlockTypesBuffer blockType;
+    private GreedyChunkMesher mesher;
+    private int chunkId;
+
+    @BeforeEach
+    void setUp() {
+        mesh = new TerrainChunksMesh(1);
+        chunkId = mesh.useChunk(0, 0, 0);
+        blockType = mesh.getBlockType();
+        mesher = new GreedyChunkMesher();
+    }
+
+    @Test
+    void singleBlock() {
+        blockType.setType(5, 5, 5, Type.STONE);
+        assertClosedSurface(1);
+        assertEquals(6, mesher.getQuads());
+    }
+
+    @Test
+    void sameTypeNeighboursAreMerged() {
+        blockType.setType(5, 5, 5, Type.STONE);
+        blockType.setType(6, 5, 5, Type.STONE);
+        assertClosedSurface(2);
+        assertEquals(6, mesher.getQuads());
+    }
+
+    @Test
+    void differentTypeNeighboursAreNotMerged() {
+        blockType.setType(5, 5, 5, Type.STONE);
+        blockType.setType(6, 5, 5, Type.DIRT);
+        assertClosedSurface(2);
+        assertEquals(10, mesher.getQuads());
+    }
+
+    @Test
+    void faceTowardsTransparentNeighbourIsKept() {
+        blockType.setType(5, 5, 5, Type.STONE);
+        blockType.setType(6, 5, 5, Type.WATER);
+        blockType.setType(5, 6, 5, Type.WATER);
+        assertClosedSurface(1);
+        assertEquals(6, mesher.getQuads());
+    }
+
+    @Test
+    void randomBlocks() {
+        Random random = new Random(42);
+        int opaque = 0;
+        // Border of the chunk is left empty, so the surface is closed inside the chunk.
+        for (int z = 1; z < CHUNK_DIMENSION - 1; z++) {
+            for (int y = 1; y < CHUNK_DIMENSION - 1; y++) {
+                for (int x = 1; x < CHUNK_DIMENSION - 1; x++) {
+                    Type type = TYPES[random.nextInt(TYPES.length)];
+                    blockType.setType(x, y, z, type);
+                    if (!type.isTransparent()) {
+                        opaque++;
+                    }
+                }
+            }
+        }
+        assertClosedSurface(opaque);
+    }
+
+    /**
+     * Build the chunk and check, that the quads cover exactly the visible faces of the opaque blocks and form
+     * the closed outward oriented surface around them.
+     */
+    private void assertClosedSurface(final int opaqueBlocks) {
+        mesh.rebuildCulling();
+        mesh.commitUpdates();
+        mesher.build(mesh, chunkId);
+
+        int[] types = new int[CHUNK_SIZE];
+        int[] options = new int[CHUNK_SIZE];
+        blockType.readChunk(chunkId, types);
+        mesh.getBlockOptions().readChunk(chunkId, options);
+        int visibleFaces = 0;
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            if (!TYPES[types[i]].isTransparent()) {
+                visibleFaces += Integer.bitCount(options[i] & TerrainBlockOptionsBuffer.VISIBILITY_FIELD_MASK);
+            }
+        }
+        assertEquals(visibleFaces, mesher.getMergedFaces());
+        assertClosedMesh(opaqueBlocks);
+    }
+
+    @Test
+    void levelsOfDetailAreClosedSurfaces() {
+        fillTerrain(new Random(11));
+        ChunkLodPyramid pyramid = new ChunkLodPyramid();
+        pyramid.update(blockType, chunkId, ChunkLodPyramid.MAX_LEVEL);
+        // Absent neighbours are AIR.
+        int[] planes = new int[6 * CHUNK_DIMENSION * CHUNK_DIMENSION];
+        for (int level = 1; level <= ChunkLodPyramid.MAX_LEVEL; level++) {
+            int dimension = ChunkLodPyramid.getDimension(level);
+            mesher.build(pyramid.getLevel(level), dimension, planes, 0);
+            assertClosedMesh(getOpaqueVolume(pyramid.getLevel(level), dimension));
+        }
+    }
+
+    @Test
+    void openBorderTowardsOtherLevelIsClosed() {
+        fillTerrain(new Random(12));
+        ChunkLodPyramid pyramid = new ChunkLodPyramid();
+        pyramid.update(blockType, chunkId, ChunkLodPyramid.MAX_LEVEL);
+        // Solid neighbours hide the border faces, unless the borders are open.
+        int[] planes = new int[6 * CHUNK_DIMENSION * CHUNK_DIMENSION];
+        Arrays.fill(planes, Type.STONE.ordinal());
+        for (int level = 0; level <= ChunkLodPyramid.MAX_LEVEL; level++) {
+            int dimension = ChunkLodPyramid.getDimension(level);
+            int[] cells = pyramid.getLevel(level);
+            int closedQuads = mesher.build(cells, dimension, planes, 0);
+            mesher.build(cells, dimension, planes, TerrainBlockOptionsBuffer.VISIBILITY_FIELD_MASK);
+            // The neighbour of the other level may not cover the border, so the chunk must be closed by itself.
+            assertClosedMesh(getOpaqueVolume(cells, dimension));
+            assertTrue(mesher.getQuads() > closedQuads);
+        }
+    }
+
+    /**
+     * Fill the chunk by the columns of the random height and type with the water above some of them. Columns touch
+     * the borders of the chunk.
+     */
+    private void fillTerrain(final Random random) {
+        for (int z = 0; z < CHUNK_DIMENSION; z++) {
+            for (int x = 0; x < CHUNK_DIMENSION; x++) {
+                int height = 1 + random.nextInt(CHUNK_DIMENSION - 1);
+                for (int y = 0; y < height; y++) {
+                    blockType.setType(x, y, z, TYPES[1 + random.nextInt(4)]);
+                }
+                if (random.nextInt(4) == 0) {
+                    blockType.setType(x, height, z, Type.WATER);
+                }
+            }
+        }
+    }
+
+    /**
+     * Volume of the opaque cells in blocks.
+     */
+    private static double getOpaqueVolume(final int[] cells, final int dimension) {
+        int scale = CHUNK_DIMENSION / dimension;
+        int opaque = 0;
+        for (int i = 0; i < dimension * dimension * dimension; i++) {
+            if (!TYPES[cells[i]].isTransparent()) {
+                opaque++;
+            }
+        }
+        return (double) opaque * scale * scale * scale;
+    }
+
+    /**
+     * Check, that the triangles of the last build form the closed outward oriented surface around the volume.
+     */
+    private void assertClosedMesh(final double opaqueVolume) {
+        // Each directed unit edge of the triangles must be matched by the reverse one.
+        float[] positions = mesher.getPositions();
+        int[] indices = mesher.getIndices();
+        TLongIntHashMap edges = new TLongIntHashMap();
+        double volume = 0;
+        for (int triangle = 0; triangle < mesher.getTriangles(); triangle++) {
+            int[] corners = new int[3];
+            for (int i = 0; i < 3; i++) {
+                corners[i] = indices[triangle * 3 + i];
+            }
+            for (int i = 0; i < 3; i++) {
+                addEdge(edges, positions, corners[i], corners[(i + 1) % 3]);
+            }
+            volume += getSignedVolume(positions, corners[0], corners[1], corners[2]);
+        }
+        for (long edge : edges.keys()) {
+            long reverse = (edge << 32) | (edge >>> 32);
+            assertEquals(edges.get(edge), edges.get(reverse), "open edge " + Long.toHexString(edge));
+        }
+        // Counterclockwise triangles of the closed surface enclose the volume of the opaque blocks.
+        assertEquals(opaqueVolume, volume, 1e-6);
+    }
+
+    /**
+     * Add the edge, split to the unit segments if it's axis aligned. Diagonals of the quads are added as is.
+     */
+    private static void addEdge(
+            final TLongIntHashMap edges,
+            final float[] positions,
+            final int from,
+            final int to) {
+        int[] a = point(positions, from);
+        int[] b = point(positions, to);
+        int axis = -1;
+        int differences = 0;
+        for (int i = 0; i < 3; i++) {
+            if (a[i] != b[i]) {
+                axis = i;
+                differences++;
+            }
+        }
+        if (differences != 1) {
+            edges.adjustOrPutValue(edgeKey(a, b), 1, 1);
+            return;
+        }
+        int step = Integer.signum(b[axis] - a[axis]);
+        while (a[axis] != b[axis]) {
+            int[] next = a.clone();
+            next[axis] += step;
+            edges.adjustOrPutValue(edgeKey(a, next), 1, 1);
+            a = next;
+        }
+    }
+
+    private static int[] point(final float[] positions, final int vertex) {
+        return new int[]{
+                Math.round(positions[vertex * 3]),
+                Math.round(positions[vertex * 3 + 1]),
+                Math.round(positions[vertex * 3 + 2])};
+    }
+
+    private static long edgeKey(final int[] from, final int[] to) {
+        return ((long) pointKey(from) << 32) | pointKey(to);
+    }
+
+    private static int pointKey(final int[] point) {
+        return (point[0] * (CHUNK_DIMENSION + 1) + point[1]) * (CHUNK_DIMENSION + 1) + point[2];
+    }
+
+    private static double getSignedVolume(final float[] positions, final int a, final int b, final int c) {
+        double ax = positions[a * 3], ay = positions[a * 3 + 1], az = positions[a * 3 + 2];
+        double bx = positions[b * 3], by = positions[b * 3 + 1], bz = positions[b * 3 + 2];
+        double cx = positions[c * 3], cy = positions[c * 3 + 1], cz = positions[c * 3 + 2];
+        return (ax * (by * cz - bz * cy) + ay * (bz * cx - bx * cz) + az * (bx * cy - by * cx)) / 6;
+    }
+}
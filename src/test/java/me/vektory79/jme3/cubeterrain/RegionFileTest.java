@@ -0,0 +1,85 @@
+package me.vektory79.jme3.cubeterrain;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_SIZE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegionFileTest {
+    private Path path;
+    private RegionFile region;
+    private TerrainChunksMesh mesh;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        path = Files.createTempFile("region", ".bwr");
+        Files.delete(path);
+        region = RegionFile.open(path);
+        mesh = new TerrainChunksMesh(2);
+        Random random = new Random(7);
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            // Random types don't compress, so each chunk takes many sectors.
+            mesh.getBlockType().setValue(i, random.nextInt(5));
+            mesh.getBlockOptions().setValue(i, random.nextInt(64));
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        region.close();
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    void removedChunkSectorsAreReused() throws IOException {
+        int entry = RegionFile.getEntryIndex(1, 2, 3);
+        region.write(entry, mesh.getBlockType(), mesh.getBlockOptions(), 0);
+        int dataEnd = region.getDataEnd();
+
+        region.remove(entry);
+        assertFalse(region.contains(entry));
+        assertFalse(region.read(entry, mesh.getBlockType(), mesh.getBlockOptions(), 1));
+
+        region.write(entry, mesh.getBlockType(), mesh.getBlockOptions(), 0);
+        assertTrue(region.contains(entry));
+        assertEquals(dataEnd, region.getDataEnd());
+        assertChunkRead(entry);
+    }
+
+    @Test
+    void chunksSurviveRemapping() throws IOException {
+        // Enough chunks to grow the mapping several times.
+        for (int entry = 0; entry < 100; entry++) {
+            region.write(entry, mesh.getBlockType(), mesh.getBlockOptions(), 0);
+        }
+        assertTrue(region.getDataEnd() > 4 << 20);
+        assertChunkRead(0);
+        assertChunkRead(99);
+
+        region.close();
+        region = RegionFile.open(path);
+        assertChunkRead(50);
+    }
+
+    private void assertChunkRead(final int entry) throws IOException {
+        assertTrue(region.read(entry, mesh.getBlockType(), mesh.getBlockOptions(), 1));
+        int[] expected = new int[CHUNK_SIZE];
+        int[] actual = new int[CHUNK_SIZE];
+        mesh.getBlockType().readChunk(0, expected);
+        mesh.getBlockType().readChunk(1, actual);
+        assertArrayEquals(expected, actual);
+        mesh.getBlockOptions().readChunk(0, expected);
+        mesh.getBlockOptions().readChunk(1, actual);
+        assertArrayEquals(expected, actual);
+    }
+}
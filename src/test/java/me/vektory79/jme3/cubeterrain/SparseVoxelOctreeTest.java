@@ -0,0 +1,151 @@
+package me.vektory79.jme3.cubeterrain;
+
+import me.vektory79.jme3.cubeterrain.BlockTypeDescriptorsBuffer.Type;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_DIMENSION;
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_SIZE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SparseVoxelOctreeTest {
+    private static final int STONE = Type.STONE.ordinal();
+    private static final int DIRT = Type.DIRT.ordinal();
+    private static final int AIR = Type.AIR.ordinal();
+
+    @Test
+    void setCollapsesBackToUniformRoot() {
+        SparseVoxelOctree octree = new SparseVoxelOctree();
+        octree.setUniformChunk(0, 0, 0, STONE);
+        assertEquals(0, octree.getNodes());
+
+        octree.setValue(3, 4, 5, DIRT);
+        // One node per level on the path to the block.
+        assertEquals(4, octree.getNodes());
+        assertEquals(Integer.MIN_VALUE, octree.getUniformChunkValue(0, 0, 0));
+        assertEquals(DIRT, octree.getValue(3, 4, 5));
+        assertEquals(STONE, octree.getValue(2, 4, 5));
+
+        octree.setValue(3, 4, 5, STONE);
+        assertEquals(0, octree.getNodes());
+        assertEquals(STONE, octree.getUniformChunkValue(0, 0, 0));
+    }
+
+    @Test
+    void absentChunkIsAir() {
+        SparseVoxelOctree octree = new SparseVoxelOctree();
+        assertEquals(AIR, octree.getValue(-5, 7, 100));
+        octree.setValue(-5, 7, 100, STONE);
+        assertTrue(octree.containsChunk(-1, 0, 6));
+        octree.setValue(-5, 7, 100, AIR);
+        assertEquals(0, octree.getNodes());
+        assertEquals(AIR, octree.getUniformChunkValue(-1, 0, 6));
+    }
+
+    @Test
+    void freedNodesAreReused() {
+        SparseVoxelOctree octree = new SparseVoxelOctree();
+        Random random = new Random(7);
+        octree.writeChunk(0, 0, 0, randomChunk(random));
+        long memory = octree.getMemoryUsage();
+        octree.removeChunk(0, 0, 0);
+        assertEquals(0, octree.getNodes());
+
+        // Second chunk wouldn't fit next to the first one without growing the nodes.
+        octree.writeChunk(1, 0, 0, randomChunk(random));
+        assertEquals(memory, octree.getMemoryUsage());
+
+        // Splitting and collapsing the same path doesn't leak nodes.
+        octree.setUniformChunk(1, 0, 0, STONE);
+        for (int i = 0; i < 1000; i++) {
+            octree.setValue(16 + random.nextInt(CHUNK_DIMENSION), random.nextInt(CHUNK_DIMENSION),
+                    random.nextInt(CHUNK_DIMENSION), DIRT);
+            assertEquals(4, octree.getNodes());
+            octree.setUniformChunk(1, 0, 0, STONE);
+            assertEquals(0, octree.getNodes());
+        }
+        assertEquals(memory, octree.getMemoryUsage());
+    }
+
+    @Test
+    void uniformValueAcrossChunkBorders() {
+        SparseVoxelOctree octree = new SparseVoxelOctree();
+        octree.setUniformChunk(-1, 0, 0, STONE);
+        octree.setUniformChunk(0, 0, 0, STONE);
+        octree.setUniformChunk(-1, 1, 0, STONE);
+        octree.setUniformChunk(0, 1, 0, STONE);
+        assertEquals(STONE, octree.getUniformValue(-8, 0, 0, 8, 24, 16));
+
+        octree.setValue(4, 20, 3, DIRT);
+        assertEquals(Integer.MIN_VALUE, octree.getUniformValue(-8, 0, 0, 8, 24, 16));
+        // Region, which ends right before the changed block, is still uniform.
+        assertEquals(STONE, octree.getUniformValue(-8, 0, 0, 4, 24, 16));
+        assertEquals(STONE, octree.getUniformValue(-8, 0, 4, 8, 24, 16));
+        assertEquals(DIRT, octree.getUniformValue(4, 20, 3, 5, 21, 4));
+
+        // Absent chunks are air.
+        assertEquals(Integer.MIN_VALUE, octree.getUniformValue(8, 0, 0, 24, 16, 16));
+        assertTrue(octree.isEmpty(16, 0, 0, 48, 16, 16));
+        assertFalse(octree.isEmpty(15, 0, 0, 48, 16, 16));
+        assertEquals(Integer.MIN_VALUE, octree.getUniformValue(0, 0, 0, 0, 16, 16));
+    }
+
+    @Test
+    void writeReadRoundTrip() {
+        SparseVoxelOctree octree = new SparseVoxelOctree();
+        Random random = new Random(42);
+        int[] src = randomChunk(random);
+        // Solid lower half collapses to the leaves of the root.
+        for (int z = 0; z < CHUNK_DIMENSION; z++) {
+            for (int y = 0; y < CHUNK_DIMENSION / 2; y++) {
+                for (int x = 0; x < CHUNK_DIMENSION; x++) {
+                    src[AbstractTerrainBlockBuffer.getBlockAddress(0, x, y, z)] = STONE;
+                }
+            }
+        }
+        octree.writeChunk(2, -3, 1, src);
+        int[] dst = new int[CHUNK_SIZE];
+        octree.readChunk(2, -3, 1, dst);
+        assertArrayEquals(src, dst);
+        for (int z = 0; z < CHUNK_DIMENSION; z++) {
+            for (int y = 0; y < CHUNK_DIMENSION; y++) {
+                for (int x = 0; x < CHUNK_DIMENSION; x++) {
+                    assertEquals(src[AbstractTerrainBlockBuffer.getBlockAddress(0, x, y, z)],
+                            octree.getValue(32 + x, -48 + y, 16 + z));
+                }
+            }
+        }
+        assertEquals(STONE, octree.getUniformValue(32, -48, 16, 48, -40, 32));
+
+        // Edits through the per-block API are visible in the flattened chunk.
+        for (int i = 0; i < 500; i++) {
+            int x = random.nextInt(CHUNK_DIMENSION);
+            int y = random.nextInt(CHUNK_DIMENSION);
+            int z = random.nextInt(CHUNK_DIMENSION);
+            int value = random.nextInt(Type.values().length);
+            src[AbstractTerrainBlockBuffer.getBlockAddress(0, x, y, z)] = value;
+            octree.setValue(32 + x, -48 + y, 16 + z, value);
+        }
+        octree.readChunk(2, -3, 1, dst);
+        assertArrayEquals(src, dst);
+
+        octree.removeChunk(2, -3, 1);
+        assertEquals(0, octree.getNodes());
+        octree.readChunk(2, -3, 1, dst);
+        for (int value : dst) {
+            assertEquals(AIR, value);
+        }
+    }
+
+    private static int[] randomChunk(final Random random) {
+        int[] data = new int[CHUNK_SIZE];
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            data[i] = random.nextInt(Type.values().length);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,145 @@
+package me.vektory79.jme3.cubeterrain;
+
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+import me.vektory79.jme3.cubeterrain.BlockTypeDescriptorsBuffer.Type;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_DIMENSION;
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_SIZE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class TerrainChunksMeshTest {
+    private static final Type[] TYPES = Type.values();
+
+    @Test
+    void buriedUniformChunkStaysOutOfPool() {
+        TerrainChunksMesh mesh = new TerrainChunksMesh(32);
+        ChunkDescriptorsBuffer descriptors = mesh.getChunkDescriptors();
+        // 3x3 columns: uniform stone layer under the surface chunks with the solid lower half.
+        for (int chunkZ = 0; chunkZ < 3; chunkZ++) {
+            for (int chunkX = 0; chunkX < 3; chunkX++) {
+                mesh.setUniformChunk(chunkX, -1, chunkZ, Type.STONE);
+                for (int z = 0; z < CHUNK_DIMENSION; z++) {
+                    for (int x = 0; x < CHUNK_DIMENSION; x++) {
+                        for (int y = 0; y < CHUNK_DIMENSION / 2; y++) {
+                            mesh.getBlockType().setType(chunkX * CHUNK_DIMENSION + x, y,
+                                    chunkZ * CHUNK_DIMENSION + z, Type.STONE);
+                        }
+                    }
+                }
+            }
+        }
+        mesh.rebuildCulling();
+        // Chunks below the columns are not generated, but they are solid ground, not air.
+        assertEquals(Integer.MIN_VALUE, descriptors.getID(1, -1, 1));
+        assertEquals(Type.STONE.ordinal(), descriptors.getUniformType(1, -1, 1));
+        // Chunks on the border of the loaded area face the absent columns.
+        assertNotEquals(Integer.MIN_VALUE, descriptors.getID(0, -1, 1));
+
+        // Digging through the surface chunk exposes the buried chunk.
+        mesh.getBlockType().setType(CHUNK_DIMENSION + 8, 0, CHUNK_DIMENSION + 8, Type.AIR);
+        mesh.rebuildDirtyCulling();
+        assertNotEquals(Integer.MIN_VALUE, descriptors.getID(1, -1, 1));
+    }
+
+    @Test
+    void dirtyCullingRecullsChangedChunksAndTouchedNeighbours() {
+        TerrainChunksMesh mesh = createTerrain(new Random(5));
+        ChunkDescriptorsBuffer descriptors = mesh.getChunkDescriptors();
+        mesh.rebuildCulling();
+        mesh.setTrackCulledChunks(true);
+        mesh.drainCulledChunks();
+
+        // Block inside the chunk doesn't affect the neighbours.
+        mesh.getBlockType().setType(CHUNK_DIMENSION + 5, 6, CHUNK_DIMENSION + 7, Type.AIR);
+        mesh.rebuildDirtyCulling();
+        assertEquals(ids(descriptors, 1, 0, 1), mesh.drainCulledChunks());
+
+        // Block on the border: the neighbour behind it.
+        mesh.getBlockType().setType(CHUNK_DIMENSION, 6, CHUNK_DIMENSION + 7, Type.WATER);
+        mesh.rebuildDirtyCulling();
+        assertEquals(ids(descriptors, 1, 0, 1, 0, 0, 1), mesh.drainCulledChunks());
+
+        // Block in the corner: the neighbours behind the borders. The chunk above is absent.
+        mesh.getBlockType().setType(2 * CHUNK_DIMENSION - 1, 2 * CHUNK_DIMENSION - 1, CHUNK_DIMENSION, Type.AIR);
+        mesh.rebuildDirtyCulling();
+        assertEquals(ids(descriptors, 1, 1, 1, 2, 1, 1, 1, 1, 0), mesh.drainCulledChunks());
+
+        // Nothing changed, nothing is culled.
+        assertFalse(mesh.rebuildDirtyCulling());
+        assertEquals(0, mesh.drainCulledChunks().size());
+    }
+
+    @Test
+    void dirtyCullingMatchesFullRebuild() {
+        Random random = new Random(6);
+        TerrainChunksMesh mesh = createTerrain(random);
+        mesh.rebuildCulling();
+        for (int round = 0; round < 20; round++) {
+            // Blocks anywhere, including the borders and the bottom, which exposes the uniform layer.
+            for (int edit = 0; edit < 30; edit++) {
+                mesh.getBlockType().setType(random.nextInt(3 * CHUNK_DIMENSION),
+                        random.nextInt(2 * CHUNK_DIMENSION), random.nextInt(3 * CHUNK_DIMENSION),
+                        TYPES[random.nextInt(TYPES.length)]);
+            }
+            mesh.rebuildDirtyCulling();
+            int[][] dirty = readOptions(mesh);
+            mesh.rebuildCulling();
+            int[][] full = readOptions(mesh);
+            for (int chunkId = 0; chunkId < full.length; chunkId++) {
+                assertArrayEquals(full[chunkId], dirty[chunkId], "round " + round + ", chunk " + chunkId);
+            }
+        }
+    }
+
+    /**
+     * 3x3 columns of two chunks of random terrain above the uniform stone layer.
+     */
+    private static TerrainChunksMesh createTerrain(final Random random) {
+        TerrainChunksMesh mesh = new TerrainChunksMesh(32);
+        for (int chunkZ = 0; chunkZ < 3; chunkZ++) {
+            for (int chunkX = 0; chunkX < 3; chunkX++) {
+                mesh.setUniformChunk(chunkX, -1, chunkZ, Type.STONE);
+                mesh.useChunk(chunkX, 0, chunkZ);
+                mesh.useChunk(chunkX, 1, chunkZ);
+            }
+        }
+        for (int z = 0; z < 3 * CHUNK_DIMENSION; z++) {
+            for (int x = 0; x < 3 * CHUNK_DIMENSION; x++) {
+                int height = CHUNK_DIMENSION / 2 + random.nextInt(CHUNK_DIMENSION);
+                for (int y = 0; y < height; y++) {
+                    mesh.getBlockType().setType(x, y, z, TYPES[1 + random.nextInt(4)]);
+                }
+                if (random.nextInt(4) == 0) {
+                    mesh.getBlockType().setType(x, height, z, Type.WATER);
+                }
+            }
+        }
+        return mesh;
+    }
+
+    /**
+     * IDs of the chunks by the triples of coordinates.
+     */
+    private static TIntSet ids(final ChunkDescriptorsBuffer descriptors, final int... coordinates) {
+        TIntSet ids = new TIntHashSet();
+        for (int i = 0; i < coordinates.length; i += 3) {
+            ids.add(descriptors.getID(coordinates[i], coordinates[i + 1], coordinates[i + 2]));
+        }
+        return ids;
+    }
+
+    private static int[][] readOptions(final TerrainChunksMesh mesh) {
+        int[][] options = new int[mesh.getChunks()][CHUNK_SIZE];
+        for (int chunkId = 0; chunkId < options.length; chunkId++) {
+            mesh.getBlockOptions().readChunk(chunkId, options[chunkId]);
+        }
+        return options;
+    }
+}
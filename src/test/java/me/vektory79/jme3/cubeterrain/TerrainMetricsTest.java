@@ -0,0 +1,45 @@
+package me.vektory79.jme3.cubeterrain;
+
+import org.junit.jupiter.api.Test;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_SIZE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TerrainMetricsTest {
+
+    @Test
+    void uploadRecordsBytesSentToGpu() {
+        TerrainChunksMesh mesh = new TerrainChunksMesh(4);
+        TerrainMetrics metrics = mesh.getMetrics();
+        TerrainBlockTypesBuffer blockType = mesh.getBlockType();
+        // Pretend, that the buffer is already allocated on GPU.
+        blockType.setId(1);
+        blockType.clearUpdateNeeded();
+
+        blockType.setValue(5, 1);
+        blockType.setValue(CHUNK_SIZE + 5, 1);
+        mesh.commitUpdates();
+        assertEquals(0, metrics.getTotalUploadBytes());
+
+        mesh.uploadUpdates();
+        assertEquals(2 * Integer.BYTES, metrics.getTypesUploadBytes());
+        assertEquals(0, metrics.getOptionsUploadBytes());
+        assertEquals(2 * Integer.BYTES, metrics.getTotalUploadBytes());
+
+        mesh.uploadUpdates();
+        assertEquals(0, metrics.getTypesUploadBytes());
+        assertEquals(2 * Integer.BYTES, metrics.getTotalUploadBytes());
+    }
+
+    @Test
+    void bufferWithoutGpuAllocationIsRecordedWhole() {
+        TerrainChunksMesh mesh = new TerrainChunksMesh(4);
+        TerrainMetrics metrics = mesh.getMetrics();
+
+        mesh.getBlockOptions().setValue(5, 1);
+        mesh.commitUpdates();
+        mesh.uploadUpdates();
+        assertEquals(0, metrics.getTypesUploadBytes());
+        assertEquals(4 * CHUNK_SIZE * Integer.BYTES, metrics.getOptionsUploadBytes());
+    }
+}
@@ -0,0 +1,208 @@
+package me.vektory79.jme3.cubeterrain;
+
+import me.vektory79.jme3.cubeterrain.BlockTypeDescriptorsBuffer.Type;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.IntBuffer;
+import java.util.BitSet;
+import java.util.Random;
+
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_DIMENSION;
+import static me.vektory79.jme3.cubeterrain.AbstractTerrainBlockBuffer.CHUNK_SIZE;
+import static me.vektory79.jme3.cubeterrain.VisibleBlocksIndex.RESTART_INDEX;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VisibleBlocksIndexTest {
+    private static final int WORLD_CHUNKS = 3;
+    private static final int WORLD_SIZE = WORLD_CHUNKS * CHUNK_DIMENSION;
+
+    private final BufferRangeUploader uploader = new BufferRangeUploader();
+    private TerrainChunksMesh mesh;
+    private VisibleBlocksIndex index;
+
+    @BeforeEach
+    void setUp() {
+        mesh = new TerrainChunksMesh(WORLD_CHUNKS * WORLD_CHUNKS * WORLD_CHUNKS);
+        index = mesh.getVisibleBlocks();
+        Random random = new Random(42);
+        for (int x = 0; x < WORLD_CHUNKS; x++) {
+            for (int y = 0; y < WORLD_CHUNKS; y++) {
+                for (int z = 0; z < WORLD_CHUNKS; z++) {
+                    mesh.useChunk(x, y, z);
+                }
+            }
+        }
+        TerrainBlockTypesBuffer blockType = mesh.getBlockType();
+        for (int x = 0; x < WORLD_SIZE; x++) {
+            for (int z = 0; z < WORLD_SIZE; z++) {
+                // Solid ground with the random height and the scattered blocks above it.
+                int height = 8 + random.nextInt(24);
+                for (int y = 0; y < WORLD_SIZE; y++) {
+                    if (y < height || random.nextInt(50) == 0) {
+                        blockType.setType(x, y, z, Type.STONE);
+                    }
+                }
+            }
+        }
+        mesh.rebuildCulling();
+        mesh.commitUpdates();
+    }
+
+    @Test
+    void slotsMatchVisibilityMasks() {
+        assertIndexMatchesOptions(null);
+    }
+
+    @Test
+    void editsRewriteOnlyChangedSlots() {
+        allocateOnGpu();
+        TerrainBlockTypesBuffer blockType = mesh.getBlockType();
+        // Hole in the ground of the middle chunk column.
+        for (int y = 0; y < 20; y++) {
+            blockType.setType(24, y, 24, Type.AIR);
+        }
+        mesh.rebuildDirtyCulling();
+        mesh.commitUpdates();
+        assertIndexMatchesOptions(null);
+
+        int[] ranges = index.getUploadRanges();
+        int touched = 0;
+        for (int chunkId = 0; chunkId < mesh.getChunks(); chunkId++) {
+            int start = index.getSlotStart(chunkId) * Integer.BYTES;
+            int end = start + index.getSlotCapacity(chunkId) * Integer.BYTES;
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (ranges[i] < end && start < ranges[i + 1]) {
+                    touched++;
+                    break;
+                }
+            }
+        }
+        // The hole touches the middle column and the neighbours of it's chunks.
+        assertTrue(touched > 0 && touched <= 2 * WORLD_CHUNKS + 5, "touched slots: " + touched);
+        long bytes = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            bytes += ranges[i + 1] - ranges[i];
+        }
+        assertEquals(bytes, index.uploadUpdates(uploader));
+        assertEquals(0, index.getUploadRanges().length);
+    }
+
+    @Test
+    void freedChunkSlotIsReused() {
+        int chunkId = mesh.getChunkDescriptors().getID(1, 2, 1);
+        int start = index.getSlotStart(chunkId);
+        int capacity = index.getSlotCapacity(chunkId);
+        assertTrue(capacity > 0);
+
+        mesh.setUniformChunk(1, 2, 1, Type.AIR);
+        mesh.rebuildDirtyCulling();
+        mesh.commitUpdates();
+        assertEquals(0, index.getSlotCapacity(chunkId));
+        assertIndexMatchesOptions(null);
+
+        // The same chunk ID is reserved again and gets the released range.
+        int reused = mesh.useChunk(1, 2, 1);
+        assertEquals(chunkId, reused);
+        mesh.getBlockType().setType(20, 40, 20, Type.STONE);
+        mesh.rebuildDirtyCulling();
+        mesh.commitUpdates();
+        assertEquals(start, index.getSlotStart(chunkId));
+        assertTrue(index.getSlotCapacity(chunkId) <= capacity);
+        assertIndexMatchesOptions(null);
+    }
+
+    @Test
+    void hiddenChunksAreRestartIndices() {
+        BitSet drawn = new BitSet();
+        for (int chunkId = 0; chunkId < mesh.getChunks(); chunkId += 3) {
+            drawn.set(chunkId);
+        }
+        index.setDrawnChunks(drawn);
+        index.commitUpdates();
+        assertIndexMatchesOptions(drawn);
+
+        index.setDrawnChunks(null);
+        index.commitUpdates();
+        assertIndexMatchesOptions(null);
+    }
+
+    @Test
+    void drawnChangeRewritesOnlyToggledSlots() {
+        BitSet drawn = new BitSet();
+        drawn.set(0, mesh.getChunks());
+        index.setDrawnChunks(drawn);
+        index.commitUpdates();
+        allocateOnGpu();
+
+        int hidden = mesh.getChunkDescriptors().getID(1, 0, 1);
+        drawn.clear(hidden);
+        index.setDrawnChunks(drawn);
+        index.commitUpdates();
+        assertIndexMatchesOptions(drawn);
+        int start = index.getSlotStart(hidden) * Integer.BYTES;
+        int written = index.getVisibleBlocks(hidden) * Integer.BYTES;
+        assertArrayEquals(new int[]{start, start + written}, index.getUploadRanges());
+    }
+
+    private void allocateOnGpu() {
+        index.setId(1);
+        index.clearUpdateNeeded();
+        index.uploadUpdates(uploader);
+    }
+
+    /**
+     * Compare the index with the brute force scan of the visibility masks.
+     */
+    private void assertIndexMatchesOptions(final BitSet drawn) {
+        IntBuffer data = ((IntBuffer) index.getData()).duplicate();
+        boolean[] used = new boolean[data.capacity()];
+        int[] options = new int[CHUNK_SIZE];
+        int totalBlocks = 0;
+        for (int chunkId = 0; chunkId < mesh.getChunks(); chunkId++) {
+            int[] expected = new int[0];
+            if (mesh.getChunkDescriptors().isUsed(chunkId) && (drawn == null || drawn.get(chunkId))) {
+                mesh.getBlockOptions().readChunk(chunkId, options);
+                expected = visibleBlocks(chunkId, options);
+            }
+            totalBlocks += expected.length;
+            int start = index.getSlotStart(chunkId);
+            int capacity = index.getSlotCapacity(chunkId);
+            assertTrue(expected.length <= capacity || expected.length == 0);
+            int[] actual = new int[expected.length];
+            for (int i = 0; i < capacity; i++) {
+                assertTrue(!used[start + i], "slots overlap");
+                used[start + i] = true;
+                if (i < expected.length) {
+                    actual[i] = data.get(start + i);
+                } else {
+                    assertEquals(RESTART_INDEX, data.get(start + i));
+                }
+            }
+            assertArrayEquals(expected, actual, "chunk " + chunkId);
+            int[] read = new int[CHUNK_SIZE];
+            assertEquals(expected.length, index.readChunk(chunkId, read));
+        }
+        for (int i = 0; i < used.length; i++) {
+            if (!used[i]) {
+                assertEquals(RESTART_INDEX, data.get(i));
+            }
+        }
+        assertEquals(totalBlocks, index.getVisibleBlocks());
+    }
+
+    private static int[] visibleBlocks(final int chunkId, final int[] options) {
+        int count = 0;
+        int[] blocks = new int[CHUNK_SIZE];
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            if ((options[i] & TerrainBlockOptionsBuffer.VISIBILITY_FIELD_MASK) != 0) {
+                blocks[count++] = chunkId * CHUNK_SIZE + i;
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(blocks, 0, result, 0, count);
+        return result;
+    }
+}
@@ -0,0 +1,81 @@
+package me.vektory79.mapgen;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeightStorageTest {
+    // Half of the float ulp of 1.0 and half of the short quantization step.
+    private static final double FLOAT_ERROR = Math.ulp(1.0f) / 2;
+    private static final double SHORT_ERROR = 0.5 / Short.MAX_VALUE;
+
+    @Test
+    void storedValueErrorIsWithinPrecision() {
+        Random random = new Random(1);
+        HeightStorage floats = HeightStorage.create(HeightPrecision.FLOAT, 10000, false);
+        HeightStorage shorts = HeightStorage.create(HeightPrecision.SHORT, 10000, false);
+        for (int i = 0; i < 10000; i++) {
+            double value = random.nextDouble() * 2 - 1;
+            floats.set(i, value);
+            shorts.set(i, value);
+            assertEquals(value, floats.get(i), FLOAT_ERROR);
+            assertEquals(value, shorts.get(i), SHORT_ERROR);
+        }
+    }
+
+    @Test
+    void mapErrorAgainstDoubleIsBounded() {
+        int sizeFactor = 9;
+        // Each diamond-square pass averages the rounded values and adds the rounding of it's own.
+        int passes = 2 * sizeFactor;
+        for (long seed = 0; seed < 4; seed++) {
+            MapGenerator exact = generate(sizeFactor, seed, HeightPrecision.DOUBLE);
+            double floatError = getMaxError(exact, generate(sizeFactor, seed, HeightPrecision.FLOAT), sizeFactor);
+            double shortError = getMaxError(exact, generate(sizeFactor, seed, HeightPrecision.SHORT), sizeFactor);
+            assertTrue(floatError <= passes * FLOAT_ERROR, "float error " + floatError);
+            assertTrue(shortError <= passes * SHORT_ERROR, "short error " + shortError);
+            // The documented bounds for the maps up to 2^15.
+            assertTrue(floatError < 1.8e-6, "float error " + floatError);
+            assertTrue(shortError < 4.6e-4, "short error " + shortError);
+        }
+    }
+
+    @Test
+    void directStorageCrossesSegmentBoundaries() {
+        // Segments of 16 heights, the last one is shorter.
+        int segmentShift = 4;
+        int size = 3 * 16 + 5;
+        for (HeightPrecision precision : HeightPrecision.values()) {
+            HeightStorage heap = HeightStorage.create(precision, size, false);
+            HeightStorage direct = HeightStorage.create(precision, size, true, segmentShift);
+            for (int i = 0; i < size; i++) {
+                double value = (double) i / size * 2 - 1;
+                heap.set(i, value);
+                direct.set(i, value);
+            }
+            for (int i = 0; i < size; i++) {
+                assertEquals(heap.get(i), direct.get(i), 0.0, precision + " at " + i);
+            }
+        }
+    }
+
+    private static MapGenerator generate(int sizeFactor, long seed, HeightPrecision precision) {
+        MapGenerator map = new MapGenerator(sizeFactor, 1.0, seed, precision, false);
+        map.generate();
+        return map;
+    }
+
+    private static double getMaxError(MapGenerator exact, MapGenerator map, int sizeFactor) {
+        int size = 1 << sizeFactor;
+        double max = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                max = Math.max(max, Math.abs(map.getData(x, y) - exact.getData(x, y)));
+            }
+        }
+        return max;
+    }
+}
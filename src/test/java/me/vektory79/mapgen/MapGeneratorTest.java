@@ -0,0 +1,53 @@
+package me.vektory79.mapgen;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class MapGeneratorTest {
+    private static final long[] SEEDS = {0L, 42L, -7L};
+    private static final int[] SIZE_FACTORS = {1, 4, 9};
+
+    @Test
+    void parallelGenerationMatchesSequential() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (long seed : SEEDS) {
+                for (int sizeFactor : SIZE_FACTORS) {
+                    assertSameMap(sizeFactor, seed, HeightPrecision.DOUBLE, false, pool);
+                }
+            }
+            // Reduced precision rounds each stored height, so the passes must read the same rounded values.
+            assertSameMap(8, 1L, HeightPrecision.FLOAT, true, pool);
+            assertSameMap(8, 1L, HeightPrecision.SHORT, false, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertSameMap(int sizeFactor, long seed, HeightPrecision precision, boolean offHeap,
+                                      ForkJoinPool pool) {
+        MapGenerator sequential = new MapGenerator(sizeFactor, 1.0, seed, precision, offHeap);
+        sequential.generate();
+        MapGenerator parallel = new MapGenerator(sizeFactor, 1.0, seed, precision, offHeap);
+        parallel.generate(pool);
+        assertArrayEquals(getBits(sequential, sizeFactor), getBits(parallel, sizeFactor),
+                "seed " + seed + ", size factor " + sizeFactor + ", precision " + precision);
+    }
+
+    /**
+     * Raw bits of the heights, so the maps are compared bit identical, not just close.
+     */
+    private static long[] getBits(MapGenerator map, int sizeFactor) {
+        int size = 1 << sizeFactor;
+        long[] bits = new long[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                bits[(y << sizeFactor) + x] = Double.doubleToRawLongBits(map.getData(x, y));
+            }
+        }
+        return bits;
+    }
+}
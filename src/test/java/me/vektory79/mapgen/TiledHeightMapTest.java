@@ -0,0 +1,65 @@
+package me.vektory79.mapgen;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TiledHeightMapTest {
+    private static final int TILE_FACTOR = 4;
+    private static final int TILE_SIZE = 1 << TILE_FACTOR;
+
+    @Test
+    void neighbourTilesShareEdgesAndCorners() {
+        TiledHeightMap map = new TiledHeightMap(TILE_FACTOR, 1.0, 5L, 4);
+        for (int tileZ = -3; tileZ <= 2; tileZ++) {
+            for (int tileX = -3; tileX <= 2; tileX++) {
+                for (int i = 0; i <= TILE_SIZE; i++) {
+                    // Far edges of the tile are the near edges of the next tiles.
+                    assertEquals(map.getTilePoint(tileX + 1, tileZ, 0, i),
+                            map.getTilePoint(tileX, tileZ, TILE_SIZE, i), 0.0,
+                            "X edge of tile " + tileX + ", " + tileZ + " at " + i);
+                    assertEquals(map.getTilePoint(tileX, tileZ + 1, i, 0),
+                            map.getTilePoint(tileX, tileZ, i, TILE_SIZE), 0.0,
+                            "Z edge of tile " + tileX + ", " + tileZ + " at " + i);
+                }
+                // The corner is shared by four tiles.
+                double corner = map.getTilePoint(tileX + 1, tileZ + 1, 0, 0);
+                assertEquals(corner, map.getTilePoint(tileX, tileZ, TILE_SIZE, TILE_SIZE), 0.0);
+                assertEquals(corner, map.getTilePoint(tileX + 1, tileZ, 0, TILE_SIZE), 0.0);
+                assertEquals(corner, map.getTilePoint(tileX, tileZ + 1, TILE_SIZE, 0), 0.0);
+                // Near edges are what the map returns for the world coordinates.
+                assertEquals(map.getHeight(tileX * TILE_SIZE + 3, tileZ * TILE_SIZE),
+                        map.getTilePoint(tileX, tileZ, 3, 0), 0.0);
+            }
+        }
+    }
+
+    @Test
+    void evictedTilesAreRegeneratedTheSame() {
+        TiledHeightMap cached = new TiledHeightMap(TILE_FACTOR, 1.0, 9L, 64);
+        TiledHeightMap evicting = new TiledHeightMap(TILE_FACTOR, 1.0, 9L, 1);
+        for (int pass = 0; pass < 2; pass++) {
+            for (int z = -40; z < 40; z += 3) {
+                for (int x = -40; x < 40; x += 5) {
+                    assertEquals(cached.getHeight(x, z), evicting.getHeight(x, z), 0.0);
+                }
+            }
+        }
+        assertEquals(1, evicting.getCachedTiles());
+    }
+
+    @Test
+    void leastRecentlyUsedTileIsEvicted() {
+        TiledHeightMap map = new TiledHeightMap(TILE_FACTOR, 1.0, 1L, 2);
+        map.getHeight(0, 0);
+        map.getHeight(-TILE_SIZE, 0);
+        map.getHeight(0, 0);
+        map.getHeight(0, -TILE_SIZE);
+        assertEquals(2, map.getCachedTiles());
+        assertTrue(map.isCached(0, 0));
+        assertFalse(map.isCached(-1, 0));
+        assertTrue(map.isCached(0, -1));
+    }
+}
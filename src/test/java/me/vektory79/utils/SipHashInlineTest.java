@@ -0,0 +1,59 @@
+package me.vektory79.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SipHashInlineTest {
+    private static final long K0 = 0x0706050403020100L;
+    private static final long K1 = 0x0f0e0d0c0b0a0908L;
+
+    @Test
+    void matchesReferenceVector() {
+        // Test vector from the SipHash paper: 15 bytes message 00..0e.
+        byte[] message = new byte[15];
+        for (int i = 0; i < message.length; i++) {
+            message[i] = (byte) i;
+        }
+        assertEquals(0xa129ca6149be45e5L, SipHashInline.hash24(K0, K1, message));
+    }
+
+    @Test
+    void primitiveVariantsMatchByteArray() {
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            long k0 = random.nextLong();
+            long k1 = random.nextLong();
+            long a = random.nextLong();
+            long b = random.nextLong();
+            long c = random.nextLong();
+            int x = random.nextInt();
+            int y = random.nextInt();
+            int z = random.nextInt();
+            assertEquals(SipHashInline.hash24(k0, k1, ArrayUtils.bytesFrom(a)), SipHashInline.hash24(k0, k1, a));
+            assertEquals(SipHashInline.hash24(k0, k1, ArrayUtils.bytesFrom(a, b)),
+                    SipHashInline.hash24(k0, k1, a, b));
+            assertEquals(SipHashInline.hash24(k0, k1, ArrayUtils.bytesFrom(a, b, c)),
+                    SipHashInline.hash24(k0, k1, a, b, c));
+            assertEquals(SipHashInline.hash24(k0, k1, ArrayUtils.bytesFrom(x)), SipHashInline.hash24(k0, k1, x));
+            assertEquals(SipHashInline.hash24(k0, k1, ArrayUtils.bytesFrom(x, y)),
+                    SipHashInline.hash24(k0, k1, x, y));
+            assertEquals(SipHashInline.hash24(k0, k1, ArrayUtils.bytesFrom(x, y, z)),
+                    SipHashInline.hash24(k0, k1, x, y, z));
+        }
+    }
+
+    @Test
+    void rowMatchesPairs() {
+        long[] row = new long[4];
+        SipHashInline.hash24Row(K0, K1, -3, 2, 7, row, 0, row.length);
+        long[] expected = new long[row.length];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = SipHashInline.hash24(K0, K1, -3 + i * 2L, 7L);
+        }
+        assertArrayEquals(expected, row);
+    }
+}